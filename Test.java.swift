@@ -4,20 +4,20 @@ import Foundation
 public class Test: A, B, C, D {
 
 var d: Float
-private var a: Int32, b: Int32
+private var a: Int32?, b: Int32?
 public let c: String
 internal var s: Int16
 
-public init<T>(var _ i: Int32, _ c: [[Character]], var _ d: Double...) {
+public init<T>(_ i: Int32, _ c: [[Character]], _ d: Double...) {
 var a: Int32, b: Int32
 }
 
-public func f<T>(t: T) throws -> Double {
+public func f<T>(_ t: T) throws -> Double {
 }
 
-private static final class E<T: V, U>: F<T, U>, G {
+private final class E<T: V, U>: F<T, U>, G {
 
-public static func h(var arr: [Character], _ NUM: Int32, var _ list: List<T>, var _ moreParams: Int64...) {
+public static func h(_ arr: [Character], _ NUM: Int32, _ list: [T], _ moreParams: Int64...) {
 }
 
 }
@@ -26,13 +26,15 @@ public static func h(var arr: [Character], _ NUM: Int32, var _ list: List<T>, va
 
 internal protocol OtherI<T>: Some1I, Some2I, Some3I {
 
-public let NUM1: Int32, NUM2: Int32
+static func someMethod(_ b: Bool, _ params: T...) -> [Int8]
 
-static func someMethod(var b: Bool, var _ params: T...) -> [Int8]
+}
 
+internal enum OtherIConstants {
+public static let NUM1: Int32, NUM2: Int32
 }
 
-private enum SomethingE: SomethingElseI {
-case A, B, C, D, E
+private enum SomethingE: Int32, CaseIterable, SomethingElseI {
+case A = 0, B = 1, C = 2, D = 3, E = 4
 }
 
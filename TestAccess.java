@@ -0,0 +1,28 @@
+// access levels inferred from the corpus, translated with --infer-access
+class Registry {
+
+	private class Entry {
+		int id;
+	}
+
+	public int size;
+	protected String name;
+
+	public Registry(String name) {
+		this.name = name;
+	}
+
+	private Entry first() {
+		return new Entry();
+	}
+
+	public Entry last() {
+		return first();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
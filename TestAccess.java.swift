@@ -0,0 +1,31 @@
+import Foundation
+
+
+fileprivate class Registry {
+
+private class Entry {
+
+fileprivate var id: Int32
+
+}
+fileprivate var size: Int32
+fileprivate var name: String
+
+fileprivate init(_ name: String) {
+self.name = name
+}
+
+private func first() -> Entry {
+return Entry()
+}
+
+private func last() -> Entry {
+return first()
+}
+
+public func toString() -> String {
+return name
+}
+
+}
+
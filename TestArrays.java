@@ -0,0 +1,32 @@
+// primitive arrays, translated with --arrays=ContiguousArray
+class Matrix {
+
+	private double[][] cells = new double[4][4];
+	private int[] sizes = {1, 2, 3};
+	private String[] labels = {"rows", "columns"};
+
+	double trace(double[][] m) {
+		double sum = 0;
+		for (int i = 0; i < m.length; i++) {
+			sum += m[i][i];
+		}
+		return sum;
+	}
+
+	int total(int[] values) {
+		int total = 0;
+		for (int v : values) total += v;
+		return total;
+	}
+
+	long sumAll(int... values) {
+		long sum = 0;
+		for (int i = 0; i < values.length; i++) sum += values[i];
+		return sum;
+	}
+
+	int[] counts() {
+		return sizes;
+	}
+
+}
@@ -0,0 +1,40 @@
+import Foundation
+
+
+class Matrix {
+
+private var cells: ContiguousArray<ContiguousArray<Double>> = ContiguousArray<ContiguousArray<Double>>(repeating: ContiguousArray<Double>(repeating: 0.0, count: 4), count: 4)
+private var sizes: ContiguousArray<Int32> = [1, 2, 3]
+private var labels: [String] = ["rows", "columns"]
+
+func trace(_ m: ContiguousArray<ContiguousArray<Double>>) -> Double {
+var sum: Double = 0.0
+for i in stride(from: 0, to: Int32(m.count), by: 1) {
+sum += m[Int(i)][Int(i)]
+}
+return sum
+}
+
+func total(_ values: ContiguousArray<Int32>) -> Int32 {
+var total: Int32 = 0
+values.withUnsafeBufferPointer { for v in $0 {
+total &+= v
+}
+}
+return total
+}
+
+func sumAll(_ values: Int32...) -> Int64 {
+var sum: Int64 = 0
+for i in stride(from: 0, to: Int32(values.count), by: 1) {
+sum = sum &+ Int64(values[Int(i)])
+}
+return sum
+}
+
+func counts() -> ContiguousArray<Int32> {
+return sizes
+}
+
+}
+
@@ -0,0 +1,102 @@
+// method bodies, translated without options
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+interface Limits {
+	int MAX = 10;
+	String NAME = "limits";
+
+	int size();
+}
+
+enum Level {
+	LOW, MID, HIGH
+}
+
+class Counter {
+
+	private static final long BIG = 1L << 40;
+	private static final double HUGE = Double.MAX_VALUE;
+	private static final int DIVZ = 1 / 0;
+	private volatile int hits;
+	private int[] primes = {2, 3, 5, 7};
+	private String label;
+
+	Counter(String label) {
+		this.label = label;
+	}
+
+	synchronized void hit() {
+		hits++;
+	}
+
+	synchronized void waitForHit() throws InterruptedException {
+		while (hits == 0) wait();
+	}
+
+	int levels(Level l) {
+		return l.ordinal() + Level.values().length + Limits.MAX;
+	}
+
+	String describe(int[] values) {
+		String s = "";
+		for (int v : values) s += v + ",";
+		return label + ": " + s + " of " + null;
+	}
+
+	int clamp(int n) {
+		if (n < 0) n = 0;
+		return n;
+	}
+
+	long widen(int[] values) {
+		long total = 0;
+		for (long v : values) total += v;
+		return total;
+	}
+
+	long sum(List<Integer> xs) {
+		long total = 0;
+		for (int i = 0; i < xs.size(); i++) {
+			total += xs.get(i);
+		}
+		return total;
+	}
+
+	int mix(int a, char c, double d) {
+		int shifted = a >>> 3;
+		double rem = d % 2;
+		return shifted + (int) rem;
+	}
+
+	Runnable ticker() {
+		return () -> hit();
+	}
+
+	int count(Map<String, Integer> m, String k) {
+		Integer n = m.get(k);
+		if (n == null) return 0;
+		return n + 1;
+	}
+
+	List<String> names(int n) {
+		List<String> out = new ArrayList<>();
+		for (int i = 0; i < n; i++) out.add("n" + i);
+		return out;
+	}
+
+}
+
+class Tally {
+
+	static int total = 0;
+	int count = 0;
+
+	int next(Tally o) {
+		o.count++;
+		Tally.total++;
+		return o.count + 1 + Tally.total + 1;
+	}
+
+}
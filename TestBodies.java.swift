@@ -0,0 +1,124 @@
+import Foundation
+import Atomics
+
+
+protocol Limits {
+
+func size() -> Int32
+
+}
+
+enum LimitsConstants {
+static let MAX: Int32 = 10
+static let NAME: String = "limits"
+}
+
+enum Level: Int32, CaseIterable {
+case LOW = 0, MID = 1, HIGH = 2
+}
+
+class Counter {
+private let j2sLock = NSRecursiveLock()
+private static let BIG: Int64 = 1099511627776
+private static let HUGE: Double = 1.7976931348623157E308
+private static let DIVZ: Int32 /* untranslated: = 1 / 0 */
+private let hits = ManagedAtomic<Int32>(0)
+private var primes: [Int32] = [2, 3, 5, 7]
+private var label: String
+
+init(_ label: String) {
+self.label = label
+}
+
+func hit() {
+j2sLock.lock()
+defer { j2sLock.unlock() }
+hits.wrappingIncrement(ordering: .sequentiallyConsistent)
+}
+
+// untranslated: synchronized void waitForHit() throws InterruptedException { while (hits == 0) wait(); }
+
+func levels(_ l: Level) -> Int32 {
+return l.rawValue &+ Int32(Level.allCases.count) &+ LimitsConstants.MAX
+}
+
+func describe(_ values: [Int32]) -> String {
+var s: String = ""
+s.reserveCapacity(s.utf8.count + values.count * 2)
+values.withUnsafeBufferPointer { for v in $0 {
+s += "\(v),"
+}
+}
+return "\(label): \(s) of null"
+}
+
+func clamp(_ n: Int32) -> Int32 {
+var n = n
+if n < 0 {
+n = 0
+}
+return n
+}
+
+func widen(_ values: [Int32]) -> Int64 {
+var total: Int64 = 0
+for vElement in values {
+let v = Int64(vElement)
+total &+= v
+}
+return total
+}
+
+func sum(_ xs: [Int32]) -> Int64 {
+var total: Int64 = 0
+do {
+var i: Int32 = 0
+while i < Int32(xs.count) {
+total = total &+ Int64(xs[Int(i)])
+i &+= 1
+}
+}
+return total
+}
+
+func mix(_ a: Int32, _ c: Character, _ d: Double) -> Int32 {
+var shifted: Int32 = Int32(bitPattern: UInt32(bitPattern: a) &>> 3)
+var rem: Double = d.truncatingRemainder(dividingBy: 2.0)
+return shifted &+ Int32(rem)
+}
+
+func ticker() -> () -> Void {
+return { self.hit() }
+}
+
+func count(_ m: [String: Int32], _ k: String) -> Int32 {
+var n: Int32? = m[k]
+if n == nil {
+return 0
+}
+return n! &+ 1
+}
+
+func names(_ n: Int32) -> [String] {
+var out: [String] = [String]()
+for i in stride(from: 0, to: n, by: 1) {
+out.append("n\(i)")
+}
+return out
+}
+
+}
+
+class Tally {
+
+static var total: Int32 = 0
+var count: Int32 = 0
+
+func next(_ o: Tally) -> Int32 {
+o.count &+= 1
+Tally.total &+= 1
+return o.count &+ 1 &+ Tally.total &+ 1
+}
+
+}
+
@@ -0,0 +1,41 @@
+// collections with capacities, translated without options
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class Catalog {
+
+	private final List<String> names = new ArrayList<>(16);
+	private Map<String, Integer> counts = new HashMap<>(64);
+	private Set<Long> seen = new HashSet<>();
+	private StringBuilder log = new StringBuilder(256);
+
+	List<Integer> squares(int n) {
+		List<Integer> out = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) out.add(i * i);
+		return out;
+	}
+
+	void record(String name, long id) {
+		names.add(name);
+		counts.put(name, counts.getOrDefault(name, 0) + 1);
+		seen.add(id);
+		log.append(name);
+	}
+
+	boolean knows(String name, long id) {
+		return counts.containsKey(name) && seen.contains(id);
+	}
+
+	List<String> copy() {
+		return new ArrayList<>(names);
+	}
+
+	String summary() {
+		return log.toString() + " " + names.size() + " " + log.length();
+	}
+
+}
@@ -0,0 +1,40 @@
+import Foundation
+
+
+class Catalog {
+
+private var names: [String] = { var c = [String](); c.reserveCapacity(16); return c }()
+private var counts: [String: Int32] = [String: Int32](minimumCapacity: 64)
+private var seen: Set<Int64> = Set<Int64>()
+private var log: String = { var c = String(); c.reserveCapacity(256); return c }()
+
+func squares(_ n: Int32) -> [Int32] {
+var out: [Int32] = [Int32]()
+out.reserveCapacity(Int(n))
+for i in stride(from: 0, to: n, by: 1) {
+out.append(i &* i)
+}
+return out
+}
+
+func record(_ name: String, _ id: Int64) {
+names.append(name)
+counts[name] = counts[name, default: 0] &+ 1
+seen.insert(id)
+log.append(name)
+}
+
+func knows(_ name: String, _ id: Int64) -> Bool {
+return counts[name] != nil && seen.contains(id)
+}
+
+func copy() -> [String] {
+return names
+}
+
+func summary() -> String {
+return "\(log) \(Int32(names.count)) \(Int32(log.utf16.count))"
+}
+
+}
+
@@ -0,0 +1,56 @@
+// checked exceptions, translated with --errors
+import java.io.IOException;
+
+public class ParseException extends Exception {
+
+	public ParseException(String message) {
+		super(message);
+	}
+
+	public ParseException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
+
+class EmptyInput extends ParseException {
+
+	EmptyInput(String message) {
+		super(message);
+	}
+
+}
+
+class BadToken extends ParseException {
+
+	private final int pos;
+
+	BadToken(String message, int pos) {
+		super(message);
+		this.pos = pos;
+	}
+
+}
+
+class Lexer {
+
+	void lex(String s) throws ParseException {
+		if (s.length() == 0) throw new EmptyInput("empty");
+		if (s.length() > 80) throw new BadToken("too long", 80);
+	}
+
+	int parse(String s) throws ParseException, IOException {
+		lex(s);
+		return s.length();
+	}
+
+	int check(int i) {
+		if (i < 0) throw new IllegalArgumentException("negative");
+		return i;
+	}
+
+	void fail(RuntimeException e) {
+		throw e;
+	}
+
+}
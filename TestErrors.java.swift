@@ -0,0 +1,75 @@
+import Foundation
+
+
+public enum ParseException: Error {
+case parseException(message: String?, cause: Error?)
+case badToken(message: String?, cause: Error?, pos: Int32)
+case emptyInput(message: String?, cause: Error?)
+
+public var message: String? {
+switch self {
+case .parseException(let message, _), .badToken(let message, _, _), .emptyInput(let message, _):
+return message
+}
+}
+
+public var cause: Error? {
+switch self {
+case .parseException(_, let cause), .badToken(_, let cause, _), .emptyInput(_, let cause):
+return cause
+}
+}
+
+public var isBadToken: Bool {
+switch self {
+case .badToken:
+return true
+default:
+return false
+}
+}
+
+public var isEmptyInput: Bool {
+switch self {
+case .emptyInput:
+return true
+default:
+return false
+}
+}
+}
+
+// EmptyInput is the case ParseException.emptyInput
+
+// BadToken is the case ParseException.badToken
+
+class Lexer {
+
+func lex(_ s: String) throws {
+if Int32(s.utf16.count) == 0 {
+throw ParseException.emptyInput(message: "empty", cause: nil)
+}
+if Int32(s.utf16.count) > 80 {
+throw ParseException.badToken(message: "too long", cause: nil, pos: 80)
+}
+}
+
+func parse(_ s: String) throws -> Int32 {
+try lex(s)
+return Int32(s.utf16.count)
+}
+
+func check(_ i: Int32) -> Int32 {
+if i < 0 {
+fatalError("IllegalArgumentException: negative")
+}
+return i
+}
+
+func fail(_ e: RuntimeException) {
+// untranslated: throw e;
+fatalError("untranslated throw")
+}
+
+}
+
@@ -0,0 +1,43 @@
+// bounds and wildcards, translated without options
+import java.util.List;
+import java.util.Map;
+
+interface Shape {
+
+	double area();
+
+}
+
+class Box<T extends Shape & Comparable<T>> {
+
+	private T item;
+
+	Box(T item) {
+		this.item = item;
+	}
+
+	T get() {
+		return item;
+	}
+
+}
+
+class Shapes {
+
+	double area(List<? extends Shape> shapes) {
+		double total = 0;
+		for (int i = 0; i < shapes.size(); i++) {
+			total += shapes.get(i).area();
+		}
+		return total;
+	}
+
+	int fill(Map<?, ? super Integer> m) {
+		return m.size();
+	}
+
+	int count(List<?> items) {
+		return items.size();
+	}
+
+}
@@ -0,0 +1,47 @@
+import Foundation
+
+
+protocol Shape {
+
+func area() -> Double
+
+}
+
+class Box<T: Shape & Comparable<T>> {
+
+private var item: T
+
+init(_ item: T) {
+self.item = item
+}
+
+func get() -> T {
+return item
+}
+
+}
+
+class Shapes {
+
+func area<ShapesType: Shape>(_ shapes: [ShapesType]) -> Double {
+var total: Double = 0.0
+do {
+var i: Int32 = 0
+while i < Int32(shapes.count) {
+total += shapes[Int(i)].area()
+i &+= 1
+}
+}
+return total
+}
+
+func fill<MType1: Hashable>(_ m: [MType1: Int32]) -> Int32 {
+return Int32(m.count)
+}
+
+func count<ItemsType>(_ items: [ItemsType]) -> Int32 {
+return Int32(items.count)
+}
+
+}
+
@@ -0,0 +1,34 @@
+// classes that are never extended, translated with --index=index.txt
+class Animal {
+
+	String name() {
+		return "animal";
+	}
+
+}
+
+class Dog extends Animal {
+
+	String fetch() {
+		return name() + " fetches";
+	}
+
+}
+
+final class Cat extends Animal {
+
+	String purr() {
+		return name() + " purrs";
+	}
+
+}
+
+class Kennel {
+
+	private Animal guest = new Dog();
+
+	String listen() {
+		return guest.name();
+	}
+
+}
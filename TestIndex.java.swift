@@ -0,0 +1,37 @@
+import Foundation
+
+
+class Animal {
+
+func name() -> String {
+return "animal"
+}
+
+}
+
+final class Dog: Animal {
+
+func fetch() -> String {
+return "\(name()) fetches"
+}
+
+}
+
+final class Cat: Animal {
+
+func purr() -> String {
+return "\(name()) purrs"
+}
+
+}
+
+final class Kennel {
+
+private var guest: Animal = Dog()
+
+func listen() -> String {
+return guest.name()
+}
+
+}
+
@@ -0,0 +1,49 @@
+// synchronized methods and blocks, translated with --locks=nslock
+import java.util.ArrayList;
+import java.util.List;
+
+class Account {
+
+	private long balance = 0;
+	private final List<String> log = new ArrayList<>();
+
+	static class Ledger {
+		static int entries = 0;
+	}
+
+	synchronized void deposit(long amount) {
+		balance += amount;
+	}
+
+	static synchronized int count() {
+		return 0;
+	}
+
+	void transfer(Account other, long amount) {
+		synchronized (other) {
+			other.balance -= amount;
+		}
+		synchronized (this) {
+			balance += amount;
+		}
+	}
+
+	void record(String entry) {
+		synchronized (Ledger.class) {
+			Ledger.entries++;
+		}
+		synchronized (this) {
+			log.add(entry);
+		}
+	}
+
+	synchronized void awaitFunds() throws InterruptedException {
+		while (balance == 0) wait();
+	}
+
+	synchronized void fund(long amount) {
+		balance += amount;
+		notifyAll();
+	}
+
+}
@@ -0,0 +1,64 @@
+import Foundation
+
+
+class Account {
+let j2sLock = NSLock()
+private static let j2sClassLock = NSLock()
+private var balance: Int64 = 0
+private var log: [String] = [String]()
+
+class Ledger {
+static let j2sClassLock = NSLock()
+static var entries: Int32 = 0
+
+}
+
+func deposit(_ amount: Int64) {
+j2sLock.lock()
+defer { j2sLock.unlock() }
+balance &+= amount
+}
+
+static func count() -> Int32 {
+Account.j2sClassLock.lock()
+defer { Account.j2sClassLock.unlock() }
+return 0
+}
+
+func transfer(_ other: Account, _ amount: Int64) {
+do {
+other.j2sLock.lock()
+defer { other.j2sLock.unlock() }
+other.balance &-= amount
+}
+do {
+j2sLock.lock()
+defer { j2sLock.unlock() }
+balance &+= amount
+}
+}
+
+func record(_ entry: String) {
+do {
+Ledger.j2sClassLock.lock()
+defer { Ledger.j2sClassLock.unlock() }
+Ledger.entries &+= 1
+}
+do {
+j2sLock.lock()
+defer { j2sLock.unlock() }
+log.append(entry)
+}
+}
+
+// untranslated: synchronized void awaitFunds() throws InterruptedException { while (balance == 0) wait(); }
+
+func fund(_ amount: Int64) {
+j2sLock.lock()
+defer { j2sLock.unlock() }
+balance &+= amount
+// untranslated: notifyAll();
+}
+
+}
+
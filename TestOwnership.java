@@ -0,0 +1,60 @@
+// parameter ownership, translated with --ownership
+import java.util.List;
+
+public class Sorter {
+
+	private List<String> names;
+	private int[] cache;
+
+	public void sort(int[] values) {
+		int[] copy = values;
+		quicksort(copy, 0, copy.length - 1);
+	}
+
+	private void quicksort(int[] a, int lo, int hi) {
+		if (lo >= hi) return;
+		int p = partition(a, lo, hi);
+		quicksort(a, lo, p - 1);
+		quicksort(a, p + 1, hi);
+	}
+
+	private int partition(int[] a, int lo, int hi) {
+		int pivot = a[hi];
+		int i = lo;
+		for (int j = lo; j < hi; j++) {
+			if (a[j] < pivot) {
+				swap(a, i, j);
+				i++;
+			}
+		}
+		swap(a, i, hi);
+		return i;
+	}
+
+	private void swap(int[] a, int i, int j) {
+		int t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	private static int sum(int[] values, int n) {
+		int s = 0;
+		for (int i = 0; i < n && i < values.length; i++) {
+			s += values[i];
+		}
+		return s;
+	}
+
+	private void setNames(List<String> names) {
+		this.names = names;
+	}
+
+	private static String first(List<String> items) {
+		return items.get(0);
+	}
+
+	public void reset(int[] data) {
+		data[0] = 0;
+	}
+
+}
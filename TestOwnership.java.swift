@@ -0,0 +1,67 @@
+import Foundation
+
+
+public class Sorter {
+
+private var names: [String]
+private var cache: [Int32]
+
+public func sort(_ values: [Int32]) {
+var copy: [Int32] = values
+// untranslated: quicksort(copy, 0, copy.length - 1);
+}
+
+private func quicksort(_ a: inout [Int32], _ lo: Int32, _ hi: Int32) {
+if lo >= hi {
+return
+}
+var p: Int32 = partition(&a, lo, hi)
+quicksort(&a, lo, p &- 1)
+quicksort(&a, p &+ 1, hi)
+}
+
+private func partition(_ a: inout [Int32], _ lo: Int32, _ hi: Int32) -> Int32 {
+var pivot: Int32 = a[Int(hi)]
+var i: Int32 = lo
+for j in stride(from: lo, to: hi, by: 1) {
+if a[Int(j)] < pivot {
+swap(&a, i, j)
+i &+= 1
+}
+}
+swap(&a, i, hi)
+return i
+}
+
+private func swap(_ a: inout [Int32], _ i: Int32, _ j: Int32) {
+var t: Int32 = a[Int(i)]
+a[Int(i)] = a[Int(j)]
+a[Int(j)] = t
+}
+
+private static func sum(_ values: borrowing [Int32], _ n: Int32) -> Int32 {
+var s: Int32 = 0
+do {
+var i: Int32 = 0
+while i < n && i < Int32(values.count) {
+s &+= values[Int(i)]
+i &+= 1
+}
+}
+return s
+}
+
+private func setNames(_ names: consuming [String]) {
+self.names = names
+}
+
+private static func first(_ items: borrowing [String]) -> String {
+return items[0]
+}
+
+public func reset(_ data: [Int32]) {
+// untranslated: data[0] = 0;
+}
+
+}
+
@@ -0,0 +1,60 @@
+// top-level declarations translated on several threads, translated with --parallel=4
+package demo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+interface Shape {
+
+	double area();
+
+}
+
+enum Unit {
+	MM, CM, M
+}
+
+class Square implements Shape {
+
+	private final double side;
+
+	Square(double side) {
+		this.side = side;
+	}
+
+	public double area() {
+		return side * side;
+	}
+
+}
+
+class Circle implements Shape {
+
+	private final double r;
+
+	Circle(double r) {
+		this.r = r;
+	}
+
+	public double area() {
+		return 3.14159 * r * r;
+	}
+
+}
+
+@interface Marker {
+}
+
+class Totals {
+
+	private List<Shape> shapes = new ArrayList<>();
+
+	double sum() {
+		double total = 0;
+		for (int i = 0; i < shapes.size(); i++) {
+			total += shapes.get(i).area();
+		}
+		return total;
+	}
+
+}
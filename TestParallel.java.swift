@@ -0,0 +1,59 @@
+import Foundation
+
+
+protocol Shape {
+
+func area() -> Double
+
+}
+
+enum Unit: Int32, CaseIterable {
+case MM = 0, CM = 1, M = 2
+}
+
+class Square: Shape {
+
+private let side: Double
+
+init(_ side: Double) {
+self.side = side
+}
+
+public func area() -> Double {
+return side * side
+}
+
+}
+
+class Circle: Shape {
+
+private let r: Double
+
+init(_ r: Double) {
+self.r = r
+}
+
+public func area() -> Double {
+return 3.14159 * r * r
+}
+
+}
+
+class Totals {
+
+private var shapes: [Shape] = [Shape]()
+
+func sum() -> Double {
+var total: Double = 0.0
+do {
+var i: Int32 = 0
+while i < Int32(shapes.count) {
+total += shapes[Int(i)].area()
+i &+= 1
+}
+}
+return total
+}
+
+}
+
@@ -0,0 +1,43 @@
+// protocol parameters, translated with --generic-protocols
+interface Shape {
+
+	double area();
+
+}
+
+class Square implements Shape {
+
+	private final double side;
+
+	Square(double side) {
+		this.side = side;
+	}
+
+	public double area() {
+		return side * side;
+	}
+
+}
+
+class Canvas {
+
+	private double painted = 0;
+
+	void draw(Shape s) {
+		painted += s.area();
+	}
+
+	double larger(Shape a, Shape b) {
+		return a.area() > b.area() ? a.area() : b.area();
+	}
+
+	void drawAll(Shape... shapes) {
+		for (Shape s : shapes) draw(s);
+	}
+
+	double swapIn(Shape s, Shape other) {
+		s = other;
+		return s.area();
+	}
+
+}
@@ -0,0 +1,49 @@
+import Foundation
+
+
+protocol Shape {
+
+func area() -> Double
+
+}
+
+class Square: Shape {
+
+private let side: Double
+
+init(_ side: Double) {
+self.side = side
+}
+
+public func area() -> Double {
+return side * side
+}
+
+}
+
+class Canvas {
+
+private var painted: Double = 0.0
+
+func draw<SType: Shape>(_ s: SType) {
+painted += s.area()
+}
+
+func larger<AType: Shape, BType: Shape>(_ a: AType, _ b: BType) -> Double {
+return a.area() > b.area() ? a.area() : b.area()
+}
+
+func drawAll(_ shapes: Shape...) {
+for s in shapes {
+draw(s)
+}
+}
+
+func swapIn<OtherType: Shape>(_ s: Shape, _ other: OtherType) -> Double {
+var s = s
+s = other
+return s.area()
+}
+
+}
+
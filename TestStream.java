@@ -0,0 +1,35 @@
+// several top-level declarations, translated with --stream
+package demo;
+
+import java.util.Map;
+
+class First {
+
+	private static final int SIZE = 4;
+	private int[] slots = new int[SIZE];
+
+	int at(int i) {
+		return slots[i];
+	}
+
+}
+
+class Second {
+
+	private Map<String, Integer> counts;
+
+	protected int get(String k) {
+		return counts.get(k);
+	}
+
+}
+
+enum Mode {
+	ON, OFF
+}
+
+interface Named {
+
+	String name();
+
+}
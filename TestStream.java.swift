@@ -0,0 +1,34 @@
+import Foundation
+
+
+class First {
+
+private static let SIZE: Int32 = 4
+private var slots: [Int32] = [Int32](repeating: 0, count: 4)
+
+func at(_ i: Int32) -> Int32 {
+return slots[Int(i)]
+}
+
+}
+
+class Second {
+
+private var counts: [String: Int32]
+
+internal func get(_ k: String) -> Int32 {
+return counts[k]!
+}
+
+}
+
+enum Mode: Int32, CaseIterable {
+case ON = 0, OFF = 1
+}
+
+protocol Named {
+
+func name() -> String
+
+}
+
@@ -0,0 +1,76 @@
+// value classes, translated with --structs
+public final class Point {
+
+	private final int x, y;
+
+	Point(int x, int y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	Point plus(Point o) {
+		return new Point(x + o.x, y + o.y);
+	}
+
+}
+
+final class Pair {
+
+	private final int key;
+
+	Pair(int key) {
+		this.key = key;
+	}
+
+	static boolean same(Pair a, Pair b) {
+		return a == b;
+	}
+
+}
+
+final class Cell {
+
+	private int value = 0;
+
+	boolean sameCell(Cell a, Cell b) {
+		return a == b;
+	}
+
+}
+
+class Shape {
+
+	double area = 0;
+
+}
+
+final class Box {
+
+	private final Point origin;
+
+	Box(Point origin) {
+		this.origin = origin;
+	}
+
+	boolean at(Point p) {
+		return origin == p;
+	}
+
+	synchronized void lock() {
+	}
+
+}
+
+final class Handler {
+
+	private final Runnable action;
+
+	Handler(Runnable action) {
+		this.action = action;
+	}
+
+	int ratio() {
+		return 1 / 0;
+	}
+
+}
@@ -0,0 +1,87 @@
+import Foundation
+
+
+// struct: no superclass, final, all instance fields final, no shared collections, no identity use
+public struct Point: Equatable {
+
+private let x: Int32, y: Int32
+
+init(_ x: Int32, _ y: Int32) {
+self.x = x
+self.y = y
+}
+
+func plus(_ o: Point) -> Point {
+return Point(x &+ o.x, y &+ o.y)
+}
+
+}
+
+// class, not struct: compares instances by identity
+final class Pair {
+
+private let key: Int32
+
+init(_ key: Int32) {
+self.key = key
+}
+
+static func same(_ a: Pair, _ b: Pair) -> Bool {
+return a === b
+}
+
+}
+
+// class, not struct: field 'value' is not final
+final class Cell {
+
+private var value: Int32 = 0
+
+func sameCell(_ a: Cell, _ b: Cell) -> Bool {
+return a === b
+}
+
+}
+
+// class, not struct: not final, and no class hierarchy index to tell whether it is subclassed
+class Shape {
+
+var area: Double = 0.0
+
+}
+
+// class, not struct: uses synchronized
+final class Box {
+private let j2sLock = NSRecursiveLock()
+private let origin: Point
+
+init(_ origin: Point) {
+self.origin = origin
+}
+
+func at(_ p: Point) -> Bool {
+return origin == p
+}
+
+func lock() {
+j2sLock.lock()
+defer { j2sLock.unlock() }
+}
+
+}
+
+// class, not struct: has code that can't be translated
+final class Handler {
+
+private let action: () -> Void
+
+init(_ action: @escaping () -> Void) {
+self.action = action
+}
+
+func ratio() -> Int32 {
+// untranslated: return 1 / 0;
+}
+
+}
+
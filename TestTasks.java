@@ -0,0 +1,36 @@
+// executors and futures, translated with --tasks
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Squares {
+
+	int compute(int k) {
+		return k * k;
+	}
+
+	int total(List<Integer> ks) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<Integer>> futures = new ArrayList<>();
+		for (int k : ks) {
+			futures.add(pool.submit(() -> compute(k)));
+		}
+		int sum = 0;
+		for (Future<Integer> f : futures) {
+			sum += f.get();
+		}
+		pool.shutdown();
+		return sum;
+	}
+
+	int one(int k) throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		Future<Integer> f = pool.submit(() -> compute(k));
+		int v = f.get();
+		pool.shutdown();
+		return v;
+	}
+
+}
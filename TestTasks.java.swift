@@ -0,0 +1,32 @@
+import Foundation
+
+
+public class Squares {
+
+func compute(_ k: Int32) -> Int32 {
+return k &* k
+}
+
+func total(_ ks: [Int32]) async throws -> Int32 {
+// pool: tasks run on the cooperative thread pool of swift
+var sum: Int32 = 0
+try await withThrowingTaskGroup(of: Int32.self) { futures in
+for k in ks {
+futures.addTask { self.compute(k) }
+}
+for try await f in futures {
+sum &+= f
+}
+}
+return sum
+}
+
+func one(_ k: Int32) async throws -> Int32 {
+// pool: tasks run on the cooperative thread pool of swift
+async let f = compute(k)
+var v: Int32 = try await f
+return v
+}
+
+}
+
@@ -0,0 +1,31 @@
+// comments, literals and statements over several lines, translated without options
+
+/**
+ * A javadoc comment, which the lexer keeps off the default channel.
+ */
+class Tokens {
+
+	/* a block comment
+	   over two lines */
+	private String greeting = "hello, \"world\"\t";
+	private char quote = '\'';
+	private long big = 0x7fff_ffffL;
+	private double tiny = 1.5e-10;
+
+	int pick(int
+			which,
+			String label) {
+		// a switch is left untranslated, with the text of its tokens
+		switch (which) {
+			case 0: return label.length();
+			default: return -1;
+		}
+	}
+
+	String join(String a,    String b) {
+		return a
+			+ ", "
+			+ b;
+	}
+
+}
@@ -0,0 +1,20 @@
+import Foundation
+
+
+class Tokens {
+
+private var greeting: String = "hello, \"world\"\t"
+private var quote: Character = "'"
+private var big: Int64 = 2147483647
+private var tiny: Double = 1.5E-10
+
+func pick(_ which: Int32, _ label: String) -> Int32 {
+// untranslated: switch (which) { case 0 : return label.length(); default : return - 1; }
+}
+
+func join(_ a: String, _ b: String) -> String {
+return "\(a), \(b)"
+}
+
+}
+
@@ -0,0 +1,37 @@
+// repeated generic types, translated without options
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class Registry {
+
+	private Map<Long, List<String>> byId = new HashMap<>();
+	private Map<Long, List<String>> byOwner = new HashMap<>();
+	private Set<Map<Long, List<String>>> snapshots = new HashSet<>();
+	private List<int[]> blocks = new ArrayList<>();
+	private Map<String, Map<Long, List<String>>> nested = new HashMap<>();
+
+	Map<Long, List<String>> lookup(Map<Long, List<String>> other, List<int[]> extra) {
+		Map<Long, List<String>> result = other;
+		return result;
+	}
+
+	List<String> names(Map<Long, List<String>> m, long id) {
+		return m.get(id);
+	}
+
+}
+
+class Index {
+
+	private Map<Long, List<String>> entries = new HashMap<>();
+	private List<int[]> blocks = new ArrayList<>();
+
+	Map<Long, List<String>> all() {
+		return entries;
+	}
+
+}
@@ -0,0 +1,33 @@
+import Foundation
+
+
+class Registry {
+
+private var byId: [Int64: [String]] = [Int64: [String]]()
+private var byOwner: [Int64: [String]] = [Int64: [String]]()
+private var snapshots: Set<[Int64: [String]]> = Set<[Int64: [String]]>()
+private var blocks: [[Int32]] = [[Int32]]()
+private var nested: [String: [Int64: [String]]] = [String: [Int64: [String]]]()
+
+func lookup(_ other: [Int64: [String]], _ extra: [[Int32]]) -> [Int64: [String]] {
+var result: [Int64: [String]] = other
+return result
+}
+
+func names(_ m: [Int64: [String]], _ id: Int64) -> [String] {
+return m[id]!
+}
+
+}
+
+class Index {
+
+private var entries: [Int64: [String]] = [Int64: [String]]()
+private var blocks: [[Int32]] = [[Int32]]()
+
+func all() -> [Int64: [String]] {
+return entries
+}
+
+}
+
@@ -0,0 +1,27 @@
+// volatile fields, translated without options
+class Stats {
+
+	static volatile long started = 1L << 20;
+	private volatile int hits;
+	private volatile boolean running = true;
+
+	void hit() {
+		hits++;
+		hits += 2;
+	}
+
+	int read() {
+		return hits;
+	}
+
+	void stop(Stats other) {
+		running = false;
+		other.hits = 3;
+		Stats.started = 0;
+	}
+
+	boolean isRunning() {
+		return running && hits > 0;
+	}
+
+}
@@ -0,0 +1,31 @@
+import Foundation
+import Atomics
+
+
+class Stats {
+
+static let started = ManagedAtomic<Int64>(1048576)
+private let hits = ManagedAtomic<Int32>(0)
+private let running = ManagedAtomic<Bool>(true)
+
+func hit() {
+hits.wrappingIncrement(ordering: .sequentiallyConsistent)
+hits.wrappingIncrement(by: 2, ordering: .sequentiallyConsistent)
+}
+
+func read() -> Int32 {
+return hits.load(ordering: .sequentiallyConsistent)
+}
+
+func stop(_ other: Stats) {
+running.store(false, ordering: .sequentiallyConsistent)
+other.hits.store(3, ordering: .sequentiallyConsistent)
+Stats.started.store(0, ordering: .sequentiallyConsistent)
+}
+
+func isRunning() -> Bool {
+return running.load(ordering: .sequentiallyConsistent) && hits.load(ordering: .sequentiallyConsistent) > 0
+}
+
+}
+
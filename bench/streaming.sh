@@ -0,0 +1,28 @@
+#!/bin/sh
+# Translates a generated ~100 MB java file in streaming mode under a 256 MB
+# heap. Run from the repository root after compiling the sources in src/, with
+# the antlr4 runtime on the CLASSPATH:
+#
+#   $ sh bench/streaming.sh [size in MB] [heap]
+
+SIZE_MB=${1:-100}
+HEAP=${2:-256m}
+DIR=$(mktemp -d)
+FILE="$DIR/Generated.java"
+
+LINE='class C { private int a; long[] b; java.util.Map<String, Integer> c; public static int f(int x, double... y) { int z; } }'
+COUNT=$(( SIZE_MB * 1024 * 1024 / (${#LINE} + 1) + 1 ))
+
+{
+	echo 'package generated;'
+	echo 'import java.util.Map;'
+	yes "$LINE" | head -n "$COUNT"
+} > "$FILE"
+
+echo "translating $(wc -c < "$FILE") bytes with -Xmx$HEAP"
+START=$(date +%s)
+java -Xmx"$HEAP" -cp "src:$CLASSPATH" com.j2swift.J2Swift --stream "$FILE" || exit 1
+END=$(date +%s)
+echo "wrote $(wc -c < "$FILE.swift") bytes in $((END - START))s"
+
+rm -r "$DIR"
@@ -0,0 +1,28 @@
+#!/bin/sh
+# Translates each Test*.java file with the options named in its first line
+# (e.g. "// value classes, translated with --structs") and compares the
+# result with the .java.swift file next to it. Run from the repository root
+# after compiling the sources in src/, with the antlr4 runtime on the
+# CLASSPATH:
+#
+#   $ sh goldens.sh
+
+ROOT=$(pwd)
+DIR=$(mktemp -d)
+STATUS=0
+
+for FILE in Test*.java; do
+	OPTIONS=$(head -n 1 "$FILE" | sed -n 's/.*translated with //p')
+	cp "$FILE" "$DIR/"
+	# the protected keyword is replaced with internal
+	(cd "$DIR" && echo Y | java -cp "$ROOT/src:$CLASSPATH" com.j2swift.J2Swift $OPTIONS "$FILE" > /dev/null) || STATUS=1
+	if diff -u "$FILE.swift" "$DIR/$FILE.swift"; then
+		echo "ok    $FILE $OPTIONS"
+	else
+		echo "FAIL  $FILE $OPTIONS"
+		STATUS=1
+	fi
+done
+
+rm -r "$DIR"
+exit $STATUS
@@ -0,0 +1,110 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the names used across a corpus of java files, used to give each
+ * declaration the narrowest swift access level that still works. Each file is
+ * scanned at the token level for the identifiers it contains; a name that
+ * appears in a single file can only be used in that file, so its declarations
+ * can be fileprivate. Names are matched without regard to what they refer to,
+ * so a member counts as used elsewhere if anything of that name is, which
+ * keeps the inference on the safe side. Methods declared in interfaces always
+ * count as used elsewhere, since swift doesn't let a protocol requirement be
+ * implemented with a narrower access level than the protocol's.
+ * @author Eyob Tsegaye
+ */
+public class AccessIndex {
+
+    private final Map<String, String> firstFile = new HashMap<>();
+    private final Set<String> sharedNames = new HashSet<>();
+    private final Set<String> typeNames = new HashSet<>();
+
+    /**
+     * Scans the given files
+     * @param javaFiles java files of the corpus
+     */
+    public void scan(List<String> javaFiles) throws IOException {
+        for (String javaFile : javaFiles) {
+            String path = new File(javaFile).getCanonicalPath();
+            Java8Lexer lexer = new Java8Lexer(CharStreams.fromFileName(javaFile));
+            lexer.removeErrorListeners();
+            CommonTokenStream stream = new CommonTokenStream(lexer);
+            stream.fill();
+            List<Token> tokens = stream.getTokens();
+
+            Set<String> names = new HashSet<>();
+            int interfaceDepth = -1;   // depth of the body of the interface being scanned
+            int depth = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                switch (token.getType()) {
+                case Java8Lexer.Identifier:
+                    names.add(token.getText());
+                    if (depth == interfaceDepth && i+1 < tokens.size()
+                                && tokens.get(i+1).getType() == Java8Lexer.LPAREN) {
+                        sharedNames.add(token.getText());
+                    }
+                    break;
+                case Java8Lexer.CLASS:
+                case Java8Lexer.ENUM:
+                    // not Foo.class
+                    if (i+1 < tokens.size() && tokens.get(i+1).getType() == Java8Lexer.Identifier
+                                && (i == 0 || tokens.get(i-1).getType() != Java8Lexer.DOT)) {
+                        typeNames.add(tokens.get(i+1).getText());
+                    }
+                    break;
+                case Java8Lexer.INTERFACE:
+                    if (i+1 < tokens.size() && tokens.get(i+1).getType() == Java8Lexer.Identifier) {
+                        typeNames.add(tokens.get(i+1).getText());
+                    }
+                    if (interfaceDepth == -1 && (i == 0 || tokens.get(i-1).getType() != Java8Lexer.AT)) {
+                        interfaceDepth = depth+1;
+                    }
+                    break;
+                case Java8Lexer.LBRACE:
+                    depth++;
+                    break;
+                case Java8Lexer.RBRACE:
+                    if (depth-- == interfaceDepth) interfaceDepth = -1;
+                    break;
+                }
+            }
+
+            for (String name : names) {
+                String file = firstFile.get(name);
+                if (file == null) {
+                    firstFile.put(name, path);
+                }
+                else if (!file.equals(path)) {
+                    sharedNames.add(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the names that are used in more than one file of the corpus, or
+     * declared as interface methods
+     */
+    public Set<String> sharedNames() {
+        return Collections.unmodifiableSet(sharedNames);
+    }
+
+    /**
+     * @return the simple names of the classes, interfaces and enums declared
+     * in the corpus
+     */
+    public Set<String> typeNames() {
+        return Collections.unmodifiableSet(typeNames);
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * Token made by a {@link CompactTokenFactory}. It holds no text, line or
+ * column of its own (those are looked up through the factory), which makes it
+ * 32 bytes on a 64-bit JVM with compressed oops against 48 for a CommonToken.
+ * Setting the text, line or column, which error recovery may do, keeps the
+ * new values in a CommonToken that the factory holds for the token.
+ * @author Eyob Tsegaye
+ */
+public class CompactToken implements WritableToken {
+
+    private final CompactTokenFactory factory;
+    private final int start;
+    private final int stop;
+    private int index = -1;
+    private short type;
+    private byte channel;
+    // whether the factory holds changes of the text, line or column
+    private boolean changed;
+
+    CompactToken(CompactTokenFactory factory, int type, int channel, int start, int stop) {
+        this.factory = factory;
+        this.type = (short) type;
+        this.channel = (byte) channel;
+        this.start = start;
+        this.stop = stop;
+    }
+
+    @Override
+    public String getText() {
+        if (changed) {
+            return factory.changes(this).getText();
+        }
+        if (type == EOF) {
+            return "<EOF>";
+        }
+        CharStream input = factory.inputStream();
+        if (stop >= input.size()) {
+            return "<EOF>";
+        }
+        return input.getText(Interval.of(start, stop));
+    }
+
+    @Override
+    public int getType() {
+        return type;
+    }
+
+    @Override
+    public int getLine() {
+        if (changed) {
+            return factory.changes(this).getLine();
+        }
+        return factory.line(start);
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        if (changed) {
+            return factory.changes(this).getCharPositionInLine();
+        }
+        return factory.charPositionInLine(start);
+    }
+
+    @Override
+    public int getChannel() {
+        return channel;
+    }
+
+    @Override
+    public int getTokenIndex() {
+        return index;
+    }
+
+    @Override
+    public int getStartIndex() {
+        return start;
+    }
+
+    @Override
+    public int getStopIndex() {
+        return stop;
+    }
+
+    @Override
+    public TokenSource getTokenSource() {
+        return factory.tokenSource();
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        return factory.inputStream();
+    }
+
+    @Override
+    public void setText(String text) {
+        factory.changes(this).setText(text);
+        changed = true;
+    }
+
+    @Override
+    public void setType(int type) {
+        this.type = (short) type;
+    }
+
+    @Override
+    public void setLine(int line) {
+        factory.changes(this).setLine(line);
+        changed = true;
+    }
+
+    @Override
+    public void setCharPositionInLine(int charPositionInLine) {
+        factory.changes(this).setCharPositionInLine(charPositionInLine);
+        changed = true;
+    }
+
+    @Override
+    public void setChannel(int channel) {
+        this.channel = (byte) channel;
+    }
+
+    @Override
+    public void setTokenIndex(int index) {
+        this.index = index;
+    }
+
+    @Override
+    public String toString() {
+        String text = getText().replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+        return "[@" + index + "," + start + ":" + stop + "='" + text + "',<" + type + ">"
+                    + (channel > 0 ? ",channel=" + channel : "")
+                    + "," + getLine() + ":" + getCharPositionInLine() + "]";
+    }
+
+}
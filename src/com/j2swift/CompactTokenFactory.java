@@ -0,0 +1,106 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Pair;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Token factory that creates {@link CompactToken}s instead of CommonTokens.
+ * Only the type, channel, offsets and index of a token are stored in the token
+ * itself; its text is sliced from the char stream when asked for, and its line
+ * and column are looked up in a table of line start offsets that the factory
+ * builds while the lexer runs. Use one factory per lexer.
+ * @author Eyob Tsegaye
+ */
+public class CompactTokenFactory implements TokenFactory<Token> {
+
+    private Pair<TokenSource, CharStream> source;
+
+    // lineNumbers[i] starts at char offset lineStarts[i]; only lines which
+    // have a token on them are recorded
+    private int[] lineNumbers = new int[256];
+    private int[] lineStarts = new int[256];
+    private int numLines = 0;
+
+    // the tokens whose text, line or column were set after they were made
+    private final Map<CompactToken, CommonToken> changes = new IdentityHashMap<>();
+
+    @Override
+    public Token create(Pair<TokenSource, CharStream> source, int type, String text,
+                int channel, int start, int stop, int line, int charPositionInLine) {
+        if (text != null || channel != (byte) channel || type != (short) type) {
+            // rare tokens that don't fit in a compact token
+            CommonToken t = new CommonToken(source, type, channel, start, stop);
+            t.setLine(line);
+            t.setCharPositionInLine(charPositionInLine);
+            if (text != null) t.setText(text);
+            return t;
+        }
+        if (this.source == null) {
+            this.source = source;
+        }
+        else if (this.source.b != source.b) {
+            throw new IllegalStateException("CompactTokenFactory used by more than one lexer");
+        }
+        addLine(line, start - charPositionInLine);
+        return new CompactToken(this, type, channel, start, stop);
+    }
+
+    @Override
+    public Token create(int type, String text) {
+        return new CommonToken(type, text);
+    }
+
+    TokenSource tokenSource() {
+        return source.a;
+    }
+
+    CharStream inputStream() {
+        return source.b;
+    }
+
+    /**
+     * Gets the changes of a token, starting out as a copy of it the first time
+     * @return a CommonToken holding the text, line and column of the token
+     */
+    CommonToken changes(CompactToken token) {
+        CommonToken changed = changes.get(token);
+        if (changed == null) {
+            changed = new CommonToken(token);
+            changes.put(token, changed);
+        }
+        return changed;
+    }
+
+    private void addLine(int line, int lineStart) {
+        if (numLines != 0 && lineNumbers[numLines-1] >= line) return;
+        if (numLines == lineNumbers.length) {
+            lineNumbers = Arrays.copyOf(lineNumbers, numLines * 2);
+            lineStarts = Arrays.copyOf(lineStarts, numLines * 2);
+        }
+        lineNumbers[numLines] = line;
+        lineStarts[numLines] = lineStart;
+        numLines++;
+    }
+
+    /**
+     * Gets the index in the line table of the line containing a char offset
+     * @param offset char offset of the start of a token made by this factory
+     * @return index into lineNumbers and lineStarts
+     */
+    private int lineIndex(int offset) {
+        int index = Arrays.binarySearch(lineStarts, 0, numLines, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    int line(int offset) {
+        return lineNumbers[lineIndex(offset)];
+    }
+
+    int charPositionInLine(int offset) {
+        return offset - lineStarts[lineIndex(offset)];
+    }
+
+}
@@ -0,0 +1,597 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import java.util.HashMap;
+import java.util.Map;
+import static com.j2swift.Java8Parser.*;
+
+/**
+ * Evaluates java constant expressions (literals, operators, casts to
+ * primitive types and the names of other constants) at translation time,
+ * following the java rules for numeric promotion, overflow and string
+ * conversion. The result is emitted as a single swift literal, so swift sees
+ * a true constant instead of an expression that is evaluated when the
+ * variable is first used.
+ * A folder remembers the constants defined with it, so later constants can
+ * refer to earlier ones by simple or qualified name.
+ * @author Eyob Tsegaye
+ */
+public class ConstantFolder {
+
+    /** kinds of values a java constant expression can have */
+    enum Kind { INT, LONG, FLOAT, DOUBLE, BOOLEAN, CHAR, STRING }
+
+    /**
+     * Value of a constant expression. Integral values (INT, LONG, CHAR) are
+     * kept in l, floating point values (FLOAT, DOUBLE) in d, and float values
+     * are always rounded to float precision.
+     */
+    static final class Constant {
+        final Kind kind;
+        final long l;
+        final double d;
+        final String s;
+
+        private Constant(Kind kind, long l, double d, String s) {
+            this.kind = kind;
+            this.l = l;
+            this.d = d;
+            this.s = s;
+        }
+
+        static Constant ofInt(long l) { return new Constant(Kind.INT, (int) l, 0, null); }
+        static Constant ofLong(long l) { return new Constant(Kind.LONG, l, 0, null); }
+        static Constant ofChar(long l) { return new Constant(Kind.CHAR, (char) l, 0, null); }
+        static Constant ofFloat(double d) { return new Constant(Kind.FLOAT, 0, (float) d, null); }
+        static Constant ofDouble(double d) { return new Constant(Kind.DOUBLE, 0, d, null); }
+        static Constant ofBoolean(boolean b) { return new Constant(Kind.BOOLEAN, b ? 1 : 0, 0, null); }
+        static Constant ofString(String s) { return new Constant(Kind.STRING, 0, 0, s); }
+
+        boolean isIntegral() {
+            return kind == Kind.INT || kind == Kind.LONG || kind == Kind.CHAR;
+        }
+
+        boolean isNumeric() {
+            return isIntegral() || kind == Kind.FLOAT || kind == Kind.DOUBLE;
+        }
+
+        boolean bool() {
+            return l != 0;
+        }
+
+        /** the java type of the value, e.g. "int" or "String" */
+        String javaType() {
+            return kind == Kind.STRING ? "String" : kind.name().toLowerCase();
+        }
+
+        double doubleValue() {
+            return isIntegral() ? (double) l : d;
+        }
+
+        /** the string java's string conversion gives for the value */
+        String javaString() {
+            switch (kind) {
+            case INT:
+            case LONG:
+                return Long.toString(l);
+            case CHAR:
+                return String.valueOf((char) l);
+            case FLOAT:
+                return Float.toString((float) d);
+            case DOUBLE:
+                return Double.toString(d);
+            case BOOLEAN:
+                return Boolean.toString(bool());
+            default:
+                return s;
+            }
+        }
+    }
+
+    private final Map<String, Constant> constants = new HashMap<>();
+
+    public ConstantFolder() {
+        clear();
+    }
+
+    /**
+     * Remembers the value of a constant variable so it can be used in later
+     * constant expressions
+     * @param name simple or qualified name of the constant
+     * @param value its value
+     */
+    public void define(String name, Constant value) {
+        constants.put(name, value);
+    }
+
+    /**
+     * Gets the value of a defined constant
+     * @param name simple or qualified name of the constant
+     * @return its value, or null if no such constant has been defined
+     */
+    public Constant lookup(String name) {
+        return constants.get(name);
+    }
+
+    /**
+     * Forgets all constants defined with the folder
+     */
+    public void clear() {
+        constants.clear();
+        // the bounds of the primitive types are used all the time in constants
+        define("Byte.MIN_VALUE", Constant.ofInt(Byte.MIN_VALUE));
+        define("Byte.MAX_VALUE", Constant.ofInt(Byte.MAX_VALUE));
+        define("Short.MIN_VALUE", Constant.ofInt(Short.MIN_VALUE));
+        define("Short.MAX_VALUE", Constant.ofInt(Short.MAX_VALUE));
+        define("Character.MIN_VALUE", Constant.ofChar(Character.MIN_VALUE));
+        define("Character.MAX_VALUE", Constant.ofChar(Character.MAX_VALUE));
+        define("Integer.MIN_VALUE", Constant.ofInt(Integer.MIN_VALUE));
+        define("Integer.MAX_VALUE", Constant.ofInt(Integer.MAX_VALUE));
+        define("Long.MIN_VALUE", Constant.ofLong(Long.MIN_VALUE));
+        define("Long.MAX_VALUE", Constant.ofLong(Long.MAX_VALUE));
+        define("Float.MIN_VALUE", Constant.ofFloat(Float.MIN_VALUE));
+        define("Float.MIN_NORMAL", Constant.ofFloat(Float.MIN_NORMAL));
+        define("Float.MAX_VALUE", Constant.ofFloat(Float.MAX_VALUE));
+        define("Float.POSITIVE_INFINITY", Constant.ofFloat(Float.POSITIVE_INFINITY));
+        define("Float.NEGATIVE_INFINITY", Constant.ofFloat(Float.NEGATIVE_INFINITY));
+        define("Float.NaN", Constant.ofFloat(Float.NaN));
+        define("Double.MIN_VALUE", Constant.ofDouble(Double.MIN_VALUE));
+        define("Double.MIN_NORMAL", Constant.ofDouble(Double.MIN_NORMAL));
+        define("Double.MAX_VALUE", Constant.ofDouble(Double.MAX_VALUE));
+        define("Double.POSITIVE_INFINITY", Constant.ofDouble(Double.POSITIVE_INFINITY));
+        define("Double.NEGATIVE_INFINITY", Constant.ofDouble(Double.NEGATIVE_INFINITY));
+        define("Double.NaN", Constant.ofDouble(Double.NaN));
+    }
+
+    /**
+     * Folds an expression into a single value
+     * @param tree expression to fold
+     * @return the value, or null if the expression isn't a constant expression
+     * or refers to constants that haven't been defined
+     */
+    public Constant fold(ParseTree tree) {
+        if (tree instanceof TerminalNode) {
+            return literal(((TerminalNode) tree).getSymbol());
+        }
+        if (tree instanceof ExpressionNameContext) {
+            return constants.get(tree.getText());
+        }
+        if (tree instanceof CastExpressionContext) {
+            CastExpressionContext cast = (CastExpressionContext) tree;
+            if (cast.primitiveType() == null) return null;
+            return cast(fold(cast.unaryExpression()), cast.primitiveType().getText());
+        }
+        if (tree instanceof ShiftExpressionContext && tree.getChildCount() > 1) {
+            ShiftExpressionContext shift = (ShiftExpressionContext) tree;
+            String op = "";
+            for (int i = 1; i < tree.getChildCount()-1; i++) {
+                op += tree.getChild(i).getText();
+            }
+            return binary(op, fold(shift.shiftExpression()), fold(shift.additiveExpression()));
+        }
+
+        int n = tree.getChildCount();
+        if (n == 1) {
+            return fold(tree.getChild(0));
+        }
+        if (n == 2 && tree.getChild(0) instanceof TerminalNode) {
+            return unary(tree.getChild(0).getText(), fold(tree.getChild(1)));
+        }
+        if (n == 3 && tree.getChild(0).getText().equals("(") && tree.getChild(2).getText().equals(")")) {
+            return fold(tree.getChild(1));
+        }
+        if (n == 3 && tree.getChild(1) instanceof TerminalNode) {
+            return binary(tree.getChild(1).getText(), fold(tree.getChild(0)), fold(tree.getChild(2)));
+        }
+        if (n == 5 && tree instanceof ConditionalExpressionContext) {
+            Constant condition = fold(tree.getChild(0));
+            if (condition == null || condition.kind != Kind.BOOLEAN) return null;
+            Constant a = fold(tree.getChild(2));
+            Constant b = fold(tree.getChild(4));
+            if (a == null || b == null) return null;
+            // both branches are promoted to a common type, as in java
+            if (a.isNumeric() && b.isNumeric() && a.kind != b.kind) {
+                Kind kind = promote(a, b);
+                a = cast(a, kind);
+                b = cast(b, kind);
+            }
+            else if (a.kind != b.kind) {
+                return null;
+            }
+            return condition.bool() ? a : b;
+        }
+        return null;
+    }
+
+    static Constant literal(Token token) {
+        String text = token.getText();
+        switch (token.getType()) {
+        case Java8Lexer.IntegerLiteral:
+            return integerLiteral(text.replace("_", ""));
+        case Java8Lexer.FloatingPointLiteral:
+            try {
+                char last = text.charAt(text.length()-1);
+                text = text.replace("_", "");
+                if (last == 'f' || last == 'F') {
+                    return Constant.ofFloat(Float.parseFloat(text));
+                }
+                return Constant.ofDouble(Double.parseDouble(text));
+            }
+            catch (NumberFormatException e) {
+                return null;
+            }
+        case Java8Lexer.BooleanLiteral:
+            return Constant.ofBoolean(text.equals("true"));
+        case Java8Lexer.CharacterLiteral:
+            String c = unescape(text.substring(1, text.length()-1));
+            return c == null || c.length() != 1 ? null : Constant.ofChar(c.charAt(0));
+        case Java8Lexer.StringLiteral:
+            String s = unescape(text.substring(1, text.length()-1));
+            return s == null ? null : Constant.ofString(s);
+        default:
+            return null;
+        }
+    }
+
+    private static Constant integerLiteral(String text) {
+        boolean isLong = text.endsWith("l") || text.endsWith("L");
+        if (isLong) text = text.substring(0, text.length()-1);
+
+        int radix = 10;
+        if (text.startsWith("0x") || text.startsWith("0X")) {
+            radix = 16;
+            text = text.substring(2);
+        }
+        else if (text.startsWith("0b") || text.startsWith("0B")) {
+            radix = 2;
+            text = text.substring(2);
+        }
+        else if (text.length() > 1 && text.startsWith("0")) {
+            radix = 8;
+            text = text.substring(1);
+        }
+
+        long value;
+        try {
+            value = Long.parseUnsignedLong(text, radix);
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+        if (isLong) {
+            // 9223372036854775808L is only allowed after a minus, which keeps it
+            // at Long.MIN_VALUE
+            return Constant.ofLong(value);
+        }
+        long max = radix == 10 ? 1L << 31 : 0xFFFFFFFFL;
+        if (value < 0 || value > max) return null;
+        return Constant.ofInt(value);
+    }
+
+    private static String unescape(String text) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (++i == text.length()) return null;
+            c = text.charAt(i);
+            switch (c) {
+            case 'b': sb.append('\b'); break;
+            case 't': sb.append('\t'); break;
+            case 'n': sb.append('\n'); break;
+            case 'f': sb.append('\f'); break;
+            case 'r': sb.append('\r'); break;
+            case '"': sb.append('"'); break;
+            case '\'': sb.append('\''); break;
+            case '\\': sb.append('\\'); break;
+            case 'u':
+                while (i < text.length() && text.charAt(i) == 'u') i++;
+                if (i+4 > text.length()) return null;
+                try {
+                    sb.append((char) Integer.parseInt(text.substring(i, i+4), 16));
+                }
+                catch (NumberFormatException e) {
+                    return null;
+                }
+                i += 3;
+                break;
+            default:
+                // octal escape: up to three digits, at most \377
+                int end = i;
+                int maxLength = c <= '3' ? 3 : 2;
+                while (end < text.length() && end-i < maxLength
+                            && text.charAt(end) >= '0' && text.charAt(end) <= '7') {
+                    end++;
+                }
+                if (end == i) return null;
+                sb.append((char) Integer.parseInt(text.substring(i, end), 8));
+                i = end-1;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Kind promote(Constant a, Constant b) {
+        if (a.kind == Kind.DOUBLE || b.kind == Kind.DOUBLE) return Kind.DOUBLE;
+        if (a.kind == Kind.FLOAT || b.kind == Kind.FLOAT) return Kind.FLOAT;
+        if (a.kind == Kind.LONG || b.kind == Kind.LONG) return Kind.LONG;
+        return Kind.INT;
+    }
+
+    private static Constant cast(Constant value, Kind kind) {
+        switch (kind) {
+        case INT: return cast(value, "int");
+        case LONG: return cast(value, "long");
+        case FLOAT: return cast(value, "float");
+        case DOUBLE: return cast(value, "double");
+        case CHAR: return cast(value, "char");
+        default: return value.kind == kind ? value : null;
+        }
+    }
+
+    /**
+     * Applies a cast to a primitive type
+     * @param value value to cast, or null
+     * @param type java primitive type
+     * @return the cast value, or null if the cast isn't allowed
+     */
+    static Constant cast(Constant value, String type) {
+        if (value == null) return null;
+        if (type.equals("boolean")) {
+            return value.kind == Kind.BOOLEAN ? value : null;
+        }
+        if (!value.isNumeric()) return null;
+
+        // narrowing from floating point goes through long or int, as in java
+        boolean isFloating = !value.isIntegral();
+        switch (type) {
+        case "byte":
+            return Constant.ofInt(isFloating ? (byte) (int) value.d : (byte) value.l);
+        case "short":
+            return Constant.ofInt(isFloating ? (short) (int) value.d : (short) value.l);
+        case "char":
+            return Constant.ofChar(isFloating ? (char) (int) value.d : (char) value.l);
+        case "int":
+            return Constant.ofInt(isFloating ? (int) value.d : (int) value.l);
+        case "long":
+            return Constant.ofLong(isFloating ? (long) value.d : value.l);
+        case "float":
+            return Constant.ofFloat(isFloating ? (float) value.d : (float) value.l);
+        case "double":
+            return Constant.ofDouble(value.doubleValue());
+        default:
+            return null;
+        }
+    }
+
+    static Constant unary(String op, Constant a) {
+        if (a == null) return null;
+        if (op.equals("!")) {
+            return a.kind == Kind.BOOLEAN ? Constant.ofBoolean(!a.bool()) : null;
+        }
+        if (!a.isNumeric()) return null;
+        if (a.kind == Kind.CHAR) a = cast(a, Kind.INT);
+        switch (op) {
+        case "+":
+            return a;
+        case "-":
+            switch (a.kind) {
+            case INT: return Constant.ofInt(-a.l);
+            case LONG: return Constant.ofLong(-a.l);
+            case FLOAT: return Constant.ofFloat(-a.d);
+            default: return Constant.ofDouble(-a.d);
+            }
+        case "~":
+            if (a.kind == Kind.INT) return Constant.ofInt(~a.l);
+            if (a.kind == Kind.LONG) return Constant.ofLong(~a.l);
+            return null;
+        default:
+            // ++ and -- aren't allowed in constant expressions
+            return null;
+        }
+    }
+
+    static Constant binary(String op, Constant a, Constant b) {
+        if (a == null || b == null) return null;
+
+        if (op.equals("+") && (a.kind == Kind.STRING || b.kind == Kind.STRING)) {
+            return Constant.ofString(a.javaString() + b.javaString());
+        }
+        if (a.kind == Kind.STRING && b.kind == Kind.STRING) {
+            // constant strings are interned, so == compares their contents
+            if (op.equals("==")) return Constant.ofBoolean(a.s.equals(b.s));
+            if (op.equals("!=")) return Constant.ofBoolean(!a.s.equals(b.s));
+            return null;
+        }
+        if (a.kind == Kind.BOOLEAN && b.kind == Kind.BOOLEAN) {
+            boolean x = a.bool();
+            boolean y = b.bool();
+            switch (op) {
+            case "&&": case "&": return Constant.ofBoolean(x && y);
+            case "||": case "|": return Constant.ofBoolean(x || y);
+            case "^": case "!=": return Constant.ofBoolean(x != y);
+            case "==": return Constant.ofBoolean(x == y);
+            default: return null;
+            }
+        }
+        if (!a.isNumeric() || !b.isNumeric()) return null;
+
+        if (op.equals("<<") || op.equals(">>") || op.equals(">>>")) {
+            // only the left operand is promoted; the distance is masked
+            if (!a.isIntegral() || !b.isIntegral()) return null;
+            long x = a.l;
+            if (a.kind == Kind.LONG) {
+                int distance = (int) b.l & 63;
+                if (op.equals("<<")) return Constant.ofLong(x << distance);
+                if (op.equals(">>")) return Constant.ofLong(x >> distance);
+                return Constant.ofLong(x >>> distance);
+            }
+            int distance = (int) b.l & 31;
+            if (op.equals("<<")) return Constant.ofInt((int) x << distance);
+            if (op.equals(">>")) return Constant.ofInt((int) x >> distance);
+            return Constant.ofInt((int) x >>> distance);
+        }
+
+        Kind kind = promote(a, b);
+        if (kind == Kind.INT || kind == Kind.LONG) {
+            long x = a.l;
+            long y = b.l;
+            boolean isLong = kind == Kind.LONG;
+            switch (op) {
+            case "+": return integral(isLong, x + y);
+            case "-": return integral(isLong, x - y);
+            case "*": return integral(isLong, isLong ? x * y : (int) x * (int) y);
+            case "/":
+                if (y == 0) return null;
+                return integral(isLong, isLong ? x / y : (int) x / (int) y);
+            case "%":
+                if (y == 0) return null;
+                return integral(isLong, isLong ? x % y : (int) x % (int) y);
+            case "&": return integral(isLong, x & y);
+            case "|": return integral(isLong, x | y);
+            case "^": return integral(isLong, x ^ y);
+            }
+        }
+        else {
+            double x = a.doubleValue();
+            double y = b.doubleValue();
+            boolean isFloat = kind == Kind.FLOAT;
+            switch (op) {
+            case "+": return floating(isFloat, isFloat ? (float) x + (float) y : x + y);
+            case "-": return floating(isFloat, isFloat ? (float) x - (float) y : x - y);
+            case "*": return floating(isFloat, isFloat ? (float) x * (float) y : x * y);
+            case "/": return floating(isFloat, isFloat ? (float) x / (float) y : x / y);
+            case "%": return floating(isFloat, isFloat ? (float) x % (float) y : x % y);
+            }
+        }
+
+        // comparisons; integral values compare exactly even past 2^53
+        int cmp = kind == Kind.INT || kind == Kind.LONG
+                    ? Long.compare(a.l, b.l) : 0;
+        boolean unordered = false;
+        if (kind == Kind.FLOAT || kind == Kind.DOUBLE) {
+            double x = a.doubleValue();
+            double y = b.doubleValue();
+            unordered = Double.isNaN(x) || Double.isNaN(y);
+            cmp = x < y ? -1 : (x > y ? 1 : 0);
+        }
+        switch (op) {
+        case "==": return Constant.ofBoolean(!unordered && cmp == 0);
+        case "!=": return Constant.ofBoolean(unordered || cmp != 0);
+        case "<": return Constant.ofBoolean(!unordered && cmp < 0);
+        case ">": return Constant.ofBoolean(!unordered && cmp > 0);
+        case "<=": return Constant.ofBoolean(!unordered && cmp <= 0);
+        case ">=": return Constant.ofBoolean(!unordered && cmp >= 0);
+        default: return null;
+        }
+    }
+
+    private static Constant integral(boolean isLong, long value) {
+        return isLong ? Constant.ofLong(value) : Constant.ofInt(value);
+    }
+
+    private static Constant floating(boolean isFloat, double value) {
+        return isFloat ? Constant.ofFloat(value) : Constant.ofDouble(value);
+    }
+
+    /**
+     * Converts a value to the declared type of the variable it initializes,
+     * following java's assignment conversion for constants
+     * @param value value of the initializer
+     * @param javaType declared java type, e.g. "int" or "Integer"
+     * @return the converted value, or null if it can't be assigned or the type
+     * can't hold a constant
+     */
+    public static Constant assign(Constant value, String javaType) {
+        if (value == null) return null;
+        switch (javaType) {
+        case "byte": case "Byte":
+            return narrow(value, Byte.MIN_VALUE, Byte.MAX_VALUE, "byte");
+        case "short": case "Short":
+            return narrow(value, Short.MIN_VALUE, Short.MAX_VALUE, "short");
+        case "char": case "Character":
+            return narrow(value, Character.MIN_VALUE, Character.MAX_VALUE, "char");
+        case "int": case "Integer":
+            return value.kind == Kind.INT || value.kind == Kind.CHAR ? cast(value, "int") : null;
+        case "long": case "Long":
+            return value.isIntegral() ? cast(value, "long") : null;
+        case "float": case "Float":
+            return value.isIntegral() || value.kind == Kind.FLOAT ? cast(value, "float") : null;
+        case "double": case "Double":
+            return value.isNumeric() ? cast(value, "double") : null;
+        case "boolean": case "Boolean":
+            return value.kind == Kind.BOOLEAN ? value : null;
+        case "String":
+            return value.kind == Kind.STRING ? value : null;
+        default:
+            return null;
+        }
+    }
+
+    private static Constant narrow(Constant value, long min, long max, String type) {
+        if (value.kind != Kind.INT && value.kind != Kind.CHAR) return null;
+        if (value.l < min || value.l > max) return null;
+        return cast(value, type);
+    }
+
+    /**
+     * Writes a value as a swift literal
+     * @param value value converted to the declared type with assign()
+     * @param swiftType swift type of the variable, used for nan and infinity
+     * @return the swift literal, or null if swift can't represent the value
+     */
+    public static String swiftLiteral(Constant value, String swiftType) {
+        switch (value.kind) {
+        case INT:
+        case LONG:
+        case BOOLEAN:
+            return value.javaString();
+        case FLOAT:
+        case DOUBLE:
+            if (Double.isNaN(value.d)) return swiftType + ".nan";
+            if (Double.isInfinite(value.d)) {
+                return (value.d < 0 ? "-" : "") + swiftType + ".infinity";
+            }
+            return value.javaString();
+        case CHAR:
+            if (Character.isSurrogate((char) value.l)) return null;
+            return swiftString(String.valueOf((char) value.l));
+        default:
+            return swiftString(value.s);
+        }
+    }
+
+    private static String swiftString(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); ) {
+            int c = s.codePointAt(i);
+            if (Character.isSurrogate(s.charAt(i)) && Character.charCount(c) == 1) {
+                // a lone surrogate isn't a valid swift character
+                return null;
+            }
+            i += Character.charCount(c);
+            switch (c) {
+            case '\0': sb.append("\\0"); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\t': sb.append("\\t"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '"': sb.append("\\\""); break;
+            default:
+                if (c < 0x20 || c >= 0x7f) {
+                    sb.append("\\u{").append(Integer.toHexString(c)).append('}');
+                }
+                else {
+                    sb.append((char) c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+}
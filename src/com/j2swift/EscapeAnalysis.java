@@ -0,0 +1,217 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static com.j2swift.Java8Parser.*;
+
+/**
+ * Finds the parameters of functional interface types that escape the methods
+ * of a class. Swift passes closures to parameters that don't escape without
+ * allocating their context on the heap, and requires the other ones to be
+ * marked @escaping. A parameter doesn't escape if the body of its method only
+ * calls it, or passes it on to a parameter of a method of the same class that
+ * doesn't escape either; any other use, like storing it in a field, returning
+ * it or capturing it in a lambda, lets it escape. Methods without a body are
+ * left alone, so methods that override each other have to be checked by hand.
+ * @author Eyob Tsegaye
+ */
+public class EscapeAnalysis {
+
+    /**
+     * Decides which types are functional interfaces
+     */
+    public interface FunctionTypes {
+        boolean isFunctionType(UnannTypeContext type);
+    }
+
+    private static class Method {
+        String name;
+        List<FormalParameterContext> params = new ArrayList<>();
+        boolean isVariadic;
+        List<Token> body;
+        List<Interval> lambdas = new ArrayList<>();
+    }
+
+    private static class Interval {
+        final int start;
+        final int stop;
+
+        Interval(int start, int stop) {
+            this.start = start;
+            this.stop = stop;
+        }
+    }
+
+    private final List<Method> methods = new ArrayList<>();
+    private final Set<FormalParameterContext> candidates = new HashSet<>();
+    private final Set<FormalParameterContext> escaping = new HashSet<>();
+
+    /**
+     * Analyzes the methods and constructors of a class body
+     * @param bodyDecls declarations of the class body
+     * @param types decides which parameters are of functional interface types
+     */
+    public EscapeAnalysis(List<ClassBodyDeclarationContext> bodyDecls, FunctionTypes types) {
+        for (ClassBodyDeclarationContext bodyDecl : bodyDecls) {
+            Method method = method(bodyDecl);
+            if (method == null) continue;
+            methods.add(method);
+            for (FormalParameterContext param : method.params) {
+                if (types.isFunctionType(param.unannType())) candidates.add(param);
+            }
+        }
+
+        // parameters only escape by being passed on to parameters that
+        // escape, so this grows the set until nothing changes
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Method method : methods) {
+                for (FormalParameterContext param : method.params) {
+                    if (!candidates.contains(param) || escaping.contains(param) || method.body == null) continue;
+                    if (escapes(param.variableDeclaratorId().Identifier().getText(), method)) {
+                        escaping.add(param);
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the parameters that have to be marked @escaping in swift
+     */
+    public Set<FormalParameterContext> escapingParams() {
+        return Collections.unmodifiableSet(escaping);
+    }
+
+    private static Method method(ClassBodyDeclarationContext bodyDecl) {
+        Method method = new Method();
+        FormalParameterListContext paramList;
+        ParserRuleContext body;
+        if (bodyDecl.classMemberDeclaration() != null
+                    && bodyDecl.classMemberDeclaration().methodDeclaration() != null) {
+            MethodDeclarationContext decl = bodyDecl.classMemberDeclaration().methodDeclaration();
+            method.name = decl.methodHeader().methodDeclarator().Identifier().getText();
+            paramList = decl.methodHeader().methodDeclarator().formalParameterList();
+            body = decl.methodBody().block();
+        }
+        else if (bodyDecl.constructorDeclaration() != null) {
+            // constructors can't be called by name, so they only pass parameters on
+            ConstructorDeclarationContext decl = bodyDecl.constructorDeclaration();
+            paramList = decl.constructorDeclarator().formalParameterList();
+            body = decl.constructorBody();
+        }
+        else {
+            return null;
+        }
+
+        if (paramList != null) {
+            if (paramList.formalParameters() != null) {
+                method.params.addAll(paramList.formalParameters().formalParameter());
+            }
+            if (paramList.lastFormalParameter().formalParameter() != null) {
+                method.params.add(paramList.lastFormalParameter().formalParameter());
+            }
+            else {
+                method.isVariadic = true;
+            }
+        }
+        if (body != null) {
+            method.body = Util.terminals(body);
+            findLambdas(body, method.lambdas);
+        }
+        return method;
+    }
+
+    private static void findLambdas(ParseTree tree, List<Interval> lambdas) {
+        if (tree instanceof LambdaExpressionContext) {
+            ParserRuleContext lambda = (ParserRuleContext) tree;
+            lambdas.add(new Interval(lambda.getStart().getTokenIndex(), lambda.getStop().getTokenIndex()));
+            return;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findLambdas(tree.getChild(i), lambdas);
+        }
+    }
+
+    private boolean escapes(String name, Method method) {
+        List<Token> tokens = method.body;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (!token.getText().equals(name) || i > 0 && tokens.get(i-1).getType() == Java8Lexer.DOT) continue;
+            for (Interval lambda : method.lambdas) {
+                if (token.getTokenIndex() >= lambda.start && token.getTokenIndex() <= lambda.stop) return true;
+            }
+            if (type(tokens, i+1) == Java8Lexer.DOT && type(tokens, i+3) == Java8Lexer.LPAREN
+                        && ExpressionTranslator.isFunctionalMethod(tokens.get(i+2).getText())) {
+                continue;   // called
+            }
+            if (!isPassedOn(tokens, i)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the token at i is passed as a whole argument to a
+     * method of this class, for a parameter that doesn't escape
+     */
+    private boolean isPassedOn(List<Token> tokens, int i) {
+        int prev = type(tokens, i-1);
+        int next = type(tokens, i+1);
+        if (prev != Java8Lexer.LPAREN && prev != Java8Lexer.COMMA
+                    || next != Java8Lexer.RPAREN && next != Java8Lexer.COMMA) return false;
+
+        // find the call and the position of the argument
+        int depth = 0;
+        int index = 0;
+        int open = i-1;
+        for (; open >= 0; open--) {
+            int type = tokens.get(open).getType();
+            if (type == Java8Lexer.RPAREN || type == Java8Lexer.RBRACE || type == Java8Lexer.RBRACK) depth++;
+            else if (type == Java8Lexer.LPAREN || type == Java8Lexer.LBRACE || type == Java8Lexer.LBRACK) {
+                if (depth == 0) break;
+                depth--;
+            }
+            else if (type == Java8Lexer.COMMA && depth == 0) index++;
+        }
+        if (open < 1 || tokens.get(open).getType() != Java8Lexer.LPAREN
+                    || tokens.get(open-1).getType() != Java8Lexer.Identifier) return false;
+        if (type(tokens, open-2) == Java8Lexer.NEW) return false;
+        if (type(tokens, open-2) == Java8Lexer.DOT && type(tokens, open-3) != Java8Lexer.THIS) return false;
+
+        int numArgs = 1;
+        depth = 0;
+        for (int close = open+1; close < tokens.size(); close++) {
+            int type = tokens.get(close).getType();
+            if (type == Java8Lexer.LPAREN || type == Java8Lexer.LBRACE || type == Java8Lexer.LBRACK) depth++;
+            else if (type == Java8Lexer.RPAREN || type == Java8Lexer.RBRACE || type == Java8Lexer.RBRACK) {
+                if (depth == 0) break;
+                depth--;
+            }
+            else if (type == Java8Lexer.COMMA && depth == 0) numArgs++;
+        }
+
+        Method callee = null;
+        String name = tokens.get(open-1).getText();
+        for (Method method : methods) {
+            if (name.equals(method.name) && method.params.size() == numArgs && !method.isVariadic) {
+                if (callee != null) return false;   // overloaded
+                callee = method;
+            }
+        }
+        if (callee == null || callee.body == null) return false;
+        FormalParameterContext param = callee.params.get(index);
+        return candidates.contains(param) && !escaping.contains(param);
+    }
+
+    private static int type(List<Token> tokens, int i) {
+        return i >= 0 && i < tokens.size() ? tokens.get(i).getType() : Token.EOF;
+    }
+
+}
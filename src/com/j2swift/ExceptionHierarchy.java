@@ -0,0 +1,181 @@
+package com.j2swift;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The exception classes of a corpus, used to translate checked exceptions to
+ * swift errors. Each hierarchy of checked exceptions declared in the corpus
+ * becomes a single enum that conforms to Error, named after the root class of
+ * the hierarchy, with a case for each class in it, so throwing and catching
+ * them doesn't allocate objects or go through the objective-c exception
+ * machinery. Classes are matched by simple name, like in the
+ * {@link HierarchyIndex} they come from. Exceptions of the java library are
+ * only known by name: RuntimeException, Error and their common subclasses are
+ * unchecked, and any other class whose name ends in "Exception" is checked.
+ * @author Eyob Tsegaye
+ */
+public class ExceptionHierarchy {
+
+    public static final ExceptionHierarchy EMPTY = new ExceptionHierarchy(Collections.<String, String>emptyMap());
+
+    private static final Set<String> UNCHECKED = new HashSet<>(Arrays.asList(
+                "RuntimeException", "Error", "IllegalArgumentException", "IllegalStateException",
+                "NullPointerException", "IndexOutOfBoundsException", "ArrayIndexOutOfBoundsException",
+                "StringIndexOutOfBoundsException", "UnsupportedOperationException", "ArithmeticException",
+                "ClassCastException", "NumberFormatException", "NegativeArraySizeException",
+                "ArrayStoreException", "ConcurrentModificationException", "NoSuchElementException",
+                "IllegalMonitorStateException", "SecurityException", "UncheckedIOException",
+                "EmptyStackException", "DateTimeException"));
+
+    private final Set<String> declared;
+    // root of the checked hierarchy of each class in one
+    private final Map<String, String> roots = new HashMap<>();
+    private final Map<String, String> superclasses = new HashMap<>();
+    private final Set<String> unchecked = new HashSet<>();
+    // the final fields that the case of a class carries, with their java
+    // types, and what each parameter of its constructors sets
+    private final Map<String, Map<String, String>> values = new HashMap<>();
+    private final Map<String, List<List<String>>> constructors = new HashMap<>();
+
+    /**
+     * @param superclasses map from the simple names of the classes of the
+     * corpus to the simple names of the classes they extend, e.g. from
+     * {@link HierarchyIndex#superclassMap()}
+     */
+    public ExceptionHierarchy(Map<String, String> superclasses) {
+        declared = new HashSet<>(superclasses.keySet());
+        for (String name : superclasses.keySet()) {
+            // find the topmost class of the corpus above this one
+            String root = name;
+            Set<String> seen = new HashSet<>();
+            while (superclasses.containsKey(superclasses.get(root)) && seen.add(root)) {
+                root = superclasses.get(root);
+            }
+            String base = superclasses.get(root);
+            if (isJavaUnchecked(base)) {
+                unchecked.add(name);
+            }
+            else if (base.equals("Throwable") || base.endsWith("Exception")) {
+                roots.put(name, root);
+                if (!name.equals(root)) this.superclasses.put(name, superclasses.get(name));
+            }
+        }
+    }
+
+    /**
+     * @return the name of the swift enum a class is translated to, which is
+     * the root of its hierarchy, or null if the class isn't a checked
+     * exception of the corpus
+     */
+    public String errorEnum(String className) {
+        return roots.get(className);
+    }
+
+    /**
+     * @return map from each checked exception class of the corpus to the
+     * name of its enum
+     */
+    public Map<String, String> errorEnums() {
+        return Collections.unmodifiableMap(roots);
+    }
+
+    /**
+     * @return the classes that are cases of an enum, the root first and the
+     * others in order of name
+     */
+    public List<String> cases(String root) {
+        Set<String> names = new TreeSet<>();
+        for (Map.Entry<String, String> e : roots.entrySet()) {
+            if (e.getValue().equals(root) && !e.getKey().equals(root)) names.add(e.getKey());
+        }
+        List<String> cases = new ArrayList<>();
+        cases.add(root);
+        cases.addAll(names);
+        return cases;
+    }
+
+    /**
+     * Sets the values that the case of a class carries besides the message
+     * and the cause, which are the final instance fields of the class that
+     * its constructors set from their parameters
+     * @param className class of a checked hierarchy
+     * @param fields names of the fields, in order of declaration, with their
+     * java types
+     * @param constructors for each constructor that sets them all, what each
+     * of its parameters is: "message", "cause" or the name of a field
+     */
+    public void addValues(String className, Map<String, String> fields, List<List<String>> constructors) {
+        values.put(className, Collections.unmodifiableMap(new LinkedHashMap<>(fields)));
+        this.constructors.put(className, Collections.unmodifiableList(new ArrayList<>(constructors)));
+    }
+
+    /**
+     * @return the fields that the case of a class carries besides the message
+     * and the cause, in order, with their java types
+     */
+    public Map<String, String> values(String className) {
+        Map<String, String> fields = values.get(className);
+        return fields == null ? Collections.<String, String>emptyMap() : fields;
+    }
+
+    /**
+     * @return the constructors of a class whose parameters its case carries,
+     * as what each parameter is: "message", "cause" or the name of a field.
+     * Empty if the class has no values other than a message and a cause.
+     */
+    public List<List<String>> constructors(String className) {
+        List<List<String>> list = constructors.get(className);
+        return list == null ? Collections.<List<String>>emptyList() : list;
+    }
+
+    /**
+     * @return whether a class of a checked hierarchy is a class or extends it
+     */
+    public boolean isSubclass(String className, String ancestor) {
+        for (String name = className; name != null; name = superclasses.get(name)) {
+            if (name.equals(ancestor)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a class is an unchecked exception, either of the corpus
+     * or of the java library
+     */
+    public boolean isUnchecked(String className) {
+        if (unchecked.contains(className)) return true;
+        return !declared.contains(className) && isJavaUnchecked(className);
+    }
+
+    /**
+     * @return whether a class catches all exceptions
+     */
+    public static boolean isCatchAll(String className) {
+        return className.equals("Exception") || className.equals("Throwable");
+    }
+
+    /**
+     * @return the name of the enum case of a class, e.g. "ioFailure" for
+     * "IOFailure"
+     */
+    public static String caseName(String className) {
+        int upper = 0;
+        while (upper < className.length() && Character.isUpperCase(className.charAt(upper))) upper++;
+        if (upper > 1 && upper < className.length()) upper--;   // the start of the next word
+        return className.substring(0, upper).toLowerCase() + className.substring(upper);
+    }
+
+    private static boolean isJavaUnchecked(String name) {
+        return UNCHECKED.contains(name) || name.endsWith("Error");
+    }
+
+}
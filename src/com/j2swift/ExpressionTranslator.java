@@ -0,0 +1,2227 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import static com.j2swift.Java8Lexer.*;
+
+/**
+ * Translates java expressions into swift expressions. The expression is
+ * parsed again from its tokens with the java precedence rules, and every
+ * operator is given the java types of its operands (from the declarations in
+ * scope, literals and casts), so it can be translated with java semantics:
+ * integral +, -, * and shifts wrap around instead of trapping on overflow,
+ * operands of different types get the conversions java does implicitly, and
+ * parentheses are added wherever swift's precedence differs from java's.
+ * Operands whose type isn't known, like the results of method calls, are
+ * translated with the plain swift operators.
+ * @author Eyob Tsegaye
+ */
+public class ExpressionTranslator {
+
+    /**
+     * Thrown for an expression that can't be translated; the caller decides
+     * whether the whole translation fails or only the expression is left out
+     */
+    public static class UntranslatableException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public UntranslatableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A translated expression
+     */
+    public static final class Expr {
+        /** swift code of the expression */
+        public final String code;
+        /** java type of the expression, "null" for the null literal, or null if it isn't known */
+        public final String type;
+        /** value if it is a constant expression, else null */
+        final ConstantFolder.Constant value;
+        /** swift operator at the top of the code, or null if it never needs parentheses */
+        final String op;
+        /** swift code of the atomic if it is a read of a volatile field, else null */
+        final String atomic;
+        /** whether it's an assignment, increment or decrement, which swift only allows as a statement */
+        final boolean isAssignment;
+        /** whether java allows it as a statement on its own */
+        final boolean isStatement;
+        /**
+         * for the creation of a collection with a capacity, swift code of the
+         * empty collection and of the capacity, else null
+         */
+        final String empty;
+        final String capacity;
+        /** operands of a string concatenation, in order, else null */
+        final List<Expr> parts;
+        /**
+         * the optional itself if it's a value of a boxed type that may be
+         * null, whose code unwraps it like java unboxes it, else null
+         */
+        final Expr optional;
+
+        private Expr(String code, String type, ConstantFolder.Constant value, String op,
+                    String atomic, boolean isAssignment, boolean isStatement) {
+            this(code, type, value, op, atomic, isAssignment, isStatement, null, null, null, null);
+        }
+
+        private Expr(String code, String type, ConstantFolder.Constant value, String op,
+                    String atomic, boolean isAssignment, boolean isStatement, String empty, String capacity) {
+            this(code, type, value, op, atomic, isAssignment, isStatement, empty, capacity, null, null);
+        }
+
+        private Expr(String code, String type, ConstantFolder.Constant value, String op,
+                    String atomic, boolean isAssignment, boolean isStatement, String empty, String capacity,
+                    List<Expr> parts, Expr optional) {
+            this.code = code;
+            this.type = type;
+            this.value = value;
+            this.op = op;
+            this.atomic = atomic;
+            this.isAssignment = isAssignment;
+            this.isStatement = isStatement;
+            this.empty = empty;
+            this.capacity = capacity;
+            this.parts = parts;
+            this.optional = optional;
+        }
+    }
+
+    /** java executor types, whose work is run by swift tasks instead */
+    static final Set<String> EXECUTORS = new HashSet<>(Arrays.asList(
+                "Executor", "ExecutorService", "ScheduledExecutorService", "ThreadPoolExecutor", "ForkJoinPool"));
+
+    /** the array an element access starts with, e.g. a in a[Int(i)][0] */
+    private static final Pattern ARRAY_ELEMENT = Pattern.compile("(\\w+)\\[");
+
+    private final TranslatorConfig config;
+    private final Map<String, String> typeMap;
+    private final boolean intEnums;
+    private final ConstantFolder constants;
+    private String arrayType;
+    private Set<String> throwingMethods = Collections.emptySet();
+    private Set<String> asyncMethods = Collections.emptySet();
+    private Map<String, Set<Integer>> inoutParams = Collections.emptyMap();
+    private Set<String> structs = Collections.emptySet();
+    private Set<String> equatableStructs = Collections.emptySet();
+    private Set<String> enums = Collections.emptySet();
+    private Set<String> interfaceConstants = Collections.emptySet();
+    private Map<String, String> atomicFields = Collections.emptyMap();
+    private Map<String, String> fieldTypes = Collections.emptyMap();
+
+    // state of the expression being translated
+    private List<Token> tokens;
+    private int pos;
+    private Scope scope;
+    private String selfType;
+    // the java type of the variable the expression starting at targetPos is
+    // assigned to, which the type arguments of a diamond are inferred from
+    private int targetPos;
+    private String targetType;
+    // number of lambdas the current token is in
+    private int closureDepth;
+    // whether the expression calls a method that throws, or waits for a
+    // task, outside of lambdas
+    private boolean callsThrowing;
+    private boolean awaits;
+
+    /**
+     * @param config translation settings
+     * @param constants constants defined so far, which are folded into literals
+     */
+    public ExpressionTranslator(TranslatorConfig config, ConstantFolder constants) {
+        this.config = config;
+        this.typeMap = config.typeMap();
+        this.intEnums = config.intEnums();
+        this.constants = constants;
+    }
+
+    /**
+     * @param arrayType swift type primitive arrays are lowered to, or null for
+     * swift arrays
+     */
+    public void setArrayType(String arrayType) {
+        this.arrayType = arrayType;
+    }
+
+    /**
+     * @param names names of the methods that are declared to throw where
+     * the expressions are, whose calls swift wants marked with try
+     */
+    public void setThrowingMethods(Set<String> names) {
+        this.throwingMethods = names;
+    }
+
+    /**
+     * @param names names of the methods that are translated to async
+     * functions where the expressions are, whose calls swift wants marked
+     * with await
+     */
+    public void setAsyncMethods(Set<String> names) {
+        this.asyncMethods = names;
+    }
+
+    /**
+     * @param params map from the names of the methods with inout parameters
+     * where the expressions are to the positions of those parameters, whose
+     * arguments swift wants marked with &
+     */
+    public void setInoutParams(Map<String, Set<Integer>> params) {
+        this.inoutParams = params;
+    }
+
+    /**
+     * @param names names of the classes that are translated to structs where
+     * the expressions are, whose values swift compares with == instead of by
+     * identity
+     */
+    public void setStructs(Set<String> names) {
+        this.structs = names;
+    }
+
+    /**
+     * @param names names of the structs that conform to Equatable, which are
+     * the only ones that can be compared
+     */
+    public void setEquatableStructs(Set<String> names) {
+        this.equatableStructs = names;
+    }
+
+    /**
+     * @param names names of the enums declared where the expressions are,
+     * whose ordinal() and values() become rawValue and allCases
+     */
+    public void setEnums(Set<String> names) {
+        this.enums = names;
+    }
+
+    /**
+     * @param names constants of the interfaces declared where the expressions
+     * are, as "Interface.CONSTANT", which are moved to an enum next to the
+     * protocol
+     */
+    public void setInterfaceConstants(Set<String> names) {
+        this.interfaceConstants = names;
+    }
+
+    /**
+     * @param fields map from the volatile fields that are translated to atomics
+     * where the expressions are, as "Class.field", to their java types
+     */
+    public void setAtomicFields(Map<String, String> fields) {
+        this.atomicFields = fields;
+    }
+
+    /**
+     * @param types map from the fields and constants of primitive types, as
+     * "Type.field", to their java types, so accesses through another instance
+     * or the name of the type are typed like those through self
+     */
+    public void setFieldTypes(Map<String, String> types) {
+        this.fieldTypes = types;
+    }
+
+    /**
+     * Translates an expression
+     * @param tree java expression
+     * @param scope variables visible to the expression
+     * @param selfType java type of this, or null where swift has no self, like
+     * in static methods and property initializers
+     * @return the translated expression
+     */
+    public Expr translate(ParseTree tree, Scope scope, String selfType) throws UntranslatableException {
+        return translate(Util.terminals(tree), scope, selfType);
+    }
+
+    /**
+     * Translates an expression given by its tokens
+     */
+    public Expr translate(List<Token> tokens, Scope scope, String selfType) throws UntranslatableException {
+        return translate(tokens, null, scope, selfType);
+    }
+
+    private Expr translate(List<Token> tokens, String targetType, Scope scope, String selfType)
+                throws UntranslatableException {
+        begin(tokens, targetType, scope, selfType);
+        Expr e = expression();
+        if (pos != tokens.size()) {
+            throw new UntranslatableException("unexpected '" + tokens.get(pos).getText() + "'");
+        }
+        return e;
+    }
+
+    private void begin(List<Token> tokens, String targetType, Scope scope, String selfType) {
+        this.tokens = tokens;
+        this.pos = 0;
+        this.scope = scope;
+        this.selfType = selfType;
+        this.targetPos = 0;
+        this.targetType = targetType;
+        this.closureDepth = 0;
+        this.callsThrowing = false;
+        this.awaits = false;
+    }
+
+    /**
+     * Translates an expression whose value is used, like an initializer
+     * @param javaType java type the value is assigned to, or null to leave the
+     * value as it is
+     * @return swift code of the value
+     */
+    public String translateValue(ParseTree tree, String javaType, Scope scope, String selfType)
+                throws UntranslatableException {
+        return tried(convert(value(translate(Util.terminals(tree), javaType, scope, selfType)), javaType));
+    }
+
+    /**
+     * Translates a value that is assigned to a variable of a boxed type that
+     * may be null, or returned from a method whose result may be null, so a
+     * value that may be null is kept as an optional instead of being unwrapped
+     * @param javaType boxed java type of the variable or result
+     * @return swift code of the value
+     */
+    public String translateOptional(ParseTree tree, String javaType, Scope scope, String selfType)
+                throws UntranslatableException {
+        return tried(convert(optional(value(translate(Util.terminals(tree), javaType, scope, selfType))), javaType));
+    }
+
+    /**
+     * Translates the braced initializer of an array variable, e.g. {1, 2, 3}
+     * @param javaType array type of the variable
+     * @return swift code of the array literal
+     */
+    public String translateArrayInitializer(ParseTree tree, String javaType, Scope scope, String selfType)
+                throws UntranslatableException {
+        begin(Util.terminals(tree), javaType, scope, selfType);
+        if (!javaType.endsWith("[]")) throw untranslatable("array initializer of a '" + javaType + "'");
+        Expr e = arrayInitializer(javaType);
+        if (pos != tokens.size()) {
+            throw new UntranslatableException("unexpected '" + tokens.get(pos).getText() + "'");
+        }
+        return tried(e.code);
+    }
+
+    /**
+     * Translates the initializer of a local variable. A collection that is
+     * created with a capacity is created empty, and the capacity is reserved
+     * by a statement after the declaration.
+     * @param name name of the variable
+     * @param statements receives the statements that have to follow the
+     * declaration
+     * @return swift code of the value
+     */
+    public String translateInitializer(ParseTree tree, String javaType, String name, List<String> statements,
+                Scope scope, String selfType) throws UntranslatableException {
+        Expr e = value(translate(Util.terminals(tree), javaType, scope, selfType));
+        if (e.capacity == null) return tried(convert(e, javaType));
+        statements.add(name + ".reserveCapacity(" + e.capacity + ")");
+        return e.empty;
+    }
+
+    /**
+     * Translates an expression statement, i.e. an assignment, increment,
+     * decrement, method call or object creation
+     * @return swift code of the statement
+     */
+    public String translateStatement(ParseTree tree, Scope scope, String selfType)
+                throws UntranslatableException {
+        return translateStatement(Util.terminals(tree), scope, selfType);
+    }
+
+    /**
+     * Translates an expression statement given by its tokens, without the
+     * semicolon
+     */
+    public String translateStatement(List<Token> tokens, Scope scope, String selfType)
+                throws UntranslatableException {
+        Expr e = translate(tokens, scope, selfType);
+        if (!e.isStatement) throw new UntranslatableException("expression isn't a statement");
+        return tried(e.code);
+    }
+
+    /**
+     * Translates the value of a throw statement that is a swift error
+     * @return swift code of the error, or null if the value isn't an error
+     */
+    public String translateError(ParseTree tree, Scope scope, String selfType) throws UntranslatableException {
+        Expr e = value(translate(Util.terminals(tree), null, scope, selfType));
+        return isError(e.type) ? tried(e.code) : null;
+    }
+
+    /**
+     * Translates throwing a new unchecked exception to a call of a function
+     * that stops the program with the message java would print for it
+     * @param tree value of the throw statement
+     * @param function preconditionFailure, which unchecked builds assume
+     * is never called, or fatalError
+     * @return swift code of the call, or null if the value isn't the creation
+     * of an unchecked exception
+     */
+    public String translateTrap(ParseTree tree, Scope scope, String selfType, String function)
+                throws UntranslatableException {
+        List<Token> tokens = Util.terminals(tree);
+        if (tokens.size() < 4 || tokens.get(0).getType() != NEW || tokens.get(1).getType() != Identifier
+                    || tokens.get(2).getType() != LPAREN) return null;
+        String type = tokens.get(1).getText();
+        if (!config.exceptions().isUnchecked(type)) return null;
+        begin(tokens, null, scope, selfType);
+        pos = 2;
+        List<Expr> args = arguments();
+        if (pos != tokens.size()) return null;
+
+        // the message, or else the cause
+        Expr detail = null;
+        for (Expr arg : args) {
+            if (detail == null || isString(arg.type) && !isString(detail.type)) detail = arg;
+        }
+        String message;
+        if (detail == null) {
+            message = "\"" + type + "\"";
+        }
+        else if ((detail.value != null || detail.parts != null) && isString(detail.type)) {
+            // a literal, or a concatenation that is one with interpolations
+            message = "\"" + type + ": " + detail.code.substring(1);
+        }
+        else {
+            message = "\"" + type + ": \\(" + convert(detail, null) + ")\"";
+        }
+        return tried(function + "(" + message + ")");
+    }
+
+    /**
+     * Translates work that is handed to an executor, i.e. a lambda, runnable
+     * or callable, given by its tokens
+     * @return a swift closure that runs the work
+     */
+    public String translateWork(List<Token> tokens, Scope scope, String selfType) throws UntranslatableException {
+        return closure(value(translate(tokens, null, scope, selfType)));
+    }
+
+    /**
+     * @return the code of the expression that was just translated, marked
+     * with try if it calls a method that throws, and with await if it calls
+     * an async one
+     */
+    private String tried(String code) {
+        return (callsThrowing ? "try " : "") + (awaits ? "await " : "") + code;
+    }
+
+    /**
+     * @return whether a java type is translated to a swift error: Exception,
+     * Throwable or a checked exception of the corpus
+     */
+    public boolean isError(String javaType) {
+        return javaType != null && (ExceptionHierarchy.isCatchAll(javaType)
+                    || config.exceptions().errorEnum(javaType) != null);
+    }
+
+    /**
+     * Gets the least number of UTF-8 code units a value adds to a string it
+     * is appended to, counting the literal parts of a concatenation and one
+     * for each number or char in it; other values may be empty
+     * @param tokens tokens of the value
+     */
+    public int minStringLength(List<Token> tokens, Scope scope, String selfType) throws UntranslatableException {
+        Expr e = value(translate(tokens, scope, selfType));
+        int length = 0;
+        for (Expr part : e.parts == null ? Collections.singletonList(e) : e.parts) {
+            if (part.value != null) {
+                length += part.value.javaString().getBytes(StandardCharsets.UTF_8).length;
+            }
+            else if (numericType(part.type) != null) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Converts an element of an array or collection to the declared type of
+     * the variable of a for-each loop, which java widens it to
+     * @param code swift code of the element
+     * @param iterableType java type of the array or collection, or null if it
+     * isn't known
+     * @param javaType declared java type of the variable
+     * @return swift code of the converted element, or null if swift gives the
+     * element the declared type already
+     */
+    public String convertElement(String code, String iterableType, String javaType) throws UntranslatableException {
+        if (iterableType == null) return null;
+        List<String> elementTypes = elementTypes(iterableType);
+        if (elementTypes.size() != 1) return null;
+        String from = numericType(elementTypes.get(0));
+        String to = numericType(javaType);
+        if (from == null || to == null || swiftType(from).equals(swiftType(to))) return null;
+        return convert(atom(code, elementTypes.get(0)), javaType);
+    }
+
+    /**
+     * Translates a value that is compared with a variable of a primitive type,
+     * like the bound of a loop, converted to the type of the variable
+     * @param javaType primitive type of the variable
+     * @return swift code of the value, or null if the value isn't of a
+     * primitive type that converts to javaType without narrowing
+     */
+    public String translateWidened(ParseTree tree, String javaType, Scope scope, String selfType)
+                throws UntranslatableException {
+        Expr e = value(translate(tree, scope, selfType));
+        if (e.value != null) {
+            return ConstantFolder.assign(e.value, javaType) == null ? null : convert(e, javaType);
+        }
+        String from = numericType(e.type);
+        String to = numericType(javaType);
+        if (from == null || to == null || from.equals("char") || to.equals("char")) return null;
+        if (isIntegral(from) != isIntegral(to) || rank(from) > rank(to)) return null;
+        return convert(e, javaType);
+    }
+
+    private int type(int offset) {
+        int i = pos + offset;
+        return i < tokens.size() ? tokens.get(i).getType() : Token.EOF;
+    }
+
+    private Token expect(int type) throws UntranslatableException {
+        if (type(0) != type) {
+            String found = pos < tokens.size() ? "'" + tokens.get(pos).getText() + "'" : "end of expression";
+            throw new UntranslatableException("unexpected " + found);
+        }
+        return tokens.get(pos++);
+    }
+
+    /** whether two tokens are written without space in between, as in the shift operators */
+    private boolean adjacent(int offset) {
+        Token a = tokens.get(pos + offset);
+        Token b = tokens.get(pos + offset + 1);
+        return a.getStopIndex() + 1 == b.getStartIndex();
+    }
+
+    private static UntranslatableException untranslatable(String message) {
+        return new UntranslatableException(message);
+    }
+
+    /**
+     * Checks that an expression can be used as a value
+     */
+    private static Expr value(Expr e) throws UntranslatableException {
+        if (e.isAssignment) throw untranslatable("assignment used as a value");
+        return e;
+    }
+
+    // parsing, from the lowest java precedence up
+
+    private Expr expression() throws UntranslatableException {
+        if (isLambda()) return lambda();
+        Expr left = conditional();
+        int type = type(0);
+        if (type != ASSIGN && (type < ADD_ASSIGN || type > URSHIFT_ASSIGN)) return left;
+        String op = tokens.get(pos++).getText();
+        if (op.equals("=")) {
+            targetPos = pos;
+            targetType = left.type;
+        }
+        Expr right = value(expression());
+        return assignment(left, op, right);
+    }
+
+    /**
+     * @return whether a lambda expression starts at the current token
+     */
+    private boolean isLambda() {
+        if (type(0) == Identifier) return type(1) == ARROW;
+        if (type(0) != LPAREN) return false;
+        int depth = 0;
+        for (int i = pos; i < tokens.size(); i++) {
+            int type = tokens.get(i).getType();
+            if (type == LPAREN) depth++;
+            else if (type == RPAREN && --depth == 0) return i+1 < tokens.size() && tokens.get(i+1).getType() == ARROW;
+        }
+        return false;
+    }
+
+    /**
+     * Translates a lambda expression into a swift closure. Swift infers the
+     * types of parameters that aren't declared, so everything computed from
+     * them is translated like other values of unknown type. A block body can
+     * only hold expression statements and returns.
+     */
+    private Expr lambda() throws UntranslatableException {
+        Scope closureScope = new Scope(scope);
+        List<String> params = new ArrayList<>();
+        if (type(0) == Identifier) {
+            params.add(tokens.get(pos++).getText());
+            closureScope.declare(params.get(0), (String) null);
+        }
+        else {
+            expect(LPAREN);
+            while (type(0) != RPAREN) {
+                if (type(0) == FINAL) pos++;
+                String type = type(1) == COMMA || type(1) == RPAREN ? null : type();
+                String name = expect(Identifier).getText();
+                params.add(name);
+                closureScope.declare(name, type);
+                if (type(0) != RPAREN) expect(COMMA);
+            }
+            pos++;
+        }
+        expect(ARROW);
+
+        Scope outer = scope;
+        scope = closureScope;
+        closureDepth++;
+        List<String> statements = new ArrayList<>();
+        try {
+            if (type(0) != LBRACE) {
+                Expr e = expression();
+                statements.add(e.isAssignment ? e.code : convert(e, null));
+            }
+            else {
+                pos++;
+                while (type(0) != RBRACE) {
+                    if (type(0) == RETURN) {
+                        pos++;
+                        statements.add(type(0) == SEMI ? "return" : "return " + convert(value(expression()), null));
+                    }
+                    else {
+                        Expr e = expression();
+                        if (!e.isStatement) throw untranslatable("expression isn't a statement");
+                        statements.add(e.code);
+                    }
+                    expect(SEMI);
+                }
+                pos++;
+            }
+        }
+        finally {
+            scope = outer;
+            closureDepth--;
+        }
+
+        StringBuilder sb = new StringBuilder("{ ");
+        if (!params.isEmpty()) {
+            sb.append(String.join(", ", params)).append(" in");
+            sb.append(statements.size() == 1 ? " " : "\n");
+        }
+        if (statements.size() == 1) {
+            return atom(sb.append(statements.get(0)).append(" }").toString(), null);
+        }
+        for (String statement : statements) {
+            sb.append(statement).append('\n');
+        }
+        return atom(sb.append('}').toString(), null);
+    }
+
+    private Expr conditional() throws UntranslatableException {
+        Expr condition = binary(1);
+        if (type(0) != QUESTION) return condition;
+        pos++;
+        Expr a = value(expression());
+        expect(COLON);
+        Expr b = value(conditional());
+        return ternary(value(condition), a, b);
+    }
+
+    private Expr binary(int minPrecedence) throws UntranslatableException {
+        Expr left = unary();
+        while (true) {
+            String op = binaryOperator();
+            if (op == null || javaPrecedence(op) < minPrecedence) return left;
+            pos += op.equals("<<") || op.equals(">>") || op.equals(">>>") ? op.length() : 1;
+            if (op.equals("instanceof")) {
+                left = instanceOf(value(left), type());
+                continue;
+            }
+            Expr right = binary(javaPrecedence(op) + 1);
+            left = binary(op, value(left), value(right));
+        }
+    }
+
+    /**
+     * @return the binary operator at the current token, or null. The lexer has
+     * no shift tokens, so shifts are made of adjacent '<' and '>' tokens.
+     */
+    private String binaryOperator() {
+        switch (type(0)) {
+        case OR: return "||";
+        case AND: return "&&";
+        case BITOR: return "|";
+        case CARET: return "^";
+        case BITAND: return "&";
+        case EQUAL: return "==";
+        case NOTEQUAL: return "!=";
+        case LE: return "<=";
+        case GE: return ">=";
+        case INSTANCEOF: return "instanceof";
+        case ADD: return "+";
+        case SUB: return "-";
+        case MUL: return "*";
+        case DIV: return "/";
+        case MOD: return "%";
+        case LT:
+            return type(1) == LT && adjacent(0) ? "<<" : "<";
+        case GT:
+            if (type(1) != GT || !adjacent(0)) return ">";
+            return type(2) == GT && adjacent(1) ? ">>>" : ">>";
+        default:
+            return null;
+        }
+    }
+
+    private static int javaPrecedence(String op) {
+        switch (op) {
+        case "||": return 1;
+        case "&&": return 2;
+        case "|": return 3;
+        case "^": return 4;
+        case "&": return 5;
+        case "==": case "!=": return 6;
+        case "<": case ">": case "<=": case ">=": case "instanceof": return 7;
+        case "<<": case ">>": case ">>>": return 8;
+        case "+": case "-": return 9;
+        default: return 10;
+        }
+    }
+
+    private Expr unary() throws UntranslatableException {
+        switch (type(0)) {
+        case INC:
+        case DEC:
+            String op = tokens.get(pos++).getText();
+            return increment(unary(), op);
+        case ADD:
+        case SUB:
+        case TILDE:
+        case BANG:
+            op = tokens.get(pos++).getText();
+            return unary(op, value(unary()));
+        case LPAREN:
+            if (isCast()) return cast();
+            break;
+        }
+        return postfix(primary());
+    }
+
+    /**
+     * @return whether the parenthesis at the current token starts a cast
+     * rather than a parenthesized expression
+     */
+    private boolean isCast() {
+        int start = pos;
+        try {
+            pos++;
+            boolean isPrimitive = isPrimitiveType(type(0));
+            type();
+            if (type(0) != RPAREN) return false;
+            if (isPrimitive) return true;
+            // a reference cast can't be followed by + or -, which would be a
+            // binary operator instead
+            switch (type(1)) {
+            case Identifier: case IntegerLiteral: case FloatingPointLiteral: case BooleanLiteral:
+            case CharacterLiteral: case StringLiteral: case NullLiteral: case LPAREN:
+            case THIS: case SUPER: case NEW: case BANG: case TILDE:
+                return true;
+            default:
+                return false;
+            }
+        }
+        catch (UntranslatableException e) {
+            return false;
+        }
+        finally {
+            pos = start;
+        }
+    }
+
+    private static boolean isPrimitiveType(int type) {
+        switch (type) {
+        case BOOLEAN: case BYTE: case SHORT: case CHAR: case INT: case LONG: case FLOAT: case DOUBLE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Parses a type, e.g. "int[]" or "Map<String,Integer>"
+     * @return the java text of the type, without spaces
+     */
+    private String type() throws UntranslatableException {
+        StringBuilder sb = new StringBuilder();
+        if (isPrimitiveType(type(0))) {
+            sb.append(tokens.get(pos++).getText());
+        }
+        else {
+            sb.append(expect(Identifier).getText());
+            typeArguments(sb);
+            while (type(0) == DOT && type(1) == Identifier) {
+                sb.append('.').append(tokens.get(pos+1).getText());
+                pos += 2;
+                typeArguments(sb);
+            }
+        }
+        while (type(0) == LBRACK && type(1) == RBRACK) {
+            sb.append("[]");
+            pos += 2;
+        }
+        return sb.toString();
+    }
+
+    private void typeArguments(StringBuilder sb) throws UntranslatableException {
+        if (type(0) != LT) return;
+        int depth = 0;
+        do {
+            int type = type(0);
+            if (type == Token.EOF) throw untranslatable("unclosed type arguments");
+            if (type == LT) depth++;
+            else if (type == GT) depth--;
+            sb.append(tokens.get(pos++).getText());
+        } while (depth > 0);
+    }
+
+    private Expr postfix(Expr e) throws UntranslatableException {
+        while (true) {
+            switch (type(0)) {
+            case DOT:
+                pos++;
+                if (type(0) == CLASS) {
+                    pos++;
+                    e = atom(e.code + ".self", "Class");
+                    break;
+                }
+                if (type(0) == NEW) throw untranslatable("creation of an inner class instance");
+                if (type(0) == LT) {
+                    // explicit type arguments of a generic method, which swift infers
+                    typeArguments(new StringBuilder());
+                }
+                String name = expect(Identifier).getText();
+                if (type(0) == LPAREN) {
+                    e = call(value(e), name, arguments());
+                }
+                else {
+                    e = fieldAccess(value(e), name);
+                }
+                break;
+            case LBRACK:
+                pos++;
+                Expr index = value(expression());
+                expect(RBRACK);
+                e = arrayAccess(value(e), index);
+                break;
+            case INC:
+            case DEC:
+                e = increment(e, tokens.get(pos++).getText());
+                break;
+            case COLONCOLON:
+                pos++;
+                // a class name could be for a static or an instance method,
+                // which swift refers to differently
+                if (e.type == null && !e.code.equals("super") || type(0) != Identifier) {
+                    throw untranslatable("method reference '::" + tokens.get(pos).getText() + "'");
+                }
+                e = atom(receiver(value(e)) + "." + tokens.get(pos++).getText(), null);
+                break;
+            default:
+                return e;
+            }
+        }
+    }
+
+    private Expr primary() throws UntranslatableException {
+        if (pos == tokens.size()) throw untranslatable("unexpected end of expression");
+        Token token = tokens.get(pos++);
+        switch (token.getType()) {
+        case IntegerLiteral:
+        case FloatingPointLiteral:
+        case BooleanLiteral:
+        case CharacterLiteral:
+        case StringLiteral:
+            ConstantFolder.Constant value = ConstantFolder.literal(token);
+            if (value == null) throw untranslatable("literal " + token.getText());
+            return constant(value);
+        case NullLiteral:
+            return atom("nil", "null");
+        case THIS:
+        case SUPER:
+            String self = token.getType() == THIS ? "self" : "super";
+            if (selfType == null) throw untranslatable("'" + token.getText() + "' where swift has no self");
+            if (type(0) == LPAREN) {
+                // explicit constructor invocation
+                return statement(self + ".init(" + join(arguments()) + ")", null);
+            }
+            return atom(self, token.getType() == THIS ? selfType : null);
+        case LPAREN:
+            Expr inner = value(expression());
+            expect(RPAREN);
+            return new Expr("(" + inner.code + ")", inner.type, inner.value, null, null, false, false);
+        case NEW:
+            return creation();
+        case Identifier:
+            return name(token.getText());
+        default:
+            if (isPrimitiveType(token.getType()) || token.getType() == VOID) {
+                expect(DOT);
+                expect(CLASS);
+                String type = token.getType() == VOID ? "Void" : swiftType(token.getText());
+                return atom(type + ".self", "Class");
+            }
+            throw untranslatable("'" + token.getText() + "'");
+        }
+    }
+
+    private List<Expr> arguments() throws UntranslatableException {
+        expect(LPAREN);
+        List<Expr> args = new ArrayList<>();
+        if (type(0) == RPAREN) {
+            pos++;
+            return args;
+        }
+        while (true) {
+            args.add(value(expression()));
+            if (type(0) != COMMA) break;
+            pos++;
+        }
+        expect(RPAREN);
+        return args;
+    }
+
+    private String join(List<Expr> args) throws UntranslatableException {
+        StringBuilder sb = new StringBuilder();
+        for (Expr arg : args) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(convert(arg, null));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Joins the arguments of a call of a method of the class, passing the
+     * variables of its inout parameters by reference
+     */
+    private String join(String method, List<Expr> args) throws UntranslatableException {
+        Set<Integer> inout = inoutParams.get(method);
+        if (inout == null) return join(args);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < args.size(); i++) {
+            if (sb.length() > 0) sb.append(", ");
+            if (inout.contains(i)) {
+                // the method changes the array, which mustn't be a copy either
+                changes(args.get(i));
+                sb.append('&');
+            }
+            sb.append(convert(args.get(i), null));
+        }
+        return sb.toString();
+    }
+
+    // translation of the parsed expressions
+
+    private static Expr atom(String code, String type) {
+        return new Expr(code, type, null, null, null, false, false);
+    }
+
+    private static Expr operation(String code, String type, String op) {
+        return new Expr(code, type, null, op, null, false, false);
+    }
+
+    private static Expr statement(String code, String type) {
+        return new Expr(code, type, null, null, null, false, true);
+    }
+
+    private static Expr assignment(String code) {
+        return new Expr(code, null, null, null, null, true, true);
+    }
+
+    private Expr constant(ConstantFolder.Constant value) throws UntranslatableException {
+        String literal = ConstantFolder.swiftLiteral(value, swiftType(value.javaType()));
+        if (literal == null) throw untranslatable("string with an unpaired surrogate");
+        // negative literals need parentheses as operands of prefix operators
+        // and member accesses
+        return new Expr(literal, value.javaType(), value, literal.startsWith("-") ? "prefix" : null,
+                    null, false, false);
+    }
+
+    /**
+     * Translates a simple or qualified name that starts an expression
+     */
+    private Expr name(String name) throws UntranslatableException {
+        if (type(0) == LPAREN) {
+            markCall(name);
+            // swift wants self to be explicit where a closure captures it
+            String self = closureDepth > 0 && selfType != null ? "self." : "";
+            return statement(self + name + "(" + join(name, arguments()) + ")", null);
+        }
+        Scope.Variable variable = scope.lookup(name);
+        if (variable != null) {
+            return variable(name, variable);
+        }
+
+        // constants can be referred to by simple or qualified name
+        ConstantFolder.Constant value = constants.lookup(name);
+        int end = pos;
+        String qualified = name;
+        for (int i = pos; i+1 < tokens.size() && tokens.get(i).getType() == DOT
+                    && tokens.get(i+1).getType() == Identifier; i += 2) {
+            qualified += "." + tokens.get(i+1).getText();
+            ConstantFolder.Constant v = constants.lookup(qualified);
+            if (v != null) {
+                value = v;
+                end = i+2;
+            }
+        }
+        if (value != null) {
+            pos = end;
+            return constant(value);
+        }
+        // a type, a package or an inherited field
+        return atom(name, null);
+    }
+
+    private Expr variable(String name, Scope.Variable variable) throws UntranslatableException {
+        String code = name;
+        if (variable.isField()) {
+            ConstantFolder.Constant value = constants.lookup(variable.owner + "." + name);
+            if (value != null) return constant(value);
+            if (variable.isStatic) {
+                code = staticOwner(variable.owner, name) + "." + name;
+            }
+            else if (selfType == null) {
+                throw untranslatable("instance field '" + name + "' where swift has no self");
+            }
+            else if (closureDepth > 0) {
+                // swift wants self to be explicit where a closure captures it
+                code = "self." + name;
+            }
+        }
+        return read(code, variable);
+    }
+
+    private static Expr read(String code, Scope.Variable variable) {
+        if (variable.isAtomic) return atomicRead(code, variable.javaType);
+        if (variable.isNullable) {
+            // java unboxes a null value by throwing, swift unwraps it by trapping
+            return new Expr(code + "!", variable.javaType, null, null, null, false, false, null, null, null,
+                        atom(code, variable.javaType));
+        }
+        return atom(code, variable.javaType);
+    }
+
+    /**
+     * @return the optional of a value of a boxed type that may be null, or the
+     * value itself
+     */
+    private static Expr optional(Expr e) {
+        return e.optional != null ? e.optional : e;
+    }
+
+    private static Expr atomicRead(String atomic, String javaType) {
+        return new Expr(atomic + ".load(ordering: " + J2SwiftListener.ATOMIC_ORDERING + ")", javaType,
+                    null, null, atomic, false, false);
+    }
+
+    private Expr fieldAccess(Expr e, String name) throws UntranslatableException {
+        if (e.type != null && e.type.endsWith("[]") && name.equals("length")) {
+            return atom("Int32(" + e.code + ".count)", "int");
+        }
+        if (e.code.equals("self")) {
+            Scope.Variable variable = scope.lookup(name);
+            if (variable != null && variable.isField() && !variable.isStatic) {
+                return read("self." + name, variable);
+            }
+        }
+        // a field of a class of the declaration, through its name or an instance
+        String atomicType = atomicFields.get((e.type != null ? e.type : e.code) + "." + name);
+        if (atomicType != null) return atomicRead(receiver(e) + "." + name, atomicType);
+        String type = fieldTypes.get((e.type != null ? e.type : e.code) + "." + name);
+        // or an interface constant through the name of the interface
+        if (e.type == null) return atom(staticOwner(receiver(e), name) + "." + name, type);
+        return atom(receiver(e) + "." + name, type);
+    }
+
+    /**
+     * @return the swift type that holds a static field, which for an interface
+     * constant is the enum next to the protocol
+     */
+    private String staticOwner(String owner, String name) {
+        return interfaceConstants.contains(owner + "." + name) ? owner + J2SwiftListener.CONSTANTS_SUFFIX : owner;
+    }
+
+    private static String receiver(Expr e) {
+        return e.op == null ? e.code : "(" + e.code + ")";
+    }
+
+    private Expr call(Expr receiver, String name, List<Expr> args) throws UntranslatableException {
+        if (args.isEmpty() && name.equals("ordinal") && intEnums && enums.contains(receiver.type)) {
+            return atom(receiver(receiver) + ".rawValue", "int");
+        }
+        if (args.isEmpty() && name.equals("values") && intEnums && receiver.type == null
+                    && enums.contains(receiver.code)) {
+            return atom(receiver.code + ".allCases", receiver.code + "[]");
+        }
+        if (args.isEmpty() && name.equals("length") && isString(receiver.type)) {
+            return atom("Int32(" + receiver(receiver) + ".utf16.count)", "int");
+        }
+        if (config.structuredConcurrency()) {
+            Expr e = concurrencyCall(receiver, name, args);
+            if (e != null) return e;
+        }
+        if (isCollection(receiver.type)) {
+            return collectionCall(receiver, name, args);
+        }
+        if (isError(receiver.type)) {
+            Expr e = errorCall(receiver, name, args);
+            if (e != null) return e;
+        }
+        if (receiver.type != null && isFunctionalMethod(name) && swiftType(receiver.type).contains("->")) {
+            // the functional interface is a swift function type
+            if (name.equals("call")) markThrowing();
+            return statement(receiver(receiver) + "(" + join(args) + ")", name.equals("test") ? "boolean" : null);
+        }
+        if (args.size() == 2 && receiver.code.equals("Math") && receiver.type == null
+                    && (name.equals("min") || name.equals("max"))) {
+            String a = numericType(args.get(0).type);
+            String b = numericType(args.get(1).type);
+            if (a != null && b != null && !a.equals("char") && !b.equals("char")) {
+                String type = promote(a, b);
+                return atom(name + "(" + convertNumeric(args.get(0), type).code + ", "
+                            + convertNumeric(args.get(1), type).code + ")", type);
+            }
+        }
+        markCall(name);
+        String joined = receiver.code.equals("self") ? join(name, args) : join(args);
+        return statement(receiver(receiver) + "." + name + "(" + joined + ")", null);
+    }
+
+    private void markCall(String name) {
+        if (closureDepth != 0) return;
+        if (throwingMethods.contains(name)) callsThrowing = true;
+        if (asyncMethods.contains(name)) {
+            // async functions are made throwing too, since tasks can fail
+            callsThrowing = true;
+            awaits = true;
+        }
+    }
+
+    private void markThrowing() {
+        if (closureDepth == 0) callsThrowing = true;
+    }
+
+    /**
+     * Translates waiting for a future, which the type map makes a swift task,
+     * and handing work to an executor or to CompletableFuture, which starts a
+     * task on the cooperative pool of swift instead. Which executor the work
+     * is handed to doesn't matter then.
+     * @return the translated call, or null if the method isn't known
+     */
+    private Expr concurrencyCall(Expr receiver, String name, List<Expr> args) throws UntranslatableException {
+        String signature = name + "/" + args.size();
+        if (receiver.type != null && swiftType(receiver.type).startsWith("Task<")
+                    && (signature.equals("get/0") || signature.equals("join/0"))) {
+            if (closureDepth != 0) throw untranslatable("waiting for a future in a lambda");
+            Scope.Variable variable = scope.lookup(receiver.code);
+            String type = receiver.type.indexOf('<') == -1 ? null : typeArguments(receiver.type).get(0);
+            // the for loop over the task group already waited for the value
+            if (variable != null && variable.isTaskGroup) return atom(receiver.code, type);
+            callsThrowing = true;
+            awaits = true;
+            if (variable != null && variable.isAsyncLet) return atom(receiver.code, type);
+            return atom(receiver(receiver) + ".value", type);
+        }
+        if (receiver.type != null && EXECUTORS.contains(receiver.type)) {
+            switch (signature) {
+            case "submit/1":
+            case "execute/1":
+                return statement(task(args.get(0)), null);
+            case "invokeAll/1":
+                // a trailing closure can't end the sequence of a for loop
+                return statement("(" + receiver(args.get(0)) + ".map { task in Task { try task() } })", null);
+            default:
+                return null;
+            }
+        }
+        if (receiver.type == null && receiver.code.equals("CompletableFuture")
+                    && (name.equals("supplyAsync") || name.equals("runAsync"))
+                    && (args.size() == 1 || args.size() == 2)) {
+            return statement(task(args.get(0)), null);
+        }
+        return null;
+    }
+
+    private static String task(Expr work) {
+        return "Task " + closure(work);
+    }
+
+    /**
+     * @return a swift closure that runs a lambda, runnable or callable
+     */
+    private static String closure(Expr work) {
+        if (work.type == null && work.code.startsWith("{")) return work.code;
+        return "{ try " + receiver(work) + "() }";
+    }
+
+    /**
+     * Translates the common methods of exceptions that are swift errors. The
+     * error enums of the corpus have a message and a cause; other errors only
+     * have their description.
+     * @return the translated call, or null if the method isn't known
+     */
+    private Expr errorCall(Expr receiver, String name, List<Expr> args) throws UntranslatableException {
+        String code = receiver(receiver);
+        boolean isEnum = !ExceptionHierarchy.isCatchAll(receiver.type);
+        switch (name + "/" + args.size()) {
+        case "getMessage/0":
+        case "getLocalizedMessage/0":
+            return isEnum ? atom(code + ".message", null) : atom("String(describing: " + code + ")", "String");
+        case "getCause/0":
+            return isEnum ? atom(code + ".cause", null) : null;
+        case "toString/0":
+            return atom("String(describing: " + code + ")", "String");
+        case "printStackTrace/0":
+            return statement("print(" + code + ")", null);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Translates the common methods of the collections that are mapped to
+     * swift arrays, dictionaries, sets and strings. Any other method of them
+     * can't be translated, since the swift type doesn't have it.
+     * @return the translated call
+     */
+    private Expr collectionCall(Expr receiver, String name, List<Expr> args) throws UntranslatableException {
+        String swiftType = swiftType(receiver.type);
+        String code = receiver(receiver);
+        List<String> typeArgs = receiver.type.indexOf('<') == -1
+                    ? new ArrayList<String>() : typeArguments(receiver.type);
+        String element = typeArgs.isEmpty() ? null : typeArgs.get(0);
+        boolean isString = swiftType.equals("String");
+        boolean isDictionary = isDictionary(swiftType);
+        boolean isSet = swiftType.startsWith("Set<");
+        boolean isArray = !isString && !isDictionary && !isSet;
+        switch (name + "/" + args.size()) {
+        case "size/0":
+            return atom("Int32(" + code + ".count)", "int");
+        case "length/0":
+            if (!isString) break;
+            return atom("Int32(" + code + ".utf16.count)", "int");
+        case "isEmpty/0":
+            return atom(code + ".isEmpty", "boolean");
+        case "equals/1":
+            return operation(code + " == " + convert(args.get(0), receiver.type), "boolean", "==");
+        case "toString/0":
+            if (!isString) break;
+            return atom(code, "String");
+        case "append/1":
+            if (!isString) break;
+            changes(receiver);
+            // java returns the builder for chaining, which swift's append doesn't
+            if (type(0) == DOT) throw untranslatable("chained call on the result of 'append'");
+            return assignment(code + ".append(" + stringOperand(args.get(0)).code + ")");
+        case "get/1":
+            if (isArray) {
+                return atom(code + "[" + count(args.get(0)) + "]", element);
+            }
+            if (!isDictionary) break;
+            // a missing key is null in java and nil in swift
+            String value = code + "[" + convert(args.get(0), element) + "]";
+            return new Expr(value + "!", typeArgs.get(1), null, null, null, false, false, null, null, null,
+                        atom(value, typeArgs.get(1)));
+        case "getOrDefault/2":
+            if (!isDictionary) break;
+            return atom(code + "[" + convert(args.get(0), element) + ", default: "
+                        + convert(args.get(1), typeArgs.get(1)) + "]", typeArgs.get(1));
+        case "contains/1":
+            if (isString || isDictionary) break;
+            return atom(code + ".contains(" + convert(args.get(0), element) + ")", "boolean");
+        case "containsKey/1":
+            if (!isDictionary) break;
+            return operation(code + "[" + convert(args.get(0), element) + "] != nil", "boolean", "!=");
+        case "add/1":
+            if (isString || isDictionary) break;
+            changes(receiver);
+            return assignment(code + (isSet ? ".insert(" : ".append(") + convert(args.get(0), element) + ")");
+        case "add/2":
+            if (!isArray) break;
+            changes(receiver);
+            return assignment(code + ".insert(" + convert(args.get(1), element) + ", at: " + count(args.get(0)) + ")");
+        case "set/2":
+            if (!isArray) break;
+            changes(receiver);
+            return assignment(code + "[" + count(args.get(0)) + "] = " + convert(args.get(1), element));
+        case "put/2":
+            if (!isDictionary) break;
+            changes(receiver);
+            return assignment(code + "[" + convert(args.get(0), element) + "] = "
+                        + convert(args.get(1), typeArgs.get(1)));
+        case "remove/1":
+            if (isString) break;
+            changes(receiver);
+            if (isDictionary) {
+                return statement(code + ".removeValue(forKey: " + convert(args.get(0), element) + ")", null);
+            }
+            if (isSet) {
+                return statement(code + ".remove(" + convert(args.get(0), element) + ")", null);
+            }
+            String indexType = numericType(args.get(0).type);
+            if (indexType == null || !isIntegral(indexType) || !isPrimitiveType(args.get(0).type)) {
+                throw untranslatable("'remove' of an element of a list, which could be an index or an element");
+            }
+            return statement(code + ".remove(at: " + count(args.get(0)) + ")", element);
+        case "clear/0":
+            changes(receiver);
+            return assignment(code + ".removeAll()");
+        }
+        throw untranslatable("method '" + name + "' of '" + receiver.type + "', which is a swift " + swiftType);
+    }
+
+    /**
+     * Makes sure a collection that is changed in place isn't a copy of the
+     * caller's, which java would have changed too
+     */
+    private void changes(Expr collection) throws UntranslatableException {
+        Scope.Variable variable = collection.code.matches("\\w+") ? scope.lookup(collection.code) : null;
+        if (variable != null && variable.isCopy) {
+            throw untranslatable("change to parameter '" + collection.code + "', which swift passes as a copy");
+        }
+    }
+
+    /**
+     * Refuses a write to an element of an array that is a copy of the
+     * caller's, like the changes to collections
+     * @param target the element that is written
+     */
+    private void changesElement(Expr target) throws UntranslatableException {
+        Matcher m = ARRAY_ELEMENT.matcher(target.code);
+        if (m.lookingAt() && target.code.endsWith("]")) changes(atom(m.group(1), null));
+    }
+
+    /**
+     * @return whether a method name is the single abstract method of one of
+     * the functional interfaces of java.util.function, or of Runnable or
+     * Callable
+     */
+    static boolean isFunctionalMethod(String name) {
+        switch (name) {
+        case "apply": case "accept": case "test": case "get": case "run": case "call":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private Expr arrayAccess(Expr array, Expr index) throws UntranslatableException {
+        String type = array.type != null && array.type.endsWith("[]")
+                    ? array.type.substring(0, array.type.length()-2) : null;
+        return atom(receiver(array) + "[" + count(index) + "]", type);
+    }
+
+    /**
+     * @return swift code of an int used as an index or count, which is an Int
+     * in swift
+     */
+    private String count(Expr e) throws UntranslatableException {
+        if (e.value != null) return convert(e, null);
+        return "Int(" + e.code + ")";
+    }
+
+    private Expr creation() throws UntranslatableException {
+        if (type(0) == LT) throw untranslatable("explicit constructor type arguments");
+        int start = pos;
+        String element = isPrimitiveType(type(0)) ? tokens.get(pos++).getText() : null;
+        if (element == null) {
+            // the type without dims, which belong to the array creation
+            StringBuilder sb = new StringBuilder(expect(Identifier).getText());
+            typeArguments(sb);
+            while (type(0) == DOT && type(1) == Identifier) {
+                sb.append('.').append(tokens.get(pos+1).getText());
+                pos += 2;
+                typeArguments(sb);
+            }
+            element = sb.toString();
+        }
+        if (type(0) == LBRACK) {
+            return arrayCreation(element);
+        }
+        if (pos == start + 1 && isPrimitiveType(tokens.get(start).getType())) {
+            throw untranslatable("creation of a primitive type");
+        }
+
+        List<Expr> args = arguments();
+        if (type(0) == LBRACE) throw untranslatable("anonymous class");
+        String type = element;
+        if (element.endsWith("<>")) {
+            type = element.substring(0, element.length()-2);
+            if (config.hasGenericType(type)) {
+                // java infers the type arguments from the variable the value is assigned to
+                if (start-1 != targetPos || targetType == null || targetType.indexOf('<') == -1) {
+                    throw untranslatable("type arguments of '" + element + "' that can't be inferred");
+                }
+                type += targetType.substring(targetType.indexOf('<'));
+            }
+        }
+        String root = config.exceptions().errorEnum(type);
+        if (root != null) {
+            return errorCreation(root, type, args);
+        }
+        String swiftType = swiftType(type);
+        if (isCollection(type)) {
+            return collectionCreation(type, swiftType, args);
+        }
+        return statement(swiftType + "(" + join(args) + ")", type);
+    }
+
+    /**
+     * Translates the creation of a checked exception of the corpus to a case
+     * of the error enum of its hierarchy. The arguments are kept the way the
+     * constructors of Exception take them: a string is the message and an
+     * exception the cause.
+     */
+    private Expr errorCreation(String root, String type, List<Expr> args) throws UntranslatableException {
+        Map<String, String> values = config.exceptions().values(type);
+        if (!values.isEmpty()) {
+            return valueErrorCreation(root, type, values, args);
+        }
+        String message = null;
+        String cause = null;
+        for (Expr arg : args) {
+            if (isString(arg.type) && message == null) {
+                message = convert(arg, null);
+            }
+            else if (isError(arg.type) && cause == null) {
+                cause = arg.code;
+            }
+            else {
+                throw untranslatable("argument of '" + type + "' that isn't a message or a cause");
+            }
+        }
+        return statement(root + "." + ExceptionHierarchy.caseName(type) + "(message: "
+                    + (message == null ? "nil" : message) + ", cause: " + (cause == null ? "nil" : cause) + ")", type);
+    }
+
+    /**
+     * Translates the creation of a checked exception whose case carries the
+     * values of its fields, through the constructor that takes as many
+     * arguments
+     */
+    private Expr valueErrorCreation(String root, String type, Map<String, String> values, List<Expr> args)
+                throws UntranslatableException {
+        for (List<String> params : config.exceptions().constructors(type)) {
+            if (params.size() != args.size()) continue;
+            Map<String, String> codes = new HashMap<>();
+            for (int i = 0; i < args.size(); i++) {
+                String param = params.get(i);
+                Expr arg = args.get(i);
+                if (param.equals("message")) {
+                    codes.put(param, convert(arg, null));
+                }
+                else if (param.equals("cause")) {
+                    codes.put(param, arg.code);
+                }
+                else {
+                    codes.put(param, convert(arg, values.get(param)));
+                }
+            }
+            StringBuilder code = new StringBuilder(root).append('.').append(ExceptionHierarchy.caseName(type))
+                        .append("(message: ").append(codes.containsKey("message") ? codes.get("message") : "nil")
+                        .append(", cause: ").append(codes.containsKey("cause") ? codes.get("cause") : "nil");
+            for (String field : values.keySet()) {
+                code.append(", ").append(field).append(": ").append(codes.get(field));
+            }
+            return statement(code.append(')').toString(), type);
+        }
+        throw untranslatable("constructor of '" + type + "' whose arguments its case doesn't carry");
+    }
+
+    /**
+     * @return whether a java type is a collection or string builder that is
+     * mapped to a swift value type by the type map
+     */
+    private boolean isCollection(String javaType) {
+        if (javaType == null) return false;
+        int lt = javaType.indexOf('<');
+        if (lt != -1) {
+            // function types and tasks are mapped by templates too
+            if (!config.hasGenericType(javaType.substring(0, lt))) return false;
+            String swiftType = genericType(javaType);
+            return swiftType != null && (swiftType.startsWith("[") || swiftType.startsWith("Set<"));
+        }
+        return !isString(javaType) && "String".equals(typeMap.get(javaType));
+    }
+
+    /**
+     * @return whether a java type is an array, or a collection or string
+     * builder that the type map translates to a swift value type, which swift
+     * copies where java shares a reference
+     */
+    public boolean isValueCollection(String javaType) {
+        return javaType != null && (javaType.endsWith("[]") || isCollection(javaType));
+    }
+
+    /**
+     * @return the java types of the elements of an array or a collection, or
+     * of the keys and values of a map
+     */
+    static List<String> elementTypes(String javaType) {
+        if (javaType.endsWith("[]")) {
+            return Collections.singletonList(javaType.substring(0, javaType.length()-2));
+        }
+        return javaType.indexOf('<') == -1 ? new ArrayList<String>() : typeArguments(javaType);
+    }
+
+    static boolean isDictionary(String swiftType) {
+        if (!swiftType.startsWith("[")) return false;
+        int depth = 0;
+        for (int i = 0; i < swiftType.length(); i++) {
+            char c = swiftType.charAt(i);
+            if (c == '[' || c == '<' || c == '(') depth++;
+            else if (c == ']' || c == '>' || c == ')') depth--;
+            else if (c == ':' && depth == 1) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Translates the creation of a collection. An int argument is the initial
+     * capacity, which is reserved in the swift collection; any other argument
+     * is copied, which for swift value types is a plain assignment.
+     */
+    private Expr collectionCreation(String type, String swiftType, List<Expr> args)
+                throws UntranslatableException {
+        if (args.isEmpty()) return statement(swiftType + "()", type);
+        if (args.size() != 1) throw untranslatable("creation of '" + type + "' with " + args.size() + " arguments");
+        Expr arg = args.get(0);
+        String argType = numericType(arg.type);
+        if (argType != null && isIntegral(argType) && !argType.equals("char") && !argType.equals("long")) {
+            String empty = swiftType + "()";
+            String capacity = count(arg);
+            String code = isDictionary(swiftType)
+                        ? swiftType + "(minimumCapacity: " + capacity + ")"
+                        : "{ var c = " + empty + "; c.reserveCapacity(" + capacity + "); return c }()";
+            return new Expr(code, type, null, null, null, false, true, empty, capacity);
+        }
+        if (arg.type == null) throw untranslatable("creation of '" + type + "' from a value of unknown type");
+        if (isString(arg.type) && swiftType.equals("String")
+                    || isCollection(arg.type) && swiftType(arg.type).equals(swiftType)) {
+            return statement(convert(arg, null), type);
+        }
+        if ((swiftType.startsWith("[") || swiftType.startsWith("Set<")) && !isDictionary(swiftType)
+                    && isCollection(arg.type) && !isDictionary(swiftType(arg.type))) {
+            return statement(swiftType + "(" + convert(arg, null) + ")", type);
+        }
+        throw untranslatable("creation of '" + type + "' from a '" + arg.type + "'");
+    }
+
+    private Expr arrayCreation(String element) throws UntranslatableException {
+        List<Expr> dims = new ArrayList<>();
+        int numDims = 0;
+        while (type(0) == LBRACK) {
+            pos++;
+            if (type(0) != RBRACK) {
+                if (numDims > dims.size()) throw untranslatable("array dimension after an empty one");
+                dims.add(value(expression()));
+            }
+            expect(RBRACK);
+            numDims++;
+        }
+        String type = element;
+        for (int i = 0; i < numDims; i++) type += "[]";
+
+        if (dims.isEmpty()) {
+            if (type(0) != LBRACE) throw untranslatable("array creation without dimensions");
+            return arrayInitializer(type);
+        }
+        if (dims.size() < numDims) {
+            // java fills the missing dimensions with nulls
+            throw untranslatable("array creation with unspecified dimensions");
+        }
+
+        String code = defaultValue(element);
+        String elementType = element;
+        for (int i = dims.size()-1; i >= 0; i--) {
+            elementType += "[]";
+            code = swiftType(elementType) + "(repeating: " + code + ", count: " + count(dims.get(i)) + ")";
+        }
+        return statement(code, type);
+    }
+
+    private static String defaultValue(String javaType) throws UntranslatableException {
+        switch (javaType) {
+        case "boolean": return "false";
+        case "char": return "\"\\0\"";
+        case "float": case "double": return "0.0";
+        case "byte": case "short": case "int": case "long": return "0";
+        default:
+            // java fills the array with nulls
+            throw untranslatable("creation of an array of references");
+        }
+    }
+
+    private Expr arrayInitializer(String type) throws UntranslatableException {
+        expect(LBRACE);
+        String element = type.substring(0, type.length()-2);
+        StringBuilder sb = new StringBuilder("[");
+        while (type(0) != RBRACE) {
+            Expr e = type(0) == LBRACE ? arrayInitializer(element) : value(expression());
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(convert(e, element));
+            if (type(0) != COMMA) break;
+            pos++;
+        }
+        expect(RBRACE);
+        return atom(sb.append(']').toString(), type);
+    }
+
+    private Expr cast() throws UntranslatableException {
+        expect(LPAREN);
+        String type = type();
+        expect(RPAREN);
+        Expr e = value(unary());
+
+        String to = numericType(type);
+        if (isPrimitiveType(type) || to != null) {
+            ConstantFolder.Constant value = ConstantFolder.cast(e.value, unboxed(type));
+            if (value != null) return constant(value);
+        }
+        if (to == null) {
+            if (type.equals(e.type) || isBoolean(type) && isBoolean(e.type)) return e;
+            if (isBoolean(type) || e.type != null && numericType(e.type) != null) {
+                throw untranslatable("cast of " + e.type + " to " + type);
+            }
+            return operation(castOperand(e) + " as! " + swiftType(type), type, "as");
+        }
+
+        String from = numericType(e.type);
+        if (from == null) {
+            if (e.type != null) {
+                // unboxing an Object or a Number
+                return operation(castOperand(e) + " as! " + swiftType(to), to, "as");
+            }
+            return atom(swiftType(to) + "(" + e.code + ")", to);
+        }
+        if (to.equals("char") || from.equals("char")) {
+            if (to.equals(from)) return e;
+            throw untranslatable("cast between char and " + (to.equals("char") ? from : to));
+        }
+        if (isIntegral(to) && !isIntegral(from) && rank(to) < rank("int")) {
+            // java narrows floating point values to int first
+            e = convertNumeric(e, "int");
+        }
+        return convertNumeric(e, to);
+    }
+
+    private static String castOperand(Expr e) {
+        return e.op == null || e.op.equals("prefix") ? e.code : "(" + e.code + ")";
+    }
+
+    private Expr instanceOf(Expr e, String type) throws UntranslatableException {
+        return operation(castOperand(e) + " is " + swiftType(type), "boolean", "is");
+    }
+
+    private Expr unary(String op, Expr e) throws UntranslatableException {
+        ConstantFolder.Constant value = ConstantFolder.unary(op, e.value);
+        if (value != null) return constant(value);
+
+        if (op.equals("!")) {
+            return operation("!" + prefixOperand(e), "boolean", "prefix");
+        }
+        String type = numericType(e.type);
+        if (type == null) {
+            return operation(op + prefixOperand(e), null, "prefix");
+        }
+        if (type.equals("char")) throw untranslatable("arithmetic on a char");
+        type = promote(type, "int");
+        e = convertNumeric(e, type);
+        if (op.equals("+")) return e;
+        if (op.equals("~")) return operation("~" + prefixOperand(e), type, "prefix");
+        if (isIntegral(type)) {
+            // -Int32.min overflows like in java
+            return operation("0 &- " + operand(e, "&-", true), type, "&-");
+        }
+        return operation("-" + prefixOperand(e), type, "prefix");
+    }
+
+    private static String prefixOperand(Expr e) {
+        return e.op == null ? e.code : "(" + e.code + ")";
+    }
+
+    private Expr binary(String op, Expr a, Expr b) throws UntranslatableException {
+        ConstantFolder.Constant value = ConstantFolder.binary(op, a.value, b.value);
+        if (value != null) return constant(value);
+
+        if (op.equals("+") && (isString(a.type) || isString(b.type))) {
+            List<Expr> parts = new ArrayList<>();
+            addParts(parts, a);
+            addParts(parts, b);
+            return concatenation(parts);
+        }
+        if (op.equals("==") || op.equals("!=")) {
+            return equality(op, a, b);
+        }
+        if (op.equals("&&") || op.equals("||")) {
+            return infix(a, op, b, "boolean");
+        }
+        if (isBoolean(a.type) && isBoolean(b.type)) {
+            // the non-short-circuit operators; both operands are evaluated anyway
+            // unless the right one has side effects
+            switch (op) {
+            case "&": return infix(a, "&&", b, "boolean");
+            case "|": return infix(a, "||", b, "boolean");
+            case "^": return infix(a, "!=", b, "boolean");
+            }
+        }
+
+        String ta = numericType(a.type);
+        String tb = numericType(b.type);
+        if (ta == null || tb == null) {
+            if (op.equals(">>>")) throw untranslatable("'>>>' on operands of unknown type");
+            String type = isComparison(op) ? "boolean" : null;
+            return infix(a, op, b, type);
+        }
+        if ("char".equals(a.value == null ? ta : null) || "char".equals(b.value == null ? tb : null)) {
+            throw untranslatable("arithmetic on a char");
+        }
+
+        if (op.equals("<<") || op.equals(">>") || op.equals(">>>")) {
+            // only the left operand is promoted, and swift masks the distance
+            // of &<< and &>> like java does
+            String type = promote(ta, "int");
+            a = convertNumeric(a, type);
+            if (b.value != null) b = convertNumeric(b, promote(tb, "int"));
+            if (op.equals(">>>")) {
+                String signed = swiftType(type);
+                String unsigned = "U" + signed;
+                return atom(signed + "(bitPattern: " + unsigned + "(bitPattern: " + a.code + ") &>> "
+                            + operand(b, "&>>", true) + ")", type);
+            }
+            return infix(a, op.equals("<<") ? "&<<" : "&>>", b, type);
+        }
+
+        String type = promote(ta, tb);
+        a = convertNumeric(a, type);
+        b = convertNumeric(b, type);
+        if (isComparison(op)) {
+            return infix(a, op, b, "boolean");
+        }
+        if (isIntegral(type)) {
+            if ((op.equals("/") || op.equals("%")) && b.value != null && b.value.l == 0) {
+                // java throws at run time, but swift rejects the code
+                throw untranslatable("integer division by zero");
+            }
+            switch (op) {
+            case "+": return infix(a, "&+", b, type);
+            case "-": return infix(a, "&-", b, type);
+            case "*": return infix(a, "&*", b, type);
+            default: return infix(a, op, b, type);
+            }
+        }
+        switch (op) {
+        case "%":
+            return atom(receiver(a) + ".truncatingRemainder(dividingBy: " + b.code + ")", type);
+        case "&": case "|": case "^":
+            throw untranslatable("bitwise '" + op + "' on floating point values");
+        default:
+            return infix(a, op, b, type);
+        }
+    }
+
+    private Expr equality(String op, Expr a, Expr b) throws UntranslatableException {
+        // values that may be null are compared with null as optionals
+        if ("null".equals(a.type)) b = optional(b);
+        if ("null".equals(b.type)) a = optional(a);
+        String ta = numericType(a.type);
+        String tb = numericType(b.type);
+        if (ta != null && tb != null) {
+            if (ta.equals("char") || tb.equals("char")) {
+                if (!ta.equals(tb) || a.value != null && b.value != null) {
+                    throw untranslatable("comparison of a char with a number");
+                }
+                return infix(a, op, b, "boolean");
+            }
+            String type = promote(ta, tb);
+            return infix(convertNumeric(a, type), op, convertNumeric(b, type), "boolean");
+        }
+        if (isReference(a.type) && isReference(b.type)) {
+            // objects are compared by identity
+            return infix(a, op.equals("==") ? "===" : "!==", b, "boolean");
+        }
+        if (structs.contains(a.type) && !equatableStructs.contains(a.type)
+                    || structs.contains(b.type) && !equatableStructs.contains(b.type)) {
+            throw untranslatable("comparison of structs that aren't Equatable");
+        }
+        return infix(a, op, b, "boolean");
+    }
+
+    private Expr ternary(Expr condition, Expr a, Expr b) throws UntranslatableException {
+        String type = a.type != null && a.type.equals(b.type) ? a.type : null;
+        String ta = numericType(a.type);
+        String tb = numericType(b.type);
+        if (ta != null && tb != null && !ta.equals(tb)) {
+            if (ta.equals("char") || tb.equals("char")) {
+                throw untranslatable("conditional of a char and a number");
+            }
+            type = promote(ta, tb);
+            a = convertNumeric(a, type);
+            b = convertNumeric(b, type);
+        }
+        else if ("null".equals(a.type)) {
+            type = b.type;
+        }
+        else if ("null".equals(b.type)) {
+            type = a.type;
+        }
+        boolean mayBeNull = "null".equals(a.type) || "null".equals(b.type) || a.optional != null || b.optional != null;
+        if (mayBeNull && type != null && isPrimitiveType(unboxed(type))) {
+            // a boxed value that may be null, which is unwrapped as a whole
+            Expr e = operation(operand(condition, "?:", false) + " ? " + convert(optional(a), null) + " : "
+                        + operand(optional(b), "?:", true), type, "?:");
+            return new Expr("(" + e.code + ")!", type, null, null, null, false, false, null, null, null, e);
+        }
+        return operation(operand(condition, "?:", false) + " ? " + convert(a, null) + " : "
+                    + operand(b, "?:", true), type, "?:");
+    }
+
+    private Expr infix(Expr a, String op, Expr b, String type) throws UntranslatableException {
+        return operation(operand(a, op, false) + " " + op + " " + operand(b, op, true), type, op);
+    }
+
+    /**
+     * @return swift code of an operand of an infix operator, parenthesized
+     * unless swift would group it the way java did
+     */
+    private String operand(Expr e, String op, boolean isRight) throws UntranslatableException {
+        String code = convert(e, null);
+        if (e.op == null || e.op.equals("prefix")) return code;
+        int inner = swiftPrecedence(e.op);
+        int outer = swiftPrecedence(op);
+        if (inner > outer) return code;
+        if (inner == outer && !isRight && isLeftAssociative(outer)) return code;
+        return "(" + code + ")";
+    }
+
+    private static int swiftPrecedence(String op) {
+        switch (op) {
+        case "&<<": case "&>>": case "<<": case ">>": return 160;
+        case "&*": case "*": case "/": case "%": case "&": return 150;
+        case "&+": case "&-": case "+": case "-": case "|": case "^": return 140;
+        case "as": case "is": return 132;
+        case "==": case "!=": case "===": case "!==": case "<": case ">": case "<=": case ">=": return 130;
+        case "&&": return 120;
+        case "||": return 110;
+        default: return 100;   // ?:
+        }
+    }
+
+    /** comparisons can't be chained in swift, and ?: groups to the right */
+    private static boolean isLeftAssociative(int precedence) {
+        return precedence != 130 && precedence != 100;
+    }
+
+    private void addParts(List<Expr> parts, Expr e) throws UntranslatableException {
+        if (e.parts != null) {
+            parts.addAll(e.parts);
+        }
+        else if (e.value != null && !parts.isEmpty() && parts.get(parts.size()-1).value != null) {
+            // adjacent constants, like the literals of "a" + x + "b" + 1
+            ConstantFolder.Constant last = parts.remove(parts.size()-1).value;
+            parts.add(constant(ConstantFolder.Constant.ofString(last.javaString() + e.value.javaString())));
+        }
+        else {
+            parts.add(e);
+        }
+    }
+
+    /**
+     * Translates a chain of string concatenations into a single interpolated
+     * string literal, so swift builds the string at once instead of creating a
+     * new string for each +, e.g. "id " + id + ": " + name becomes
+     * "id \(id): \(name)"
+     * @param parts operands of the chain, with adjacent constants merged
+     */
+    private Expr concatenation(List<Expr> parts) throws UntranslatableException {
+        StringBuilder sb = new StringBuilder("\"");
+        for (Expr part : parts) {
+            if (part.value != null) {
+                String literal = ConstantFolder.swiftLiteral(ConstantFolder.Constant.ofString(part.value.javaString()),
+                            "String");
+                if (literal == null) throw untranslatable("string with an unpaired surrogate");
+                sb.append(literal, 1, literal.length()-1);
+            }
+            else if ("null".equals(part.type)) {
+                sb.append("null");
+            }
+            else if (part.optional != null) {
+                // java prints a null value as "null" instead of unboxing it
+                String optional = part.optional.code.contains(" ") ? "(" + part.optional.code + ")"
+                            : part.optional.code;
+                sb.append("\\(").append(optional).append(".map { \"\\($0)\" } ?? \"null\")");
+            }
+            else {
+                sb.append("\\(").append(convert(part, null)).append(')');
+            }
+        }
+        return new Expr(sb.append('"').toString(), "String", null, null, null, false, false, null, null, parts, null);
+    }
+
+    /**
+     * Converts an operand of string concatenation to a String
+     */
+    private Expr stringOperand(Expr e) throws UntranslatableException {
+        if (e.value != null) return constant(ConstantFolder.Constant.ofString(e.value.javaString()));
+        if (isString(e.type)) return e;
+        if ("null".equals(e.type)) return constant(ConstantFolder.Constant.ofString("null"));
+        if (numericType(e.type) != null || isBoolean(e.type)) return atom("String(" + e.code + ")", "String");
+        return atom("String(describing: " + e.code + ")", "String");
+    }
+
+    private Expr assignment(Expr left, String op, Expr right) throws UntranslatableException {
+        if (left.value != null) throw untranslatable("assignment to a constant");
+        changesElement(left);
+        String type = numericType(left.type);
+        if (left.atomic != null) {
+            String ordering = "ordering: " + J2SwiftListener.ATOMIC_ORDERING + ")";
+            switch (op) {
+            case "=":
+                return assignment(left.atomic + ".store(" + convert(right, left.type) + ", " + ordering);
+            case "+=":
+            case "-=":
+                if (type != null && isIntegral(type) && rank(promote(type, numericType(right.type) == null
+                            ? type : numericType(right.type))) <= rank(type)) {
+                    String method = op.equals("+=") ? "wrappingIncrement" : "wrappingDecrement";
+                    return assignment(left.atomic + "." + method + "(by: " + convert(right, left.type) + ", " + ordering);
+                }
+            }
+            throw untranslatable("compound assignment '" + op + "' to a volatile field");
+        }
+
+        if (op.equals("=") && left.optional != null) {
+            return assignment(left.optional.code + " = " + convert(optional(right), left.type));
+        }
+        if (op.equals("=")) {
+            if (isString(left.type) && right.parts != null && right.parts.get(0).code.equals(left.code)
+                        && left.code.matches("[\\w.]+")) {
+                // s = s + x appends to s in place instead of copying it
+                List<Expr> rest = right.parts.subList(1, right.parts.size());
+                Expr appended = rest.size() == 1 ? stringOperand(rest.get(0)) : concatenation(rest);
+                return assignment(left.code + " += " + appended.code);
+            }
+            if (right.capacity != null) {
+                return assignment(left.code + " = " + right.empty + "\n"
+                            + left.code + ".reserveCapacity(" + right.capacity + ")");
+            }
+            return assignment(left.code + " = " + convert(right, left.type));
+        }
+        String binaryOp = op.substring(0, op.length()-1);
+        if (isString(left.type) && op.equals("+=")) {
+            return assignment(left.code + " += " + stringOperand(right).code);
+        }
+        String rightType = numericType(right.type);
+        if (type == null || rightType == null && right.value == null) {
+            if (op.equals(">>>=")) throw untranslatable("'>>>=' on operands of unknown type");
+            return assignment(left.code + " " + op + " " + convert(right, null));
+        }
+        if (type.equals("char")) throw untranslatable("arithmetic on a char");
+
+        boolean fitsLeft = right.value != null ? ConstantFolder.assign(right.value, unboxed(left.type)) != null
+                    : isIntegral(type) ? rightType.equals(type) : !rightType.equals("char") && rank(rightType) <= rank(type);
+        if (isIntegral(type) && fitsLeft) {
+            // wrapping arithmetic on the narrower type gives the same bits as
+            // java's arithmetic on the promoted type narrowed back
+            switch (binaryOp) {
+            case "+": case "-": case "*":
+                return assignment(left.code + " &" + op + " " + convert(right, left.type));
+            case "&": case "|": case "^":
+                return assignment(left.code + " " + op + " " + convert(right, left.type));
+            }
+        }
+        if (isIntegral(type) && rank(type) >= rank("int") && (fitsLeft || binaryOp.length() == 2)) {
+            switch (binaryOp) {
+            case "/": case "%":
+                return assignment(left.code + " " + op + " " + convert(right, left.type));
+            case "<<": case ">>":
+                return assignment(left.code + " &" + op + " " + convert(right, null));
+            }
+        }
+        if (!isIntegral(type) && fitsLeft && !binaryOp.equals("%")) {
+            return assignment(left.code + " " + op + " " + convert(right, left.type));
+        }
+
+        // a op= b is a = (T) (a op b)
+        Expr result = binary(binaryOp, atom(left.code, left.type), right);
+        return assignment(left.code + " = " + castCode(result, type));
+    }
+
+    private String castCode(Expr e, String type) throws UntranslatableException {
+        String from = numericType(e.type);
+        if (from == null || from.equals(type)) return e.code;
+        if (isIntegral(type) && !isIntegral(from) && rank(type) < rank("int")) {
+            e = convertNumeric(e, "int");
+        }
+        return convertNumeric(e, type).code;
+    }
+
+    private Expr increment(Expr e, String op) throws UntranslatableException {
+        value(e);
+        if (e.value != null) throw untranslatable("'" + op + "' on a constant");
+        changesElement(e);
+        if (e.atomic != null) {
+            String method = op.equals("++") ? "wrappingIncrement" : "wrappingDecrement";
+            return assignment(e.atomic + "." + method + "(ordering: " + J2SwiftListener.ATOMIC_ORDERING + ")");
+        }
+        String type = numericType(e.type);
+        if ("char".equals(type)) throw untranslatable("'" + op + "' on a char");
+        String assign = op.equals("++") ? "+= 1" : "-= 1";
+        if (type != null && isIntegral(type)) assign = "&" + assign;
+        return assignment(e.code + " " + assign);
+    }
+
+    /**
+     * @return swift code of a value converted to a java type the way
+     * assignments convert, or left as it is if javaType is null
+     */
+    private String convert(Expr e, String javaType) throws UntranslatableException {
+        if (e.value != null) {
+            if (javaType != null) {
+                ConstantFolder.Constant value = ConstantFolder.assign(e.value, javaType);
+                if (value != null) {
+                    String literal = ConstantFolder.swiftLiteral(value, swiftType(javaType));
+                    if (literal != null) return literal;
+                }
+            }
+            return e.code;
+        }
+        String from = numericType(e.type);
+        String to = numericType(javaType);
+        if (from != null && to != null) {
+            if (to.equals("char") != from.equals("char")) {
+                throw untranslatable("conversion between char and " + (to.equals("char") ? from : to));
+            }
+            return convertNumeric(e, to).code;
+        }
+        return e.code;
+    }
+
+    /**
+     * Converts a numeric value to another primitive type. Integral values are
+     * narrowed by truncating their bits, like in java.
+     */
+    private Expr convertNumeric(Expr e, String type) throws UntranslatableException {
+        if (e.value != null) {
+            ConstantFolder.Constant value = ConstantFolder.cast(e.value, type);
+            return value == null ? e : constant(value);
+        }
+        String from = numericType(e.type);
+        if (from == null || from.equals(type) || swiftType(from).equals(swiftType(type))) return e;
+        if (from.equals("char") || type.equals("char")) {
+            throw untranslatable("conversion between char and " + (type.equals("char") ? from : type));
+        }
+        if (isIntegral(from) && isIntegral(type) && rank(type) < rank(from)) {
+            return atom(swiftType(type) + "(truncatingIfNeeded: " + e.code + ")", type);
+        }
+        return atom(swiftType(type) + "(" + e.code + ")", type);
+    }
+
+    /**
+     * @return the swift type for a java type
+     */
+    private String swiftType(String javaType) throws UntranslatableException {
+        if (javaType.endsWith("[]")) {
+            String element = javaType.substring(0, javaType.length()-2);
+            String base = javaType.substring(0, javaType.indexOf('['));
+            String lowered = isPrimitiveType(base) ? arrayType : null;
+            return lowered == null ? "[" + swiftType(element) + "]" : lowered + "<" + swiftType(element) + ">";
+        }
+        String mapped = typeMap.get(javaType);
+        if (mapped != null) return mapped;
+        int lt = javaType.indexOf('<');
+        if (lt == -1 || !javaType.endsWith(">")) return javaType;
+
+        List<String> swiftArgs = new ArrayList<>();
+        for (String arg : typeArguments(javaType)) {
+            swiftArgs.add(arg.startsWith("?") ? wildcardType(arg) : swiftType(arg));
+        }
+        String rawType = javaType.substring(0, lt);
+        String mappedGeneric = config.genericType(rawType, swiftArgs);
+        if (mappedGeneric != null) return mappedGeneric;
+        return rawType + "<" + String.join(", ", swiftArgs) + ">";
+    }
+
+    /**
+     * Gets the swift type for a wildcard outside of the parameters of a
+     * method, where it can't become a generic parameter. Swift has no
+     * wildcards, so it stands for its bound, or Any if it has none.
+     * @param wildcard java wildcard, e.g. "?" or "?extendsNumber"
+     */
+    private String wildcardType(String wildcard) throws UntranslatableException {
+        String bound = wildcard.substring(1).trim();
+        if (bound.startsWith("extends")) {
+            bound = bound.substring("extends".length()).trim();
+        }
+        else if (bound.startsWith("super")) {
+            bound = bound.substring("super".length()).trim();
+        }
+        return bound.isEmpty() ? "Any" : swiftType(bound);
+    }
+
+    /**
+     * @return the java type arguments of a generic type, e.g. "String" and
+     * "List<Integer>" for "Map<String,List<Integer>>"
+     */
+    private static List<String> typeArguments(String javaType) {
+        List<String> list = new ArrayList<>();
+        String args = javaType.substring(javaType.indexOf('<')+1, javaType.length()-1);
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i <= args.length(); i++) {
+            char c = i < args.length() ? args.charAt(i) : ',';
+            if (c == '<') depth++;
+            else if (c == '>') depth--;
+            else if (c == ',' && depth == 0) {
+                list.add(args.substring(start, i));
+                start = i+1;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Gets the swift type for a java type that is mapped by a generic
+     * template of the type map, like a List or a Map, or that has one in
+     * its type arguments
+     * @return the swift type, or null if no template applies
+     */
+    public String genericType(String javaType) {
+        boolean hasTemplate = false;
+        for (int lt = javaType.indexOf('<'); lt != -1; lt = javaType.indexOf('<', lt+1)) {
+            int start = lt;
+            while (start > 0 && Character.isJavaIdentifierPart(javaType.charAt(start-1))) start--;
+            if (config.hasGenericType(javaType.substring(start, lt))) hasTemplate = true;
+        }
+        if (!hasTemplate) return null;
+        try {
+            return swiftType(javaType);
+        }
+        catch (UntranslatableException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the swift type for any java type, like {@link #genericType(String)}
+     * does for the types mapped by templates
+     * @return the swift type, or null if it can't be translated
+     */
+    public String translateType(String javaType) {
+        try {
+            return swiftType(javaType);
+        }
+        catch (UntranslatableException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether swift can compare values of a java type with ==:
+     * primitives, their boxes, strings and the given structs, and arrays of
+     * those
+     */
+    static boolean isEquatable(String javaType, Set<String> structs) {
+        while (javaType.endsWith("[]")) {
+            javaType = javaType.substring(0, javaType.length()-2);
+        }
+        return isPrimitiveType(unboxed(javaType)) || javaType.equals("String") || structs.contains(javaType);
+    }
+
+    private static boolean isPrimitiveType(String javaType) {
+        switch (javaType) {
+        case "boolean": case "byte": case "short": case "char": case "int": case "long": case "float": case "double":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return the primitive numeric type of a java type, unboxed, or null if
+     * it isn't numeric
+     */
+    private static String numericType(String javaType) {
+        if (javaType == null) return null;
+        String type = unboxed(javaType);
+        return isPrimitiveType(type) && !type.equals("boolean") ? type : null;
+    }
+
+    private static String unboxed(String javaType) {
+        switch (javaType) {
+        case "Boolean": return "boolean";
+        case "Byte": return "byte";
+        case "Short": return "short";
+        case "Character": return "char";
+        case "Integer": return "int";
+        case "Long": return "long";
+        case "Float": return "float";
+        case "Double": return "double";
+        default: return javaType;
+        }
+    }
+
+    private static boolean isString(String javaType) {
+        return "String".equals(javaType);
+    }
+
+    private static boolean isBoolean(String javaType) {
+        return javaType != null && unboxed(javaType).equals("boolean");
+    }
+
+    /**
+     * @return whether values of the type are known to be objects, which swift
+     * compares by identity with ===
+     */
+    private boolean isReference(String javaType) {
+        if (javaType == null || structs.contains(javaType) || javaType.equals("null") || javaType.endsWith("[]")) return false;
+        if (isPrimitiveType(unboxed(javaType)) || typeMap.containsKey(javaType)) return false;
+        // type variables may stand for value types
+        return javaType.length() > 1 && !javaType.contains("<");
+    }
+
+    private static boolean isIntegral(String type) {
+        return !type.equals("float") && !type.equals("double");
+    }
+
+    private static boolean isComparison(String op) {
+        return op.equals("<") || op.equals(">") || op.equals("<=") || op.equals(">=");
+    }
+
+    private static int rank(String type) {
+        switch (type) {
+        case "byte": return 1;
+        case "short": case "char": return 2;
+        case "int": return 3;
+        case "long": return 4;
+        case "float": return 5;
+        default: return 6;
+        }
+    }
+
+    /**
+     * @return the type java's binary numeric promotion gives two primitive types
+     */
+    private static String promote(String a, String b) {
+        if (a.equals("double") || b.equals("double")) return "double";
+        if (a.equals("float") || b.equals("float")) return "float";
+        if (a.equals("long") || b.equals("long")) return "long";
+        return "int";
+    }
+
+}
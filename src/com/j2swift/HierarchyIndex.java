@@ -0,0 +1,296 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the class hierarchy of a whole corpus of java files, used to find
+ * the classes that are never subclassed so they can be emitted as final, and
+ * the interfaces that are translated to protocols. Each file is scanned at the
+ * token level for the classes and interfaces it declares and the classes it
+ * extends, either through a superclass clause or an anonymous class body.
+ * The index is saved between runs, and only files that were added or
+ * modified since are scanned again. The superclass of each class is kept
+ * too, to find the exception hierarchies of the corpus.
+ * Classes are matched by simple name, so a class counts as subclassed if any
+ * class of that name is extended anywhere in the corpus.
+ * @author Eyob Tsegaye
+ */
+public class HierarchyIndex {
+
+    private static final String HEADER = "# j2swift class hierarchy index";
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private static class Entry {
+        long lastModified;
+        long length;
+        List<String> classes = new ArrayList<>();
+        List<String> superclasses = new ArrayList<>();
+        List<String> interfaces = new ArrayList<>();
+        // "Class:Superclass" for each class with a superclass clause
+        List<String> extensions = new ArrayList<>();
+    }
+
+    /**
+     * Loads an index saved by {@link #save(File)}
+     * @param file index file; if it doesn't exist, the index starts out empty
+     * @return the loaded index
+     */
+    public static HierarchyIndex load(File file) throws IOException {
+        HierarchyIndex index = new HierarchyIndex();
+        if (!file.exists()) return index;
+
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        try {
+            String line = br.readLine();
+            if (line == null || !line.equals(HEADER)) {
+                // written by something else; start over
+                return index;
+            }
+            while ((line = br.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 7) continue;   // from an older version; scanned again
+                Entry entry = new Entry();
+                entry.lastModified = Long.parseLong(fields[1]);
+                entry.length = Long.parseLong(fields[2]);
+                entry.classes = splitNames(fields[3]);
+                entry.superclasses = splitNames(fields[4]);
+                entry.interfaces = splitNames(fields[5]);
+                entry.extensions = splitNames(fields[6]);
+                index.entries.put(fields[0], entry);
+            }
+        }
+        finally {
+            br.close();
+        }
+        return index;
+    }
+
+    /**
+     * Saves the index so the next run only has to scan changed files
+     * @param file index file to write
+     */
+    public void save(File file) throws IOException {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+        try {
+            bw.write(HEADER);
+            bw.newLine();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                bw.write(e.getKey() + "\t" + entry.lastModified + "\t" + entry.length + "\t"
+                            + joinNames(entry.classes) + "\t" + joinNames(entry.superclasses)
+                            + "\t" + joinNames(entry.interfaces) + "\t" + joinNames(entry.extensions));
+                bw.newLine();
+            }
+        }
+        finally {
+            bw.close();
+        }
+    }
+
+    /**
+     * Brings the index up to date: the given files are added, files that have
+     * changed since they were indexed are scanned again, and files that no
+     * longer exist are dropped
+     * @param javaFiles java files to add to the index
+     * @return the number of files that had to be scanned
+     */
+    public int update(List<String> javaFiles) throws IOException {
+        Set<String> paths = new HashSet<>(entries.keySet());
+        for (String javaFile : javaFiles) {
+            paths.add(new File(javaFile).getCanonicalPath());
+        }
+
+        int numScanned = 0;
+        for (String path : paths) {
+            File file = new File(path);
+            if (!file.isFile()) {
+                entries.remove(path);
+                continue;
+            }
+            Entry entry = entries.get(path);
+            if (entry != null && entry.lastModified == file.lastModified() && entry.length == file.length()) {
+                continue;
+            }
+            entries.put(path, scan(file));
+            numScanned++;
+        }
+        return numScanned;
+    }
+
+    /**
+     * @return paths of all files in the index
+     */
+    public List<String> files() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * @return simple names of all classes that are extended somewhere in the
+     * corpus
+     */
+    public Set<String> subclassedNames() {
+        Set<String> names = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            names.addAll(entry.superclasses);
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * @return simple names of all interfaces declared in the corpus, not
+     * counting annotation types
+     */
+    public Set<String> interfaceNames() {
+        Set<String> names = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            names.addAll(entry.interfaces);
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * @return map from the simple names of the classes that extend a class
+     * to the simple names of their superclasses
+     */
+    public Map<String, String> superclassMap() {
+        Map<String, String> map = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            for (String extension : entry.extensions) {
+                int colon = extension.indexOf(':');
+                map.put(extension.substring(0, colon), extension.substring(colon+1));
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static Entry scan(File file) throws IOException {
+        Entry entry = new Entry();
+        entry.lastModified = file.lastModified();
+        entry.length = file.length();
+
+        Java8Lexer lexer = new Java8Lexer(CharStreams.fromFileName(file.getPath()));
+        lexer.removeErrorListeners();
+        CommonTokenStream stream = new CommonTokenStream(lexer);
+        stream.fill();
+        List<Token> tokens = stream.getTokens();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            int type = tokens.get(i).getType();
+            boolean afterDot = i > 0 && tokens.get(i-1).getType() == Java8Lexer.DOT;
+            if (type == Java8Lexer.CLASS && !afterDot && i+1 < tokens.size()
+                        && tokens.get(i+1).getType() == Java8Lexer.Identifier) {
+                // class Identifier typeParameters? ('extends' classType)?
+                entry.classes.add(tokens.get(i+1).getText());
+                int j = skipTypeArguments(tokens, i+2);
+                if (tokens.get(j).getType() == Java8Lexer.EXTENDS) {
+                    String superclass = lastIdentifier(tokens, j+1);
+                    if (superclass != null) {
+                        entry.superclasses.add(superclass);
+                        entry.extensions.add(tokens.get(i+1).getText() + ":" + superclass);
+                    }
+                }
+            }
+            else if (type == Java8Lexer.INTERFACE && i+1 < tokens.size()
+                        && tokens.get(i+1).getType() == Java8Lexer.Identifier
+                        && (i == 0 || tokens.get(i-1).getType() != Java8Lexer.AT)) {
+                entry.interfaces.add(tokens.get(i+1).getText());
+            }
+            else if (type == Java8Lexer.NEW) {
+                // 'new' Identifier ('.' Identifier)* typeArguments? '(' ... ')' '{'
+                String created = lastIdentifier(tokens, i+1);
+                int j = skipQualifiedName(tokens, i+1);
+                if (created != null && tokens.get(j).getType() == Java8Lexer.LPAREN) {
+                    j = skipParentheses(tokens, j);
+                    if (tokens.get(j).getType() == Java8Lexer.LBRACE) {
+                        entry.superclasses.add(created);
+                    }
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Finds the last identifier of a possibly qualified and parameterized class
+     * type, e.g. "Bar" for "a.Foo<T>.Bar<U>"
+     * @param tokens tokens of the file
+     * @param i index of the first token of the type
+     * @return the last identifier, or null if there is no type at i
+     */
+    private static String lastIdentifier(List<Token> tokens, int i) {
+        String last = null;
+        while (tokens.get(i).getType() == Java8Lexer.Identifier) {
+            last = tokens.get(i).getText();
+            i = skipTypeArguments(tokens, i+1);
+            if (tokens.get(i).getType() != Java8Lexer.DOT) break;
+            i++;
+        }
+        return last;
+    }
+
+    private static int skipQualifiedName(List<Token> tokens, int i) {
+        while (tokens.get(i).getType() == Java8Lexer.Identifier) {
+            i = skipTypeArguments(tokens, i+1);
+            if (tokens.get(i).getType() != Java8Lexer.DOT) break;
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipTypeArguments(List<Token> tokens, int i) {
+        if (tokens.get(i).getType() != Java8Lexer.LT) return i;
+        int depth = 0;
+        for (; tokens.get(i).getType() != Token.EOF; i++) {
+            int type = tokens.get(i).getType();
+            if (type == Java8Lexer.LT) depth++;
+            else if (type == Java8Lexer.GT) depth--;
+            if (depth <= 0) return i+1;
+        }
+        return i;
+    }
+
+    private static int skipParentheses(List<Token> tokens, int i) {
+        int depth = 0;
+        for (; tokens.get(i).getType() != Token.EOF; i++) {
+            int type = tokens.get(i).getType();
+            if (type == Java8Lexer.LPAREN) depth++;
+            else if (type == Java8Lexer.RPAREN) depth--;
+            if (depth == 0) return i+1;
+        }
+        return i;
+    }
+
+    private static List<String> splitNames(String names) {
+        List<String> list = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (!name.isEmpty()) list.add(name);
+        }
+        return list;
+    }
+
+    private static String joinNames(List<String> names) {
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<String> it = names.iterator(); it.hasNext(); ) {
+            sb.append(it.next());
+            if (it.hasNext()) sb.append(',');
+        }
+        return sb.toString();
+    }
+
+}
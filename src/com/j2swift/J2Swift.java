@@ -4,12 +4,25 @@ import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.tree.*;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 
 /**
  * Main class for the Java to Swift converter
@@ -17,37 +30,538 @@ import java.io.PrintWriter;
  */
 public class J2Swift {
 	public static void main(String[] args) throws IOException {
-		String inputFile = null;
-		if (args.length > 0) inputFile = args[0];
+		int streamWindow = 0;
+		int numThreads = 1;
+		String indexFile = null;
+		boolean structs = false;
+		boolean intEnums = true;
+		boolean genericProtocols = false;
+		boolean inferAccess = false;
+		boolean errors = false;
+		boolean tasks = false;
+		boolean ownership = false;
+		List<String> trapPackages = new ArrayList<>();
+		String publicApiFile = null;
+		TranslatorConfig.LockStyle lockStyle = TranslatorConfig.LockStyle.RECURSIVE;
+		Map<String, String> arrayTypes = new HashMap<>();
+		List<String> inputFiles = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.equals("--stream")) {
+				streamWindow = StreamingTranslator.DEFAULT_WINDOW;
+			}
+			else if (arg.startsWith("--stream=")) {
+				streamWindow = Integer.parseInt(arg.substring("--stream=".length()));
+			}
+			else if (arg.equals("--parallel")) {
+				numThreads = Runtime.getRuntime().availableProcessors();
+			}
+			else if (arg.startsWith("--parallel=")) {
+				numThreads = Integer.parseInt(arg.substring("--parallel=".length()));
+			}
+			else if (arg.startsWith("--arrays=")) {
+				// --arrays=[package=]type, e.g. --arrays=com.acme.math=ContiguousArray
+				String setting = arg.substring("--arrays=".length());
+				int eq = setting.indexOf('=');
+				arrayTypes.put(eq == -1 ? "" : setting.substring(0, eq), setting.substring(eq+1));
+			}
+			else if (arg.equals("--structs")) {
+				structs = true;
+			}
+			else if (arg.equals("--plain-enums")) {
+				intEnums = false;
+			}
+			else if (arg.equals("--generic-protocols")) {
+				genericProtocols = true;
+			}
+			else if (arg.startsWith("--locks=")) {
+				lockStyle = TranslatorConfig.LockStyle.valueOf(arg.substring("--locks=".length()).toUpperCase());
+			}
+			else if (arg.equals("--infer-access")) {
+				inferAccess = true;
+			}
+			else if (arg.startsWith("--public-api=")) {
+				// implies --infer-access
+				inferAccess = true;
+				publicApiFile = arg.substring("--public-api=".length());
+			}
+			else if (arg.equals("--errors")) {
+				errors = true;
+			}
+			else if (arg.equals("--tasks")) {
+				tasks = true;
+			}
+			else if (arg.equals("--ownership")) {
+				ownership = true;
+			}
+			else if (arg.equals("--trap-unchecked")) {
+				trapPackages.add("");
+			}
+			else if (arg.startsWith("--trap-unchecked=")) {
+				trapPackages.add(arg.substring("--trap-unchecked=".length()));
+			}
+			else if (arg.startsWith("--index=")) {
+				indexFile = arg.substring("--index=".length());
+			}
+			else {
+				inputFiles.add(arg);
+			}
+		}
+		if (inputFiles.isEmpty()) {
+			inputFiles.add(null);
+		}
+
+		// the config and the type cache are shared by all files so that types
+		// repeated across the whole batch are only translated once
+		TranslatorConfig.Builder builder = TranslatorConfig.DEFAULT.toBuilder();
+		for (Map.Entry<String, String> e : arrayTypes.entrySet()) {
+			builder.arrayType(e.getKey(), e.getValue());
+		}
+		builder.valueStructs(structs);
+		builder.intEnums(intEnums);
+		builder.lockStyle(lockStyle);
+		builder.structuredConcurrency(tasks);
+		builder.ownership(ownership);
+		for (String trapPackage : trapPackages) {
+			builder.trapUnchecked(trapPackage);
+		}
+		List<String> javaFiles = new ArrayList<>(inputFiles);
+		javaFiles.remove(null);
+		HierarchyIndex index = null;
+		if (indexFile != null || genericProtocols || errors) {
+			// without an index file, only the files being translated are indexed
+			index = indexFile == null ? new HierarchyIndex() : HierarchyIndex.load(new File(indexFile));
+			index.update(javaFiles);
+			if (indexFile != null) {
+				// classes that nothing in the indexed corpus extends become final
+				index.save(new File(indexFile));
+				builder.subclassedNames(index.subclassedNames());
+			}
+			if (genericProtocols) {
+				builder.genericProtocols(index.interfaceNames());
+			}
+			if (errors) {
+				// checked exception hierarchies become error enums
+				builder.exceptions(new ExceptionHierarchy(index.superclassMap()));
+			}
+		}
+		if (inferAccess) {
+			// the corpus is every indexed file, or else the files being translated
+			AccessIndex accessIndex = new AccessIndex();
+			accessIndex.scan(index == null ? javaFiles : index.files());
+			builder.sharedNames(accessIndex.sharedNames());
+			builder.corpusTypes(accessIndex.typeNames());
+			if (publicApiFile != null) {
+				builder.publicApi(readNames(publicApiFile));
+			}
+		}
+		// enums and interface constants are used all over, but translated
+		// differently from other types and fields, and the arithmetic on
+		// fields depends on their types
+		Set<String> enumNames = new HashSet<>();
+		Set<String> interfaceConstants = new HashSet<>();
+		Map<String, String> fieldTypes = new HashMap<>();
+		Set<String> classMonitors = new HashSet<>();
+		Set<String> instanceMonitors = new HashSet<>();
+		scanDeclarations(javaFiles, enumNames, interfaceConstants, fieldTypes, classMonitors, instanceMonitors);
+		builder.enumNames(enumNames);
+		builder.interfaceConstants(interfaceConstants);
+		builder.fieldTypes(fieldTypes);
+		builder.monitors(classMonitors, instanceMonitors);
+		TranslatorConfig config = builder.build();
+		if (errors && !javaFiles.isEmpty()) {
+			// the cases are created and declared in different files
+			scanErrorValues(javaFiles, config);
+		}
+		if (structs && !javaFiles.isEmpty()) {
+			// structs are values wherever they are used, so all of them have to
+			// be known before anything is translated
+			config = scanStructs(javaFiles, config);
+		}
+		TypeCache typeCache = new TypeCache();
+		for (String inputFile : inputFiles) {
+			if (streamWindow > 0) {
+				translateStreaming(inputFile, streamWindow, config, typeCache);
+			}
+			else {
+				translate(inputFile, numThreads, config, typeCache);
+			}
+		}
+	}
+
+	/**
+	 * Finds the classes of the given files that are emitted as structs. The
+	 * candidates are the classes that meet the criteria of a struct, and
+	 * those that have code that can't be translated when the others are
+	 * structs stay classes, until none has. Each file is parsed and
+	 * translated one top-level declaration at a time, like with --stream.
+	 * @return the config with the structs set
+	 */
+	private static TranslatorConfig scanStructs(List<String> javaFiles, TranslatorConfig config) throws IOException {
+		final Map<String, List<String>> fieldTypes = new HashMap<>();
+		for (String javaFile : javaFiles) {
+			final J2SwiftListener listener = new J2SwiftListener(config, new TypeCache());
+			InputStream is = new FileInputStream(javaFile);
+			try {
+				StreamingTranslator.parse(is, StreamingTranslator.DEFAULT_WINDOW, listener,
+							new Consumer<Java8Parser.TypeDeclarationContext>() {
+					@Override
+					public void accept(Java8Parser.TypeDeclarationContext decl) {
+						listener.findStructs(decl, fieldTypes);
+					}
+				});
+			}
+			finally {
+				is.close();
+			}
+		}
+		while (true) {
+			TranslatorConfig candidate = config.toBuilder().structNames(fieldTypes.keySet(),
+						J2SwiftListener.equatableStructs(fieldTypes)).build();
+			Set<String> untranslated = new HashSet<>();
+			for (String javaFile : javaFiles) {
+				final J2SwiftListener listener = new J2SwiftListener(candidate, new TypeCache());
+				final ParseTreeWalker walker = new ParseTreeWalker();
+				InputStream is = new FileInputStream(javaFile);
+				try {
+					StreamingTranslator.parse(is, StreamingTranslator.DEFAULT_WINDOW, listener,
+								new Consumer<Java8Parser.TypeDeclarationContext>() {
+						@Override
+						public void accept(Java8Parser.TypeDeclarationContext decl) {
+							walker.walk(listener, decl);
+							listener.drainCode();
+						}
+					});
+				}
+				finally {
+					is.close();
+				}
+				untranslated.addAll(listener.untranslatedTypes());
+			}
+			if (!fieldTypes.keySet().removeAll(untranslated)) return candidate;
+		}
+	}
+
+	/**
+	 * Finds the fields of the checked exceptions of the given files that the
+	 * cases of their error enums carry, and adds them to the exceptions of
+	 * the config. Each file is parsed one top-level declaration at a time,
+	 * like with --stream.
+	 */
+	private static void scanErrorValues(List<String> javaFiles, TranslatorConfig config) throws IOException {
+		for (String javaFile : javaFiles) {
+			final J2SwiftListener listener = new J2SwiftListener(config, new TypeCache());
+			InputStream is = new FileInputStream(javaFile);
+			try {
+				StreamingTranslator.parse(is, StreamingTranslator.DEFAULT_WINDOW, listener,
+							new Consumer<Java8Parser.TypeDeclarationContext>() {
+					@Override
+					public void accept(Java8Parser.TypeDeclarationContext decl) {
+						listener.findErrorValues(decl);
+					}
+				});
+			}
+			finally {
+				is.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads a list of names, one per line; blank lines and lines starting
+	 * with '#' are skipped
+	 */
+	private static Set<String> readNames(String file) throws IOException {
+		Set<String> names = new HashSet<>();
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) names.add(line);
+			}
+		}
+		finally {
+			br.close();
+		}
+		return names;
+	}
+
+	private static final Set<Integer> PRIMITIVE_TOKENS = new HashSet<>(Arrays.asList(Java8Lexer.BOOLEAN,
+				Java8Lexer.BYTE, Java8Lexer.SHORT, Java8Lexer.INT, Java8Lexer.LONG, Java8Lexer.CHAR, Java8Lexer.FLOAT,
+				Java8Lexer.DOUBLE));
+
+	/**
+	 * Finds the enums, the interface constants, the fields of primitive types
+	 * and the monitors of synchronized blocks in the given files. The tokens
+	 * are looked at one at a time, so that even huge files are scanned in
+	 * memory that grows with the number of distinct names, not with the size
+	 * of the files.
+	 * @param enumNames where to add the simple names of the enums
+	 * @param interfaceConstants where to add the constants of the interfaces,
+	 * as "Interface.CONSTANT"
+	 * @param fieldTypes where to add the primitive fields and constants of the
+	 * classes and interfaces, as "Type.field", with their java types
+	 * @param classMonitors where to add the classes whose class literals are
+	 * synchronized on
+	 * @param instanceMonitors where to add the classes whose instances are
+	 * synchronized on, which are told by the declared types of the names that
+	 * synchronized blocks use
+	 */
+	private static void scanDeclarations(List<String> javaFiles, Set<String> enumNames,
+				Set<String> interfaceConstants, Map<String, String> fieldTypes, Set<String> classMonitors,
+				Set<String> instanceMonitors) throws IOException {
+		Set<String> classes = new HashSet<>();
+		Set<String> monitorNames = new HashSet<>();
+		// the types each name is declared with, anywhere
+		Map<String, Set<String>> declaredTypes = new HashMap<>();
+		for (String javaFile : javaFiles) {
+			Java8Lexer lexer = new Java8Lexer(CharStreams.fromFileName(javaFile));
+			lexer.removeErrorListeners();
+			// the interfaces whose bodies the scan is in, and their brace depths
+			List<String> interfaces = new ArrayList<>();
+			List<Integer> interfaceDepths = new ArrayList<>();
+			String pendingInterface = null;
+			// and the same for the classes and interfaces, whose bodies hold
+			// the fields, with the primitive type of the field declaration
+			// the scan is in and the last name it declares
+			List<String> types = new ArrayList<>();
+			List<Integer> typeDepths = new ArrayList<>();
+			String pendingType = null;
+			String fieldType = null;
+			String fieldName = null;
+			// the tokens of the monitor of the synchronized block the scan is in,
+			// the parentheses around it, and the last declaration of a name
+			List<Token> monitor = null;
+			int monitorParens = 0;
+			String declaredType = null;
+			String declaredName = null;
+			int depth = 0;
+			int parens = 0;
+			Token previous = null;
+			int beforePrevious = Token.EOF;
+			for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+				if (token.getChannel() != Token.DEFAULT_CHANNEL) continue;
+				int previousType = previous == null ? Token.EOF : previous.getType();
+				int last = interfaces.size()-1;
+				boolean inTypeBody = !types.isEmpty() && typeDepths.get(types.size()-1) == depth && parens == 0;
+				if (inTypeBody && fieldName != null) {
+					// a name followed by one of these is a field, not a method
+					int type = token.getType();
+					if (type == Java8Lexer.ASSIGN || type == Java8Lexer.SEMI || type == Java8Lexer.COMMA) {
+						fieldTypes.put(types.get(types.size()-1) + "." + fieldName, fieldType);
+					}
+					fieldName = null;
+				}
+				if (inTypeBody && PRIMITIVE_TOKENS.contains(token.getType())) {
+					fieldType = token.getText();
+				}
+				if (declaredName != null) {
+					// a name after a type is declared if one of these follows
+					int type = token.getType();
+					if (type == Java8Lexer.ASSIGN || type == Java8Lexer.SEMI || type == Java8Lexer.COMMA
+								|| type == Java8Lexer.RPAREN || type == Java8Lexer.COLON) {
+						Set<String> declared = declaredTypes.get(declaredName);
+						if (declared == null) {
+							declared = new HashSet<>();
+							declaredTypes.put(declaredName, declared);
+						}
+						declared.add(declaredType);
+					}
+					declaredName = null;
+				}
+				switch (token.getType()) {
+				case Java8Lexer.Identifier:
+					if (previousType == Java8Lexer.ENUM) {
+						enumNames.add(token.getText());
+					}
+					else if (previousType == Java8Lexer.INTERFACE && beforePrevious != Java8Lexer.AT) {
+						pendingInterface = token.getText();
+						pendingType = token.getText();
+					}
+					else if (previousType == Java8Lexer.CLASS) {
+						pendingType = token.getText();
+						classes.add(token.getText());
+					}
+					else if (inTypeBody && fieldType != null && (PRIMITIVE_TOKENS.contains(previousType)
+								|| previousType == Java8Lexer.COMMA)) {
+						fieldName = token.getText();
+					}
+					else if (previousType == Java8Lexer.Identifier) {
+						declaredType = previous.getText();
+						declaredName = token.getText();
+					}
+					break;
+				case Java8Lexer.SEMI:
+				case Java8Lexer.LBRACK:
+					if (inTypeBody) fieldType = null;
+					break;
+				case Java8Lexer.ASSIGN:
+					// a constant is the only thing assigned directly in an interface body
+					if (previousType == Java8Lexer.Identifier && last >= 0 && interfaceDepths.get(last) == depth
+								&& parens == 0) {
+						interfaceConstants.add(interfaces.get(last) + "." + previous.getText());
+					}
+					break;
+				case Java8Lexer.LPAREN:
+					if (inTypeBody) fieldType = null;
+					parens++;
+					break;
+				case Java8Lexer.RPAREN:
+					parens--;
+					break;
+				case Java8Lexer.LBRACE:
+					if (inTypeBody) fieldType = null;
+					depth++;
+					if (pendingInterface != null) {
+						interfaces.add(pendingInterface);
+						interfaceDepths.add(depth);
+						pendingInterface = null;
+					}
+					if (pendingType != null) {
+						types.add(pendingType);
+						typeDepths.add(depth);
+						pendingType = null;
+					}
+					break;
+				case Java8Lexer.RBRACE:
+					if (last >= 0 && interfaceDepths.get(last) == depth) {
+						interfaces.remove(last);
+						interfaceDepths.remove(last);
+					}
+					int lastType = types.size()-1;
+					if (lastType >= 0 && typeDepths.get(lastType) == depth) {
+						types.remove(lastType);
+						typeDepths.remove(lastType);
+					}
+					depth--;
+					break;
+				}
+				if (monitor != null) {
+					if (token.getType() == Java8Lexer.RPAREN && parens == monitorParens) {
+						addMonitor(monitor, classMonitors, monitorNames);
+						monitor = null;
+					}
+					else {
+						monitor.add(token);
+					}
+				}
+				if (token.getType() == Java8Lexer.LPAREN && previousType == Java8Lexer.SYNCHRONIZED) {
+					monitor = new ArrayList<>();
+					monitorParens = parens-1;
+				}
+				beforePrevious = previousType;
+				previous = token;
+			}
+		}
+		classMonitors.retainAll(classes);
+		for (String name : monitorNames) {
+			Set<String> declared = declaredTypes.get(name);
+			if (declared == null) continue;
+			for (String type : declared) {
+				if (classes.contains(type)) instanceMonitors.add(type);
+			}
+		}
+	}
+
+	/**
+	 * Notes the monitor of a synchronized block: a class literal, X.class, or
+	 * a name, either on its own or as this.name
+	 * @param monitor the tokens of the monitor
+	 * @param classMonitors where to add the class of a class literal
+	 * @param monitorNames where to add a name
+	 */
+	private static void addMonitor(List<Token> monitor, Set<String> classMonitors, Set<String> monitorNames) {
+		int size = monitor.size();
+		if (size >= 3 && monitor.get(size-1).getType() == Java8Lexer.CLASS
+					&& monitor.get(size-2).getType() == Java8Lexer.DOT) {
+			classMonitors.add(monitor.get(size-3).getText());
+		}
+		else if (size == 1 && monitor.get(0).getType() == Java8Lexer.Identifier
+					|| size == 3 && monitor.get(0).getType() == Java8Lexer.THIS
+					&& monitor.get(2).getType() == Java8Lexer.Identifier) {
+			monitorNames.add(monitor.get(size-1).getText());
+		}
+	}
+
+	/**
+	 * Translates a single java file and writes the result to
+	 * "[inputFile].swift"
+	 * @param inputFile java file to translate, or null to read from stdin
+	 * @param numThreads number of top-level declarations to translate at once
+	 * @param config translation settings
+	 * @param typeCache cache of already translated types
+	 */
+	private static void translate(String inputFile, int numThreads, TranslatorConfig config, TypeCache typeCache) throws IOException {
 		InputStream is = System.in;
 		if (inputFile != null)
 			is = new FileInputStream(inputFile);
 		ANTLRInputStream input = new ANTLRInputStream(is);
 
-		Java8Lexer lexer = new Java8Lexer(input);
-		CommonTokenStream tokens = new CommonTokenStream(lexer);
-		Java8Parser parser = new Java8Parser(tokens);
-		ParserRuleContext tree = parser.compilationUnit();
-		ParseTreeWalker walker = new ParseTreeWalker();
-		J2SwiftListener listener = new J2SwiftListener();
-		walker.walk(listener, tree);
+		List<J2SwiftListener> listeners;
+		if (numThreads > 1) {
+			listeners = new ParallelTranslator(numThreads, config, typeCache).translate(input);
+		}
+		else {
+			Java8Lexer lexer = new Java8Lexer(input);
+			lexer.setTokenFactory(new CompactTokenFactory());
+			CommonTokenStream tokens = new CommonTokenStream(lexer);
+			Java8Parser parser = new Java8Parser(tokens);
+			ParserRuleContext tree = parser.compilationUnit();
+			ParseTreeWalker walker = new ParseTreeWalker();
+			J2SwiftListener listener = new J2SwiftListener(config, typeCache);
+			walker.walk(listener, tree);
+			listeners = Collections.singletonList(listener);
+		}
 
-		int numProtected = listener.numProtected();
+		int numProtected = 0;
+		for (J2SwiftListener listener : listeners) {
+			numProtected += listener.numProtected();
+		}
 		if (numProtected != 0) {
 			System.out.println("Encountered " + numProtected + " \"protected(s)\"");
 			System.out.print("Replace with the \"internal\" keyword (no for \"private\")? [Y/n] ");
 			BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
 			int response = br.read();
-			if (response == 'n') {
-				listener.replaceProtected(false);
-			}
-			else {
-				listener.replaceProtected(true);
+			for (J2SwiftListener listener : listeners) {
+				listener.replaceProtected(response != 'n');
 			}
 		}
 
+		StringBuilder swiftCode = new StringBuilder();
+		Set<String> modules = new TreeSet<>();
+		for (J2SwiftListener listener : listeners) {
+			swiftCode.append(listener.drainCode());
+			modules.addAll(listener.modules());
+		}
+		if (swiftCode.length() != 0) {
+			swiftCode.insert(0, J2SwiftListener.imports(modules));
+		}
 		PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(inputFile+".swift")));
-		pw.println(listener.swiftCode());
+		pw.println(swiftCode);
 		pw.close();
 	}
+
+	/**
+	 * Translates a single java file in bounded memory, writing the result to
+	 * "[inputFile].swift" as it goes
+	 * @param inputFile java file to translate, or null to read from stdin
+	 * @param window size of the char and token windows
+	 * @param config translation settings
+	 * @param typeCache cache of already translated types
+	 */
+	private static void translateStreaming(String inputFile, int window, TranslatorConfig config, TypeCache typeCache) throws IOException {
+		InputStream is = System.in;
+		if (inputFile != null)
+			is = new FileInputStream(inputFile);
+
+		Writer out = new BufferedWriter(new FileWriter(inputFile+".swift"));
+		StreamingTranslator translator = new StreamingTranslator(window, config, typeCache);
+		int numProtected = translator.translate(is, out);
+		out.close();
+		is.close();
+
+		if (numProtected != 0) {
+			System.out.println("Replaced " + numProtected + " \"protected(s)\" with the \"internal\" keyword");
+		}
+	}
 }
@@ -1,53 +1,48 @@
 package com.j2swift;
 
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import static com.j2swift.Java8Parser.*;
 
 /**
  * Actual "behind-the-scenes" java to swift converter that processes
- * the parse tree for the java file and gives back swift code
+ * the parse tree for the java file and gives back swift code.
+ * A listener holds the state of the one file it is translating, so each file
+ * needs a listener of its own, used by one thread at a time. The
+ * TranslatorConfig and TypeCache it is given are thread-safe and can be shared
+ * by any number of listeners.
  * @author Eyob Tsegaye
  */
 public class J2SwiftListener extends Java8BaseListener {
 
-    private static Map<String, String> typeMap = new HashMap<>();
-    private static Map<String, String> modifierMap = new HashMap<>();
-
-    static {
-        typeMap.put("boolean", "Bool");
-        typeMap.put("Boolean", "Bool");
-        typeMap.put("byte", "Int8");
-        typeMap.put("Byte", "Int8");
-        typeMap.put("short", "Int16");
-        typeMap.put("Short", "Int16");
-        typeMap.put("int", "Int32");
-        typeMap.put("Integer", "Int32");
-        typeMap.put("long", "Int64");
-        typeMap.put("Long", "Int64");
-        typeMap.put("float", "Float");
-        typeMap.put("Float", "Float");
-        typeMap.put("double", "Double");
-        typeMap.put("Double", "Double");
-        typeMap.put("char", "Character");
-        typeMap.put("Character", "Character");
-        typeMap.put("String", "String");
-
-        modifierMap.put("public", "public");
-        modifierMap.put("protected", "2public");    // will ask user in a later process
-        modifierMap.put("private", "private");
-        modifierMap.put("abstract", "error");
-        modifierMap.put("static", "static");
-        modifierMap.put("final", "final");
-        modifierMap.put("strictfp", "error");
-        modifierMap.put("transient", "error");
-        modifierMap.put("volatile", "error");
-        modifierMap.put("synchronized", "error");
-        modifierMap.put("native", "error");
-        modifierMap.put("default", "error");
-    }
+    /** header of every translated file */
+    public static final String IMPORTS = "import Foundation\n\n";
+
+    /** memory ordering of atomic accesses, the same as that of java volatiles */
+    static final String ATOMIC_ORDERING = ".sequentiallyConsistent";
+
+    /** suffix of the enum that holds the constants of a protocol */
+    static final String CONSTANTS_SUFFIX = "Constants";
+
+    private final TranslatorConfig config;
+    private final Map<String, String> typeMap;
+    private final Map<String, String> modifierMap;
 
     private StringBuilder code = new StringBuilder();
 
@@ -55,13 +50,124 @@ public class J2SwiftListener extends Java8BaseListener {
     private boolean skipping = false;
     private int skipDepth;
 
+    private final TypeCache typeCache;
+    private int typeStart;
+
+    private String packageName = "";
+    private final ConstantFolder constants = new ConstantFolder();
+    private final ExpressionTranslator expressions;
+    private Scope scope = new Scope(null);
+    private String declaratorType;
+    private Map<UnannTypeContext, String> genericParamTypes = new HashMap<>();
+
+    private final Set<String> modules = new TreeSet<>();
+    // types of the volatile fields of the declaration, keyed by "Class.field"
+    private final Map<String, String> atomicFields = new HashMap<>();
+    // classes with code that was left untranslated
+    private final Set<String> untranslatedTypes = new HashSet<>();
+    // nested types of the declaration that are declared private
+    private final Set<String> privateTypes = new HashSet<>();
+    private boolean isStruct;
+    // structs of the declaration whose fields all conform to Equatable
+    private Set<String> equatableStructs = Collections.emptySet();
+
+    // code that opens and closes the bodies of compound statements, keyed by
+    // the body, and code that ends a compound statement, keyed by the statement
+    private final Map<ParserRuleContext, String> bodyHeads = new HashMap<>();
+    private final Map<ParserRuleContext, String> bodyTails = new HashMap<>();
+    private final Map<ParserRuleContext, String> statementTails = new HashMap<>();
+    // declarations whose access level was inferred instead of translated
+    private final Set<ParserRuleContext> inferredAccess = new HashSet<>();
+    // parameters of functional interface types that swift has to mark @escaping
+    private final Set<FormalParameterContext> escapingParams = new HashSet<>();
+    // ownership modifiers of parameters of value types
+    private final Map<FormalParameterContext, String> paramOwnership = new HashMap<>();
+    // positions of the inout parameters of the methods of each class body
+    private final Map<ClassBodyContext, Map<String, Set<Integer>>> inoutParams = new HashMap<>();
+    // variables and methods of boxed types that may be null, so they're optionals
+    private final Set<ParserRuleContext> nullable = new HashSet<>();
+    // statements that follow the local variable declaration being translated
+    private final List<String> pendingStatements = new ArrayList<>();
+    // finally blocks that were already emitted as the defer of their try statement
+    private final Set<Finally_Context> deferred = new HashSet<>();
+    // methods of the class being translated that become async functions
+    private Set<String> asyncMethods = Collections.emptySet();
+    // calls to local executors that become calls to their task group: "add"
+    // to add a task, "}" to end the group, or "" to leave the call out; or
+    // "result" for adding a submitted task to a list of futures that is a group
+    private final Map<ExpressionStatementContext, String> executorCalls = new HashMap<>();
+    // local variable declarations that were moved in front of the task group
+    // they're in, so they can be used after it
+    private final Set<LocalVariableDeclarationContext> hoisted = new HashSet<>();
+    // constants of the interfaces being translated, which are moved out of
+    // their protocols since swift protocols can't hold values; and the access
+    // modifiers of the protocols
+    private final Deque<StringBuilder> protocolConstants = new ArrayDeque<>();
+    private final Deque<String> protocolAccess = new ArrayDeque<>();
+    private int constantStart;
+
+    public J2SwiftListener() {
+        this(TranslatorConfig.DEFAULT, new TypeCache());
+    }
+
+    /**
+     * @param config translation settings, which may be shared with other
+     * listeners
+     * @param typeCache cache of already translated types, which may be shared
+     * with other listeners using the same config
+     */
+    public J2SwiftListener(TranslatorConfig config, TypeCache typeCache) {
+        this.config = config;
+        this.typeMap = config.typeMap();
+        this.modifierMap = config.modifierMap();
+        this.typeCache = typeCache;
+        this.expressions = new ExpressionTranslator(config, constants);
+        expressions.setArrayType(config.arrayType(packageName));
+    }
+
     /**
      * Returns the swift code to be outputted to a file, or the empty string if
      * the tree hasn't been walked with this listener.
      * @return swift code as a giant String
      */
     public String swiftCode() {
-        return code.length() == 0 ? code.toString() :  code.insert(0, "import Foundation\n\n").toString();
+        return code.length() == 0 ? code.toString() :  code.insert(0, imports(modules)).toString();
+    }
+
+    /**
+     * Returns the modules besides Foundation that the translated code needs,
+     * e.g. Atomics for volatile fields
+     * @return names of the modules, in order
+     */
+    public Set<String> modules() {
+        return modules;
+    }
+
+    /**
+     * Makes the header of a translated file
+     * @param modules modules needed besides Foundation
+     * @return the import statements, followed by a blank line
+     */
+    public static String imports(Set<String> modules) {
+        if (modules.isEmpty()) return IMPORTS;
+        StringBuilder sb = new StringBuilder("import Foundation\n");
+        for (String module : modules) {
+            sb.append("import ").append(module).append('\n');
+        }
+        return sb.append('\n').toString();
+    }
+
+    /**
+     * Returns the swift code emitted since the last call and clears it, without
+     * the import header that swiftCode() adds; see modules() for what the
+     * header needs to import. Used to write out large files one
+     * top-level declaration at a time.
+     * @return swift code emitted since the last call
+     */
+    public String drainCode() {
+        String text = code.toString();
+        code.setLength(0);
+        return text;
     }
 
     public int numProtected() {
@@ -84,6 +190,17 @@ public class J2SwiftListener extends Java8BaseListener {
         }
     }
 
+    /**
+     * Sets the package of the code being translated, for translators that parse
+     * declarations without the package declaration of their file
+     * @param packageName package name, or the empty string for the default
+     * package
+     */
+    public void setPackageName(String packageName) {
+        this.packageName = packageName;
+        expressions.setArrayType(config.arrayType(packageName));
+    }
+
     private boolean shouldSkipExit() {
         if (skipping) {
             if (skipDepth == depth) {
@@ -106,13 +223,501 @@ public class J2SwiftListener extends Java8BaseListener {
         skipDepth = depth;
     }
 
+    @Override
+    public void enterPackageDeclaration(PackageDeclarationContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        StringBuilder name = new StringBuilder();
+        for (TerminalNode identifier : ctx.Identifier()) {
+            if (name.length() != 0) name.append('.');
+            name.append(identifier.getText());
+        }
+        setPackageName(name.toString());
+    }
+
+    @Override
+    public void exitPackageDeclaration(PackageDeclarationContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterTypeDeclaration(TypeDeclarationContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        // constants are only folded within a top-level declaration, so that
+        // translating declarations one by one or in parallel gives the same code
+        constants.clear();
+        // structs are compared by value, those of all the files if they were
+        // scanned for, or else those of the declaration
+        Set<String> structs = new HashSet<>();
+        if (config.structNames() != null) structs.addAll(config.structNames());
+        else if (config.valueStructs()) findStructs(ctx, structs);
+        expressions.setStructs(structs);
+        // which swift can only do for those that are Equatable
+        equatableStructs = config.equatableStructs() != null ? config.equatableStructs()
+                    : equatableStructs(ctx, structs);
+        expressions.setEquatableStructs(equatableStructs);
+        // ordinal() and values() are only rewritten on the enums declared here
+        Set<String> enums = new HashSet<>(config.enumNames());
+        findEnums(ctx, enums);
+        expressions.setEnums(enums);
+        // and interface constants are accessed through their namespace
+        Set<String> interfaceConstants = new HashSet<>(config.interfaceConstants());
+        findInterfaceConstants(ctx, interfaceConstants);
+        expressions.setInterfaceConstants(interfaceConstants);
+        // accesses through a class name or another instance are lowered too
+        atomicFields.clear();
+        findAtomicFields(ctx);
+        expressions.setAtomicFields(atomicFields);
+        // as are the types of the other fields, so their arithmetic wraps
+        Map<String, String> fieldTypes = new HashMap<>(config.fieldTypes());
+        findPrimitiveFields(ctx, fieldTypes);
+        expressions.setFieldTypes(fieldTypes);
+        // inferred access levels never widen a private nested type
+        privateTypes.clear();
+        if (config.sharedNames() != null) findPrivateTypes(ctx);
+    }
+
+    /**
+     * Finds the volatile fields declared in a tree, which are translated to
+     * atomics
+     */
+    private void findAtomicFields(ParseTree tree) {
+        if (tree instanceof FieldDeclarationContext) {
+            FieldDeclarationContext field = (FieldDeclarationContext) tree;
+            if (hasModifier(field.fieldModifier(), "volatile")) {
+                for (VariableDeclaratorContext declarator : field.variableDeclaratorList().variableDeclarator()) {
+                    atomicFields.put(enclosingTypeName(field) + "." + declarator.variableDeclaratorId().getText(),
+                                field.unannType().getText());
+                }
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findAtomicFields(tree.getChild(i));
+        }
+    }
+
+    /**
+     * Finds the fields and interface constants of primitive types declared in
+     * a tree
+     * @param types where to add the fields, as "Type.field", with their java
+     * types
+     */
+    private static void findPrimitiveFields(ParseTree tree, Map<String, String> types) {
+        UnannTypeContext type = null;
+        List<VariableDeclaratorContext> declarators = null;
+        if (tree instanceof FieldDeclarationContext) {
+            type = ((FieldDeclarationContext) tree).unannType();
+            declarators = ((FieldDeclarationContext) tree).variableDeclaratorList().variableDeclarator();
+        }
+        else if (tree instanceof ConstantDeclarationContext) {
+            type = ((ConstantDeclarationContext) tree).unannType();
+            declarators = ((ConstantDeclarationContext) tree).variableDeclaratorList().variableDeclarator();
+        }
+        if (type != null && type.unannPrimitiveType() != null) {
+            String owner = enclosingTypeName((ParserRuleContext) tree);
+            for (VariableDeclaratorContext declarator : declarators) {
+                // int a[] declares an array
+                if (declarator.variableDeclaratorId().dims() != null) continue;
+                types.put(owner + "." + declarator.variableDeclaratorId().Identifier().getText(), type.getText());
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findPrimitiveFields(tree.getChild(i), types);
+        }
+    }
+
+    /**
+     * Finds the enums declared in a tree
+     * @param names where to add the names of the enums
+     */
+    private void findEnums(ParseTree tree, Set<String> names) {
+        if (tree instanceof EnumDeclarationContext) {
+            names.add(((EnumDeclarationContext) tree).Identifier().getText());
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findEnums(tree.getChild(i), names);
+        }
+    }
+
+    /**
+     * Finds the constants declared in the interfaces of a tree
+     * @param names where to add the names of the constants, as
+     * "Interface.CONSTANT"
+     */
+    private static void findInterfaceConstants(ParseTree tree, Set<String> names) {
+        if (tree instanceof ConstantDeclarationContext) {
+            String owner = enclosingTypeName((ConstantDeclarationContext) tree);
+            for (VariableDeclaratorContext declarator
+                        : ((ConstantDeclarationContext) tree).variableDeclaratorList().variableDeclarator()) {
+                names.add(owner + "." + declarator.variableDeclaratorId().getText());
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findInterfaceConstants(tree.getChild(i), names);
+        }
+    }
+
+    /**
+     * Finds the classes declared in a tree that are translated to structs
+     * @param names where to add the names of the classes
+     */
+    private void findStructs(ParseTree tree, Set<String> names) {
+        if (tree instanceof NormalClassDeclarationContext) {
+            NormalClassDeclarationContext decl = (NormalClassDeclarationContext) tree;
+            if (config.exceptions().errorEnum(decl.Identifier().getText()) == null
+                        && notValueClassReason(decl) == null) {
+                names.add(decl.Identifier().getText());
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findStructs(tree.getChild(i), names);
+        }
+    }
+
+    /**
+     * Finds the classes of a top-level declaration that can be structs, for a
+     * scan of all the files before they are translated
+     * @param fieldTypes where to add the classes, with the java types of
+     * their instance fields
+     */
+    public void findStructs(TypeDeclarationContext ctx, Map<String, List<String>> fieldTypes) {
+        Set<String> structs = new HashSet<>();
+        findStructs(ctx, structs);
+        findFieldTypes(ctx, structs, fieldTypes);
+    }
+
+    /**
+     * Finds the structs of a tree that can conform to Equatable, which swift
+     * synthesizes for a struct whose instance fields are all Equatable
+     * @param structs names of the structs
+     */
+    private static Set<String> equatableStructs(ParseTree tree, Set<String> structs) {
+        Map<String, List<String>> fieldTypes = new HashMap<>();
+        findFieldTypes(tree, structs, fieldTypes);
+        return equatableStructs(fieldTypes);
+    }
+
+    /**
+     * @param fieldTypes map from the structs to the java types of their
+     * instance fields
+     * @return the structs that can conform to Equatable
+     */
+    public static Set<String> equatableStructs(Map<String, List<String>> fieldTypes) {
+        Set<String> names = new HashSet<>(fieldTypes.keySet());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, List<String>> e : fieldTypes.entrySet()) {
+                if (!names.contains(e.getKey())) continue;
+                for (String type : e.getValue()) {
+                    if (!ExpressionTranslator.isEquatable(type, names)) {
+                        names.remove(e.getKey());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    private static void findFieldTypes(ParseTree tree, Set<String> structs, Map<String, List<String>> fieldTypes) {
+        if (tree instanceof NormalClassDeclarationContext
+                    && structs.contains(((NormalClassDeclarationContext) tree).Identifier().getText())) {
+            NormalClassDeclarationContext decl = (NormalClassDeclarationContext) tree;
+            List<String> types = new ArrayList<>();
+            for (ClassBodyDeclarationContext bodyDecl : decl.classBody().classBodyDeclaration()) {
+                ClassMemberDeclarationContext member = bodyDecl.classMemberDeclaration();
+                if (member == null || member.fieldDeclaration() == null) continue;
+                FieldDeclarationContext field = member.fieldDeclaration();
+                if (!hasModifier(field.fieldModifier(), "static")) types.add(field.unannType().getText());
+            }
+            fieldTypes.put(decl.Identifier().getText(), types);
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findFieldTypes(tree.getChild(i), structs, fieldTypes);
+        }
+    }
+
+    /**
+     * Finds the values that the cases of the exception classes of a top-level
+     * declaration carry besides the message and the cause, for a scan of all
+     * the files before they are translated. These are the final instance
+     * fields without an initializer that the constructors set from their
+     * parameters, and the exceptions of {@link TranslatorConfig#exceptions()}
+     * get them.
+     */
+    public void findErrorValues(ParseTree tree) {
+        if (tree instanceof NormalClassDeclarationContext) {
+            NormalClassDeclarationContext decl = (NormalClassDeclarationContext) tree;
+            String name = decl.Identifier().getText();
+            if (config.exceptions().errorEnum(name) != null) {
+                Map<String, String> fields = caseFields(decl);
+                if (!fields.isEmpty()) {
+                    List<List<String>> constructors = new ArrayList<>();
+                    for (ClassBodyDeclarationContext bodyDecl : decl.classBody().classBodyDeclaration()) {
+                        if (bodyDecl.constructorDeclaration() == null) continue;
+                        List<String> params = caseConstructor(bodyDecl.constructorDeclaration(), fields);
+                        if (params != null) constructors.add(params);
+                    }
+                    config.exceptions().addValues(name, fields, constructors);
+                }
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findErrorValues(tree.getChild(i));
+        }
+    }
+
+    /**
+     * @return the final instance fields without an initializer of an exception
+     * class whose type can be translated, in order, with their java types
+     */
+    private Map<String, String> caseFields(NormalClassDeclarationContext decl) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (ClassBodyDeclarationContext bodyDecl : decl.classBody().classBodyDeclaration()) {
+            ClassMemberDeclarationContext member = bodyDecl.classMemberDeclaration();
+            if (member == null || member.fieldDeclaration() == null) continue;
+            FieldDeclarationContext field = member.fieldDeclaration();
+            if (hasModifier(field.fieldModifier(), "static") || !hasModifier(field.fieldModifier(), "final")
+                        || expressions.translateType(field.unannType().getText()) == null) continue;
+            for (VariableDeclaratorContext var : field.variableDeclaratorList().variableDeclarator()) {
+                if (var.variableInitializer() == null && var.variableDeclaratorId().dims() == null) {
+                    fields.put(var.variableDeclaratorId().getText(), field.unannType().getText());
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * @return what each parameter of the constructor of an exception class is,
+     * "message", "cause" or the name of the field it's assigned to, or null if
+     * the constructor does anything else or doesn't set all of the fields. The
+     * body may only pass the message and cause on to the superclass and
+     * assign parameters to the fields, e.g. super(message); this.pos = pos;
+     */
+    private List<String> caseConstructor(ConstructorDeclarationContext constructor, Map<String, String> fields) {
+        Map<String, String> roles = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        FormalParameterListContext paramList = constructor.constructorDeclarator().formalParameterList();
+        if (paramList != null) {
+            if (paramList.lastFormalParameter().formalParameter() == null) return null;
+            List<FormalParameterContext> params = new ArrayList<>();
+            if (paramList.formalParameters() != null) params.addAll(paramList.formalParameters().formalParameter());
+            params.add(paramList.lastFormalParameter().formalParameter());
+            for (FormalParameterContext param : params) {
+                String type = param.unannType().getText();
+                String name = param.variableDeclaratorId().getText();
+                names.add(name);
+                if (type.equals("String")) roles.put(name, "message");
+                else if (expressions.isError(type)) roles.put(name, "cause");
+            }
+        }
+        ConstructorBodyContext body = constructor.constructorBody();
+        Set<String> passedOn = new HashSet<>();
+        if (body.explicitConstructorInvocation() != null) {
+            List<Token> tokens = Util.terminals(body.explicitConstructorInvocation());
+            if (tokens.get(0).getType() != Java8Lexer.SUPER) return null;
+            for (int i = 2; i < tokens.size()-2; i += 2) {
+                String arg = tokens.get(i).getText();
+                if (!roles.containsKey(arg) || !passedOn.add(arg)
+                            || tokens.get(i+1).getType() != Java8Lexer.COMMA && i+1 != tokens.size()-2) return null;
+            }
+        }
+        Map<String, String> assigned = new HashMap<>();
+        if (body.blockStatements() != null) {
+            for (BlockStatementContext statement : body.blockStatements().blockStatement()) {
+                List<Token> tokens = Util.terminals(statement);
+                // this.field = param; or field = param;
+                int start = tokens.size() == 6 && tokens.get(0).getType() == Java8Lexer.THIS
+                            && tokens.get(1).getType() == Java8Lexer.DOT ? 2 : 0;
+                if (tokens.size() != start+4 || tokens.get(start+1).getType() != Java8Lexer.ASSIGN) return null;
+                String field = tokens.get(start).getText();
+                String param = tokens.get(start+2).getText();
+                if (!fields.containsKey(field) || !names.contains(param) || assigned.containsKey(param)) return null;
+                assigned.put(param, field);
+            }
+        }
+        if (!new HashSet<>(assigned.values()).equals(fields.keySet())) return null;
+        List<String> result = new ArrayList<>();
+        for (String name : names) {
+            if (assigned.containsKey(name)) result.add(assigned.get(name));
+            else if (passedOn.contains(name)) result.add(roles.get(name));
+            else return null;
+        }
+        return result;
+    }
+
+    @Override
+    public void exitTypeDeclaration(TypeDeclarationContext ctx) {
+        if (shouldSkipExit()) return;
+
+        // the results of the analyses are keyed by the nodes of the declaration,
+        // so a listener that translates a stream of declarations drops them here
+        // instead of keeping every parse tree alive
+        inferredAccess.clear();
+        escapingParams.clear();
+        paramOwnership.clear();
+        inoutParams.clear();
+        nullable.clear();
+        atomicFields.clear();
+        privateTypes.clear();
+    }
+
     @Override
     public void enterNormalClassDeclaration(NormalClassDeclarationContext ctx) {
         if (shouldSkipEnter()) return;
 
         code.append("\n");
-        if (ctx.classModifier() == null)
-            code.append("class ").append(ctx.Identifier());
+        String name = ctx.Identifier().getText();
+        String errorEnum = config.exceptions().errorEnum(name);
+        if (errorEnum != null) {
+            if (errorEnum.equals(name)) {
+                appendErrorEnum(ctx);
+            }
+            else {
+                code.append("// ").append(name).append(" is the case ").append(errorEnum).append('.')
+                            .append(ExceptionHierarchy.caseName(name)).append('\n');
+            }
+            appendUntranslatedMembers(ctx);
+            skipSubtree();
+            return;
+        }
+        isStruct = false;
+        if (config.valueStructs()) {
+            String reason = notValueClassReason(ctx);
+            if (reason == null && config.structNames() != null && !config.structNames().contains(name)) {
+                reason = "has code that can't be translated";
+            }
+            isStruct = reason == null;
+            if (isStruct) {
+                boolean isFinal = false;
+                for (ClassModifierContext modifier : ctx.classModifier()) {
+                    if (modifier.getText().equals("final")) isFinal = true;
+                }
+                code.append("// struct: no superclass, ").append(isFinal ? "final" : "never subclassed")
+                            .append(", all instance fields final, no shared collections, no identity use\n");
+            }
+            else {
+                code.append("// class, not struct: ").append(reason).append('\n');
+            }
+        }
+        appendInferredAccess(ctx, ctx.classModifier(), Collections.singletonList(name), name,
+                    Collections.<ParserRuleContext>emptyList());
+        if (ctx.classModifier().isEmpty())
+            appendClassKeyword(ctx);
+    }
+
+    /**
+     * Emits the root class of a hierarchy of checked exceptions as an enum
+     * with a case for each class of the hierarchy. Every case carries the
+     * message and cause of the exception, and the enum has a property for
+     * each subclass that tells whether a value is of that class, which is
+     * what catch clauses for the subclass test. The members of the classes
+     * aren't translated.
+     */
+    private void appendErrorEnum(NormalClassDeclarationContext ctx) {
+        String name = ctx.Identifier().getText();
+        String access = "";
+        if (config.sharedNames() != null) {
+            appendInferredAccess(ctx, ctx.classModifier(), Collections.singletonList(name), name,
+                    Collections.<ParserRuleContext>emptyList());
+        }
+        else if (hasModifier(ctx.classModifier(), "public")) {
+            access = "public ";
+        }
+        code.append(access).append("enum ").append(name).append(": Error {\n");
+        List<String> classes = config.exceptions().cases(name);
+        StringBuilder messages = new StringBuilder();
+        StringBuilder causes = new StringBuilder();
+        for (String className : classes) {
+            String caseName = ExceptionHierarchy.caseName(className);
+            code.append("case ").append(caseName).append("(message: String?, cause: Error?");
+            StringBuilder rest = new StringBuilder();
+            for (Map.Entry<String, String> value : config.exceptions().values(className).entrySet()) {
+                code.append(", ").append(value.getKey()).append(": ")
+                            .append(expressions.translateType(value.getValue()));
+                rest.append(", _");
+            }
+            code.append(")\n");
+            messages.append(messages.length() == 0 ? "case ." : ", .").append(caseName).append("(let message, _")
+                        .append(rest).append(")");
+            causes.append(causes.length() == 0 ? "case ." : ", .").append(caseName).append("(_, let cause")
+                        .append(rest).append(")");
+        }
+        code.append("\n").append(access).append("var message: String? {\nswitch self {\n").append(messages)
+                    .append(":\nreturn message\n}\n}\n");
+        code.append("\n").append(access).append("var cause: Error? {\nswitch self {\n").append(causes)
+                    .append(":\nreturn cause\n}\n}\n");
+        for (String subclass : classes.subList(1, classes.size())) {
+            code.append("\n").append(access).append("var is").append(subclass).append(": Bool {\nswitch self {\ncase ");
+            boolean first = true;
+            for (String className : classes) {
+                if (!config.exceptions().isSubclass(className, subclass)) continue;
+                if (!first) code.append(", ");
+                code.append('.').append(ExceptionHierarchy.caseName(className));
+                first = false;
+            }
+            code.append(":\nreturn true\ndefault:\nreturn false\n}\n}\n");
+        }
+        code.append("}\n");
+    }
+
+    /**
+     * Keeps the members of an exception class that its case can't carry in
+     * comments, so they can be ported by hand. Only constructors that take a
+     * message or a cause and pass them on to the superclass, and the fields
+     * that the case carries with the constructors that set them, are covered
+     * by the case.
+     */
+    private void appendUntranslatedMembers(NormalClassDeclarationContext ctx) {
+        Map<String, String> values = config.exceptions().values(ctx.Identifier().getText());
+        for (ClassBodyDeclarationContext bodyDecl : ctx.classBody().classBodyDeclaration()) {
+            ConstructorDeclarationContext constructor = bodyDecl.constructorDeclaration();
+            if (constructor != null && (values.isEmpty() ? constructor.constructorBody().blockStatements() == null
+                        && isMessageOrCause(constructor.constructorDeclarator().formalParameterList())
+                        : caseConstructor(constructor, values) != null)) {
+                continue;
+            }
+            ClassMemberDeclarationContext member = bodyDecl.classMemberDeclaration();
+            if (member != null && member.fieldDeclaration() != null && isCaseValue(member.fieldDeclaration(), values)) {
+                continue;
+            }
+            code.append("// untranslated: ").append(javaText(bodyDecl)).append('\n');
+        }
+    }
+
+    /**
+     * @return whether all the fields a declaration declares are values of the
+     * case of their exception class
+     */
+    private static boolean isCaseValue(FieldDeclarationContext field, Map<String, String> values) {
+        for (VariableDeclaratorContext var : field.variableDeclaratorList().variableDeclarator()) {
+            if (!values.containsKey(var.variableDeclaratorId().getText())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the parameters of a constructor of an exception are
+     * only a message and a cause
+     */
+    private boolean isMessageOrCause(FormalParameterListContext paramList) {
+        if (paramList == null) return true;
+        List<UnannTypeContext> types = new ArrayList<>();
+        if (paramList.formalParameters() != null) {
+            for (FormalParameterContext param : paramList.formalParameters().formalParameter()) {
+                types.add(param.unannType());
+            }
+        }
+        if (paramList.lastFormalParameter().formalParameter() == null) return false;
+        types.add(paramList.lastFormalParameter().formalParameter().unannType());
+        for (UnannTypeContext type : types) {
+            if (!type.getText().equals("String") && !expressions.isError(type.getText())) return false;
+        }
+        return true;
     }
 
     @Override
@@ -120,11 +725,206 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipExit()) return;
     }
 
+    /**
+     * @return whether a declaration is a struct that conforms to Equatable, so
+     * its values can be compared with ==
+     */
+    private boolean isEquatableStruct(ParserRuleContext ctx) {
+        return isStruct && ctx instanceof NormalClassDeclarationContext
+                    && equatableStructs.contains(((NormalClassDeclarationContext) ctx).Identifier().getText());
+    }
+
+    /**
+     * Appends the class keyword and name after the class modifiers. Classes that
+     * are never subclassed in the corpus are made final, which lets swift call
+     * their methods directly instead of through the vtable.
+     */
+    private void appendClassKeyword(NormalClassDeclarationContext ctx) {
+        if (isStruct) {
+            code.append("struct ").append(ctx.Identifier());
+            return;
+        }
+        Set<String> subclassed = config.subclassedNames();
+        if (subclassed != null && !subclassed.contains(ctx.Identifier().getText())) {
+            boolean isFinal = false;
+            for (ClassModifierContext modifier : ctx.classModifier()) {
+                if (modifier.getText().equals("final")) isFinal = true;
+            }
+            if (!isFinal) code.append("final ");
+        }
+        code.append("class ").append(ctx.Identifier());
+    }
+
+    /**
+     * Checks whether a class can be a swift struct: it has to be a leaf of the
+     * hierarchy, its instances can't change after construction, and nothing may
+     * rely on two instances with the same values being different objects,
+     * like comparing them with == does. Identity use is only looked for inside
+     * the class itself.
+     * @return why the class has to stay a class, or null if it can be a struct
+     */
+    private String notValueClassReason(NormalClassDeclarationContext ctx) {
+        if (ctx.superclass() != null) {
+            return "has a superclass";
+        }
+
+        boolean isFinal = false;
+        for (ClassModifierContext modifier : ctx.classModifier()) {
+            if (modifier.getText().equals("final")) isFinal = true;
+        }
+        Set<String> subclassed = config.subclassedNames();
+        if (!isFinal && subclassed == null) {
+            return "not final, and no class hierarchy index to tell whether it is subclassed";
+        }
+        if (!isFinal && subclassed.contains(ctx.Identifier().getText())) {
+            return "is subclassed";
+        }
+
+        for (ClassBodyDeclarationContext bodyDecl : ctx.classBody().classBodyDeclaration()) {
+            ClassMemberDeclarationContext member = bodyDecl.classMemberDeclaration();
+            if (member == null) continue;
+            if (member.methodDeclaration() != null) {
+                String name = member.methodDeclaration().methodHeader().methodDeclarator().Identifier().getText();
+                if (name.equals("finalize")) {
+                    return "has a finalizer";
+                }
+            }
+            FieldDeclarationContext field = member.fieldDeclaration();
+            if (field == null) continue;
+            boolean isStatic = false;
+            boolean isFinalField = false;
+            for (FieldModifierContext modifier : field.fieldModifier()) {
+                if (modifier.getText().equals("static")) isStatic = true;
+                if (modifier.getText().equals("final")) isFinalField = true;
+            }
+            if (isStatic) continue;
+            String name = field.variableDeclaratorList().variableDeclarator(0).variableDeclaratorId().getText();
+            if (!isFinalField) {
+                return "field '" + name + "' is not final";
+            }
+            if (field.unannType().getText().equals(ctx.Identifier().getText())) {
+                return "field '" + name + "' holds an instance of the class itself";
+            }
+        }
+
+        List<Token> tokens = Util.terminals(ctx.classBody());
+        // swift copies arrays and collections with the struct, where java
+        // shares them between the copies of a reference
+        for (ClassBodyDeclarationContext bodyDecl : ctx.classBody().classBodyDeclaration()) {
+            ClassMemberDeclarationContext member = bodyDecl.classMemberDeclaration();
+            if (member == null || member.fieldDeclaration() == null) continue;
+            FieldDeclarationContext field = member.fieldDeclaration();
+            String type = field.unannType().getText();
+            if (hasModifier(field.fieldModifier(), "static") || !expressions.isValueCollection(type)) continue;
+            for (VariableDeclaratorContext declarator : field.variableDeclaratorList().variableDeclarator()) {
+                String name = declarator.variableDeclaratorId().getText();
+                if (Util.isMutated(name, tokens)) {
+                    return "field '" + name + "' is a collection that is changed in the class";
+                }
+                for (String element : ExpressionTranslator.elementTypes(type)) {
+                    if (expressions.isValueCollection(element)) {
+                        return "field '" + name + "' holds mutable elements";
+                    }
+                }
+            }
+        }
+        // names that hold instances of the class in its body
+        Set<String> instances = new HashSet<>();
+        findInstanceNames(ctx.classBody(), ctx.Identifier().getText(), instances);
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            switch (token.getType()) {
+            case Java8Lexer.EQUAL:
+            case Java8Lexer.NOTEQUAL:
+                if (i >= 1 && instances.contains(tokens.get(i-1).getText())
+                            && (i < 2 || tokens.get(i-2).getType() != Java8Lexer.DOT)
+                        || i+1 < tokens.size() && instances.contains(tokens.get(i+1).getText())
+                            && (i+2 >= tokens.size() || !OPERAND_SUFFIXES.contains(tokens.get(i+2).getType()))) {
+                    return "compares instances by identity";
+                }
+                break;
+            case Java8Lexer.THIS:
+                int prev = i > 0 ? tokens.get(i-1).getType() : Token.INVALID_TYPE;
+                int next = i+1 < tokens.size() ? tokens.get(i+1).getType() : Token.INVALID_TYPE;
+                if (prev == Java8Lexer.EQUAL || prev == Java8Lexer.NOTEQUAL
+                            || next == Java8Lexer.EQUAL || next == Java8Lexer.NOTEQUAL) {
+                    return "compares 'this' by identity";
+                }
+                break;
+            case Java8Lexer.SYNCHRONIZED:
+                return "uses synchronized";
+            case Java8Lexer.Identifier:
+                String text = token.getText();
+                if (text.equals("identityHashCode") || text.equals("wait")
+                            || text.equals("notify") || text.equals("notifyAll")) {
+                    return "calls " + text;
+                }
+                break;
+            }
+        }
+        return null;
+    }
+
+    /** tokens that make a name only part of an operand */
+    private static final Set<Integer> OPERAND_SUFFIXES = new HashSet<>(Arrays.asList(Java8Lexer.DOT,
+                Java8Lexer.LPAREN, Java8Lexer.LBRACK));
+
+    /**
+     * Finds the fields, parameters and local variables declared with a type
+     * in a tree. Scopes are ignored, so a name counts if any declaration of it
+     * has the type.
+     * @param names where to add the names
+     */
+    private static void findInstanceNames(ParseTree tree, String type, Set<String> names) {
+        UnannTypeContext declared = null;
+        List<VariableDeclaratorIdContext> ids = new ArrayList<>();
+        if (tree instanceof FieldDeclarationContext) {
+            declared = ((FieldDeclarationContext) tree).unannType();
+            for (VariableDeclaratorContext declarator
+                        : ((FieldDeclarationContext) tree).variableDeclaratorList().variableDeclarator()) {
+                ids.add(declarator.variableDeclaratorId());
+            }
+        }
+        else if (tree instanceof LocalVariableDeclarationContext) {
+            declared = ((LocalVariableDeclarationContext) tree).unannType();
+            for (VariableDeclaratorContext declarator
+                        : ((LocalVariableDeclarationContext) tree).variableDeclaratorList().variableDeclarator()) {
+                ids.add(declarator.variableDeclaratorId());
+            }
+        }
+        else if (tree instanceof FormalParameterContext) {
+            declared = ((FormalParameterContext) tree).unannType();
+            ids.add(((FormalParameterContext) tree).variableDeclaratorId());
+        }
+        else if (tree instanceof EnhancedForStatementContext) {
+            declared = ((EnhancedForStatementContext) tree).unannType();
+            ids.add(((EnhancedForStatementContext) tree).variableDeclaratorId());
+        }
+        else if (tree instanceof EnhancedForStatementNoShortIfContext) {
+            declared = ((EnhancedForStatementNoShortIfContext) tree).unannType();
+            ids.add(((EnhancedForStatementNoShortIfContext) tree).variableDeclaratorId());
+        }
+        if (declared != null && declared.getText().equals(type)) {
+            for (VariableDeclaratorIdContext id : ids) {
+                if (id.dims() == null) names.add(id.Identifier().getText());
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findInstanceNames(tree.getChild(i), type, names);
+        }
+    }
+
     @Override
     public void enterClassModifier(ClassModifierContext ctx) {
         if (shouldSkipEnter()) return;
 
-        if (ctx.annotation() != null) return;
+        if (ctx.annotation() != null || isInferredAccess(ctx)) return;
+        if (isStruct && ctx.getText().equals("final") && ctx.getParent() instanceof NormalClassDeclarationContext) {
+            return;     // structs are always final
+        }
+        if (ctx.getText().equals("static")) {
+            return;     // and nested types never belong to an instance
+        }
         String text = modifierMap.get(ctx.getText());
         if (text.equals("error")) {
             Util.exitNonTranslatable("class modifier '"+ctx.getText()+"'", ctx);
@@ -140,14 +940,14 @@ public class J2SwiftListener extends Java8BaseListener {
             NormalClassDeclarationContext parent = (NormalClassDeclarationContext) ctx.getParent();
             List<ClassModifierContext> modifierList = parent.classModifier();
             if (modifierList.get(modifierList.size()-1) == ctx) {
-                code.append("class ").append(parent.Identifier());
+                appendClassKeyword(parent);
             }
         }
         else {
             EnumDeclarationContext parent = (EnumDeclarationContext) ctx.getParent();
             List<ClassModifierContext> modifierList = parent.classModifier();
             if (modifierList.get(modifierList.size()-1) == ctx) {
-                code.append("enum ").append(parent.Identifier());
+                appendEnumKeyword(parent);
             }
         }
     }
@@ -170,9 +970,13 @@ public class J2SwiftListener extends Java8BaseListener {
 
         boolean superClassExists = ctx.getParent() instanceof NormalClassDeclarationContext
                     && ((NormalClassDeclarationContext) ctx.getParent()).superclass() != null;
-        if (superClassExists) {
+        boolean rawTypeExists = ctx.getParent() instanceof EnumDeclarationContext && config.intEnums();
+        if (superClassExists || rawTypeExists) {
             code.append(", ");
         }
+        else if (isEquatableStruct(ctx.getParent())) {
+            code.append(": Equatable, ");
+        }
         else {
             code.append(": ");
         }
@@ -224,35 +1028,498 @@ public class J2SwiftListener extends Java8BaseListener {
         if (ctx.getParent() instanceof EnumConstantContext) {
             Util.exitNonTranslatable("enum constant class body", ctx);
         }
+        if (isEquatableStruct(ctx.getParent())
+                    && ((NormalClassDeclarationContext) ctx.getParent()).superinterfaces() == null) {
+            code.append(": Equatable");
+        }
         code.append(" {\n");
-    }
-
-    @Override
-    public void exitClassBody(ClassBodyContext ctx) {
-        if (shouldSkipExit()) return;
+        appendLocks(ctx);
+        pushScope();
+        if (config.ownership()) {
+            final String selfType = isStruct ? enclosingTypeName(ctx) : null;
+            OwnershipAnalysis ownership = new OwnershipAnalysis(ctx, new OwnershipAnalysis.ValueTypes() {
+                @Override
+                public boolean isValueType(UnannTypeContext type) {
+                    if (type.unannReferenceType() != null && type.unannReferenceType().unannArrayType() != null
+                                || type.getText().equals(selfType)) return true;
+                    String swiftType = typeMap.get(type.getText());
+                    if (swiftType == null) {
+                        swiftType = expressions.genericType(type.getText());
+                    }
+                    return swiftType != null && (swiftType.equals("String") || swiftType.startsWith("[")
+                                || swiftType.startsWith("Set<") || swiftType.startsWith("ContiguousArray<"));
+                }
 
-        code.append("\n}\n");
+                @Override
+                public boolean isCollection(UnannTypeContext type) {
+                    return expressions.isValueCollection(type.getText());
+                }
+            });
+            paramOwnership.putAll(ownership.modifiers());
+            inoutParams.put(ctx, ownership.inoutParams());
+        }
+        setEffects(ctx);
+        nullable.addAll(new NullabilityAnalysis(ctx).nullable());
+        declareFields(ctx.classBodyDeclaration(), enclosingTypeName(ctx));
+        escapingParams.addAll(new EscapeAnalysis(ctx.classBodyDeclaration(), new EscapeAnalysis.FunctionTypes() {
+            @Override
+            public boolean isFunctionType(UnannTypeContext type) {
+                String swiftType = typeMap.get(type.getText());
+                if (swiftType == null) {
+                    swiftType = expressions.genericType(type.getText());
+                }
+                return swiftType != null && swiftType.startsWith("(") && swiftType.contains(") -> ");
+            }
+        }).escapingParams());
     }
 
-    @Override
-    public void enterTypeParameters(TypeParametersContext ctx) {
-        if (shouldSkipEnter()) return;
-
-        code.append("<");
+    private void pushScope() {
+        scope = new Scope(scope);
     }
 
-    @Override
-    public void exitTypeParameters(TypeParametersContext ctx) {
-        if (shouldSkipExit()) return;
-
-        code.append(">");
+    private void popScope() {
+        scope = scope.parent();
     }
 
-    @Override
-    public void enterTypeParameter(TypeParameterContext ctx) {
-        if (shouldSkipEnter()) return;
+    /**
+     * Emits the access level of a declaration, inferred from where its names
+     * are used in the corpus, if access levels are inferred at all. Its java
+     * access modifier is left out then. Overrides keep their java modifiers,
+     * since swift doesn't let them narrow the access of what they override.
+     * The access level is no wider than that of the types the declaration
+     * uses, since swift doesn't let it be seen where they can't be.
+     * @param names names the declaration is used by
+     * @param typeName name of the type that is, or holds, the declaration
+     * @param signature the types of a field, or the result and parameters of
+     * a method or constructor
+     */
+    private void appendInferredAccess(ParserRuleContext decl, List<? extends ParserRuleContext> modifiers,
+                List<String> names, String typeName, List<? extends ParserRuleContext> signature) {
+        Set<String> sharedNames = config.sharedNames();
+        if (sharedNames == null) return;
+        String access = "";
+        for (ParserRuleContext modifier : modifiers) {
+            String text = modifier.getText();
+            if (text.equals("@Override")) return;
+            if (text.equals("public") || text.equals("protected") || text.equals("private")) {
+                access = text;
+            }
+        }
+        inferredAccess.add(decl);
 
-        code.append(ctx.Identifier());
+        String level;
+        if (access.equals("private")) {
+            level = "private";
+        }
+        else if (access.equals("public") && isPublicApi(names, typeName, decl instanceof ConstructorDeclarationContext)) {
+            level = "public";
+        }
+        else {
+            level = "fileprivate";
+            for (String name : names) {
+                if (sharedNames.contains(name)) level = "internal";
+            }
+        }
+        for (ParserRuleContext type : signature) {
+            if (type == null) continue;
+            for (Token token : Util.terminals(type)) {
+                if (token.getType() != Java8Lexer.Identifier) continue;
+                String typeLevel = typeAccess(token.getText());
+                if (ACCESS_LEVELS.indexOf(typeLevel) < ACCESS_LEVELS.indexOf(level)) level = typeLevel;
+            }
+        }
+        if (!level.equals("internal")) code.append(level).append(' ');
+    }
+
+    /**
+     * @return the inferred access level of a type that a declaration uses:
+     * private for a private class of the same top-level declaration, what
+     * the declaration of a type of the corpus gets, or public for types from
+     * outside the corpus, which don't limit the access level
+     */
+    private String typeAccess(String name) {
+        if (privateTypes.contains(name)) return "private";
+        if (!config.corpusTypes().contains(name) || isPublicApi(Collections.singletonList(name), name, false)) {
+            return "public";
+        }
+        return config.sharedNames().contains(name) ? "internal" : "fileprivate";
+    }
+
+    /**
+     * @return whether a type is declared private in the top-level
+     * declaration that holds a declaration
+     */
+    /**
+     * Finds the types declared private in a top-level declaration, in one pass
+     * over its tokens
+     */
+    private void findPrivateTypes(ParserRuleContext topLevel) {
+        List<Token> tokens = Util.terminals(topLevel);
+        for (int i = 1; i < tokens.size(); i++) {
+            int keyword = tokens.get(i-1).getType();
+            if (keyword != Java8Lexer.CLASS && keyword != Java8Lexer.INTERFACE && keyword != Java8Lexer.ENUM) continue;
+            for (int j = i-2; j >= 0 && MODIFIER_TOKENS.contains(tokens.get(j).getType()); j--) {
+                if (tokens.get(j).getType() == Java8Lexer.PRIVATE) privateTypes.add(tokens.get(i).getText());
+            }
+        }
+    }
+
+    /** swift access levels, from the narrowest */
+    private static final List<String> ACCESS_LEVELS = Arrays.asList("private", "fileprivate", "internal", "public");
+    private static final Set<Integer> MODIFIER_TOKENS = new HashSet<>(Arrays.asList(Java8Lexer.PRIVATE,
+                Java8Lexer.PROTECTED, Java8Lexer.PUBLIC, Java8Lexer.STATIC, Java8Lexer.FINAL, Java8Lexer.ABSTRACT,
+                Java8Lexer.STRICTFP));
+
+    /**
+     * @return whether a declaration is part of the public API: a type when it
+     * or any of its members is listed, a constructor when its type is listed
+     * or it is, as Type.<init> or Type.Type, and other members when their
+     * type or they are listed
+     */
+    private boolean isPublicApi(List<String> names, String typeName, boolean isConstructor) {
+        Set<String> publicApi = config.publicApi();
+        if (publicApi.contains(typeName)) return true;
+        if (isConstructor && publicApi.contains(typeName + ".<init>")) return true;
+        for (String entry : publicApi) {
+            if (!isConstructor && names.contains(typeName) && entry.startsWith(typeName + ".")) return true;
+            for (String name : names) {
+                if (entry.equals(typeName + "." + name)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a modifier is an access modifier of a declaration whose
+     * access level was inferred instead
+     */
+    private boolean isInferredAccess(ParserRuleContext modifier) {
+        String text = modifier.getText();
+        return inferredAccess.contains(modifier.getParent())
+                    && (text.equals("public") || text.equals("protected") || text.equals("private"));
+    }
+
+    /**
+     * Declares the fields of a class body, so expressions in the class know
+     * their types
+     * @param owner name of the class
+     */
+    private void declareFields(List<ClassBodyDeclarationContext> bodyDecls, String owner) {
+        for (ClassBodyDeclarationContext bodyDecl : bodyDecls) {
+            ClassMemberDeclarationContext member = bodyDecl.classMemberDeclaration();
+            if (member == null || member.fieldDeclaration() == null) continue;
+            FieldDeclarationContext field = member.fieldDeclaration();
+            for (VariableDeclaratorContext declarator : field.variableDeclaratorList().variableDeclarator()) {
+                Scope.Variable variable = new Scope.Variable(field.unannType().getText(), owner,
+                            hasModifier(field.fieldModifier(), "static"), hasModifier(field.fieldModifier(), "volatile"),
+                            primitiveElementType(field.unannType()), nullable.contains(declarator.variableDeclaratorId()));
+                scope.declare(declarator.variableDeclaratorId().Identifier().getText(), variable);
+            }
+        }
+    }
+
+    /**
+     * Declares the parameters of a method or constructor
+     */
+    private void declareParams(FormalParameterListContext paramList) {
+        if (paramList == null) return;
+        List<FormalParameterContext> params = new ArrayList<>();
+        if (paramList.formalParameters() != null) {
+            params.addAll(paramList.formalParameters().formalParameter());
+        }
+        LastFormalParameterContext last = paramList.lastFormalParameter();
+        if (last.formalParameter() != null) {
+            params.add(last.formalParameter());
+        }
+        else {
+            // a java caller can pass an array of its own for the varargs
+            UnannPrimitiveTypeContext element = last.unannType().unannPrimitiveType();
+            scope.declare(last.variableDeclaratorId().Identifier().getText(), new Scope.Variable(
+                        last.unannType().getText() + "[]", null, false, false,
+                        element == null ? null : element.getText(), false, false, true));
+        }
+        for (FormalParameterContext param : params) {
+            VariableDeclaratorIdContext id = param.variableDeclaratorId();
+            String type = param.unannType().getText();
+            boolean isCopy = expressions.isValueCollection(type) && !"inout".equals(paramOwnership.get(param));
+            scope.declare(id.Identifier().getText(), new Scope.Variable(type, null, false, false,
+                        primitiveElementType(param.unannType()), nullable.contains(id), false, isCopy));
+        }
+    }
+
+    private void declare(VariableDeclaratorIdContext id, UnannTypeContext type) {
+        scope.declare(id.Identifier().getText(), type.getText(), primitiveElementType(type), nullable.contains(id));
+    }
+
+    /**
+     * @return the element type of a one-dimensional array of primitives, e.g.
+     * "int" for int[], or null if the type is anything else
+     */
+    private static String primitiveElementType(UnannTypeContext type) {
+        UnannReferenceTypeContext reference = type.unannReferenceType();
+        if (reference == null || reference.unannArrayType() == null) return null;
+        UnannArrayTypeContext array = reference.unannArrayType();
+        if (array.unannPrimitiveType() == null || Util.numSquareBrackets(array.dims().getText()) != 1) return null;
+        return array.unannPrimitiveType().getText();
+    }
+
+    /**
+     * @return the java type of this in the code of a member, or null if swift
+     * has no self there, like in static methods and property initializers
+     */
+    private static String selfType(ParserRuleContext ctx) {
+        for (ParserRuleContext parent = ctx; parent != null; parent = parent.getParent()) {
+            if (parent instanceof MethodDeclarationContext) {
+                if (hasModifier(((MethodDeclarationContext) parent).methodModifier(), "static")) return null;
+                return enclosingTypeName(parent);
+            }
+            if (parent instanceof InterfaceMethodDeclarationContext) {
+                if (hasModifier(((InterfaceMethodDeclarationContext) parent).interfaceMethodModifier(), "static")) return null;
+                return enclosingTypeName(parent);
+            }
+            if (parent instanceof ConstructorDeclarationContext || parent instanceof InstanceInitializerContext) {
+                return enclosingTypeName(parent);
+            }
+            if (parent instanceof ClassBodyDeclarationContext || parent instanceof InterfaceMemberDeclarationContext) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Declares the locks that stand in for the java monitors of a class: one
+     * per instance for synchronized methods and synchronized(this), and one for
+     * the class for static synchronized methods and synchronized(X.class).
+     */
+    private void appendLocks(ClassBodyContext ctx) {
+        String className = ctx.getParent() instanceof NormalClassDeclarationContext
+                    ? ((NormalClassDeclarationContext) ctx.getParent()).Identifier().getText() : null;
+        boolean instanceLock = false;
+        boolean classLock = false;
+        for (ClassBodyDeclarationContext bodyDecl : ctx.classBodyDeclaration()) {
+            ClassMemberDeclarationContext member = bodyDecl.classMemberDeclaration();
+            if (member == null || member.methodDeclaration() == null) continue;
+            List<MethodModifierContext> modifiers = member.methodDeclaration().methodModifier();
+            if (hasModifier(modifiers, "synchronized")) {
+                if (hasModifier(modifiers, "static")) classLock = true;
+                else instanceLock = true;
+            }
+        }
+
+        // synchronized blocks of nested classes are counted as well, which at
+        // worst declares a lock that isn't used
+        List<Token> tokens = Util.terminals(ctx);
+        for (int i = 0; i+3 < tokens.size(); i++) {
+            if (tokens.get(i).getType() != Java8Lexer.SYNCHRONIZED) continue;
+            String monitor = tokens.get(i+2).getText();
+            if (monitor.equals("this") && tokens.get(i+3).getType() == Java8Lexer.RPAREN) {
+                instanceLock = true;
+            }
+            else if (monitor.equals(className) && i+5 < tokens.size()
+                        && tokens.get(i+4).getType() == Java8Lexer.CLASS) {
+                classLock = true;
+            }
+        }
+        // and so are those of other classes on this one
+        if (config.instanceMonitors().contains(className)) instanceLock = true;
+        if (config.classMonitors().contains(className)) classLock = true;
+        if (className == null) classLock = false;
+
+        if (!instanceLock && !classLock) return;
+        String lockType = lockType();
+        if (config.lockStyle() == TranslatorConfig.LockStyle.UNFAIR) {
+            code.append("private final class UnfairLock {\n")
+                .append("private let pointer = UnsafeMutablePointer<os_unfair_lock>.allocate(capacity: 1)\n")
+                .append("init() { pointer.initialize(to: os_unfair_lock()) }\n")
+                .append("deinit { pointer.deinitialize(count: 1); pointer.deallocate() }\n")
+                .append("func lock() { os_unfair_lock_lock(pointer) }\n")
+                .append("func unlock() { os_unfair_lock_unlock(pointer) }\n")
+                .append("}\n");
+        }
+        // the locks of the classes that others synchronize on can't be private
+        if (instanceLock) {
+            code.append(config.instanceMonitors().contains(className) ? "" : "private ")
+                        .append("let j2sLock = ").append(lockType).append("()\n");
+        }
+        if (classLock) {
+            code.append(config.classMonitors().contains(className) ? "" : "private ")
+                        .append("static let j2sClassLock = ").append(lockType).append("()\n");
+        }
+    }
+
+    private String lockType() {
+        switch (config.lockStyle()) {
+        case NSLOCK:
+            return "NSLock";
+        case UNFAIR:
+            return "UnfairLock";
+        default:
+            return "NSRecursiveLock";
+        }
+    }
+
+    private static boolean hasModifier(List<? extends ParserRuleContext> modifiers, String modifier) {
+        for (ParserRuleContext ctx : modifiers) {
+            if (ctx.getText().equals(modifier)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends the locking that starts a synchronized method or block; the
+     * unlock is deferred to the end of the scope
+     * @param lock swift expression of the lock
+     */
+    private void appendLock(String lock) {
+        code.append(lock).append(".lock()\n");
+        code.append("defer { ").append(lock).append(".unlock() }\n");
+    }
+
+    @Override
+    public void exitClassBody(ClassBodyContext ctx) {
+        if (shouldSkipExit()) return;
+
+        popScope();
+        code.append("\n}\n");
+        setEffects(enclosingClassBody(ctx.getParent()));
+    }
+
+    /**
+     * Lets expressions know which calls need a try or an await in a class body
+     * @param ctx class body, or null outside of classes
+     */
+    private void setEffects(ClassBodyContext ctx) {
+        asyncMethods = ctx == null || !config.structuredConcurrency()
+                    ? Collections.<String>emptySet() : asyncMethods(ctx);
+        expressions.setThrowingMethods(ctx == null ? Collections.<String>emptySet() : throwingMethods(ctx));
+        expressions.setAsyncMethods(asyncMethods);
+        // methods of inner classes hide the methods of the same name outside
+        Map<String, Set<Integer>> inout = new HashMap<>();
+        for (ClassBodyContext body = ctx; body != null; body = enclosingClassBody(body.getParent())) {
+            Map<String, Set<Integer>> params = inoutParams.get(body);
+            if (params == null) continue;
+            for (Map.Entry<String, Set<Integer>> e : params.entrySet()) {
+                if (!inout.containsKey(e.getKey())) inout.put(e.getKey(), e.getValue());
+            }
+        }
+        expressions.setInoutParams(inout);
+    }
+
+    /**
+     * Finds the methods that wait for a future or an executor in a class body
+     * and the class bodies around it, and the methods that call them, which
+     * become async functions. Futures are found by the names they are
+     * declared with anywhere in the class, so a method counts as waiting if
+     * it calls get or join on any variable of that name.
+     * @return names of the methods
+     */
+    private static Set<String> asyncMethods(ClassBodyContext ctx) {
+        List<MethodDeclarationContext> methods = new ArrayList<>();
+        Set<String> futures = new HashSet<>();
+        for (ClassBodyContext body = ctx; body != null; body = enclosingClassBody(body.getParent())) {
+            for (ClassBodyDeclarationContext bodyDecl : body.classBodyDeclaration()) {
+                ClassMemberDeclarationContext member = bodyDecl.classMemberDeclaration();
+                if (member != null && member.methodDeclaration() != null) methods.add(member.methodDeclaration());
+            }
+            List<Token> tokens = Util.terminals(body);
+            for (int i = 0; i+1 < tokens.size(); i++) {
+                String text = tokens.get(i).getText();
+                if (!text.equals("Future") && !text.equals("CompletableFuture")) continue;
+                int j = i+1;
+                for (int depth = 0; j < tokens.size(); j++) {
+                    int type = tokens.get(j).getType();
+                    if (type == Java8Lexer.LT) depth++;
+                    else if (type == Java8Lexer.GT) depth--;
+                    if (depth == 0) break;
+                }
+                if (j+1 < tokens.size() && tokens.get(j+1).getType() == Java8Lexer.Identifier) {
+                    futures.add(tokens.get(j+1).getText());
+                }
+            }
+        }
+
+        // methods that call async methods are async, so this grows the set
+        // until nothing changes
+        Set<String> names = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (MethodDeclarationContext method : methods) {
+                String name = method.methodHeader().methodDeclarator().Identifier().getText();
+                if (names.contains(name) || !waits(Util.terminals(method.methodBody()), futures, names)) continue;
+                names.add(name);
+                changed = true;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return whether a method body waits for a future, awaits the
+     * termination of an executor, or calls an async method
+     */
+    private static boolean waits(List<Token> tokens, Set<String> futures, Set<String> asyncMethods) {
+        for (int i = 0; i+1 < tokens.size(); i++) {
+            String text = tokens.get(i).getText();
+            boolean isCall = tokens.get(i+1).getType() == Java8Lexer.LPAREN;
+            boolean afterDot = i > 0 && tokens.get(i-1).getType() == Java8Lexer.DOT;
+            if (!isCall) continue;
+            if (afterDot && (text.equals("awaitTermination") || text.equals("close"))) return true;
+            if (afterDot && (text.equals("get") || text.equals("join")) && i >= 2
+                        && futures.contains(tokens.get(i-2).getText())) return true;
+            if (asyncMethods.contains(text) && (!afterDot || i >= 2 && tokens.get(i-2).getType() == Java8Lexer.THIS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the methods that are declared to throw in a class body and the
+     * class bodies around it, which are the ones whose calls in the body are
+     * known to need a try
+     * @return names of the methods
+     */
+    private static Set<String> throwingMethods(ClassBodyContext ctx) {
+        Set<String> names = new HashSet<>();
+        for (ClassBodyContext body = ctx; body != null; body = enclosingClassBody(body.getParent())) {
+            for (ClassBodyDeclarationContext bodyDecl : body.classBodyDeclaration()) {
+                ClassMemberDeclarationContext member = bodyDecl.classMemberDeclaration();
+                if (member == null || member.methodDeclaration() == null) continue;
+                MethodHeaderContext header = member.methodDeclaration().methodHeader();
+                if (header.throws_() != null) names.add(header.methodDeclarator().Identifier().getText());
+            }
+        }
+        return names;
+    }
+
+    private static ClassBodyContext enclosingClassBody(ParserRuleContext ctx) {
+        for (ParserRuleContext parent = ctx; parent != null; parent = parent.getParent()) {
+            if (parent instanceof ClassBodyContext) return (ClassBodyContext) parent;
+        }
+        return null;
+    }
+
+    @Override
+    public void enterTypeParameters(TypeParametersContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        code.append("<");
+    }
+
+    @Override
+    public void exitTypeParameters(TypeParametersContext ctx) {
+        if (shouldSkipExit()) return;
+
+        code.append(">");
+    }
+
+    @Override
+    public void enterTypeParameter(TypeParameterContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        code.append(ctx.Identifier());
     }
 
     @Override
@@ -334,7 +1601,8 @@ public class J2SwiftListener extends Java8BaseListener {
     public void enterAdditionalBound(AdditionalBoundContext ctx) {
         if (shouldSkipEnter()) return;
 
-        Util.exitNonTranslatable("additional type bound", ctx);
+        // a protocol composition, e.g. <T: Comparable & Hashable>
+        code.append(" & ");
     }
 
     @Override
@@ -370,7 +1638,12 @@ public class J2SwiftListener extends Java8BaseListener {
     public void enterWildcard(WildcardContext ctx) {
         if (shouldSkipEnter()) return;
 
-        Util.exitNonTranslatable("wildcard", ctx);
+        // wildcards of parameters are lowered to generic parameters in
+        // addWildcardParams(), so only other ones end up here and stand for
+        // their bound
+        if (ctx.wildcardBounds() == null) {
+            code.append("Any");
+        }
     }
 
     @Override
@@ -385,11 +1658,72 @@ public class J2SwiftListener extends Java8BaseListener {
         if (code.charAt(code.length()-2) == '{') {
             code.append("\n");
         }
+        List<String> names = new ArrayList<>();
+        for (VariableDeclaratorContext declarator : ctx.variableDeclaratorList().variableDeclarator()) {
+            names.add(declarator.variableDeclaratorId().Identifier().getText());
+        }
+        appendInferredAccess(ctx, ctx.fieldModifier(), names, enclosingTypeName(ctx),
+                    Collections.singletonList(ctx.unannType()));
+        if (hasModifier(ctx.fieldModifier(), "volatile")) {
+            appendAtomicField(ctx);
+            skipSubtree();
+            return;
+        }
         if (ctx.fieldModifier().size() == 0) {
             code.append("var @@");
         }
     }
 
+    /**
+     * Translates a volatile field into a ManagedAtomic from the swift Atomics
+     * package, which keeps the lock-free reads and writes of the java field.
+     * Only the primitive types that swift has atomics for can be volatile.
+     */
+    private void appendAtomicField(FieldDeclarationContext ctx) {
+        String javaType = ctx.unannType().getText();
+        if (ctx.unannType().unannPrimitiveType() == null || javaType.equals("char")
+                    || javaType.equals("float") || javaType.equals("double")) {
+            Util.exitNonTranslatable("volatile field of type '" + javaType + "'", ctx.unannType());
+        }
+        for (FieldModifierContext modifier : ctx.fieldModifier()) {
+            if (modifier.annotation() != null || isInferredAccess(modifier)) continue;
+            String text = modifierMap.get(modifier.getText());
+            if (text.equals("error")) {
+                Util.exitNonTranslatable("field modifier '"+modifier.getText()+"'", modifier);
+            }
+            if (text.isEmpty() || text.equals("final")) continue;
+            code.append(text).append(' ');
+        }
+        modules.add("Atomics");
+
+        // the atomic itself never changes, only the value it holds
+        String swiftType = typeMap.get(javaType);
+        code.append("let ");
+        List<VariableDeclaratorContext> declarators = ctx.variableDeclaratorList().variableDeclarator();
+        for (VariableDeclaratorContext declarator : declarators) {
+            if (declarator.variableDeclaratorId().dims() != null) {
+                Util.exitNonTranslatable("C-style array declaration", declarator.variableDeclaratorId());
+            }
+            String name = declarator.variableDeclaratorId().Identifier().getText();
+            String initialValue = javaType.equals("boolean") ? "false" : "0";
+            if (declarator.variableInitializer() != null) {
+                VariableInitializerContext init = declarator.variableInitializer();
+                ConstantFolder.Constant value = init.expression() == null ? null
+                            : ConstantFolder.assign(constants.fold(init.expression()), javaType);
+                if (value == null) {
+                    Util.exitNonTranslatable("volatile field initializer that isn't a constant", init);
+                }
+                initialValue = ConstantFolder.swiftLiteral(value, swiftType);
+            }
+            code.append(name).append(" = ManagedAtomic<").append(swiftType).append(">(")
+                        .append(initialValue).append(')');
+            if (declarator != declarators.get(declarators.size()-1)) {
+                code.append(", ");
+            }
+        }
+        code.append('\n');
+    }
+
     @Override
     public void exitFieldDeclaration(FieldDeclarationContext ctx) {
         if (shouldSkipExit()) return;
@@ -401,7 +1735,7 @@ public class J2SwiftListener extends Java8BaseListener {
     public void enterFieldModifier(FieldModifierContext ctx) {
         if (shouldSkipEnter()) return;
 
-        if (ctx.annotation() != null) return;
+        if (ctx.annotation() != null || isInferredAccess(ctx)) return;
         String text = modifierMap.get(ctx.getText());
         if (text.equals("error")) {
             Util.exitNonTranslatable("field modifier '"+ctx.getText()+"'", ctx);
@@ -416,10 +1750,15 @@ public class J2SwiftListener extends Java8BaseListener {
     public void exitFieldModifier(FieldModifierContext ctx) {
         if (shouldSkipExit()) return;
 
-        List<FieldModifierContext> list = ((FieldDeclarationContext) ctx.getParent()).fieldModifier();
+        FieldDeclarationContext field = (FieldDeclarationContext) ctx.getParent();
+        List<FieldModifierContext> list = field.fieldModifier();
         if (list.get(list.size()-1) != ctx) return;
-        String text = modifierMap.get(ctx.getText());
-        if (text.equals("final")) {
+        // the field can be changed anywhere in the top-level declaration
+        ParserRuleContext declaration = field;
+        while (declaration.getParent() != null && !(declaration instanceof TypeDeclarationContext)) {
+            declaration = declaration.getParent();
+        }
+        if (hasFinal(list) && !isChangedInPlace(field.unannType(), field.variableDeclaratorList(), declaration)) {
             code.append("let ");
         }
         else {
@@ -428,6 +1767,22 @@ public class J2SwiftListener extends Java8BaseListener {
         code.append("@@");   // mark start of unannType
     }
 
+    /**
+     * @return whether final variables are arrays, collections or string
+     * builders that the code around them changes in place, which swift only
+     * allows on a var
+     * @param scope code the variables are visible in
+     */
+    private boolean isChangedInPlace(UnannTypeContext type, VariableDeclaratorListContext declarators,
+                ParserRuleContext scope) {
+        if (!expressions.isValueCollection(type.getText())) return false;
+        List<Token> tokens = Util.terminals(scope);
+        for (VariableDeclaratorContext declarator : declarators.variableDeclarator()) {
+            if (Util.isMutated(declarator.variableDeclaratorId().Identifier().getText(), tokens)) return true;
+        }
+        return false;
+    }
+
     @Override
     public void enterVariableDeclarator(VariableDeclaratorContext ctx) {
         if (shouldSkipEnter()) return;
@@ -437,6 +1792,21 @@ public class J2SwiftListener extends Java8BaseListener {
     public void exitVariableDeclarator(VariableDeclaratorContext ctx) {
         if (shouldSkipExit()) return;
 
+        // locals are in scope after their declarator, fields for the whole class
+        ParserRuleContext declaration = ctx.getParent().getParent();
+        if (declaration instanceof LocalVariableDeclarationContext) {
+            UnannTypeContext type = ((LocalVariableDeclarationContext) declaration).unannType();
+            Scope.Variable initial = ctx.variableInitializer() == null ? null
+                        : scope.lookup(ctx.variableInitializer().getText());
+            if (initial != null && initial.isCopy && !initial.isField()) {
+                // java shares the array with the parameter, which is already a copy
+                scope.declare(ctx.variableDeclaratorId().Identifier().getText(), new Scope.Variable(type.getText(),
+                            null, false, false, primitiveElementType(type), false, false, true));
+            }
+            else {
+                declare(ctx.variableDeclaratorId(), type);
+            }
+        }
         List<VariableDeclaratorContext> list = ((VariableDeclaratorListContext) ctx.getParent()).variableDeclarator();
         if (list.get(list.size()-1) != ctx) {
             code.append(", ");
@@ -447,6 +1817,10 @@ public class J2SwiftListener extends Java8BaseListener {
     public void enterVariableDeclaratorId(VariableDeclaratorIdContext ctx) {
         if (shouldSkipEnter()) return;
 
+        // the loop variable is emitted with its loop
+        if (ctx.getParent() instanceof EnhancedForStatementContext
+                    || ctx.getParent() instanceof EnhancedForStatementNoShortIfContext) return;
+
         if (ctx.dims() != null) {
             Util.exitNonTranslatable("C-style array declaration", ctx);
         }
@@ -455,7 +1829,15 @@ public class J2SwiftListener extends Java8BaseListener {
             int index = code.lastIndexOf("!!");
             String paramType = code.substring(index+2);
             code.delete(index, code.length());
-            code.append(ctx.Identifier()).append(": ").append(paramType);
+            code.append(ctx.Identifier()).append(": ");
+            if (escapingParams.contains(ctx.getParent())) {
+                code.append("@escaping ");
+            }
+            String ownership = ownership((FormalParameterContext) ctx.getParent());
+            if (ownership != null) {
+                code.append(ownership).append(' ');
+            }
+            code.append(paramType).append(nullable.contains(ctx) ? "?" : "");
         }
         else if (ctx.getParent() instanceof LastFormalParameterContext) {
             int index = code.lastIndexOf("!!");
@@ -465,24 +1847,13 @@ public class J2SwiftListener extends Java8BaseListener {
         }
         else if (ctx.getParent() instanceof VariableDeclaratorContext) {
             List<VariableDeclaratorContext> list = ((VariableDeclaratorListContext) ctx.getParent().getParent()).variableDeclarator();
-            int index = code.lastIndexOf("@@");
-            String type;
-
             if (list.get(0) == ctx.getParent()) {
-                type = code.substring(index+2);
+                // the type is emitted once, before the first variable
+                int index = code.lastIndexOf("@@");
+                declaratorType = code.substring(index+2);
                 code.delete(index, code.length());
             }
-            else {
-                type = code.substring(index+2, code.length()-2);
-                code.delete(index, index+2);
-            }
-
-            if (list.get(list.size()-1) != ctx.getParent()) {
-                code.append(ctx.Identifier()).append(": @@").append(type);
-            }
-            else {
-                code.append(ctx.Identifier()).append(": ").append(type);
-            }
+            code.append(ctx.Identifier()).append(": ").append(declaratorType).append(nullable.contains(ctx) ? "?" : "");
         }
         else {
             code.append(ctx.Identifier());
@@ -493,24 +1864,171 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipExit()) return;
     }
 
+    @Override
+    public void enterVariableInitializer(VariableInitializerContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        // the initializer is translated as a whole
+        skipSubtree();
+        if (!(ctx.getParent() instanceof VariableDeclaratorContext)) return;
+
+        ParserRuleContext declaration = ctx.getParent().getParent().getParent();
+        UnannTypeContext type;
+        boolean isConstant;
+        if (declaration instanceof FieldDeclarationContext) {
+            type = ((FieldDeclarationContext) declaration).unannType();
+            isConstant = hasFinal(((FieldDeclarationContext) declaration).fieldModifier());
+        }
+        else if (declaration instanceof ConstantDeclarationContext) {
+            type = ((ConstantDeclarationContext) declaration).unannType();
+            isConstant = true;
+        }
+        else if (declaration instanceof LocalVariableDeclarationContext) {
+            type = ((LocalVariableDeclarationContext) declaration).unannType();
+            isConstant = false;
+        }
+        else {
+            return;
+        }
+
+        if (ctx.arrayInitializer() != null) {
+            try {
+                String literal = expressions.translateArrayInitializer(ctx.arrayInitializer(), type.getText(), scope,
+                            selfType(ctx));
+                code.append(" = ").append(literal);
+            }
+            catch (ExpressionTranslator.UntranslatableException e) {
+                if (declaration instanceof LocalVariableDeclarationContext) {
+                    code.append(" /* untranslated: = ").append(javaText(ctx).replace("*/", "* /")).append(" */");
+                }
+                noteUntranslated(ctx);
+            }
+            return;
+        }
+        ConstantFolder.Constant value = ConstantFolder.assign(constants.fold(ctx.expression()), type.getText());
+        String literal = null;
+        if (value != null) {
+            String swiftType = typeMap.get(type.getText());
+            literal = ConstantFolder.swiftLiteral(value, swiftType == null ? type.getText() : swiftType);
+        }
+        if (literal == null) {
+            // initializers that don't fold are left out if they can't be translated
+            try {
+                if (nullable.contains(((VariableDeclaratorContext) ctx.getParent()).variableDeclaratorId())) {
+                    literal = expressions.translateOptional(ctx.expression(), type.getText(), scope, selfType(ctx));
+                }
+                else if (declaration instanceof LocalVariableDeclarationContext) {
+                    String name = ((VariableDeclaratorContext) ctx.getParent()).variableDeclaratorId().getText();
+                    literal = expressions.translateInitializer(ctx.expression(), type.getText(), name,
+                                pendingStatements, scope, selfType(ctx));
+                }
+                else {
+                    literal = expressions.translateValue(ctx.expression(), type.getText(), scope, selfType(ctx));
+                }
+            }
+            catch (ExpressionTranslator.UntranslatableException e) {
+                code.append(" /* untranslated: = ").append(javaText(ctx).replace("*/", "* /")).append(" */");
+                noteUntranslated(ctx);
+                return;
+            }
+            code.append(" = ").append(literal);
+            return;
+        }
+        code.append(" = ").append(literal);
+
+        if (isConstant) {
+            String name = ((VariableDeclaratorContext) ctx.getParent()).variableDeclaratorId().getText();
+            constants.define(name, value);
+            String typeName = enclosingTypeName(declaration);
+            if (typeName != null) {
+                constants.define(typeName + "." + name, value);
+            }
+        }
+    }
+
+    @Override
+    public void exitVariableInitializer(VariableInitializerContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    private static boolean hasFinal(List<? extends ParserRuleContext> modifiers) {
+        for (ParserRuleContext modifier : modifiers) {
+            if (modifier.getText().equals("final")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return name of the class or interface a member is declared in, or null
+     */
+    private static String enclosingTypeName(ParserRuleContext ctx) {
+        for (ParserRuleContext parent = ctx.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent instanceof NormalClassDeclarationContext) {
+                return ((NormalClassDeclarationContext) parent).Identifier().getText();
+            }
+            if (parent instanceof NormalInterfaceDeclarationContext) {
+                return ((NormalInterfaceDeclarationContext) parent).Identifier().getText();
+            }
+        }
+        return null;
+    }
+
     @Override
     public void enterUnannType(UnannTypeContext ctx) {
         if (shouldSkipEnter()) return;
 
-        String text = typeMap.get(ctx.getText());
+        // swift infers the type of a for-in loop variable, which is converted
+        // in the loop where java widens the element
+        if (ctx.getParent() instanceof EnhancedForStatementContext
+                    || ctx.getParent() instanceof EnhancedForStatementNoShortIfContext) {
+            skipSubtree();
+            return;
+        }
+
+        String text = genericParamTypes.get(ctx);
+        if (text == null) {
+            text = typeMap.get(ctx.getText());
+        }
+        if (text == null) {
+            text = typeCache.get(typeKey(ctx));
+        }
+        if (text == null) {
+            text = expressions.genericType(ctx.getText());
+        }
         if (text != null) {
             code.append(text);
-            code.append('#');
+            skipSubtree();
+            return;
         }
+        typeStart = code.length();   // the type gets translated by the subtree
     }
 
     @Override
     public void exitUnannType(UnannTypeContext ctx) {
         if (shouldSkipExit()) return;
 
-        if (code.lastIndexOf("#") != -1) {
-            code.delete(code.lastIndexOf("#"), code.length());
-        }
+        typeCache.put(typeKey(ctx), code.substring(typeStart));
+    }
+
+    /**
+     * Gets the key of a type in the type cache. Arrays can be lowered
+     * differently from package to package, so array types are keyed by the
+     * lowering as well.
+     */
+    private String typeKey(UnannTypeContext ctx) {
+        String text = ctx.getText();
+        if (text.indexOf('[') == -1) return text;
+        String arrayType = config.arrayType(packageName);
+        return arrayType == null ? text : arrayType + ":" + text;
+    }
+
+    /**
+     * @return the swift type an array type is lowered to, or null for swift
+     * arrays
+     */
+    private String arrayType(UnannArrayTypeContext ctx) {
+        if (ctx.unannPrimitiveType() == null) return null;
+        return config.arrayType(packageName);
     }
 
     @Override
@@ -577,9 +2095,15 @@ public class J2SwiftListener extends Java8BaseListener {
     public void enterUnannArrayType(UnannArrayTypeContext ctx) {
         if (shouldSkipEnter()) return;
 
+        String arrayType = arrayType(ctx);
         int numDims = Util.numSquareBrackets(ctx.dims().getText());
         for (int i = 0; i < numDims; i++) {
-            code.append('[');
+            if (arrayType == null) {
+                code.append('[');
+            }
+            else {
+                code.append(arrayType).append('<');
+            }
         }
     }
 
@@ -587,9 +2111,10 @@ public class J2SwiftListener extends Java8BaseListener {
     public void exitUnannArrayType(UnannArrayTypeContext ctx) {
         if (shouldSkipExit()) return;
 
+        String arrayType = arrayType(ctx);
         int numDims = Util.numSquareBrackets(ctx.dims().getText());
         for (int i = 0; i < numDims; i++) {
-            code.append(']');
+            code.append(arrayType == null ? ']' : '>');
         }
     }
 
@@ -598,216 +2123,1782 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipEnter()) return;
 
         code.append('\n');
+        if (waitsOnMonitor(ctx.methodBody())) {
+            // the swift locks have no condition that wait() could release
+            appendUntranslated(ctx);
+            return;
+        }
+        appendInferredAccess(ctx, ctx.methodModifier(),
+                    Collections.singletonList(ctx.methodHeader().methodDeclarator().Identifier().getText()),
+                    enclosingTypeName(ctx), Arrays.asList(ctx.methodHeader().result(),
+                    ctx.methodHeader().methodDeclarator().formalParameterList()));
+        pushScope();
     }
 
     @Override
     public void exitMethodDeclaration(MethodDeclarationContext ctx) {
         if (shouldSkipExit()) return;
+
+        popScope();
     }
 
     @Override
     public void enterMethodModifier(MethodModifierContext ctx) {
         if (shouldSkipEnter()) return;
 
-        if (ctx.annotation() != null) return;
+        if (ctx.annotation() != null || isInferredAccess(ctx)) return;
         String text = modifierMap.get(ctx.getText());
         if (text.equals("error")) {
             Util.exitNonTranslatable("class method modifier '"+ctx.getText()+"'", ctx);
         }
+        if (text.isEmpty()) return;     // e.g. synchronized, which locks the body instead
         code.append(text).append(' ');
     }
 
     @Override
-    public void exitMethodModifier(MethodModifierContext ctx) {
+    public void exitMethodModifier(MethodModifierContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    public void enterMethodHeader(MethodHeaderContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        code.append("??");  // start of possible type parameters
+    }
+
+    @Override
+    public void exitMethodHeader(MethodHeaderContext ctx) {
+        if (shouldSkipExit()) return;
+
+        int resultEnd = code.lastIndexOf("@@");
+        int resultStart = code.lastIndexOf("@@", resultEnd-2);
+        if (resultEnd-resultStart == 2) {
+            // no return value
+            code.delete(resultStart, resultEnd+2);
+            return;
+        }
+        String result = code.substring(resultStart+2, resultEnd);
+        code.delete(resultStart, resultEnd+2);
+        code.append(" -> ").append(result).append(nullable.contains(ctx.getParent()) ? "?" : "");
+    }
+
+    @Override
+    public void enterResult(ResultContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        code.append("??");   // end of possible type parameters
+        code.append("@@");  // mark the beginning of the unannType
+    }
+
+    @Override
+    public void exitResult(ResultContext ctx) {
+        if (shouldSkipExit()) return;
+
+        code.append("@@");  // mark the end of the unannType
+    }
+
+    @Override
+    public void enterMethodDeclarator(MethodDeclaratorContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        if (ctx.dims() != null) {
+            Util.exitNonTranslatable("C-style array declaration", ctx);
+        }
+
+        code.append("func ").append(ctx.Identifier());
+        int typeParamsEnd = code.lastIndexOf("??");
+        int typeParamsStart = code.lastIndexOf("??", typeParamsEnd-2);
+        String typeParams = code.substring(typeParamsStart+2, typeParamsEnd);
+        code.delete(typeParamsStart, typeParamsEnd+2);
+        typeParams = addWildcardParams(ctx.formalParameterList(), typeParams);
+        code.append(addGenericParams(ctx, typeParams)).append('(');
+        declareParams(ctx.formalParameterList());
+    }
+
+    @Override
+    public void exitMethodDeclarator(MethodDeclaratorContext ctx) {
+        if (shouldSkipExit()) return;
+
+        code.append(')');
+        genericParamTypes.clear();
+        if (asyncMethods.contains(ctx.Identifier().getText())) {
+            // waiting for a task can throw, since the task can
+            code.append(" async");
+            if (((MethodHeaderContext) ctx.getParent()).throws_() == null) code.append(" throws");
+        }
+    }
+
+    /**
+     * Makes the parameters of a method that are typed by a protocol generic over
+     * the protocol, so the swift optimizer can specialize calls through them
+     * instead of going through an existential. Varargs keep the protocol type
+     * since their elements can be of different types, as do parameters that
+     * are assigned to in the method body.
+     * @param ctx declarator of the method
+     * @param typeParams translated type parameters of the method, e.g. "<T>",
+     * or the empty string
+     * @return the type parameters with the added generic parameters
+     */
+    private String addGenericParams(MethodDeclaratorContext ctx, String typeParams) {
+        Set<String> protocols = config.genericProtocols();
+        FormalParameterListContext paramList = ctx.formalParameterList();
+        if (protocols == null || paramList == null) return typeParams;
+
+        List<FormalParameterContext> params = new ArrayList<>();
+        if (paramList.formalParameters() != null) {
+            params.addAll(paramList.formalParameters().formalParameter());
+        }
+        if (paramList.lastFormalParameter() != null && paramList.lastFormalParameter().formalParameter() != null) {
+            params.add(paramList.lastFormalParameter().formalParameter());
+        }
+
+        MethodBodyContext body = ctx.getParent().getParent().getRuleContext(MethodBodyContext.class, 0);
+        List<Token> bodyTokens = body == null ? new ArrayList<Token>() : Util.terminals(body);
+
+        StringBuilder generics = new StringBuilder();
+        for (FormalParameterContext param : params) {
+            String type = param.unannType().getText();
+            String simpleName = type.substring(type.lastIndexOf('.')+1);
+            if (!type.matches("[\\w$.]+") || !protocols.contains(simpleName)) continue;
+            String name = param.variableDeclaratorId().Identifier().getText();
+            if (isAssigned(name, bodyTokens)) continue;
+
+            String genericName = Character.toUpperCase(name.charAt(0)) + name.substring(1) + "Type";
+            genericParamTypes.put(param.unannType(), genericName);
+            generics.append(", ").append(genericName).append(": ").append(type);
+        }
+        if (generics.length() == 0) return typeParams;
+        if (typeParams.isEmpty()) {
+            return "<" + generics.substring(2) + ">";
+        }
+        return typeParams.substring(0, typeParams.length()-1) + generics + ">";
+    }
+
+    /**
+     * Lowers the wildcards in the types of the parameters of a method or
+     * constructor to generic parameters, so the swift optimizer can specialize
+     * calls instead of going through existentials, e.g. "List<? extends Shape>
+     * shapes" to "<ShapesType: Shape>(shapes: [ShapesType])". A wildcard with
+     * a lower bound stands for its bound, since swift has no lower bounds, and
+     * so does one bounded by a type the type map translates to a value type.
+     * Only the wildcards that are type arguments of the parameter type itself
+     * are lowered; those nested deeper, like in "Map<K, List<? extends V>>",
+     * stand for their bound, since a generic parameter would make all the
+     * nested values have the same type. Generic parameters that are used as
+     * dictionary keys or set elements are constrained to Hashable.
+     * @param paramList parameters of the method or constructor, or null
+     * @param typeParams translated type parameters of the method, e.g. "<T>",
+     * or the empty string
+     * @return the type parameters with the added generic parameters
+     */
+    private String addWildcardParams(FormalParameterListContext paramList, String typeParams) {
+        if (paramList == null) return typeParams;
+        List<FormalParameterContext> params = new ArrayList<>();
+        if (paramList.formalParameters() != null) {
+            params.addAll(paramList.formalParameters().formalParameter());
+        }
+        if (paramList.lastFormalParameter().formalParameter() != null) {
+            params.add(paramList.lastFormalParameter().formalParameter());
+        }
+
+        StringBuilder generics = new StringBuilder();
+        for (FormalParameterContext param : params) {
+            List<WildcardContext> wildcards = new ArrayList<>();
+            findWildcards(param.unannType(), wildcards);
+            if (wildcards.isEmpty()) continue;
+
+            String name = param.variableDeclaratorId().Identifier().getText();
+            String baseName = Character.toUpperCase(name.charAt(0)) + name.substring(1) + "Type";
+            StringBuilder javaType = new StringBuilder();
+            // generic parameters and their swift bounds, or null
+            Map<String, String> paramGenerics = new LinkedHashMap<>();
+            int next = 0;
+            for (Token token : Util.terminals(param.unannType())) {
+                WildcardContext wildcard = next < wildcards.size() ? wildcards.get(next) : null;
+                if (wildcard == null || token.getTokenIndex() < wildcard.getStart().getTokenIndex()) {
+                    javaType.append(token.getText());
+                    continue;
+                }
+                if (token.getTokenIndex() == wildcard.getStart().getTokenIndex()) {
+                    WildcardBoundsContext bounds = wildcard.wildcardBounds();
+                    String bound = bounds == null ? null : bounds.referenceType().getText();
+                    if (!isTopLevel(wildcard, param.unannType())) {
+                        javaType.append(bound == null ? "Any" : bound);
+                    }
+                    else if (bound != null && (bounds.getStart().getType() == Java8Lexer.SUPER
+                                || typeMap.containsKey(bound))) {
+                        javaType.append(bound);
+                    }
+                    else {
+                        String genericName = wildcards.size() == 1 ? baseName : baseName + (next+1);
+                        javaType.append(genericName);
+                        String swiftBound = bound == null ? null : expressions.translateType(bound);
+                        paramGenerics.put(genericName, bound == null ? null : swiftBound == null ? bound : swiftBound);
+                    }
+                }
+                if (token.getTokenIndex() == wildcard.getStop().getTokenIndex()) next++;
+            }
+
+            String swiftType = expressions.translateType(javaType.toString());
+            if (swiftType == null) {
+                Util.exitNonTranslatable("wildcard parameter type", param);
+            }
+            // the keys of a dictionary with nested wildcards only need to be hashable
+            swiftType = swiftType.replace("[Any:", "[AnyHashable:").replace("Set<Any>", "Set<AnyHashable>");
+            genericParamTypes.put(param.unannType(), swiftType);
+            for (Map.Entry<String, String> e : paramGenerics.entrySet()) {
+                String genericName = e.getKey();
+                String bound = e.getValue();
+                if (swiftType.contains("[" + genericName + ":") || swiftType.contains("Set<" + genericName + ">")) {
+                    bound = bound == null ? "Hashable" : bound + " & Hashable";
+                }
+                generics.append(", ").append(genericName).append(bound == null ? "" : ": " + bound);
+            }
+        }
+        if (generics.length() == 0) return typeParams;
+        if (typeParams.isEmpty()) {
+            return "<" + generics.substring(2) + ">";
+        }
+        return typeParams.substring(0, typeParams.length()-1) + generics + ">";
+    }
+
+    /**
+     * @return whether a wildcard is a type argument of a type itself, rather
+     * than of one of its type arguments
+     */
+    private static boolean isTopLevel(WildcardContext wildcard, UnannTypeContext type) {
+        int depth = 0;
+        for (ParserRuleContext parent = wildcard.getParent(); parent != type; parent = parent.getParent()) {
+            if (parent instanceof TypeArgumentsContext) depth++;
+        }
+        return depth == 1;
+    }
+
+    private static void findWildcards(ParseTree tree, List<WildcardContext> wildcards) {
+        if (tree instanceof WildcardContext) {
+            wildcards.add((WildcardContext) tree);
+            return;     // wildcards in its bound stand for their own bounds
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findWildcards(tree.getChild(i), wildcards);
+        }
+    }
+
+    /**
+     * @return whether a local variable or parameter is assigned to anywhere in
+     * the given tokens
+     */
+    private static boolean isAssigned(String name, List<Token> tokens) {
+        for (int i = 0; i+1 < tokens.size(); i++) {
+            if (!tokens.get(i).getText().equals(name)) continue;
+            if (i > 0 && tokens.get(i-1).getType() == Java8Lexer.DOT) continue;
+            String prev = i > 0 ? tokens.get(i-1).getText() : "";
+            String next = tokens.get(i+1).getText();
+            if (prev.equals("++") || prev.equals("--") || next.equals("++") || next.equals("--")) return true;
+            if (next.endsWith("=") && !next.equals("==") && !next.equals("<=")
+                        && !next.equals(">=") && !next.equals("!=")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends a mutable copy of each parameter that a body assigns, since
+     * swift parameters are constants
+     * @param paramList parameters of the method or constructor
+     * @param body the block or constructor body
+     */
+    private void appendParamCopies(FormalParameterListContext paramList, ParserRuleContext body) {
+        if (paramList == null) return;
+        List<ParserRuleContext> params = new ArrayList<>();
+        if (paramList.formalParameters() != null) {
+            params.addAll(paramList.formalParameters().formalParameter());
+        }
+        LastFormalParameterContext last = paramList.lastFormalParameter();
+        params.add(last.formalParameter() != null ? last.formalParameter() : last);
+        List<Token> tokens = Util.terminals(body);
+        for (ParserRuleContext param : params) {
+            String name;
+            if (param instanceof FormalParameterContext) {
+                if (ownership((FormalParameterContext) param) != null) continue;
+                name = ((FormalParameterContext) param).variableDeclaratorId().getText();
+            }
+            else {
+                name = ((LastFormalParameterContext) param).variableDeclaratorId().getText();
+            }
+            // writes to the elements of a parameter that swift copies are
+            // left untranslated, so only assignments need the copy
+            if (isAssigned(name, tokens)) {
+                code.append("var ").append(name).append(" = ").append(name).append('\n');
+            }
+        }
+    }
+
+    @Override
+    public void enterFormalParameter(FormalParameterContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        // arguments are passed without labels, like in java
+        code.append("_ ");
+        code.append("!!");  // to mark the start of the unannType
+    }
+
+    /**
+     * @return the ownership modifier of a parameter, or null if it has none.
+     * Optionals are left alone, since unwrapping them copies the value.
+     */
+    private String ownership(FormalParameterContext ctx) {
+        String ownership = paramOwnership.get(ctx);
+        return ownership == null || nullable.contains(ctx.variableDeclaratorId()) ? null : ownership;
+    }
+
+    @Override
+    public void exitFormalParameter(FormalParameterContext ctx) {
+        if (shouldSkipExit()) return;
+
+        if (ctx.getParent() instanceof FormalParametersContext) {
+            code.append(", ");
+        }
+    }
+
+    @Override
+    public void enterReceiverParameter(ReceiverParameterContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        Util.exitNonTranslatable("receiver parameter", ctx);
+    }
+
+    @Override
+    public void exitReceiverParameter(ReceiverParameterContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterLastFormalParameter(LastFormalParameterContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        if (ctx.formalParameter() != null) return;
+
+        code.append("_ ");
+        code.append("!!");  // to mark the start of the unannType
+    }
+
+    @Override
+    public void exitLastFormalParameter(LastFormalParameterContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterThrows_(Throws_Context ctx) {
+        if (shouldSkipEnter()) return;
+
+        code.append(" throws!!");
+    }
+
+    @Override
+    public void exitThrows_(Throws_Context ctx) {
+        if (shouldSkipExit()) return;
+
+        code.delete(code.lastIndexOf("!!"), code.length());
+    }
+
+    @Override
+    public void enterMethodBody(MethodBodyContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        if (ctx.block() == null) {
+            code.append('\n');
+        }
+        else {
+            code.append(' ');
+        }
+    }
+
+    @Override
+    public void exitMethodBody(MethodBodyContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterBlock(BlockContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        pushScope();
+        String head = bodyHeads.remove(ctx);
+        if (head != null) {
+            code.append(head);
+            return;
+        }
+        ParserRuleContext parent = ctx.getParent();
+        if (parent instanceof SynchronizedStatementContext) {
+            code.append("do {\n");
+            appendMonitorLock((SynchronizedStatementContext) parent);
+            return;
+        }
+        if (isBody(parent.getParent())) {
+            return;     // the braces of a body are added with its statement
+        }
+        if (parent instanceof StatementWithoutTrailingSubstatementContext) {
+            // swift would take a bare block for a closure
+            code.append("do {\n");
+            return;
+        }
+        code.append("{\n");
+        if (parent instanceof MethodBodyContext && parent.getParent() instanceof MethodDeclarationContext) {
+            appendParamCopies(((MethodDeclarationContext) parent.getParent()).methodHeader().methodDeclarator()
+                        .formalParameterList(), ctx);
+            List<MethodModifierContext> modifiers = ((MethodDeclarationContext) parent.getParent()).methodModifier();
+            if (hasModifier(modifiers, "synchronized")) {
+                if (hasModifier(modifiers, "static")) {
+                    appendLock(enclosingTypeName(ctx) + ".j2sClassLock");
+                }
+                else {
+                    appendLock("j2sLock");
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the locking for a synchronized block. Blocks on this, on a
+     * translated class or on an instance of one use the locks of the class;
+     * blocks on any other object use the objective-c monitor of that object.
+     */
+    private void appendMonitorLock(SynchronizedStatementContext ctx) {
+        String monitor = ctx.expression().getText();
+        String className = enclosingTypeName(ctx);
+        String name = monitor.startsWith("this.") ? monitor.substring("this.".length()) : monitor;
+        Scope.Variable variable = scope.lookup(name);
+        // the class of a class literal, as written
+        String type = monitor.matches("([\\w$]+\\.)+class") ? monitor.substring(0, monitor.length()-".class".length())
+                    : null;
+        if (monitor.equals("this")) {
+            appendLock("j2sLock");
+        }
+        else if (type != null && (type.equals(className)
+                    || config.classMonitors().contains(type.substring(type.lastIndexOf('.')+1)))) {
+            appendLock(type + ".j2sClassLock");
+        }
+        else if (variable != null && config.instanceMonitors().contains(variable.javaType)
+                    && name.matches("[\\w$]+")) {
+            appendLock((monitor.startsWith("this.") ? "self." : "") + name + ".j2sLock");
+        }
+        else if (monitor.matches("[\\w$]+(\\.[\\w$]+)*")) {
+            if (monitor.endsWith(".class")) {
+                monitor = monitor.substring(0, monitor.length()-"class".length()) + "self";
+            }
+            if (monitor.startsWith("this.")) {
+                monitor = "self." + monitor.substring("this.".length());
+            }
+            code.append("objc_sync_enter(").append(monitor).append(")\n");
+            code.append("defer { objc_sync_exit(").append(monitor).append(") }\n");
+        }
+        else {
+            Util.exitNonTranslatable("synchronized on an expression", ctx.expression());
+        }
+    }
+
+    @Override
+    public void enterSynchronizedStatement(SynchronizedStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+    }
+
+    @Override
+    public void exitSynchronizedStatement(SynchronizedStatementContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterExpression(ExpressionContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        // expressions are translated as a whole by the statement they are in,
+        // and the monitor of a synchronized block with its block
+        skipSubtree();
+    }
+
+    @Override
+    public void exitExpression(ExpressionContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void exitBlock(BlockContext ctx) {
+        if (shouldSkipExit()) return;
+
+        popScope();
+        String tail = bodyTails.remove(ctx);
+        if (tail != null) {
+            code.append(tail);
+            return;
+        }
+        if (isBody(ctx.getParent().getParent())) return;
+        code.append("}\n");
+    }
+
+    /**
+     * @return whether a statement is the body of an if, while, do or for
+     * statement, which swift requires braces around
+     */
+    private static boolean isBody(ParserRuleContext ctx) {
+        if (!(ctx instanceof StatementContext) && !(ctx instanceof StatementNoShortIfContext)) return false;
+        ParserRuleContext parent = ctx.getParent();
+        return parent instanceof IfThenStatementContext || parent instanceof IfThenElseStatementContext
+                    || parent instanceof IfThenElseStatementNoShortIfContext
+                    || parent instanceof WhileStatementContext || parent instanceof WhileStatementNoShortIfContext
+                    || parent instanceof DoStatementContext
+                    || parent instanceof BasicForStatementContext || parent instanceof BasicForStatementNoShortIfContext
+                    || parent instanceof EnhancedForStatementContext
+                    || parent instanceof EnhancedForStatementNoShortIfContext;
+    }
+
+    /**
+     * Leaves out a statement that can't be translated, keeping its java code
+     * in a comment so it can be ported by hand
+     */
+    private void appendUntranslated(ParserRuleContext ctx) {
+        code.append("// untranslated: ").append(javaText(ctx)).append('\n');
+        noteUntranslated(ctx);
+        skipSubtree();
+    }
+
+    /**
+     * Notes that code of the class around a node was left untranslated
+     */
+    private void noteUntranslated(ParserRuleContext ctx) {
+        String type = enclosingTypeName(ctx);
+        if (type != null) untranslatedTypes.add(type);
+    }
+
+    /**
+     * @return simple names of the classes and interfaces with code that was
+     * left untranslated, in all the declarations translated so far
+     */
+    public Set<String> untranslatedTypes() {
+        return untranslatedTypes;
+    }
+
+    /**
+     * @return the java code of a subtree on one line, with the usual spacing
+     */
+    private static String javaText(ParserRuleContext ctx) {
+        StringBuilder sb = new StringBuilder();
+        Token prev = null;
+        for (Token token : Util.terminals(ctx)) {
+            String text = token.getText();
+            if (prev != null && !prev.getText().equals(".") && !prev.getText().equals("(")
+                        && !prev.getText().equals("[") && !text.equals(".") && !text.equals(",")
+                        && !text.equals(";") && !text.equals(")") && !text.equals("[") && !text.equals("]")
+                        && !(text.equals("(") && prev.getType() == Java8Lexer.Identifier)
+                        && !text.equals("++") && !text.equals("--")) {
+                sb.append(' ');
+            }
+            sb.append(text);
+            prev = token;
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void enterBlockStatement(BlockStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        if (ctx.classDeclaration() != null) {
+            appendUntranslated(ctx);
+        }
+    }
+
+    @Override
+    public void exitBlockStatement(BlockStatementContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterStatement(StatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        appendBodyHead(ctx);
+    }
+
+    @Override
+    public void exitStatement(StatementContext ctx) {
+        if (shouldSkipExit()) return;
+
+        appendBodyTail(ctx);
+    }
+
+    @Override
+    public void enterStatementNoShortIf(StatementNoShortIfContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        appendBodyHead(ctx);
+    }
+
+    @Override
+    public void exitStatementNoShortIf(StatementNoShortIfContext ctx) {
+        if (shouldSkipExit()) return;
+
+        appendBodyTail(ctx);
+    }
+
+    /**
+     * Opens the body of a compound statement. Bodies get braces whether or not
+     * they are blocks, since swift requires them.
+     */
+    private void appendBodyHead(ParserRuleContext ctx) {
+        String head = bodyHeads.remove(ctx);
+        if (head != null) {
+            code.append(head);
+        }
+        else if (isBody(ctx)) {
+            code.append("{\n");
+        }
+    }
+
+    private void appendBodyTail(ParserRuleContext ctx) {
+        String tail = bodyTails.remove(ctx);
+        if (tail != null) {
+            code.append(tail);
+        }
+        else if (isBody(ctx)) {
+            code.append("}\n");
+        }
+    }
+
+    /**
+     * Translates the condition of an if, while or do statement
+     * @return the swift condition, or null if it can't be translated, in which
+     * case the whole statement is left out
+     */
+    private String condition(ParserRuleContext statement, ExpressionContext expression) {
+        try {
+            return expressions.translateValue(expression, "boolean", scope, selfType(statement));
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            appendUntranslated(statement);
+            return null;
+        }
+    }
+
+    @Override
+    public void enterLabeledStatement(LabeledStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        appendLabel(ctx.Identifier(), ctx.statement());
+    }
+
+    @Override
+    public void exitLabeledStatement(LabeledStatementContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterLabeledStatementNoShortIf(LabeledStatementNoShortIfContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        appendLabel(ctx.Identifier(), ctx.statementNoShortIf());
+    }
+
+    @Override
+    public void exitLabeledStatementNoShortIf(LabeledStatementNoShortIfContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    private void appendLabel(TerminalNode label, ParserRuleContext statement) {
+        // basic for statements put the label on the loop they are lowered to
+        ParserRuleContext loop = statement.getChild(ParserRuleContext.class, 0);
+        if (loop instanceof ForStatementContext && ((ForStatementContext) loop).basicForStatement() != null) return;
+        if (loop instanceof ForStatementNoShortIfContext
+                    && ((ForStatementNoShortIfContext) loop).basicForStatementNoShortIf() != null) return;
+        code.append(label.getText()).append(": ");
+    }
+
+    /**
+     * @return "label: " for a loop statement with a label, or the empty string
+     */
+    private static String label(ParserRuleContext loop) {
+        ParserRuleContext labeled = loop.getParent().getParent().getParent();
+        if (labeled instanceof LabeledStatementContext) {
+            return ((LabeledStatementContext) labeled).Identifier().getText() + ": ";
+        }
+        if (labeled instanceof LabeledStatementNoShortIfContext) {
+            return ((LabeledStatementNoShortIfContext) labeled).Identifier().getText() + ": ";
+        }
+        return "";
+    }
+
+    @Override
+    public void enterIfThenStatement(IfThenStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        String condition = condition(ctx, ctx.expression());
+        if (condition == null) return;
+        code.append("if ").append(condition).append(' ');
+    }
+
+    @Override
+    public void exitIfThenStatement(IfThenStatementContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterIfThenElseStatement(IfThenElseStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        String condition = condition(ctx, ctx.expression());
+        if (condition == null) return;
+        code.append("if ").append(condition).append(' ');
+        putElse(ctx.statementNoShortIf(), ctx.statement());
+    }
+
+    @Override
+    public void exitIfThenElseStatement(IfThenElseStatementContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterIfThenElseStatementNoShortIf(IfThenElseStatementNoShortIfContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        String condition = condition(ctx, ctx.expression());
+        if (condition == null) return;
+        code.append("if ").append(condition).append(' ');
+        putElse(ctx.statementNoShortIf(0), ctx.statementNoShortIf(1));
+    }
+
+    @Override
+    public void exitIfThenElseStatementNoShortIf(IfThenElseStatementNoShortIfContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    /**
+     * Puts the else between the branches of an if statement; an if statement
+     * in the else branch is chained as else if
+     */
+    private void putElse(ParserRuleContext thenBranch, ParserRuleContext elseBranch) {
+        bodyTails.put(thenBranch, "}");
+        ParserRuleContext statement = elseBranch.getChild(ParserRuleContext.class, 0);
+        if (statement instanceof IfThenStatementContext || statement instanceof IfThenElseStatementContext
+                    || statement instanceof IfThenElseStatementNoShortIfContext) {
+            bodyHeads.put(elseBranch, " else ");
+            bodyTails.put(elseBranch, "");
+        }
+        else {
+            bodyHeads.put(elseBranch, " else {\n");
+        }
+    }
+
+    @Override
+    public void enterWhileStatement(WhileStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        String condition = condition(ctx, ctx.expression());
+        if (condition == null) return;
+        code.append("while ").append(condition).append(' ');
+    }
+
+    @Override
+    public void exitWhileStatement(WhileStatementContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterWhileStatementNoShortIf(WhileStatementNoShortIfContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        String condition = condition(ctx, ctx.expression());
+        if (condition == null) return;
+        code.append("while ").append(condition).append(' ');
+    }
+
+    @Override
+    public void exitWhileStatementNoShortIf(WhileStatementNoShortIfContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterDoStatement(DoStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        String condition = condition(ctx, ctx.expression());
+        if (condition == null) return;
+        code.append("repeat ");
+        bodyTails.put(ctx.statement(), "} while " + condition + "\n");
+    }
+
+    @Override
+    public void exitDoStatement(DoStatementContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterBasicForStatement(BasicForStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        appendBasicFor(ctx, ctx.forInit(), ctx.expression(), ctx.forUpdate(), ctx.statement());
+    }
+
+    @Override
+    public void exitBasicForStatement(BasicForStatementContext ctx) {
+        if (shouldSkipExit()) return;
+
+        exitLoop(ctx);
+    }
+
+    @Override
+    public void enterBasicForStatementNoShortIf(BasicForStatementNoShortIfContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        appendBasicFor(ctx, ctx.forInit(), ctx.expression(), ctx.forUpdate(), ctx.statementNoShortIf());
+    }
+
+    @Override
+    public void exitBasicForStatementNoShortIf(BasicForStatementNoShortIfContext ctx) {
+        if (shouldSkipExit()) return;
+
+        exitLoop(ctx);
+    }
+
+    private void exitLoop(ParserRuleContext ctx) {
+        popScope();
+        String tail = statementTails.remove(ctx);
+        if (tail != null) code.append(tail);
+    }
+
+    /**
+     * Translates a basic for statement. Counting loops become a for-in over a
+     * stride; any other loop becomes a while loop in a do block that scopes
+     * the loop variables, with the update at the end of the body, or deferred
+     * if the body can continue.
+     */
+    private void appendBasicFor(ParserRuleContext ctx, ForInitContext init, ExpressionContext condition,
+                ForUpdateContext update, ParserRuleContext body) {
+        String selfType = selfType(ctx);
+        pushScope();
+        if (init != null && init.localVariableDeclaration() != null) {
+            LocalVariableDeclarationContext decl = init.localVariableDeclaration();
+            for (VariableDeclaratorContext declarator : decl.variableDeclaratorList().variableDeclarator()) {
+                declare(declarator.variableDeclaratorId(), decl.unannType());
+            }
+        }
+        List<Token> bodyTokens = Util.terminals(body);
+
+        String header;
+        try {
+            header = strideHeader(init, condition, update, bodyTokens, selfType);
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            header = null;
+        }
+        if (header != null) {
+            appendStringReserves(body, strideCount(header), selfType);
+            code.append(label(ctx)).append(header);
+            return;
+        }
+
+        List<String> inits = new ArrayList<>();
+        List<String> updates = new ArrayList<>();
+        String swiftCondition = "true";
+        try {
+            if (init != null && init.statementExpressionList() != null) {
+                for (StatementExpressionContext expr : init.statementExpressionList().statementExpression()) {
+                    inits.add(expressions.translateStatement(expr, scope, selfType));
+                }
+            }
+            if (update != null) {
+                for (StatementExpressionContext expr : update.statementExpressionList().statementExpression()) {
+                    updates.add(expressions.translateStatement(expr, scope, selfType));
+                }
+            }
+            if (condition != null) {
+                swiftCondition = expressions.translateValue(condition, "boolean", scope, selfType);
+            }
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            popScope();
+            appendUntranslated(ctx);
+            return;
+        }
+
+        boolean continues = false;
+        for (Token token : bodyTokens) {
+            if (token.getType() == Java8Lexer.CONTINUE) continues = true;
+        }
+        if (continues && !updates.isEmpty() && !updatesOnlyLoopVariables(init, update)) {
+            // a deferred update would also run when the body breaks or returns
+            popScope();
+            appendUntranslated(ctx);
+            return;
+        }
+
+        code.append("do {\n");
+        for (String statement : inits) {
+            code.append(statement).append('\n');
+        }
+        StringBuilder head = new StringBuilder(label(ctx)).append("while ").append(swiftCondition).append(" {\n");
+        StringBuilder tail = new StringBuilder();
+        if (continues && !updates.isEmpty()) {
+            head.append("defer { ");
+            for (int i = 0; i < updates.size(); i++) {
+                head.append(i == 0 ? "" : "; ").append(updates.get(i));
+            }
+            head.append(" }\n");
+        }
+        else {
+            for (String statement : updates) {
+                tail.append(statement).append('\n');
+            }
+        }
+        bodyHeads.put(body, head.toString());
+        bodyTails.put(body, tail.append("}\n").toString());
+        statementTails.put(ctx, "}\n");
+    }
+
+    /**
+     * @return whether the update of a for statement only assigns variables
+     * declared by the loop, so running it when the loop is left changes nothing
+     */
+    private static boolean updatesOnlyLoopVariables(ForInitContext init, ForUpdateContext update) {
+        if (init == null || init.localVariableDeclaration() == null) return false;
+        Set<String> names = new HashSet<>();
+        for (VariableDeclaratorContext declarator
+                    : init.localVariableDeclaration().variableDeclaratorList().variableDeclarator()) {
+            names.add(declarator.variableDeclaratorId().Identifier().getText());
+        }
+        for (StatementExpressionContext expr : update.statementExpressionList().statementExpression()) {
+            List<Token> tokens = Util.terminals(expr);
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (token.getType() == Java8Lexer.LPAREN && i > 0
+                            && tokens.get(i-1).getType() == Java8Lexer.Identifier) return false;
+            }
+            Token first = tokens.get(0).getType() == Java8Lexer.INC || tokens.get(0).getType() == Java8Lexer.DEC
+                        ? tokens.get(1) : tokens.get(0);
+            if (!names.contains(first.getText()) || tokens.get(1).getType() == Java8Lexer.DOT
+                        || tokens.get(1).getType() == Java8Lexer.LBRACK) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Translates the header of a counting loop like for (int i = 0; i < n; i++)
+     * into a for-in over a stride, which swift optimizes as well as a C loop.
+     * The loop variable can't be assigned in the body, and the bound has to be
+     * a value the body can't change: a constant, or made of locals and
+     * parameters that aren't assigned in the body and the lengths of arrays.
+     * @return the header, e.g. "for i in stride(from: 0, to: n, by: 1) ", or
+     * null if the loop isn't a counting loop
+     */
+    private String strideHeader(ForInitContext init, ExpressionContext condition, ForUpdateContext update,
+                List<Token> bodyTokens, String selfType) throws ExpressionTranslator.UntranslatableException {
+        if (init == null || init.localVariableDeclaration() == null || condition == null || update == null) {
+            return null;
+        }
+        LocalVariableDeclarationContext decl = init.localVariableDeclaration();
+        String type = decl.unannType().getText();
+        List<VariableDeclaratorContext> declarators = decl.variableDeclaratorList().variableDeclarator();
+        if (!type.equals("int") && !type.equals("long") || declarators.size() != 1) return null;
+        VariableInitializerContext initializer = declarators.get(0).variableInitializer();
+        if (initializer == null || initializer.expression() == null) return null;
+        String name = declarators.get(0).variableDeclaratorId().getText();
+
+        ParseTree comparison = condition;
+        while (comparison.getChildCount() == 1) {
+            comparison = comparison.getChild(0);
+        }
+        if (!(comparison instanceof RelationalExpressionContext) || comparison.getChildCount() != 3
+                    || !comparison.getChild(0).getText().equals(name)) return null;
+        String op = comparison.getChild(1).getText();
+        ParseTree bound = comparison.getChild(2);
+
+        List<StatementExpressionContext> updates = update.statementExpressionList().statementExpression();
+        if (updates.size() != 1) return null;
+        String step = updates.get(0).getText();
+        boolean up = step.equals(name + "++") || step.equals("++" + name) || step.equals(name + "+=1");
+        boolean down = step.equals(name + "--") || step.equals("--" + name) || step.equals(name + "-=1");
+        if (!(up && (op.equals("<") || op.equals("<=")) || down && (op.equals(">") || op.equals(">=")))) {
+            return null;
+        }
+        if (isAssigned(name, bodyTokens) || !isLoopInvariant(bound, name, bodyTokens)) return null;
+
+        String from = expressions.translateValue(initializer.expression(), type, scope, selfType);
+        String to = expressions.translateWidened(bound, type, scope, selfType);
+        if (to == null) return null;
+        return "for " + name + " in stride(from: " + from + (op.length() == 1 ? ", to: " : ", through: ")
+                    + to + ", by: " + (up ? "1" : "-1") + ") ";
+    }
+
+    private boolean isLoopInvariant(ParseTree bound, String loopVariable, List<Token> bodyTokens) {
+        if (constants.fold(bound) != null) return true;
+        List<Token> tokens = Util.terminals(bound);
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            switch (token.getType()) {
+            case Java8Lexer.Identifier:
+                String text = token.getText();
+                boolean isMember = i > 0 && tokens.get(i-1).getType() == Java8Lexer.DOT;
+                if (i+1 < tokens.size() && tokens.get(i+1).getType() == Java8Lexer.LPAREN) return false;
+                if (isMember) {
+                    // only the length of an array can't change
+                    Scope.Variable array = i > 1 ? scope.lookup(tokens.get(i-2).getText()) : null;
+                    if (!text.equals("length") || i > 2 && tokens.get(i-3).getType() == Java8Lexer.DOT
+                                || array == null || !array.javaType.endsWith("[]")) return false;
+                    continue;
+                }
+                Scope.Variable variable = scope.lookup(text);
+                if (text.equals(loopVariable) || variable == null || variable.isField()
+                            || isAssigned(text, bodyTokens)) return false;
+                break;
+            case Java8Lexer.DOT:
+            case Java8Lexer.LPAREN:
+            case Java8Lexer.RPAREN:
+            case Java8Lexer.ADD:
+            case Java8Lexer.SUB:
+            case Java8Lexer.MUL:
+            case Java8Lexer.DIV:
+            case Java8Lexer.IntegerLiteral:
+                break;
+            default:
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void enterForInit(ForInitContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        // expression lists are translated by the for statement, as is the
+        // declaration of a counting loop
+        if (ctx.statementExpressionList() != null || !statementTails.containsKey(ctx.getParent())) {
+            skipSubtree();
+        }
+    }
+
+    @Override
+    public void exitForInit(ForInitContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterForUpdate(ForUpdateContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        skipSubtree();
+    }
+
+    @Override
+    public void exitForUpdate(ForUpdateContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterEnhancedForStatement(EnhancedForStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        appendEnhancedFor(ctx, ctx.unannType(), ctx.variableDeclaratorId(), ctx.expression(), ctx.statement());
+    }
+
+    @Override
+    public void exitEnhancedForStatement(EnhancedForStatementContext ctx) {
+        if (shouldSkipExit()) return;
+
+        exitLoop(ctx);
+    }
+
+    @Override
+    public void enterEnhancedForStatementNoShortIf(EnhancedForStatementNoShortIfContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        appendEnhancedFor(ctx, ctx.unannType(), ctx.variableDeclaratorId(), ctx.expression(), ctx.statementNoShortIf());
+    }
+
+    @Override
+    public void exitEnhancedForStatementNoShortIf(EnhancedForStatementNoShortIfContext ctx) {
+        if (shouldSkipExit()) return;
+
+        exitLoop(ctx);
+    }
+
+    /**
+     * Translates an enhanced for statement into a for-in loop. The loop
+     * variable is a constant in swift unless the body assigns it.
+     * Loops over a variable declared as a one-dimensional array of primitives
+     * are lowered so the swift optimizer can drop the bounds checks: a local
+     * array the body doesn't use otherwise is iterated through its buffer
+     * pointer, and other arrays through their indices.
+     */
+    private void appendEnhancedFor(ParserRuleContext ctx, UnannTypeContext type, VariableDeclaratorIdContext id,
+                ExpressionContext iterable, ParserRuleContext body) {
+        String sequence;
+        try {
+            sequence = expressions.translateValue(iterable, null, scope, selfType(ctx));
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            appendUntranslated(ctx);
+            return;
+        }
+        if (id.dims() != null) {
+            appendUntranslated(ctx);
+            return;
+        }
+        String name = id.Identifier().getText();
+        List<Token> bodyTokens = Util.terminals(body);
+        String var = isAssigned(name, bodyTokens) ? "var " : "";
+        // an element that java widens to the declared type is converted first
+        String element = name + "Element";
+        String converted;
+        try {
+            converted = expressions.convertElement(element,
+                        expressions.translate(iterable, scope, selfType(ctx)).type, type.getText());
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            appendUntranslated(ctx);
+            return;
+        }
+        if (converted != null && (usesName(element, bodyTokens) || scope.lookup(element) != null)) {
+            appendUntranslated(ctx);
+            return;
+        }
+        pushScope();
+        declare(id, type);
+        if (converted != null) {
+            // for vElement in values { let v = Int64(vElement) ... }
+            code.append(label(ctx)).append("for ").append(element).append(" in ").append(sequence).append(' ');
+            bodyHeads.put(body, "{\n" + (var.isEmpty() ? "let " : var) + name + " = " + converted + "\n");
+            return;
+        }
+
+        List<Token> tokens = Util.terminals(iterable);
+        Scope.Variable iterated = tokens.size() == 1 ? scope.parent().lookup(tokens.get(0).getText()) : null;
+        if (iterated != null && iterated.isTaskGroup) {
+            // the values of the tasks of the group, as they finish
+            scope.declare(name, new Scope.Variable(type.getText(), null, false, false, null, false, false, false, true));
+            code.append(label(ctx)).append("for try await ").append(name).append(" in ").append(sequence).append(' ');
+            return;
+        }
+        if (iterated != null && isArrayOrList(iterated.javaType)) {
+            appendStringReserves(body, sequence + ".count", selfType(ctx));
+        }
+        boolean isThis = tokens.size() == 3 && tokens.get(0).getType() == Java8Lexer.THIS
+                    && tokens.get(1).getType() == Java8Lexer.DOT;
+        Token arrayName = tokens.size() == 1 || isThis ? tokens.get(tokens.size()-1) : null;
+        Scope.Variable array = arrayName == null || arrayName.getType() != Java8Lexer.Identifier
+                    ? null : scope.parent().lookup(arrayName.getText());
+        if (array == null || array.elementType == null || isThis && !array.isField()) {
+            code.append(label(ctx)).append("for ").append(var).append(name).append(" in ").append(sequence).append(' ');
+            return;
+        }
+
+        String arrayType = config.arrayType(packageName);
+        boolean hasBuffer = arrayType == null || arrayType.equals("Array") || arrayType.equals("ContiguousArray");
+        if (hasBuffer && !array.isField() && !usesName(arrayName.getText(), bodyTokens) && !leavesLoop(body)) {
+            // values.withUnsafeBufferPointer { for v in $0 { ... } }
+            code.append(sequence).append(".withUnsafeBufferPointer { ").append(label(ctx))
+                        .append("for ").append(var).append(name).append(" in $0 ");
+            statementTails.put(ctx, "}\n");
+            return;
+        }
+
+        // a field is read again for each element, so it can't be reassigned
+        String index = name + "Index";
+        if (isAssigned(arrayName.getText(), bodyTokens) || array.isField() && callsOwnMethods(bodyTokens)
+                    || usesName(index, bodyTokens) || scope.lookup(index) != null) {
+            code.append(label(ctx)).append("for ").append(var).append(name).append(" in ").append(sequence).append(' ');
+            return;
+        }
+        code.append(label(ctx)).append("for ").append(index).append(" in ").append(sequence).append(".indices ");
+        bodyHeads.put(body, "{\n" + (var.isEmpty() ? "let " : var) + name + " = " + sequence + "[" + index + "]\n");
+    }
+
+    /**
+     * Reserves the capacity of the local strings that the body of a loop
+     * appends to on each iteration, like s += "\(v),", so each string grows
+     * once instead of being copied to a larger buffer as it is filled. Only
+     * appends that are statements of the body itself count, with the least
+     * they can add, and nothing is reserved if the body can leave the loop
+     * early.
+     * @param count swift code of the number of iterations, as an Int, or null
+     * if it isn't known
+     */
+    private void appendStringReserves(ParserRuleContext body, String count, String selfType) {
+        if (count == null || leavesLoop(body)) return;
+        for (Token token : Util.terminals(body)) {
+            if (token.getType() == Java8Lexer.BREAK) return;
+        }
+        ParseTree tree = body;
+        while (tree.getChildCount() == 1) {
+            tree = tree.getChild(0);
+        }
+        List<ParserRuleContext> statements = new ArrayList<>();
+        if (tree instanceof BlockContext) {
+            if (((BlockContext) tree).blockStatements() == null) return;
+            statements.addAll(((BlockContext) tree).blockStatements().blockStatement());
+        }
+        else {
+            statements.add(body);
+        }
+
+        Map<String, Integer> lengths = new LinkedHashMap<>();
+        for (ParserRuleContext statement : statements) {
+            List<Token> tokens = Util.terminals(statement);
+            if (tokens.size() < 4 || tokens.get(0).getType() != Java8Lexer.Identifier
+                        || tokens.get(tokens.size()-1).getType() != Java8Lexer.SEMI) continue;
+            String name = tokens.get(0).getText();
+            int start;
+            if (tokens.get(1).getType() == Java8Lexer.ADD_ASSIGN) {
+                start = 2;
+            }
+            else if (tokens.get(1).getType() == Java8Lexer.ASSIGN && tokens.get(2).getText().equals(name)
+                        && tokens.get(3).getType() == Java8Lexer.ADD) {
+                start = 4;
+            }
+            else {
+                continue;
+            }
+            Scope.Variable variable = scope.lookup(name);
+            if (variable == null || variable.isField() || !"String".equals(typeMap.get(variable.javaType))) continue;
+            try {
+                int length = expressions.minStringLength(tokens.subList(start, tokens.size()-1), scope, selfType);
+                Integer total = lengths.get(name);
+                lengths.put(name, total == null ? length : total + length);
+            }
+            catch (ExpressionTranslator.UntranslatableException e) {
+                // the statement is left untranslated, so it appends nothing
+            }
+        }
+        for (Map.Entry<String, Integer> e : lengths.entrySet()) {
+            if (e.getValue() == 0) continue;
+            code.append(e.getKey()).append(".reserveCapacity(").append(e.getKey()).append(".utf8.count + ")
+                        .append(count).append(" * ").append(e.getValue()).append(")\n");
+        }
+    }
+
+    /**
+     * @return swift code of the number of iterations of a stride header that
+     * counts up from 0, as an Int, or null for other strides
+     */
+    private static String strideCount(String header) {
+        Matcher m = Pattern.compile("stride\\(from: 0, (to|through): (.*), by: 1\\) $").matcher(header);
+        if (!m.find()) return null;
+        boolean through = m.group(1).equals("through");
+        if (m.group(2).matches("\\d+")) {
+            return String.valueOf(Long.parseLong(m.group(2)) + (through ? 1 : 0));
+        }
+        String bound = "Int(" + m.group(2) + ")";
+        return through ? "(" + bound + " + 1)" : bound;
+    }
+
+    /**
+     * @return whether a java type is an array, or a type the type map
+     * translates to a swift array
+     */
+    private boolean isArrayOrList(String javaType) {
+        if (javaType == null) return false;
+        if (javaType.endsWith("[]")) return true;
+        String swiftType = expressions.translateType(javaType);
+        return swiftType != null && swiftType.startsWith("[") && !ExpressionTranslator.isDictionary(swiftType);
+    }
+
+    /**
+     * @return whether a name is used as a variable anywhere in the given tokens
+     */
+    private static boolean usesName(String name, List<Token> tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.get(i).getText().equals(name)
+                        && (i == 0 || tokens.get(i-1).getType() != Java8Lexer.DOT)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the given tokens call a method without a receiver or on
+     * this, which could change the fields of the object
+     */
+    private static boolean callsOwnMethods(List<Token> tokens) {
+        for (int i = 1; i < tokens.size(); i++) {
+            if (tokens.get(i).getType() != Java8Lexer.LPAREN || tokens.get(i-1).getType() != Java8Lexer.Identifier) {
+                continue;
+            }
+            if (i < 2 || tokens.get(i-2).getType() != Java8Lexer.DOT
+                        || i > 2 && tokens.get(i-3).getType() == Java8Lexer.THIS) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the body of a loop can leave the loop other than by
+     * breaking or continuing it, which it can't do from inside a closure
+     */
+    private static boolean leavesLoop(ParserRuleContext body) {
+        List<Token> tokens = Util.terminals(body);
+        for (int i = 0; i < tokens.size(); i++) {
+            int type = tokens.get(i).getType();
+            if (type == Java8Lexer.RETURN || type == Java8Lexer.THROW) return true;
+            // a labeled break or continue may be for an enclosing statement
+            if ((type == Java8Lexer.BREAK || type == Java8Lexer.CONTINUE) && i+1 < tokens.size()
+                        && tokens.get(i+1).getType() == Java8Lexer.Identifier) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void enterExpressionStatement(ExpressionStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        String executorCall = executorCalls.remove(ctx);
+        if (executorCall != null) {
+            appendExecutorCall(ctx, executorCall);
+            return;
+        }
+        if (isMonitorWait(ctx) && isLocked(ctx)) {
+            // the swift locks have no condition that wait() could release
+            appendUntranslated(ctx);
+            return;
+        }
+        try {
+            code.append(expressions.translateStatement(ctx.statementExpression(), scope, selfType(ctx))).append('\n');
+            skipSubtree();
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            appendUntranslated(ctx);
+        }
+    }
+
+    /**
+     * @return whether a statement calls wait(), notify() or notifyAll() on a
+     * java monitor, e.g. wait(), this.wait(100) or lock.notifyAll()
+     */
+    private static boolean isMonitorWait(ExpressionStatementContext ctx) {
+        return monitorMethod(ctx) != null;
+    }
+
+    /**
+     * @return "wait", "notify" or "notifyAll" for a statement that calls it on
+     * a java monitor, or null
+     */
+    private static String monitorMethod(ExpressionStatementContext ctx) {
+        List<Token> tokens = Util.terminals(ctx.statementExpression());
+        int lparen = -1;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.get(i).getType() == Java8Lexer.LPAREN) {
+                lparen = i;
+                break;
+            }
+        }
+        if (lparen < 1 || tokens.get(tokens.size()-1).getType() != Java8Lexer.RPAREN) return null;
+        String name = tokens.get(lparen-1).getText();
+        // wait(), wait(timeout) and wait(timeout, nanos)
+        if (name.equals("wait")) return name;
+        return lparen+2 == tokens.size() && (name.equals("notify") || name.equals("notifyAll")) ? name : null;
+    }
+
+    /**
+     * @return whether a method or constructor calls wait() in a synchronized
+     * method or block. Leaving out only the call would turn the loop around it,
+     * e.g. while (!ready) wait(), into one that spins while it holds the lock.
+     */
+    private static boolean waitsOnMonitor(ParseTree tree) {
+        if (tree instanceof ClassBodyContext) return false;
+        if (tree instanceof ExpressionStatementContext) {
+            ExpressionStatementContext statement = (ExpressionStatementContext) tree;
+            return "wait".equals(monitorMethod(statement)) && isLocked(statement);
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            if (waitsOnMonitor(tree.getChild(i))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a statement is in a synchronized method or block, which
+     * is translated to a lock, and not in a lambda or class declared there
+     */
+    private static boolean isLocked(ParserRuleContext ctx) {
+        for (ParserRuleContext parent = ctx.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent instanceof SynchronizedStatementContext) return true;
+            if (parent instanceof MethodDeclarationContext) {
+                return hasModifier(((MethodDeclarationContext) parent).methodModifier(), "synchronized");
+            }
+            if (parent instanceof LambdaExpressionContext || parent instanceof ClassBodyContext) return false;
+        }
+        return false;
+    }
+
+    /**
+     * Translates a call to a local executor that is a task group, or that is
+     * left out since its tasks run on the cooperative pool anyway
+     * @param kind see {@link #executorCalls}
+     */
+    private void appendExecutorCall(ExpressionStatementContext ctx, String kind) {
+        skipSubtree();
+        if (!kind.equals("add") && !kind.equals("result")) {
+            code.append(kind.isEmpty() ? "" : kind + "\n");
+            return;
+        }
+        List<Token> tokens = Util.terminals(ctx.statementExpression());
+        try {
+            if (kind.equals("result")) {
+                // list.add(executor.submit(work))
+                code.append(tokens.get(0).getText()).append(".addTask ").append(expressions.translateWork(
+                            tokens.subList(8, tokens.size()-2), scope, selfType(ctx))).append('\n');
+                return;
+            }
+            // executor.submit(work) or executor.execute(work)
+            code.append(tokens.get(0).getText()).append(".addTask ").append(expressions.translateWork(
+                        tokens.subList(4, tokens.size()-1), scope, selfType(ctx))).append('\n');
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            appendUntranslated(ctx);
+        }
+    }
+
+    @Override
+    public void exitExpressionStatement(ExpressionStatementContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterExplicitConstructorInvocation(ExplicitConstructorInvocationContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        List<Token> tokens = Util.terminals(ctx);
+        try {
+            // without the semicolon
+            code.append(expressions.translateStatement(tokens.subList(0, tokens.size()-1), scope,
+                        selfType(ctx))).append('\n');
+            skipSubtree();
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            appendUntranslated(ctx);
+        }
+    }
+
+    @Override
+    public void exitExplicitConstructorInvocation(ExplicitConstructorInvocationContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    @Override
+    public void enterReturnStatement(ReturnStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        if (ctx.expression() == null) {
+            code.append("return\n");
+            return;
+        }
+        try {
+            String value = returnsOptional(ctx)
+                        ? expressions.translateOptional(ctx.expression(), returnType(ctx), scope, selfType(ctx))
+                        : expressions.translateValue(ctx.expression(), returnType(ctx), scope, selfType(ctx));
+            code.append("return ").append(value).append('\n');
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            appendUntranslated(ctx);
+        }
+    }
+
+    @Override
+    public void exitReturnStatement(ReturnStatementContext ctx) {
+        if (shouldSkipExit()) return;
+    }
+
+    /**
+     * @return whether the method a statement is in returns a boxed type that
+     * may be null
+     */
+    private boolean returnsOptional(ParserRuleContext ctx) {
+        for (ParserRuleContext parent = ctx; parent != null; parent = parent.getParent()) {
+            if (parent instanceof MethodDeclarationContext) return nullable.contains(parent);
+            if (parent instanceof ClassBodyDeclarationContext || parent instanceof LambdaBodyContext) return false;
+        }
+        return false;
+    }
+
+    /**
+     * @return the java return type of the method a statement is in, or null
+     */
+    private static String returnType(ParserRuleContext ctx) {
+        for (ParserRuleContext parent = ctx; parent != null; parent = parent.getParent()) {
+            if (parent instanceof MethodDeclarationContext) {
+                return ((MethodDeclarationContext) parent).methodHeader().result().getText();
+            }
+            if (parent instanceof InterfaceMethodDeclarationContext) {
+                return ((InterfaceMethodDeclarationContext) parent).methodHeader().result().getText();
+            }
+            if (parent instanceof ClassBodyDeclarationContext || parent instanceof LambdaBodyContext) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void enterBreakStatement(BreakStatementContext ctx) {
+        if (shouldSkipEnter()) return;
+
+        code.append("break");
+        if (ctx.Identifier() != null) code.append(' ').append(ctx.Identifier().getText());
+        code.append('\n');
+    }
+
+    @Override
+    public void exitBreakStatement(BreakStatementContext ctx) {
         if (shouldSkipExit()) return;
     }
 
-    public void enterMethodHeader(MethodHeaderContext ctx) {
+    @Override
+    public void enterContinueStatement(ContinueStatementContext ctx) {
         if (shouldSkipEnter()) return;
 
-        code.append("??");  // start of possible type parameters
+        code.append("continue");
+        if (ctx.Identifier() != null) code.append(' ').append(ctx.Identifier().getText());
+        code.append('\n');
     }
 
     @Override
-    public void exitMethodHeader(MethodHeaderContext ctx) {
+    public void exitContinueStatement(ContinueStatementContext ctx) {
         if (shouldSkipExit()) return;
-
-        int resultEnd = code.lastIndexOf("@@");
-        int resultStart = code.lastIndexOf("@@", resultEnd-2);
-        if (resultEnd-resultStart == 2) {
-            // no return value
-            code.delete(resultStart, resultEnd+2);
-            return;
-        }
-        String result = code.substring(resultStart+2, resultEnd);
-        code.delete(resultStart, resultEnd+2);
-        code.append(" -> ").append(result);
     }
 
     @Override
-    public void enterResult(ResultContext ctx) {
+    public void enterAssertStatement(AssertStatementContext ctx) {
         if (shouldSkipEnter()) return;
 
-        code.append("??");   // end of possible type parameters
-        code.append("@@");  // mark the beginning of the unannType
+        try {
+            String selfType = selfType(ctx);
+            code.append("assert(").append(expressions.translateValue(ctx.expression(0), "boolean", scope, selfType));
+            if (ctx.expression().size() > 1) {
+                ExpressionTranslator.Expr message = expressions.translate(ctx.expression(1), scope, selfType);
+                code.append(", ").append("String".equals(message.type) ? message.code
+                            : "String(describing: " + message.code + ")");
+            }
+            code.append(")\n");
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            code.delete(code.lastIndexOf("assert("), code.length());
+            appendUntranslated(ctx);
+        }
     }
 
     @Override
-    public void exitResult(ResultContext ctx) {
+    public void exitAssertStatement(AssertStatementContext ctx) {
         if (shouldSkipExit()) return;
-
-        code.append("@@");  // mark the end of the unannType
     }
 
     @Override
-    public void enterMethodDeclarator(MethodDeclaratorContext ctx) {
+    public void enterSwitchStatement(SwitchStatementContext ctx) {
         if (shouldSkipEnter()) return;
 
-        if (ctx.dims() != null) {
-            Util.exitNonTranslatable("C-style array declaration", ctx);
-        }
-
-        code.append("func ").append(ctx.Identifier());
-        int typeParamsEnd = code.lastIndexOf("??");
-        int typeParamsStart = code.lastIndexOf("??", typeParamsEnd-2);
-        String typeParams = code.substring(typeParamsStart+2, typeParamsEnd);
-        code.delete(typeParamsStart, typeParamsEnd+2);
-        code.append(typeParams).append('(');
+        appendUntranslated(ctx);
     }
 
     @Override
-    public void exitMethodDeclarator(MethodDeclaratorContext ctx) {
+    public void exitSwitchStatement(SwitchStatementContext ctx) {
         if (shouldSkipExit()) return;
-
-        code.append(')');
     }
 
     @Override
-    public void enterFormalParameter(FormalParameterContext ctx) {
+    public void enterThrowStatement(ThrowStatementContext ctx) {
         if (shouldSkipEnter()) return;
 
-        if (ctx.variableModifier() != null) {
-            boolean isConstant = false;
-            for (VariableModifierContext varMod : ctx.variableModifier()) {
-                if (varMod.getText().equals("final")) {
-                    isConstant = true;
-                    break;
-                }
-            }
-            if (!isConstant) {
-                code.append("var ");
+        try {
+            String selfType = selfType(ctx);
+            String error = expressions.translateError(ctx.expression(), scope, selfType);
+            if (error != null) {
+                code.append("throw ").append(error).append('\n');
+                return;
             }
-        }
-
-        if (ctx.getParent() instanceof FormalParametersContext) {
-            if (((FormalParametersContext) ctx.getParent()).formalParameter().get(0) != ctx || !(ctx.getParent().getParent().getParent() instanceof MethodDeclaratorContext)) {
-                code.append("_ ");
+            String trap = expressions.translateTrap(ctx.expression(), scope, selfType,
+                        config.trapsUnchecked(packageName) ? "preconditionFailure" : "fatalError");
+            if (trap != null) {
+                code.append(trap).append('\n');
+                return;
             }
         }
-        else if (!(ctx.getParent().getParent().getParent() instanceof MethodDeclaratorContext)) {
-            code.append("_ ");
+        catch (ExpressionTranslator.UntranslatableException e) {
+            // left untranslated below
         }
-
-        code.append("!!");  // to mark the start of the unannType
+        appendUntranslated(ctx);
+        // the code after a throw must not run until it's ported
+        code.append("fatalError(\"untranslated throw\")\n");
     }
 
     @Override
-    public void exitFormalParameter(FormalParameterContext ctx) {
+    public void exitThrowStatement(ThrowStatementContext ctx) {
         if (shouldSkipExit()) return;
-
-        if (ctx.getParent() instanceof FormalParametersContext) {
-            code.append(", ");
-        }
     }
 
     @Override
-    public void enterReceiverParameter(ReceiverParameterContext ctx) {
+    public void enterTryStatement(TryStatementContext ctx) {
         if (shouldSkipEnter()) return;
 
-        Util.exitNonTranslatable("receiver parameter", ctx);
-    }
+        List<CatchClauseContext> clauses = ctx.catches() == null
+                    ? Collections.<CatchClauseContext>emptyList() : ctx.catches().catchClause();
+        List<String> patterns = new ArrayList<>();
+        for (CatchClauseContext clause : clauses) {
+            String pattern = catchPattern(clause);
+            if (pattern == null) {
+                appendUntranslated(ctx);
+                return;
+            }
+            patterns.add(pattern);
+        }
+        if (ctx.tryWithResourcesStatement() != null
+                    || ctx.finally_() != null && leavesBlock(ctx.finally_().block())) {
+            appendUntranslated(ctx);
+            return;
+        }
 
-    @Override
-    public void exitReceiverParameter(ReceiverParameterContext ctx) {
-        if (shouldSkipExit()) return;
+        if (ctx.finally_() != null) {
+            // the finally block runs however the do block around it is left,
+            // so it has to come first
+            code.append("do {\ndefer ");
+            ParseTreeWalker.DEFAULT.walk(this, ctx.finally_().block());
+            deferred.add(ctx.finally_());
+        }
+        if (clauses.isEmpty()) {
+            // the do block is the one around the defer
+            bodyHeads.put(ctx.block(), "");
+            bodyTails.put(ctx.block(), "");
+            return;
+        }
+        bodyHeads.put(ctx.block(), "do {\n");
+        bodyTails.put(ctx.block(), "}");
+        for (int i = 0; i < clauses.size(); i++) {
+            BlockContext block = clauses.get(i).block();
+            bodyHeads.put(block, " catch " + patterns.get(i) + "{\n");
+            bodyTails.put(block, i+1 < clauses.size() ? "}" : "}\n");
+        }
     }
 
     @Override
-    public void enterLastFormalParameter(LastFormalParameterContext ctx) {
-        if (shouldSkipEnter()) return;
+    public void exitTryStatement(TryStatementContext ctx) {
+        if (shouldSkipExit()) return;
 
-        if (ctx.formalParameter() != null) return;
+        if (ctx.finally_() != null) code.append("}\n");
+    }
 
-        if (ctx.variableModifier() != null) {
-            boolean isConstant = false;
-            for (VariableModifierContext varMod : ctx.variableModifier()) {
-                if (varMod.getText().equals("final")) {
-                    isConstant = true;
-                    break;
-                }
-            }
-            if (!isConstant) {
-                code.append("var ");
+    /**
+     * Translates the parameter of a catch clause to a swift catch pattern,
+     * followed by a space unless it's empty. Exception and Throwable catch
+     * any error, and the checked exceptions of the corpus the cases of their
+     * class and its subclasses in the enum of their hierarchy.
+     * @return the pattern, or null if the clause catches exceptions that
+     * aren't swift errors
+     */
+    private String catchPattern(CatchClauseContext ctx) {
+        CatchFormalParameterContext param = ctx.catchFormalParameter();
+        String name = param.variableDeclaratorId().Identifier().getText();
+        boolean isUsed = false;
+        for (Token token : Util.terminals(ctx.block())) {
+            if (token.getText().equals(name)) isUsed = true;
+        }
+        String caughtType = caughtType(param.catchType());
+        if (caughtType == null) return null;
+        if (ExceptionHierarchy.isCatchAll(caughtType)) return isUsed ? "let " + name + " " : "";
+
+        String errorEnum = config.exceptions().errorEnum(caughtType);
+        StringBuilder conditions = new StringBuilder();
+        for (String className : caughtClasses(param.catchType())) {
+            if (className.equals(errorEnum)) {
+                return isUsed ? "let " + name + " as " + errorEnum + " " : "is " + errorEnum + " ";
             }
+            if (conditions.length() != 0) conditions.append(" || ");
+            conditions.append(name).append(".is").append(className);
         }
+        return "let " + name + " as " + errorEnum + " where " + conditions + " ";
+    }
 
-        if (ctx.getParent() instanceof FormalParameterListContext) {
-            if (((FormalParameterListContext) ctx.getParent()).formalParameters() != null || !(ctx.getParent().getParent() instanceof MethodDeclaratorContext)) {
-                code.append("_ ");
-            }
+    /**
+     * @return the java type the variable of a catch clause is declared with:
+     * Exception for a clause that catches any error, the class it catches, or
+     * the root of the hierarchy of the classes of a multi-catch; or null if it
+     * catches exceptions that aren't swift errors
+     */
+    private String caughtType(CatchTypeContext ctx) {
+        List<String> classes = caughtClasses(ctx);
+        if (classes.size() == 1 && ExceptionHierarchy.isCatchAll(classes.get(0))) return "Exception";
+        String errorEnum = null;
+        for (String className : classes) {
+            String root = config.exceptions().errorEnum(className);
+            if (root == null || errorEnum != null && !errorEnum.equals(root)) return null;
+            errorEnum = root;
         }
+        return classes.size() == 1 ? classes.get(0) : errorEnum;
+    }
 
-        code.append("!!");  // to mark the start of the unannType
+    /**
+     * @return simple names of the classes a catch clause catches
+     */
+    private static List<String> caughtClasses(CatchTypeContext ctx) {
+        List<ParserRuleContext> types = new ArrayList<>();
+        types.add(ctx.unannClassType());
+        types.addAll(ctx.classType());
+        List<String> classes = new ArrayList<>();
+        for (ParserRuleContext type : types) {
+            String text = type.getText();
+            classes.add(text.substring(text.lastIndexOf('.') + 1));
+        }
+        return classes;
     }
 
-    @Override
-    public void exitLastFormalParameter(LastFormalParameterContext ctx) {
-        if (shouldSkipExit()) return;
+    /**
+     * @return whether a finally block can leave itself by a jump or a throw,
+     * which the defer statement it is translated to can't
+     */
+    private static boolean leavesBlock(BlockContext ctx) {
+        for (Token token : Util.terminals(ctx)) {
+            switch (token.getType()) {
+            case Java8Lexer.RETURN:
+            case Java8Lexer.BREAK:
+            case Java8Lexer.CONTINUE:
+            case Java8Lexer.THROW:
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
-    public void enterThrows_(Throws_Context ctx) {
+    public void enterCatchClause(CatchClauseContext ctx) {
         if (shouldSkipEnter()) return;
 
-        code.append(" throws!!");
+        pushScope();
+        CatchFormalParameterContext param = ctx.catchFormalParameter();
+        scope.declare(param.variableDeclaratorId().Identifier().getText(), caughtType(param.catchType()));
     }
 
     @Override
-    public void exitThrows_(Throws_Context ctx) {
+    public void exitCatchClause(CatchClauseContext ctx) {
         if (shouldSkipExit()) return;
 
-        code.delete(code.lastIndexOf("!!"), code.length());
+        popScope();
     }
 
     @Override
-    public void enterMethodBody(MethodBodyContext ctx) {
+    public void enterCatchFormalParameter(CatchFormalParameterContext ctx) {
         if (shouldSkipEnter()) return;
 
-        if (ctx.block() == null) {
-            code.append('\n');
-        }
-        else {
-            code.append(' ');
-        }
+        // emitted with the catch pattern
+        skipSubtree();
     }
 
     @Override
-    public void exitMethodBody(MethodBodyContext ctx) {
+    public void exitCatchFormalParameter(CatchFormalParameterContext ctx) {
         if (shouldSkipExit()) return;
     }
 
     @Override
-    public void enterBlock(BlockContext ctx) {
+    public void enterFinally_(Finally_Context ctx) {
         if (shouldSkipEnter()) return;
 
-        code.append("{\n");
+        if (deferred.remove(ctx)) skipSubtree();
     }
 
     @Override
-    public void exitBlock(BlockContext ctx) {
+    public void exitFinally_(Finally_Context ctx) {
         if (shouldSkipExit()) return;
-
-        code.append("}\n");
     }
 
     @Override
@@ -815,18 +3906,30 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipEnter()) return;
 
         code.append('\n');
+        if (waitsOnMonitor(ctx.constructorBody())) {
+            appendUntranslated(ctx);
+            return;
+        }
+        // constructors are used through the name of their class
+        String typeName = enclosingTypeName(ctx);
+        appendInferredAccess(ctx, ctx.constructorModifier(), Collections.singletonList(typeName), typeName,
+                    Collections.singletonList(ctx.constructorDeclarator().formalParameterList()));
+        pushScope();
+        declareParams(ctx.constructorDeclarator().formalParameterList());
     }
 
     @Override
     public void exitConstructorDeclaration(ConstructorDeclarationContext ctx) {
         if (shouldSkipExit()) return;
+
+        popScope();
     }
 
     @Override
     public void enterConstructorModifier(ConstructorModifierContext ctx) {
         if (shouldSkipEnter()) return;
 
-        if (ctx.annotation() != null) return;
+        if (ctx.annotation() != null || isInferredAccess(ctx)) return;
         String text = modifierMap.get(ctx.getText());
         code.append(text).append(' ');
     }
@@ -848,6 +3951,7 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipExit()) return;
 
         code.append(')');
+        genericParamTypes.clear();
     }
 
     @Override
@@ -857,6 +3961,7 @@ public class J2SwiftListener extends Java8BaseListener {
         int index = code.lastIndexOf("??");
         String typeParams = code.substring(index+2);
         code.delete(index, code.length());
+        typeParams = addWildcardParams(((ConstructorDeclaratorContext) ctx.getParent()).formalParameterList(), typeParams);
         code.append("init").append(typeParams).append('(');
     }
 
@@ -870,6 +3975,8 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipEnter()) return;
 
         code.append(" {\n");
+        appendParamCopies(((ConstructorDeclarationContext) ctx.getParent()).constructorDeclarator()
+                    .formalParameterList(), ctx);
     }
 
     @Override
@@ -908,6 +4015,11 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipEnter()) return;
 
         code.append('\n');
+        String name = ctx.Identifier().getText();
+        appendInferredAccess(ctx, ctx.interfaceModifier(), Collections.singletonList(name), name,
+                    Collections.<ParserRuleContext>emptyList());
+        if (ctx.interfaceModifier().isEmpty())
+            code.append("protocol ").append(ctx.Identifier());
     }
 
     @Override
@@ -919,7 +4031,7 @@ public class J2SwiftListener extends Java8BaseListener {
     public void enterInterfaceModifier(InterfaceModifierContext ctx) {
         if (shouldSkipEnter()) return;
 
-        if (ctx.annotation() != null) return;
+        if (ctx.annotation() != null || isInferredAccess(ctx)) return;
         String text = modifierMap.get(ctx.getText());
         if (text.equals("error")) {
             Util.exitNonTranslatable("interface modifier '"+ctx.getText()+"'", ctx);
@@ -955,21 +4067,43 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipEnter()) return;
 
         code.append(" {\n");
+        pushScope();
+        String owner = enclosingTypeName(ctx);
+        int header = code.lastIndexOf("protocol " + owner);
+        protocolAccess.push(code.substring(code.lastIndexOf("\n", header)+1, header));
+        protocolConstants.push(new StringBuilder());
+        for (InterfaceMemberDeclarationContext member : ctx.interfaceMemberDeclaration()) {
+            ConstantDeclarationContext constant = member.constantDeclaration();
+            if (constant == null) continue;
+            Scope.Variable variable = new Scope.Variable(constant.unannType().getText(), owner, true, false,
+                        primitiveElementType(constant.unannType()));
+            for (VariableDeclaratorContext declarator : constant.variableDeclaratorList().variableDeclarator()) {
+                scope.declare(declarator.variableDeclaratorId().Identifier().getText(), variable);
+            }
+        }
     }
 
     @Override
     public void exitInterfaceBody(InterfaceBodyContext ctx) {
         if (shouldSkipExit()) return;
 
+        popScope();
         code.append("\n}\n");
+        String access = protocolAccess.pop();
+        StringBuilder constants = protocolConstants.pop();
+        if (constants.length() > 0) {
+            code.append('\n').append(access).append("enum ").append(enclosingTypeName(ctx)).append(CONSTANTS_SUFFIX)
+                .append(" {\n").append(constants).append("}\n");
+        }
     }
 
     @Override
     public void enterConstantDeclaration(ConstantDeclarationContext ctx) {
         if (shouldSkipEnter()) return;
 
-        if (code.charAt(code.length()-2) == '{') {
-            code.append("\n");
+        constantStart = code.length();
+        if (ctx.constantModifier().size() == 0) {
+            code.append("static let @@");
         }
     }
 
@@ -978,6 +4112,9 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipExit()) return;
 
         code.append('\n');
+        // the constant goes to the enum that follows the protocol
+        protocolConstants.peek().append(code, constantStart, code.length());
+        code.setLength(constantStart);
     }
 
     @Override
@@ -986,8 +4123,8 @@ public class J2SwiftListener extends Java8BaseListener {
 
         if (ctx.annotation() != null) return;
         String text = modifierMap.get(ctx.getText());
-        if (text.equals("final")) {
-            return;
+        if (text.equals("final") || text.equals("static")) {
+            return;     // interface fields are always static and final
         }
         code.append(text).append(' ');
     }
@@ -998,14 +4135,7 @@ public class J2SwiftListener extends Java8BaseListener {
 
         List<ConstantModifierContext> list = ((ConstantDeclarationContext) ctx.getParent()).constantModifier();
         if (list.get(list.size()-1) != ctx) return;
-        String text = modifierMap.get(ctx.getText());
-        if (text.equals("final")) {
-            code.append("let ");
-        }
-        else {
-            code.append("var ");
-        }
-        code.append("@@");   // mark start of unannType
+        code.append("static let @@");   // mark start of unannType
     }
 
     @Override
@@ -1013,11 +4143,14 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipEnter()) return;
 
         code.append('\n');
+        pushScope();
     }
 
     @Override
     public void exitInterfaceMethodDeclaration(InterfaceMethodDeclarationContext ctx) {
         if (shouldSkipExit()) return;
+
+        popScope();
     }
 
     @Override
@@ -1042,8 +4175,23 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipEnter()) return;
 
         code.append("\n");
-        if (ctx.classModifier() == null)
-            code.append("enum ").append(ctx.Identifier());
+        String name = ctx.Identifier().getText();
+        appendInferredAccess(ctx, ctx.classModifier(), Collections.singletonList(name), name,
+                    Collections.<ParserRuleContext>emptyList());
+        if (ctx.classModifier().isEmpty())
+            appendEnumKeyword(ctx);
+    }
+
+    /**
+     * Appends the enum keyword and name after the enum modifiers. The cases are
+     * backed by their java ordinals, so ordinal() and values() have the cheap
+     * swift equivalents rawValue and allCases.
+     */
+    private void appendEnumKeyword(EnumDeclarationContext ctx) {
+        code.append("enum ").append(ctx.Identifier());
+        if (config.intEnums()) {
+            code.append(": ").append(typeMap.get("int")).append(", CaseIterable");
+        }
     }
 
     @Override
@@ -1082,6 +4230,10 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipEnter()) return;
 
         code.append(ctx.Identifier());
+        if (config.intEnums()) {
+            int ordinal = ((EnumConstantListContext) ctx.getParent()).enumConstant().indexOf(ctx);
+            code.append(" = ").append(ordinal);
+        }
     }
 
     @Override
@@ -1150,6 +4302,14 @@ public class J2SwiftListener extends Java8BaseListener {
     public void enterLocalVariableDeclaration(LocalVariableDeclarationContext ctx) {
         if (shouldSkipEnter()) return;
 
+        if (hoisted.remove(ctx)) {
+            skipSubtree();
+            return;
+        }
+        if (config.structuredConcurrency() && appendConcurrentDeclaration(ctx)) {
+            skipSubtree();
+            return;
+        }
         if (ctx.variableModifier().size() == 0) {
             code.append("var @@");
         }
@@ -1160,6 +4320,423 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipExit()) return;
 
         code.append('\n');
+        for (String statement : pendingStatements) {
+            code.append(statement).append('\n');
+        }
+        pendingStatements.clear();
+    }
+
+    /**
+     * Translates the declaration of a local executor or future to swift
+     * structured concurrency, if it is only used in ways that allow it
+     * @return whether the declaration was translated
+     */
+    private boolean appendConcurrentDeclaration(LocalVariableDeclarationContext ctx) {
+        List<VariableDeclaratorContext> declarators = ctx.variableDeclaratorList().variableDeclarator();
+        VariableDeclaratorContext declarator = declarators.get(0);
+        if (declarators.size() != 1 || declarator.variableInitializer() == null
+                    || declarator.variableInitializer().expression() == null
+                    || declarator.variableDeclaratorId().dims() != null) return false;
+        if (!(ctx.getParent() instanceof LocalVariableDeclarationStatementContext)) return false;
+
+        // the statements that follow in the block
+        BlockStatementContext statement = (BlockStatementContext) ctx.getParent().getParent();
+        List<BlockStatementContext> statements = ((BlockStatementsContext) statement.getParent()).blockStatement();
+        List<BlockStatementContext> rest = statements.subList(statements.indexOf(statement)+1, statements.size());
+
+        String name = declarator.variableDeclaratorId().Identifier().getText();
+        String javaType = ctx.unannType().getText();
+        ExpressionContext value = declarator.variableInitializer().expression();
+        if (ExpressionTranslator.EXECUTORS.contains(javaType)) {
+            return appendTaskGroup(name, javaType, value, rest);
+        }
+        if (javaType.startsWith("Future<") || javaType.startsWith("CompletableFuture<")) {
+            return appendAsyncLet(name, javaType, value, rest);
+        }
+        if (javaType.matches("(List|ArrayList)<Future<.+>>")) {
+            return appendFutureGroup(ctx, name, javaType, value, rest);
+        }
+        return false;
+    }
+
+    /**
+     * Translates a local list of futures that tasks are submitted to, and
+     * whose futures are then waited for by a loop, to a task group. The tasks
+     * become children of the current task instead of unstructured tasks. The
+     * group hands out the values as the tasks finish instead of in the order
+     * they were submitted, so the loop may only add them up (or multiply, and
+     * or xor them) into integer variables, which gives the same result in any
+     * order. Local variables declared with a constant value between the list
+     * and the loop are declared before the group, so they can still be used
+     * after it.
+     * @param rest statements that follow the declaration in its block
+     * @return whether the declaration was translated
+     */
+    private boolean appendFutureGroup(LocalVariableDeclarationContext ctx, String name, String javaType,
+                ExpressionContext value, List<BlockStatementContext> rest) {
+        if (!value.getText().matches("newArrayList<.*>\\(\\)")) return false;
+        String type = javaType.substring(javaType.indexOf("Future<") + "Future<".length(), javaType.length()-2);
+        String swiftType = expressions.translateType(type);
+        if (swiftType == null || type.equals("Void") || type.equals("?")) return false;
+
+        Map<ExpressionStatementContext, String> calls = new HashMap<>();
+        EnhancedForStatementContext loop = null;
+        int end = -1;
+        for (int s = 0; s < rest.size() && loop == null; s++) {
+            BlockStatementContext statement = rest.get(s);
+            if (isInLambda(statement, name)) return false;
+            List<Token> tokens = Util.terminals(statement);
+            for (int i = 0; i < tokens.size(); i++) {
+                if (!tokens.get(i).getText().equals(name)
+                            || i > 0 && tokens.get(i-1).getType() == Java8Lexer.DOT) continue;
+                loop = resultLoop(statement, tokens.get(i));
+                if (loop != null) {
+                    end = s;
+                    break;
+                }
+                // name.add(executor.submit(work)) as a statement of its own
+                ExpressionStatementContext call = executorCall(statement, tokens.get(i));
+                if (call == null || !isSubmission(Util.terminals(call.statementExpression()))) return false;
+                calls.put(call, "result");
+            }
+        }
+        if (loop == null || calls.isEmpty()) return false;
+
+        // the statements after the loop can't see the list, nor what's declared in the group
+        Set<String> usedAfter = new HashSet<>();
+        for (BlockStatementContext statement : rest.subList(end+1, rest.size())) {
+            List<Token> tokens = Util.terminals(statement);
+            for (int i = 0; i < tokens.size(); i++) {
+                if (i == 0 || tokens.get(i-1).getType() != Java8Lexer.DOT) usedAfter.add(tokens.get(i).getText());
+            }
+        }
+        if (usedAfter.contains(name)) return false;
+        Map<String, String> declaredTypes = new HashMap<>();
+        List<LocalVariableDeclarationContext> moved = new ArrayList<>();
+        for (BlockStatementContext statement : rest.subList(0, end+1)) {
+            if (jumpsOut(statement)) return false;
+            if (statement.localVariableDeclarationStatement() == null) continue;
+            LocalVariableDeclarationContext decl = statement.localVariableDeclarationStatement().localVariableDeclaration();
+            boolean isUsedAfter = false;
+            boolean isConstant = true;
+            for (VariableDeclaratorContext declarator : decl.variableDeclaratorList().variableDeclarator()) {
+                String variable = declarator.variableDeclaratorId().getText();
+                declaredTypes.put(variable, decl.unannType().getText());
+                if (usedAfter.contains(variable)) isUsedAfter = true;
+                VariableInitializerContext init = declarator.variableInitializer();
+                if (init != null && (init.expression() == null || constants.fold(init.expression()) == null)) {
+                    isConstant = false;
+                }
+            }
+            if (isUsedAfter && !isConstant) return false;
+            if (isUsedAfter) moved.add(decl);
+        }
+        if (!isSummed(loop.variableDeclaratorId().getText(), Util.terminals(loop.statement()), declaredTypes)) {
+            return false;
+        }
+
+        for (LocalVariableDeclarationContext decl : moved) {
+            new ParseTreeWalker().walk(this, decl);
+            hoisted.add(decl);
+        }
+        code.append("try await withThrowingTaskGroup(of: ").append(swiftType).append(".self) { ")
+                    .append(name).append(" in\n");
+        executorCalls.putAll(calls);
+        statementTails.put(loop, "}\n");
+        scope.declare(name, new Scope.Variable(javaType, null, false, false, null, false, false, false, true));
+        return true;
+    }
+
+    /**
+     * @return the enhanced for statement that is a block statement and goes
+     * over a name, or null if the statement is something else
+     */
+    private static EnhancedForStatementContext resultLoop(BlockStatementContext statement, Token name) {
+        ParseTree tree = statement;
+        while (tree.getChildCount() == 1 && !(tree instanceof EnhancedForStatementContext)) {
+            tree = tree.getChild(0);
+        }
+        if (!(tree instanceof EnhancedForStatementContext)) return null;
+        EnhancedForStatementContext loop = (EnhancedForStatementContext) tree;
+        return loop.expression().getStart() == name && loop.expression().getStop() == name ? loop : null;
+    }
+
+    /**
+     * @return whether the tokens of an expression are "list.add(executor.submit(work))"
+     * on a local executor
+     */
+    private boolean isSubmission(List<Token> tokens) {
+        if (tokens.size() < 11 || !tokens.get(2).getText().equals("add") || tokens.get(3).getType() != Java8Lexer.LPAREN
+                    || tokens.get(5).getType() != Java8Lexer.DOT || !tokens.get(6).getText().equals("submit")
+                    || tokens.get(7).getType() != Java8Lexer.LPAREN) return false;
+        Scope.Variable executor = scope.lookup(tokens.get(4).getText());
+        return executor != null && !executor.isField() && ExpressionTranslator.EXECUTORS.contains(executor.javaType)
+                    && isSingleCall(tokens) && isSingleCall(tokens.subList(4, tokens.size()-1));
+    }
+
+    /**
+     * @return whether a loop body only uses the future it got as "v op=
+     * future.get();" statements, where op is an operator that gives the same
+     * result in any order and v an integer variable
+     * @param declaredTypes java types of the variables declared after the
+     * list of futures
+     */
+    private boolean isSummed(String future, List<Token> body, Map<String, String> declaredTypes) {
+        for (int i = 0; i < body.size(); i++) {
+            if (!body.get(i).getText().equals(future) || i > 0 && body.get(i-1).getType() == Java8Lexer.DOT) continue;
+            if (i < 2 || i+5 >= body.size() || body.get(i-2).getType() != Java8Lexer.Identifier
+                        || i > 2 && body.get(i-3).getType() == Java8Lexer.DOT
+                        || body.get(i+1).getType() != Java8Lexer.DOT || !body.get(i+2).getText().equals("get")
+                        || body.get(i+3).getType() != Java8Lexer.LPAREN || body.get(i+4).getType() != Java8Lexer.RPAREN
+                        || body.get(i+5).getType() != Java8Lexer.SEMI) return false;
+            switch (body.get(i-1).getType()) {
+            case Java8Lexer.ADD_ASSIGN:
+            case Java8Lexer.MUL_ASSIGN:
+            case Java8Lexer.AND_ASSIGN:
+            case Java8Lexer.OR_ASSIGN:
+            case Java8Lexer.XOR_ASSIGN:
+                break;
+            default:
+                return false;
+            }
+            String target = body.get(i-2).getText();
+            Scope.Variable variable = scope.lookup(target);
+            String type = declaredTypes.containsKey(target) ? declaredTypes.get(target)
+                        : variable == null ? null : variable.javaType;
+            if (type == null || !type.equals("int") && !type.equals("long")
+                        && !type.equals("short") && !type.equals("byte")) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Translates a local executor created by one of the factories of
+     * Executors to a task group, if the block it is created in shuts it
+     * down and waits for its termination. The tasks it executes become tasks
+     * of the group, which are cancelled and rethrow their errors like java
+     * tasks don't, and the group ends where java waits for termination. An
+     * executor that is never waited for is left out, since its tasks can run
+     * on their own. Executors that are used in other ways are left alone.
+     * @param rest statements that follow the declaration in its block
+     * @return whether the declaration was translated
+     */
+    private boolean appendTaskGroup(String name, String javaType, ExpressionContext value,
+                List<BlockStatementContext> rest) {
+        List<Token> valueTokens = Util.terminals(value);
+        if (valueTokens.size() < 3 || !valueTokens.get(0).getText().equals("Executors")
+                    || !valueTokens.get(2).getText().startsWith("new")) return false;
+
+        Map<ExpressionStatementContext, String> calls = new HashMap<>();
+        BlockStatementContext end = null;
+        for (BlockStatementContext statement : rest) {
+            List<Token> tokens = Util.terminals(statement);
+            for (int i = 0; i < tokens.size(); i++) {
+                if (!tokens.get(i).getText().equals(name)
+                            || i > 0 && tokens.get(i-1).getType() == Java8Lexer.DOT) continue;
+                if (i+3 >= tokens.size() || tokens.get(i+1).getType() != Java8Lexer.DOT
+                            || tokens.get(i+3).getType() != Java8Lexer.LPAREN) return false;
+                String method = tokens.get(i+2).getText();
+                if (method.equals("submit") || method.equals("execute") || method.equals("invokeAll")) continue;
+                if (!method.equals("shutdown") && !method.equals("awaitTermination") && !method.equals("close")) {
+                    return false;
+                }
+                // the executor is shut down and waited for by statements of their own
+                ExpressionStatementContext call = executorCall(statement, tokens.get(i));
+                if (call == null) return false;
+                if (!method.equals("shutdown") && end == null
+                            && call.getStart() == statement.getStart() && call.getStop() == statement.getStop()) {
+                    end = statement;
+                    calls.put(call, "}");
+                }
+                else {
+                    calls.put(call, "");
+                }
+            }
+        }
+        if (end != null) {
+            List<BlockStatementContext> group = rest.subList(0, rest.indexOf(end));
+            for (BlockStatementContext statement : group) {
+                if (jumpsOut(statement)) return false;
+                findTaskCalls(statement, name, calls);
+            }
+            code.append("try await withThrowingTaskGroup(of: Void.self) { ").append(name).append(" in\n");
+        }
+        else {
+            code.append("// ").append(name).append(": tasks run on the cooperative thread pool of swift\n");
+        }
+        executorCalls.putAll(calls);
+        scope.declare(name, javaType);
+        return true;
+    }
+
+    /**
+     * Finds the expression statement that is a call on a name
+     * @param token the name
+     * @return the statement, or null if the call isn't a statement of its own
+     */
+    private static ExpressionStatementContext executorCall(ParseTree tree, Token token) {
+        if (tree instanceof ExpressionStatementContext) {
+            ExpressionStatementContext statement = (ExpressionStatementContext) tree;
+            return statement.getStart() == token && isSingleCall(Util.terminals(statement.statementExpression()))
+                        ? statement : null;
+        }
+        if (tree instanceof ParserRuleContext) {
+            ParserRuleContext ctx = (ParserRuleContext) tree;
+            if (token.getTokenIndex() < ctx.getStart().getTokenIndex()
+                        || token.getTokenIndex() > ctx.getStop().getTokenIndex()) return null;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            ExpressionStatementContext statement = executorCall(tree.getChild(i), token);
+            if (statement != null) return statement;
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the tokens of an expression are a single call like
+     * "a.m(...)", without anything chained to it
+     */
+    private static boolean isSingleCall(List<Token> tokens) {
+        int depth = 0;
+        for (int i = 3; i < tokens.size(); i++) {
+            int type = tokens.get(i).getType();
+            if (type == Java8Lexer.LPAREN) depth++;
+            else if (type == Java8Lexer.RPAREN && --depth == 0) return i == tokens.size()-1;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the statements in a task group that hand work to the executor of
+     * the group, outside of lambdas
+     */
+    private static void findTaskCalls(ParseTree tree, String name, Map<ExpressionStatementContext, String> calls) {
+        if (tree instanceof LambdaExpressionContext) return;
+        if (tree instanceof ExpressionStatementContext) {
+            List<Token> tokens = Util.terminals(((ExpressionStatementContext) tree).statementExpression());
+            if (tokens.size() > 4 && tokens.get(0).getText().equals(name) && tokens.get(1).getType() == Java8Lexer.DOT
+                        && (tokens.get(2).getText().equals("submit") || tokens.get(2).getText().equals("execute"))
+                        && isSingleCall(tokens)) {
+                calls.put((ExpressionStatementContext) tree, "add");
+            }
+            return;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findTaskCalls(tree.getChild(i), name, calls);
+        }
+    }
+
+    /**
+     * @return whether a statement can leave the closure it's put in by a
+     * jump, outside of lambdas
+     */
+    private static boolean jumpsOut(ParseTree tree) {
+        if (tree instanceof LambdaExpressionContext) return false;
+        if (tree instanceof TerminalNode) {
+            switch (((TerminalNode) tree).getSymbol().getType()) {
+            case Java8Lexer.RETURN:
+            case Java8Lexer.BREAK:
+            case Java8Lexer.CONTINUE:
+                return true;
+            }
+            return false;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            if (jumpsOut(tree.getChild(i))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Translates a future of a task that is handed to an executor or to
+     * CompletableFuture and then only waited for in the same block to an async
+     * let, which runs the task as a child of the current one
+     * @param rest statements that follow the declaration in its block
+     * @return whether the declaration was translated
+     */
+    private boolean appendAsyncLet(String name, String javaType, ExpressionContext value,
+                List<BlockStatementContext> rest) {
+        LambdaExpressionContext lambda = submittedLambda(value);
+        if (lambda == null || lambda.lambdaBody().expression() == null
+                    || !lambda.lambdaParameters().getText().equals("()")) return false;
+
+        int uses = 0;
+        for (BlockStatementContext statement : rest) {
+            List<Token> tokens = Util.terminals(statement);
+            for (int i = 0; i < tokens.size(); i++) {
+                if (!tokens.get(i).getText().equals(name)
+                            || i > 0 && tokens.get(i-1).getType() == Java8Lexer.DOT) continue;
+                if (i+4 >= tokens.size() || tokens.get(i+1).getType() != Java8Lexer.DOT
+                            || !tokens.get(i+2).getText().equals("get") && !tokens.get(i+2).getText().equals("join")
+                            || tokens.get(i+3).getType() != Java8Lexer.LPAREN
+                            || tokens.get(i+4).getType() != Java8Lexer.RPAREN) return false;
+                uses++;
+            }
+            if (isInLambda(statement, name)) return false;
+        }
+        if (uses == 0) return false;
+
+        String type = javaType.substring(javaType.indexOf('<')+1, javaType.lastIndexOf('>'));
+        String selfType = selfType(value);
+        try {
+            String swiftValue = expressions.translateValue(lambda.lambdaBody().expression(), type, scope, selfType);
+            code.append("async let ").append(name).append(" = ").append(swiftValue).append('\n');
+        }
+        catch (ExpressionTranslator.UntranslatableException e) {
+            return false;
+        }
+        scope.declare(name, new Scope.Variable(javaType, null, false, false, null, false, true));
+        return true;
+    }
+
+    /**
+     * @return the lambda of executor.submit(lambda) on a local executor or
+     * of CompletableFuture.supplyAsync(lambda[, executor]), or null if the
+     * expression is something else
+     */
+    private LambdaExpressionContext submittedLambda(ExpressionContext value) {
+        List<Token> tokens = Util.terminals(value);
+        if (tokens.size() < 6 || tokens.get(1).getType() != Java8Lexer.DOT
+                    || tokens.get(3).getType() != Java8Lexer.LPAREN || !isSingleCall(tokens)) return null;
+        String receiver = tokens.get(0).getText();
+        String method = tokens.get(2).getText();
+        Scope.Variable variable = scope.lookup(receiver);
+        boolean isSubmit = method.equals("submit") && variable != null
+                    && ExpressionTranslator.EXECUTORS.contains(variable.javaType);
+        boolean isSupply = receiver.equals("CompletableFuture") && method.equals("supplyAsync");
+        if (!isSubmit && !isSupply) return null;
+
+        LambdaExpressionContext lambda = findLambda(value);
+        // the lambda must be the first argument, and a submit call has no other
+        if (lambda == null || lambda.getStart().getTokenIndex() != tokens.get(4).getTokenIndex()) return null;
+        int next = tokens.indexOf(lambda.getStop()) + 1;
+        boolean isOnlyArgument = next == tokens.size()-1;
+        return isOnlyArgument || isSupply && tokens.get(next).getType() == Java8Lexer.COMMA ? lambda : null;
+    }
+
+    private static LambdaExpressionContext findLambda(ParseTree tree) {
+        if (tree instanceof LambdaExpressionContext) return (LambdaExpressionContext) tree;
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            LambdaExpressionContext lambda = findLambda(tree.getChild(i));
+            if (lambda != null) return lambda;
+        }
+        return null;
+    }
+
+    /**
+     * @return whether a name is used inside a lambda in a tree
+     */
+    private static boolean isInLambda(ParseTree tree, String name) {
+        if (tree instanceof LambdaExpressionContext) {
+            for (Token token : Util.terminals(tree)) {
+                if (token.getText().equals(name)) return true;
+            }
+            return false;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            if (isInLambda(tree.getChild(i), name)) return true;
+        }
+        return false;
     }
 
     @Override
@@ -1184,10 +4761,14 @@ public class J2SwiftListener extends Java8BaseListener {
         if (shouldSkipExit()) return;
 
         if (ctx.getParent() instanceof LocalVariableDeclarationContext) {
-            List<VariableModifierContext> list = ((LocalVariableDeclarationContext) ctx.getParent()).variableModifier();
+            LocalVariableDeclarationContext declaration = (LocalVariableDeclarationContext) ctx.getParent();
+            List<VariableModifierContext> list = declaration.variableModifier();
             if (list.get(list.size()-1) != ctx) return;
             String text = modifierMap.get(ctx.getText());
-            if (text.equals("final")) {
+            ParserRuleContext block = declaration;
+            while (!(block instanceof BlockContext || block instanceof ClassBodyContext)) block = block.getParent();
+            if (text.equals("final")
+                        && !isChangedInPlace(declaration.unannType(), declaration.variableDeclaratorList(), block)) {
                 code.append("let ");
             }
             else {
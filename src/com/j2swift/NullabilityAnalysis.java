@@ -0,0 +1,375 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static com.j2swift.Java8Parser.*;
+
+/**
+ * Finds the fields, parameters, local variables and method results of the
+ * boxed primitive types, like Integer, that may be null. The type map
+ * translates a boxed type to the same swift type as its primitive, which is
+ * right as long as the value is never null; only the ones that may be null
+ * have to become optionals, which swift has to check the tag of on each use.
+ * A variable may be null if it is annotated @Nullable or @CheckForNull, if it
+ * is compared with null, or if null may be assigned to it: the null literal, a
+ * variable or a result that may be null, or either branch of a conditional
+ * that may be. A field that isn't final and has no initializer starts out
+ * null. Names are matched without regard to what they refer to, so a
+ * variable counts as assigned wherever anything of its name is, which only
+ * makes more variables optional than necessary.
+ * @author Eyob Tsegaye
+ */
+public class NullabilityAnalysis {
+
+    private static final Set<String> BOXED_TYPES = new HashSet<>(Arrays.asList(
+                "Boolean", "Byte", "Short", "Integer", "Long", "Float", "Double", "Character"));
+
+    /**
+     * A variable or method of a boxed type, with the values that are assigned
+     * to or returned from it
+     */
+    private static class Candidate {
+        final ParserRuleContext decl;
+        final String name;
+        // token indexes of the region the name is visible in
+        final int start;
+        final int stop;
+        final List<Interval> values = new ArrayList<>();
+
+        Candidate(ParserRuleContext decl, String name, ParserRuleContext region) {
+            this.decl = decl;
+            this.name = name;
+            this.start = region.getStart().getTokenIndex();
+            this.stop = region.getStop().getTokenIndex();
+        }
+    }
+
+    /** positions in the token list, stop exclusive */
+    private static class Interval {
+        final int start;
+        final int stop;
+
+        Interval(int start, int stop) {
+            this.start = start;
+            this.stop = stop;
+        }
+    }
+
+    private final List<Token> tokens = new ArrayList<>();
+    private final List<Candidate> variables = new ArrayList<>();
+    private final Map<String, List<Candidate>> methods = new HashMap<>();
+    private final Set<ParserRuleContext> nullable = new HashSet<>();
+
+    /**
+     * Analyzes the members of a class body
+     * @param body the class body
+     */
+    public NullabilityAnalysis(ClassBodyContext body) {
+        tokens.addAll(Util.terminals(body));
+        for (ClassBodyDeclarationContext bodyDecl : body.classBodyDeclaration()) {
+            collect(bodyDecl, body);
+        }
+        for (Candidate variable : variables) {
+            findUses(variable);
+        }
+        for (List<Candidate> overloads : methods.values()) {
+            for (Candidate method : overloads) {
+                findReturns(method);
+            }
+        }
+
+        // values may only be null by coming from something that may be null,
+        // so this grows the set until nothing changes
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            List<Candidate> candidates = new ArrayList<>(variables);
+            for (List<Candidate> overloads : methods.values()) {
+                candidates.addAll(overloads);
+            }
+            for (Candidate candidate : candidates) {
+                if (nullable.contains(candidate.decl)) continue;
+                for (Interval value : candidate.values) {
+                    if (mayBeNull(value.start, value.stop)) {
+                        nullable.add(candidate.decl);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the declarator ids of the variables and the method declarations
+     * that may be null
+     */
+    public Set<ParserRuleContext> nullable() {
+        return Collections.unmodifiableSet(nullable);
+    }
+
+    private void collect(ParseTree tree, ClassBodyContext body) {
+        if (tree instanceof ClassBodyContext && tree != body) return;   // analyzed on its own
+
+        if (tree instanceof FieldDeclarationContext) {
+            FieldDeclarationContext field = (FieldDeclarationContext) tree;
+            if (isBoxed(field.unannType())) {
+                boolean isFinal = false;
+                boolean isAnnotated = false;
+                for (FieldModifierContext modifier : field.fieldModifier()) {
+                    if (modifier.getText().equals("final")) isFinal = true;
+                    if (isNullableAnnotation(modifier.annotation())) isAnnotated = true;
+                }
+                for (VariableDeclaratorContext declarator : field.variableDeclaratorList().variableDeclarator()) {
+                    Candidate variable = variable(declarator, body);
+                    if (isAnnotated || declarator.variableInitializer() == null && !isFinal) {
+                        nullable.add(variable.decl);
+                    }
+                }
+            }
+        }
+        else if (tree instanceof LocalVariableDeclarationContext) {
+            LocalVariableDeclarationContext local = (LocalVariableDeclarationContext) tree;
+            if (isBoxed(local.unannType())) {
+                boolean isAnnotated = isAnnotated(local.variableModifier());
+                for (VariableDeclaratorContext declarator : local.variableDeclaratorList().variableDeclarator()) {
+                    Candidate variable = variable(declarator, enclosingBody(local));
+                    if (isAnnotated) nullable.add(variable.decl);
+                }
+            }
+        }
+        else if (tree instanceof FormalParameterContext) {
+            FormalParameterContext param = (FormalParameterContext) tree;
+            ParserRuleContext region = enclosingBody(param);
+            if (isBoxed(param.unannType()) && region != null) {
+                Candidate variable = new Candidate(param.variableDeclaratorId(),
+                            param.variableDeclaratorId().Identifier().getText(), region);
+                variables.add(variable);
+                if (isAnnotated(param.variableModifier())) nullable.add(variable.decl);
+            }
+        }
+        else if (tree instanceof MethodDeclarationContext) {
+            MethodDeclarationContext method = (MethodDeclarationContext) tree;
+            UnannTypeContext result = method.methodHeader().result().unannType();
+            if (result != null && isBoxed(result) && method.methodBody().block() != null) {
+                String name = method.methodHeader().methodDeclarator().Identifier().getText();
+                Candidate candidate = new Candidate(method, name, method.methodBody());
+                if (!methods.containsKey(name)) methods.put(name, new ArrayList<Candidate>());
+                methods.get(name).add(candidate);
+                for (MethodModifierContext modifier : method.methodModifier()) {
+                    if (isNullableAnnotation(modifier.annotation())) nullable.add(method);
+                }
+            }
+        }
+
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            collect(tree.getChild(i), body);
+        }
+    }
+
+    private Candidate variable(VariableDeclaratorContext declarator, ParserRuleContext region) {
+        VariableDeclaratorIdContext id = declarator.variableDeclaratorId();
+        Candidate variable = new Candidate(id, id.Identifier().getText(), region);
+        variables.add(variable);
+        if (declarator.variableInitializer() != null && declarator.variableInitializer().expression() != null) {
+            ExpressionContext init = declarator.variableInitializer().expression();
+            variable.values.add(new Interval(position(init.getStart()), position(init.getStop())+1));
+        }
+        return variable;
+    }
+
+    /**
+     * @return the body of the method, constructor, initializer or lambda a
+     * declaration is in, or null
+     */
+    private static ParserRuleContext enclosingBody(ParserRuleContext ctx) {
+        for (ParserRuleContext parent = ctx.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent instanceof MethodDeclarationContext) return ((MethodDeclarationContext) parent).methodBody();
+            if (parent instanceof ConstructorDeclarationContext) {
+                return ((ConstructorDeclarationContext) parent).constructorBody();
+            }
+            if (parent instanceof BlockContext && (parent.getParent() instanceof InstanceInitializerContext
+                        || parent.getParent() instanceof StaticInitializerContext)) return parent;
+            if (parent instanceof ClassBodyDeclarationContext) return null;
+        }
+        return null;
+    }
+
+    private static boolean isBoxed(UnannTypeContext type) {
+        return BOXED_TYPES.contains(type.getText());
+    }
+
+    private static boolean isAnnotated(List<VariableModifierContext> modifiers) {
+        for (VariableModifierContext modifier : modifiers) {
+            if (isNullableAnnotation(modifier.annotation())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether an annotation is @Nullable or @CheckForNull, from any
+     * package
+     */
+    private static boolean isNullableAnnotation(AnnotationContext annotation) {
+        if (annotation == null) return false;
+        String name = annotation.getText().substring(1);
+        if (name.indexOf('(') != -1) name = name.substring(0, name.indexOf('('));
+        name = name.substring(name.lastIndexOf('.')+1);
+        return name.equals("Nullable") || name.equals("CheckForNull");
+    }
+
+    /**
+     * Finds the comparisons with null and the assignments of a variable
+     */
+    private void findUses(Candidate variable) {
+        for (int i = position(variable.start); i < tokens.size() && tokens.get(i).getTokenIndex() <= variable.stop; i++) {
+            if (!tokens.get(i).getText().equals(variable.name) || !isVariable(i, variable)) continue;
+            int prev = type(i-1);
+            int next = type(i+1);
+            if ((next == Java8Lexer.EQUAL || next == Java8Lexer.NOTEQUAL) && type(i+2) == Java8Lexer.NullLiteral
+                        || (prev == Java8Lexer.EQUAL || prev == Java8Lexer.NOTEQUAL)
+                        && type(i-2) == Java8Lexer.NullLiteral) {
+                nullable.add(variable.decl);
+                return;
+            }
+            if (next == Java8Lexer.ASSIGN) {
+                variable.values.add(new Interval(i+2, valueEnd(i+2)));
+            }
+        }
+    }
+
+    private void findReturns(Candidate method) {
+        for (int i = position(method.start); i < tokens.size() && tokens.get(i).getTokenIndex() <= method.stop; i++) {
+            if (type(i) == Java8Lexer.RETURN && type(i+1) != Java8Lexer.SEMI) {
+                method.values.add(new Interval(i+1, valueEnd(i+1)));
+            }
+        }
+    }
+
+    /**
+     * @return whether the name at position i is the variable itself rather
+     * than a member of something else; fields can also be qualified by this
+     */
+    private boolean isVariable(int i, Candidate variable) {
+        if (type(i+1) == Java8Lexer.LPAREN) return false;
+        if (type(i-1) != Java8Lexer.DOT) return true;
+        return variable.decl.getParent().getParent().getParent() instanceof FieldDeclarationContext
+                    && type(i-2) == Java8Lexer.THIS && type(i-3) != Java8Lexer.DOT;
+    }
+
+    /**
+     * @return the position after the value starting at the given position,
+     * which ends before a semicolon, comma or closing bracket outside of any
+     * brackets
+     */
+    private int valueEnd(int start) {
+        int depth = 0;
+        for (int i = start; i < tokens.size(); i++) {
+            switch (type(i)) {
+            case Java8Lexer.LPAREN: case Java8Lexer.LBRACE: case Java8Lexer.LBRACK:
+                depth++;
+                break;
+            case Java8Lexer.RPAREN: case Java8Lexer.RBRACE: case Java8Lexer.RBRACK:
+                if (depth-- == 0) return i;
+                break;
+            case Java8Lexer.SEMI: case Java8Lexer.COMMA:
+                if (depth == 0) return i;
+                break;
+            }
+        }
+        return tokens.size();
+    }
+
+    /**
+     * @return whether the value at the given positions may be null
+     */
+    private boolean mayBeNull(int start, int stop) {
+        while (stop - start > 2 && type(start) == Java8Lexer.LPAREN && valueEnd(start+1) == stop-1) {
+            start++;
+            stop--;
+        }
+        // either branch of a conditional
+        int depth = 0;
+        int question = -1;
+        int nested = 0;
+        for (int i = start; i < stop; i++) {
+            int type = type(i);
+            if (type == Java8Lexer.LPAREN || type == Java8Lexer.LBRACK || type == Java8Lexer.LBRACE) depth++;
+            else if (type == Java8Lexer.RPAREN || type == Java8Lexer.RBRACK || type == Java8Lexer.RBRACE) depth--;
+            else if (depth > 0) continue;
+            else if (type == Java8Lexer.QUESTION) {
+                if (question == -1) question = i;
+                else nested++;
+            }
+            else if (type == Java8Lexer.COLON && question != -1) {
+                if (nested-- > 0) continue;
+                return mayBeNull(question+1, i) || mayBeNull(i+1, stop);
+            }
+        }
+
+        if (stop - start == 1) {
+            if (type(start) == Java8Lexer.NullLiteral) return true;
+            if (type(start) == Java8Lexer.Identifier) return isNullableVariable(start);
+        }
+        if (stop - start == 3 && type(start) == Java8Lexer.THIS && type(start+1) == Java8Lexer.DOT) {
+            return isNullableVariable(start+2);
+        }
+        if (type(start) == Java8Lexer.Identifier && type(start+1) == Java8Lexer.LPAREN
+                    && valueEnd(start+2) == stop-1) {
+            List<Candidate> overloads = methods.get(tokens.get(start).getText());
+            if (overloads == null) return false;
+            for (Candidate method : overloads) {
+                if (nullable.contains(method.decl)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the name at position i refers to a variable that may
+     * be null, taking the one with the innermost region the name is in
+     */
+    private boolean isNullableVariable(int i) {
+        String name = tokens.get(i).getText();
+        int index = tokens.get(i).getTokenIndex();
+        Candidate found = null;
+        for (Candidate variable : variables) {
+            if (!variable.name.equals(name) || index < variable.start || index > variable.stop) continue;
+            if (found == null || variable.stop - variable.start < found.stop - found.start) found = variable;
+        }
+        return found != null && nullable.contains(found.decl);
+    }
+
+    /**
+     * @return the position of a token in the token list
+     */
+    private int position(Token token) {
+        return position(token.getTokenIndex());
+    }
+
+    private int position(int tokenIndex) {
+        int low = 0;
+        int high = tokens.size()-1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int index = tokens.get(mid).getTokenIndex();
+            if (index < tokenIndex) low = mid+1;
+            else if (index > tokenIndex) high = mid-1;
+            else return mid;
+        }
+        return low;
+    }
+
+    private int type(int i) {
+        return i >= 0 && i < tokens.size() ? tokens.get(i).getType() : Token.EOF;
+    }
+
+}
@@ -0,0 +1,545 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import static com.j2swift.Java8Parser.*;
+
+/**
+ * Finds the ownership modifiers of the parameters of value types of the
+ * methods of a class, from what the body of each method does with them. Swift
+ * passes arrays, collections and strings as values, so a java method that
+ * writes the elements of an array parameter, or adds to a collection
+ * parameter, changes its own copy unless the parameter is inout; this is only
+ * done for private methods, whose calls are all in the class and pass a local
+ * variable that can be passed by reference. Of the other parameters, one that
+ * the method only reads is borrowing, and one that the method stores in a
+ * field or returns as its last use is consuming, so the caller hands it over
+ * without a copy or a retain. Swift doesn't let either be copied implicitly,
+ * so any use the analysis doesn't know to be a read, like capturing it in a
+ * lambda, leaves the parameter alone. Borrowing and consuming parameters are
+ * only inferred for private and static methods, which can't be overridden or
+ * implement a protocol requirement with a different modifier.
+ * @author Eyob Tsegaye
+ */
+public class OwnershipAnalysis {
+
+    /**
+     * Decides which types are value types in swift
+     */
+    public interface ValueTypes {
+        boolean isValueType(UnannTypeContext type);
+
+        /**
+         * @return whether a type is an array, or a collection or string
+         * builder that java code can change in place
+         */
+        boolean isCollection(UnannTypeContext type);
+    }
+
+    private enum Kind { READ, WRITE, PASS, STORE, OTHER }
+
+    /**
+     * A use of a parameter in the body of its method
+     */
+    private static class Use {
+        final Kind kind;
+        // method and argument position a PASS passes the value to
+        final String callee;
+        final int index;
+
+        Use(Kind kind, String callee, int index) {
+            this.kind = kind;
+            this.callee = callee;
+            this.index = index;
+        }
+    }
+
+    private static class Method {
+        MethodDeclarationContext decl;
+        String name;
+        boolean isPrivate;
+        boolean isStatic;
+        List<FormalParameterContext> params = new ArrayList<>();
+        boolean isVariadic;
+        Map<FormalParameterContext, List<Use>> uses = new HashMap<>();
+        Set<FormalParameterContext> collections = new HashSet<>();
+    }
+
+    private static class Interval {
+        final int start;
+        final int stop;
+
+        Interval(ParserRuleContext ctx) {
+            this.start = ctx.getStart().getTokenIndex();
+            this.stop = ctx.getStop().getTokenIndex();
+        }
+
+        boolean contains(Token token) {
+            return token.getTokenIndex() >= start && token.getTokenIndex() <= stop;
+        }
+    }
+
+    // methods that only read the value they are called on
+    private static final Set<String> READ_METHODS = new HashSet<>(Arrays.asList(
+                "length", "size", "isEmpty", "get", "contains", "containsKey", "equals",
+                "charAt", "indexOf", "startsWith", "endsWith"));
+
+    private final List<Method> methods = new ArrayList<>();
+    private final List<Token> tokens;
+    // methods and constructors anywhere in the class, with their tokens
+    private final Map<Interval, List<Token>> members = new HashMap<>();
+    private final List<Interval> lambdas = new ArrayList<>();
+    // number of methods of each name anywhere in the class
+    private final Map<String, Integer> declarations = new HashMap<>();
+    private final Map<FormalParameterContext, String> modifiers = new HashMap<>();
+    private final Map<String, Set<Integer>> inoutParams = new HashMap<>();
+
+    /**
+     * Analyzes the methods of a class body
+     * @param ctx the class body
+     * @param types decides which parameters are of value types
+     */
+    public OwnershipAnalysis(ClassBodyContext ctx, ValueTypes types) {
+        tokens = Util.terminals(ctx);
+        scan(ctx);
+        for (ClassBodyDeclarationContext bodyDecl : ctx.classBodyDeclaration()) {
+            ClassMemberDeclarationContext member = bodyDecl.classMemberDeclaration();
+            if (member == null || member.methodDeclaration() == null) continue;
+            Method method = method(member.methodDeclaration(), types);
+            if (method != null) methods.add(method);
+        }
+
+        findInoutParams();
+        // a consuming parameter can't be passed on to another consuming one
+        // without a copy, so this shrinks the set until nothing changes
+        Set<FormalParameterContext> consuming = new HashSet<>();
+        for (Method method : methods) {
+            if (!method.isPrivate && !method.isStatic) continue;
+            for (FormalParameterContext param : method.params) {
+                if (method.uses.containsKey(param) && !modifiers.containsKey(param) && isConsumed(method.uses.get(param))) {
+                    consuming.add(param);
+                }
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Method method : methods) {
+                for (FormalParameterContext param : method.params) {
+                    if (consuming.contains(param) && !arePassedOn(method.uses.get(param), consuming)) {
+                        consuming.remove(param);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        for (Method method : methods) {
+            if (!method.isPrivate && !method.isStatic) continue;
+            for (FormalParameterContext param : method.params) {
+                List<Use> uses = method.uses.get(param);
+                if (uses == null || modifiers.containsKey(param)) continue;
+                if (consuming.contains(param)) {
+                    modifiers.put(param, "consuming");
+                }
+                else if (!uses.isEmpty() && isBorrowed(uses) && arePassedOn(uses, consuming)) {
+                    modifiers.put(param, "borrowing");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return map from parameters to their modifier: "inout", "borrowing"
+     * or "consuming"
+     */
+    public Map<FormalParameterContext, String> modifiers() {
+        return Collections.unmodifiableMap(modifiers);
+    }
+
+    /**
+     * @return map from the names of the methods of the class that have inout
+     * parameters to the positions of those parameters
+     */
+    public Map<String, Set<Integer>> inoutParams() {
+        return Collections.unmodifiableMap(inoutParams);
+    }
+
+    private void scan(ParseTree tree) {
+        if (tree instanceof LambdaExpressionContext) {
+            lambdas.add(new Interval((ParserRuleContext) tree));
+        }
+        else if (tree instanceof MethodDeclarationContext || tree instanceof ConstructorDeclarationContext) {
+            members.put(new Interval((ParserRuleContext) tree), Util.terminals(tree));
+        }
+        String name = null;
+        if (tree instanceof MethodDeclarationContext) {
+            name = ((MethodDeclarationContext) tree).methodHeader().methodDeclarator().Identifier().getText();
+        }
+        else if (tree instanceof InterfaceMethodDeclarationContext) {
+            name = ((InterfaceMethodDeclarationContext) tree).methodHeader().methodDeclarator().Identifier().getText();
+        }
+        if (name != null) {
+            Integer count = declarations.get(name);
+            declarations.put(name, count == null ? 1 : count+1);
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            scan(tree.getChild(i));
+        }
+    }
+
+    private Method method(MethodDeclarationContext decl, ValueTypes types) {
+        BlockContext body = decl.methodBody().block();
+        if (body == null) return null;
+        Method method = new Method();
+        method.decl = decl;
+        method.name = decl.methodHeader().methodDeclarator().Identifier().getText();
+        for (MethodModifierContext modifier : decl.methodModifier()) {
+            if (modifier.getText().equals("private")) method.isPrivate = true;
+            if (modifier.getText().equals("static")) method.isStatic = true;
+        }
+        FormalParameterListContext paramList = decl.methodHeader().methodDeclarator().formalParameterList();
+        if (paramList != null) {
+            if (paramList.formalParameters() != null) {
+                method.params.addAll(paramList.formalParameters().formalParameter());
+            }
+            if (paramList.lastFormalParameter().formalParameter() != null) {
+                method.params.add(paramList.lastFormalParameter().formalParameter());
+            }
+            else {
+                method.isVariadic = true;
+            }
+        }
+
+        List<Token> bodyTokens = Util.terminals(body);
+        for (FormalParameterContext param : method.params) {
+            if (!types.isValueType(param.unannType())) continue;
+            String name = param.variableDeclaratorId().Identifier().getText();
+            boolean isCollection = types.isCollection(param.unannType());
+            if (isCollection) method.collections.add(param);
+            List<Use> uses = new ArrayList<>();
+            for (int i = 0; i < bodyTokens.size(); i++) {
+                if (!bodyTokens.get(i).getText().equals(name) || type(bodyTokens, i-1) == DOT) continue;
+                uses.add(use(bodyTokens, i, isCollection));
+            }
+            method.uses.put(param, uses);
+        }
+        return method;
+    }
+
+    /**
+     * Classifies the use of a parameter in the tokens of a method body
+     * @param isCollection whether the parameter can be changed in place
+     */
+    private Use use(List<Token> body, int i, boolean isCollection) {
+        for (Interval lambda : lambdas) {
+            if (lambda.contains(body.get(i))) return new Use(Kind.OTHER, null, 0);
+        }
+        int prev = type(body, i-1);
+        int next = type(body, i+1);
+        if (next == LBRACK) {
+            // skip the indices to see whether the element is written
+            int j = i+1;
+            while (type(body, j) == LBRACK) j = closing(body, j) + 1;
+            boolean isWrite = isAssignment(type(body, j)) || type(body, j) == INC || type(body, j) == DEC
+                        || prev == INC || prev == DEC;
+            return new Use(isWrite ? Kind.WRITE : Kind.READ, null, 0);
+        }
+        if (next == DOT && type(body, i+2) == Identifier) {
+            boolean isCall = type(body, i+3) == LPAREN;
+            if (!isCall && !isAssignment(type(body, i+3)) || isCall && READ_METHODS.contains(body.get(i+2).getText())) {
+                return new Use(Kind.READ, null, 0);
+            }
+            if (isCall && isCollection && Util.MUTATORS.contains(body.get(i+2).getText())) {
+                return new Use(Kind.WRITE, null, 0);
+            }
+            return new Use(Kind.OTHER, null, 0);
+        }
+        if (isStatementStart(type(body, i-2)) && prev == RETURN && next == SEMI && depth(body, i) == 1) {
+            return new Use(Kind.STORE, null, 0);
+        }
+        if (prev == ASSIGN && next == SEMI && depth(body, i) == 1 && (type(body, i-2) == Identifier
+                    && isStatementStart(type(body, i-3)) || type(body, i-2) == Identifier && type(body, i-3) == DOT
+                    && type(body, i-4) == THIS && isStatementStart(type(body, i-5)))) {
+            return new Use(Kind.STORE, null, 0);
+        }
+        if ((prev == LPAREN || prev == COMMA) && (next == RPAREN || next == COMMA)) {
+            int open = open(body, i);
+            if (open >= 1 && type(body, open) == LPAREN && type(body, open-1) == Identifier
+                        && type(body, open-2) != NEW
+                        && (type(body, open-2) != DOT || type(body, open-3) == THIS && type(body, open-4) != DOT)) {
+                int index = 0;
+                for (int j = open+1; j < i; j = end(body, j)+1) index++;
+                return new Use(Kind.PASS, body.get(open-1).getText(), index);
+            }
+        }
+        return new Use(Kind.OTHER, null, 0);
+    }
+
+    /**
+     * Makes the array parameters of private methods whose elements the method
+     * writes, or passes on to an inout parameter, inout if every call of the
+     * method passes a variable for them. Passing them on makes more of them
+     * inout, so this grows the set until nothing changes.
+     */
+    private void findInoutParams() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Method method : methods) {
+                if (!method.isPrivate || method.isVariadic || declarations.get(method.name) != 1) continue;
+                Set<Integer> positions = new TreeSet<>();
+                for (int p = 0; p < method.params.size(); p++) {
+                    FormalParameterContext param = method.params.get(p);
+                    List<Use> uses = method.uses.get(param);
+                    if (uses == null || !method.collections.contains(param)) continue;
+                    boolean writes = false;
+                    boolean other = false;
+                    for (Use use : uses) {
+                        if (use.kind == Kind.WRITE || use.kind == Kind.PASS && inoutParams.containsKey(use.callee)
+                                    && inoutParams.get(use.callee).contains(use.index)) {
+                            writes = true;
+                        }
+                        else if (use.kind != Kind.READ && use.kind != Kind.PASS) {
+                            other = true;
+                        }
+                    }
+                    if (writes && !other) positions.add(p);
+                }
+                if (positions.isEmpty() || positions.equals(inoutParams.get(method.name))
+                            || !callsPassVariables(method, positions)) continue;
+                inoutParams.put(method.name, positions);
+                for (int p : positions) {
+                    modifiers.put(method.params.get(p), "inout");
+                }
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * @return whether each call of a method in the class passes a local
+     * variable or parameter of the caller at the given positions, which swift
+     * can pass by reference, and doesn't pass it twice. The other arguments
+     * may read the variable (e.g. a.length - 1), since swift evaluates them
+     * before the inout access starts, but not capture it in a lambda.
+     */
+    private boolean callsPassVariables(Method method, Set<Integer> positions) {
+        Token declared = method.decl.methodHeader().methodDeclarator().Identifier().getSymbol();
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token == declared || !token.getText().equals(method.name)) continue;
+            if (type(tokens, i+1) != LPAREN
+                        || type(tokens, i-1) == DOT && (type(tokens, i-2) != THIS || type(tokens, i-3) == DOT)) {
+                return false;   // a method reference, or a call on another instance
+            }
+            for (Interval lambda : lambdas) {
+                if (lambda.contains(token)) return false;
+            }
+            List<Token> caller = null;
+            for (Map.Entry<Interval, List<Token>> member : members.entrySet()) {
+                if (member.getKey().contains(token) && (caller == null || member.getValue().size() < caller.size())) {
+                    caller = member.getValue();
+                }
+            }
+            if (caller == null) return false;   // e.g. in a field initializer
+
+            List<List<Token>> args = new ArrayList<>();
+            for (int j = i+2, end; type(tokens, j-1) != RPAREN; j = end+1) {
+                end = end(tokens, j);
+                args.add(tokens.subList(j, end));
+            }
+            if (args.size() != method.params.size()) return false;
+            for (int p : positions) {
+                List<Token> arg = args.get(p);
+                if (arg.size() != 1 || arg.get(0).getType() != Identifier) return false;
+                String name = arg.get(0).getText();
+                if (!isVariable(name, caller)) return false;
+                for (int q = 0; q < args.size(); q++) {
+                    if (q == p || !positions.contains(q) && !isFunction(args.get(q))) continue;
+                    for (Token argToken : args.get(q)) {
+                        if (argToken.getText().equals(name)) return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether an argument is or holds a lambda or method reference
+     */
+    private static boolean isFunction(List<Token> arg) {
+        for (Token token : arg) {
+            if (token.getType() == ARROW || token.getType() == COLONCOLON) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a name is declared in the tokens of a method or
+     * constructor as a local variable or parameter that isn't final, which
+     * swift translates to a let
+     */
+    private static boolean isVariable(String name, List<Token> member) {
+        boolean declared = false;
+        for (int i = 1; i+1 < member.size(); i++) {
+            if (!member.get(i).getText().equals(name)) continue;
+            int prev = type(member, i-1);
+            int next = type(member, i+1);
+            if (prev != Identifier && prev != RBRACK && prev != GT && !isPrimitiveType(prev)
+                        || next != ASSIGN && next != SEMI && next != COMMA && next != RPAREN && next != COLON) continue;
+            for (int j = i-1; j >= 0 && !isStatementStart(type(member, j)) && type(member, j) != LPAREN
+                        && type(member, j) != COMMA; j--) {
+                if (type(member, j) == FINAL) return false;
+            }
+            declared = true;
+        }
+        return declared;
+    }
+
+    /**
+     * @return whether a parameter is only read and then stored or returned
+     * as its last use
+     */
+    private static boolean isConsumed(List<Use> uses) {
+        if (uses.isEmpty() || uses.get(uses.size()-1).kind != Kind.STORE) return false;
+        return isBorrowed(uses.subList(0, uses.size()-1));
+    }
+
+    private static boolean isBorrowed(List<Use> uses) {
+        for (Use use : uses) {
+            if (use.kind != Kind.READ && use.kind != Kind.PASS) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the uses that pass a parameter on pass it to a method of
+     * the class that borrows it
+     */
+    private boolean arePassedOn(List<Use> uses, Set<FormalParameterContext> consuming) {
+        for (Use use : uses) {
+            if (use.kind != Kind.PASS) continue;
+            if (declarations.get(use.callee) == null || declarations.get(use.callee) != 1) return false;
+            Method callee = null;
+            for (Method method : methods) {
+                if (method.name.equals(use.callee)) callee = method;
+            }
+            if (callee == null || use.index >= callee.params.size()) return false;
+            FormalParameterContext param = callee.params.get(use.index);
+            if (consuming.contains(param) || "inout".equals(modifiers.get(param))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of the parenthesis or bracket that closes the one at i
+     */
+    private static int closing(List<Token> tokens, int i) {
+        int depth = 0;
+        for (int j = i; j < tokens.size(); j++) {
+            int type = tokens.get(j).getType();
+            if (type == LPAREN || type == LBRACK || type == LBRACE) depth++;
+            else if ((type == RPAREN || type == RBRACK || type == RBRACE) && --depth == 0) return j;
+        }
+        return tokens.size()-1;
+    }
+
+    /**
+     * @return the index of the comma or parenthesis that ends the argument
+     * starting at i
+     */
+    private static int end(List<Token> tokens, int i) {
+        int depth = 0;
+        for (int j = i; j < tokens.size(); j++) {
+            int type = tokens.get(j).getType();
+            if (type == LPAREN || type == LBRACK || type == LBRACE) depth++;
+            else if (type == RPAREN || type == RBRACK || type == RBRACE) {
+                if (depth-- == 0) return j;
+            }
+            else if (type == COMMA && depth == 0) return j;
+        }
+        return tokens.size()-1;
+    }
+
+    /**
+     * @return the index of the parenthesis that opens the argument list the
+     * token at i is in
+     */
+    private static int open(List<Token> tokens, int i) {
+        int depth = 0;
+        for (int j = i-1; j >= 0; j--) {
+            int type = tokens.get(j).getType();
+            if (type == RPAREN || type == RBRACK || type == RBRACE) depth++;
+            else if (type == LPAREN || type == LBRACK || type == LBRACE) {
+                if (depth-- == 0) return j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of braces the token at i is in, counting the braces
+     * of the method body
+     */
+    private static int depth(List<Token> tokens, int i) {
+        int depth = 0;
+        for (int j = 0; j < i; j++) {
+            if (tokens.get(j).getType() == LBRACE) depth++;
+            else if (tokens.get(j).getType() == RBRACE) depth--;
+        }
+        return depth;
+    }
+
+    private static boolean isStatementStart(int type) {
+        return type == SEMI || type == LBRACE || type == RBRACE;
+    }
+
+    private static boolean isAssignment(int type) {
+        switch (type) {
+        case ASSIGN:
+        case ADD_ASSIGN:
+        case SUB_ASSIGN:
+        case MUL_ASSIGN:
+        case DIV_ASSIGN:
+        case AND_ASSIGN:
+        case OR_ASSIGN:
+        case XOR_ASSIGN:
+        case MOD_ASSIGN:
+        case LSHIFT_ASSIGN:
+        case RSHIFT_ASSIGN:
+        case URSHIFT_ASSIGN:
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isPrimitiveType(int type) {
+        switch (type) {
+        case BOOLEAN:
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+        case CHAR:
+        case FLOAT:
+        case DOUBLE:
+            return true;
+        }
+        return false;
+    }
+
+    private static int type(List<Token> tokens, int i) {
+        return i >= 0 && i < tokens.size() ? tokens.get(i).getType() : Token.EOF;
+    }
+
+}
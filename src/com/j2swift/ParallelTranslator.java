@@ -0,0 +1,161 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Translates the top-level type declarations of a single java file in parallel.
+ * The token stream is pre-scanned for the boundaries of each declaration by
+ * brace depth, and every declaration is then parsed and translated on a worker
+ * of its own with its own J2SwiftListener. The listeners are handed back in the
+ * order of the declarations, so concatenating their code gives the same result
+ * as translating the file in one go.
+ * @author Eyob Tsegaye
+ */
+public class ParallelTranslator {
+
+    private final int numThreads;
+    private final TranslatorConfig config;
+    private final TypeCache typeCache;
+
+    /**
+     * @param numThreads number of workers
+     * @param config translation settings, shared by the workers
+     * @param typeCache cache of already translated types, shared by the workers
+     */
+    public ParallelTranslator(int numThreads, TranslatorConfig config, TypeCache typeCache) {
+        this.numThreads = numThreads;
+        this.config = config;
+        this.typeCache = typeCache;
+    }
+
+    /**
+     * Translates java code, one top-level declaration per task
+     * @param input java code to translate
+     * @return listeners that walked each declaration, in order
+     */
+    public List<J2SwiftListener> translate(CharStream input) {
+        Java8Lexer lexer = new Java8Lexer(input);
+        lexer.setTokenFactory(new CompactTokenFactory());
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        tokens.fill();
+
+        final String packageName = packageName(tokens.getTokens());
+        ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<J2SwiftListener>> results = new ArrayList<>();
+            for (final List<Token> declaration : typeDeclarations(tokens.getTokens())) {
+                results.add(workers.submit(new Callable<J2SwiftListener>() {
+                    @Override
+                    public J2SwiftListener call() {
+                        return translate(declaration, packageName);
+                    }
+                }));
+            }
+
+            List<J2SwiftListener> listeners = new ArrayList<>();
+            for (Future<J2SwiftListener> result : results) {
+                listeners.add(result.get());
+            }
+            return listeners;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            workers.shutdown();
+        }
+    }
+
+    private J2SwiftListener translate(List<Token> declaration, String packageName) {
+        CommonTokenStream tokens = new CommonTokenStream(new ListTokenSource(declaration));
+        Java8Parser parser = new Java8Parser(tokens);
+        ParserRuleContext tree = parser.typeDeclaration();
+        J2SwiftListener listener = new J2SwiftListener(config, typeCache);
+        listener.setPackageName(packageName);
+        new ParseTreeWalker().walk(listener, tree);
+        return listener;
+    }
+
+    /**
+     * Gets the name of the package a compilation unit is in
+     * @param tokens all tokens of the file, ending with EOF
+     * @return the package name, or the empty string for the default package
+     */
+    static String packageName(List<Token> tokens) {
+        StringBuilder name = new StringBuilder();
+        if (tokens.get(0).getType() == Java8Lexer.PACKAGE) {
+            for (int i = 1; tokens.get(i).getType() != Java8Lexer.SEMI && tokens.get(i).getType() != Token.EOF; i++) {
+                name.append(tokens.get(i).getText());
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Splits the tokens of a compilation unit into its top-level type
+     * declarations. The package and import declarations are left out since
+     * they aren't translated.
+     * @param tokens all tokens of the file, ending with EOF
+     * @return tokens of each top-level declaration, in order
+     */
+    static List<List<Token>> typeDeclarations(List<Token> tokens) {
+        List<List<Token>> declarations = new ArrayList<>();
+        int i = 0;
+        while (tokens.get(i).getType() == Java8Lexer.PACKAGE || tokens.get(i).getType() == Java8Lexer.IMPORT) {
+            while (tokens.get(i).getType() != Java8Lexer.SEMI && tokens.get(i).getType() != Token.EOF) i++;
+            if (tokens.get(i).getType() == Java8Lexer.SEMI) i++;
+        }
+
+        int start = i;
+        int braceDepth = 0;
+        int parenDepth = 0;
+        for (; tokens.get(i).getType() != Token.EOF; i++) {
+            switch (tokens.get(i).getType()) {
+            case Java8Lexer.LBRACE:
+                braceDepth++;
+                break;
+            case Java8Lexer.RBRACE:
+                braceDepth--;
+                break;
+            case Java8Lexer.LPAREN:
+                parenDepth++;
+                break;
+            case Java8Lexer.RPAREN:
+                parenDepth--;
+                break;
+            case Java8Lexer.SEMI:
+                break;
+            default:
+                continue;
+            }
+            // a declaration ends with the closing brace of its body, or is just
+            // a ';'; braces inside annotation arguments are inside parentheses
+            int type = tokens.get(i).getType();
+            if (braceDepth == 0 && parenDepth == 0 && (type == Java8Lexer.RBRACE || type == Java8Lexer.SEMI)) {
+                declarations.add(tokens.subList(start, i+1));
+                start = i+1;
+            }
+        }
+        if (start < i) {
+            // unbalanced braces; let the parser report it
+            declarations.add(tokens.subList(start, i));
+        }
+        return declarations;
+    }
+
+}
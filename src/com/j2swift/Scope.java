@@ -0,0 +1,141 @@
+package com.j2swift;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Variables that are visible at some point of the java code, with their java
+ * types, so translated expressions know what they operate on. Scopes nest: a
+ * class body holds the fields, a method its parameters and each block its
+ * local variables, and names are looked up from the innermost scope out.
+ * @author Eyob Tsegaye
+ */
+public class Scope {
+
+    /**
+     * A field, parameter or local variable
+     */
+    public static final class Variable {
+        /** declared java type, e.g. "int" or "List<String>" */
+        public final String javaType;
+        /** name of the class of a field, or null for parameters and locals */
+        public final String owner;
+        public final boolean isStatic;
+        /** whether it is a volatile field that was translated to an atomic */
+        public final boolean isAtomic;
+        /**
+         * element type of a one-dimensional array of primitives, e.g. "int"
+         * for an int[], according to its declared type; null for other types
+         */
+        public final String elementType;
+        /** whether it is of a boxed type and may be null, so it's an optional in swift */
+        public final boolean isNullable;
+        /** whether it is a future that was translated to an async let */
+        public final boolean isAsyncLet;
+        /**
+         * whether it is a parameter of an array or collection type that swift
+         * passes as a copy, so changing it doesn't change the caller's value
+         * like it does in java
+         */
+        public final boolean isCopy;
+        /**
+         * whether it is a list of futures that was translated to a task group,
+         * or the variable of the loop that gets their values from the group
+         */
+        public final boolean isTaskGroup;
+
+        public Variable(String javaType, String owner, boolean isStatic, boolean isAtomic, String elementType) {
+            this(javaType, owner, isStatic, isAtomic, elementType, false);
+        }
+
+        public Variable(String javaType, String owner, boolean isStatic, boolean isAtomic, String elementType,
+                    boolean isNullable) {
+            this(javaType, owner, isStatic, isAtomic, elementType, isNullable, false);
+        }
+
+        public Variable(String javaType, String owner, boolean isStatic, boolean isAtomic, String elementType,
+                    boolean isNullable, boolean isAsyncLet) {
+            this(javaType, owner, isStatic, isAtomic, elementType, isNullable, isAsyncLet, false);
+        }
+
+        public Variable(String javaType, String owner, boolean isStatic, boolean isAtomic, String elementType,
+                    boolean isNullable, boolean isAsyncLet, boolean isCopy) {
+            this(javaType, owner, isStatic, isAtomic, elementType, isNullable, isAsyncLet, isCopy, false);
+        }
+
+        public Variable(String javaType, String owner, boolean isStatic, boolean isAtomic, String elementType,
+                    boolean isNullable, boolean isAsyncLet, boolean isCopy, boolean isTaskGroup) {
+            this.javaType = javaType;
+            this.owner = owner;
+            this.isStatic = isStatic;
+            this.isAtomic = isAtomic;
+            this.elementType = elementType;
+            this.isNullable = isNullable;
+            this.isAsyncLet = isAsyncLet;
+            this.isCopy = isCopy;
+            this.isTaskGroup = isTaskGroup;
+        }
+
+        public boolean isField() {
+            return owner != null;
+        }
+    }
+
+    private final Scope parent;
+    private final Map<String, Variable> variables = new HashMap<>();
+
+    /**
+     * @param parent enclosing scope, or null for the outermost one
+     */
+    public Scope(Scope parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * @return the enclosing scope, or null for the outermost one
+     */
+    public Scope parent() {
+        return parent;
+    }
+
+    /**
+     * Declares a parameter or local variable
+     */
+    public void declare(String name, String javaType) {
+        variables.put(name, new Variable(javaType, null, false, false, null));
+    }
+
+    /**
+     * Declares a parameter or local variable
+     * @param elementType see {@link Variable#elementType}
+     */
+    public void declare(String name, String javaType, String elementType) {
+        variables.put(name, new Variable(javaType, null, false, false, elementType));
+    }
+
+    /**
+     * Declares a parameter or local variable
+     * @param elementType see {@link Variable#elementType}
+     * @param isNullable see {@link Variable#isNullable}
+     */
+    public void declare(String name, String javaType, String elementType, boolean isNullable) {
+        variables.put(name, new Variable(javaType, null, false, false, elementType, isNullable));
+    }
+
+    public void declare(String name, Variable variable) {
+        variables.put(name, variable);
+    }
+
+    /**
+     * Looks up a name, innermost scope first
+     * @return the variable, or null if the name isn't declared in any scope
+     */
+    public Variable lookup(String name) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Variable variable = scope.variables.get(name);
+            if (variable != null) return variable;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.j2swift;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Translates a java file in bounded memory, for generated sources that are too
+ * big to keep in memory as a whole. The chars and tokens are read through
+ * unbuffered streams, and the file is parsed, translated and written out one
+ * top-level type declaration at a time, so memory use is set by the window size
+ * and the largest top-level declaration rather than by the size of the file.
+ * @author Eyob Tsegaye
+ */
+public class StreamingTranslator {
+
+    public static final int DEFAULT_WINDOW = 1 << 16;
+
+    private final int window;
+    private final TranslatorConfig config;
+    private final TypeCache typeCache;
+
+    /**
+     * @param window initial size of the char and token buffers; they only grow
+     * past it when the parser needs a longer lookahead
+     * @param config translation settings
+     * @param typeCache cache of already translated types
+     */
+    public StreamingTranslator(int window, TranslatorConfig config, TypeCache typeCache) {
+        this.window = window;
+        this.config = config;
+        this.typeCache = typeCache;
+    }
+
+    /**
+     * Translates java code from a stream and writes the swift code to out as
+     * each top-level declaration is finished. There is no one to ask about the
+     * protected keyword halfway through, so it is always replaced with internal.
+     * @param is java code to translate
+     * @param out where to write the swift code
+     * @return the number of "protected"s that were replaced
+     */
+    public int translate(InputStream is, Writer out) throws IOException {
+        UnbufferedTokenStream<Token> tokens = tokens(is, window);
+        Java8Parser parser = new Java8Parser(tokens);
+        ParseTreeWalker walker = new ParseTreeWalker();
+        J2SwiftListener listener = new J2SwiftListener(config, typeCache);
+        skipHeader(tokens, listener);
+
+        int numProtected = 0;
+        boolean wroteCode = false;
+        Set<String> imported = new HashSet<>();
+        while (tokens.LA(1) != Token.EOF) {
+            // each declaration is a tree of its own, dropped once it's written
+            walker.walk(listener, parser.typeDeclaration());
+            numProtected += listener.numProtected();
+            listener.replaceProtected(true);
+            String code = listener.drainCode();
+            if (code.length() == 0) continue;
+            if (!wroteCode) {
+                out.write(J2SwiftListener.imports(listener.modules()));
+                imported.addAll(listener.modules());
+                wroteCode = true;
+            }
+            for (String module : listener.modules()) {
+                // swift allows imports after other declarations, which is
+                // the only option once the header has been written
+                if (imported.add(module)) out.write("\nimport " + module + "\n");
+            }
+            out.write(code);
+        }
+        out.write('\n');
+        return numProtected;
+    }
+
+    /**
+     * Parses java code from a stream one top-level declaration at a time, for
+     * the scans that have to see every declaration before any is translated.
+     * Each declaration is dropped once the consumer returns.
+     * @param is java code to parse
+     * @param window initial size of the char and token buffers
+     * @param listener listener that is told the package name
+     * @param declarations what to hand each top-level declaration to
+     */
+    public static void parse(InputStream is, int window, J2SwiftListener listener,
+                Consumer<Java8Parser.TypeDeclarationContext> declarations) {
+        UnbufferedTokenStream<Token> tokens = tokens(is, window);
+        Java8Parser parser = new Java8Parser(tokens);
+        skipHeader(tokens, listener);
+        while (tokens.LA(1) != Token.EOF) {
+            declarations.accept(parser.typeDeclaration());
+        }
+    }
+
+    private static UnbufferedTokenStream<Token> tokens(InputStream is, int window) {
+        UnbufferedCharStream input = new UnbufferedCharStream(is, window);
+        Java8Lexer lexer = new Java8Lexer(input);
+        // the char window doesn't keep the text of old tokens around
+        lexer.setTokenFactory(new CommonTokenFactory(true));
+        return new UnbufferedTokenStream<>(lexer, window);
+    }
+
+    /**
+     * Skips the package and imports, which aren't translated, noting the
+     * package name. Parsing them on their own would make the parser look
+     * ahead all the way to the end of the file to predict where they end.
+     */
+    private static void skipHeader(UnbufferedTokenStream<Token> tokens, J2SwiftListener listener) {
+        while (tokens.LA(1) == Java8Lexer.PACKAGE || tokens.LA(1) == Java8Lexer.IMPORT) {
+            boolean isPackage = tokens.LA(1) == Java8Lexer.PACKAGE;
+            StringBuilder name = new StringBuilder();
+            tokens.consume();
+            while (tokens.LA(1) != Java8Lexer.SEMI && tokens.LA(1) != Token.EOF) {
+                name.append(tokens.LT(1).getText());
+                tokens.consume();
+            }
+            if (isPackage) listener.setPackageName(name.toString());
+            if (tokens.LA(1) == Java8Lexer.SEMI) tokens.consume();
+        }
+    }
+
+}
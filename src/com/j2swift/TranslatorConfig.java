@@ -0,0 +1,753 @@
+package com.j2swift;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Settings that say how java is translated to swift, such as the mapping of
+ * java types and modifiers to their swift equivalents. A config is immutable,
+ * so a single instance can be shared by any number of listeners translating
+ * files at the same time without locking. New configs are made with a
+ * {@link Builder}, either from scratch or from an existing config.
+ * @author Eyob Tsegaye
+ */
+public final class TranslatorConfig {
+
+    public static final TranslatorConfig DEFAULT = new Builder().build();
+
+    /**
+     * Kinds of swift locks that java monitors (synchronized methods and blocks)
+     * are lowered to
+     */
+    public enum LockStyle {
+        /** NSRecursiveLock, reentrant like a java monitor */
+        RECURSIVE,
+        /** NSLock, cheaper but deadlocks if the synchronized code reenters */
+        NSLOCK,
+        /** os_unfair_lock in a small wrapper class, the cheapest, also not reentrant */
+        UNFAIR
+    }
+
+    private final Map<String, String> typeMap;
+    // generic mappings of the type map by raw type and number of type
+    // parameters, e.g. "ArrayList/1", with the parameter names first
+    private final Map<String, String[]> templates;
+    private final Map<String, String> modifierMap;
+    private final Set<String> subclassedNames;
+    private final Map<String, String> arrayTypes;
+    private final boolean valueStructs;
+    private final Set<String> structNames;
+    private final Set<String> equatableStructs;
+    private final boolean intEnums;
+    private final Set<String> genericProtocols;
+    private final LockStyle lockStyle;
+    private final Set<String> sharedNames;
+    private final Set<String> publicApi;
+    private final Set<String> corpusTypes;
+    private final Set<String> enumNames;
+    private final Set<String> interfaceConstants;
+    private final Map<String, String> fieldTypes;
+    private final Set<String> classMonitors;
+    private final Set<String> instanceMonitors;
+    private final ExceptionHierarchy exceptions;
+    private final Set<String> trapPackages;
+    private final boolean structuredConcurrency;
+    private final boolean ownership;
+
+    private TranslatorConfig(Builder builder) {
+        typeMap = Collections.unmodifiableMap(new HashMap<>(builder.typeMap));
+        templates = new HashMap<>();
+        for (Map.Entry<String, String> e : typeMap.entrySet()) {
+            String javaType = e.getKey();
+            int lt = javaType.indexOf('<');
+            if (lt == -1 || !javaType.endsWith(">")) continue;
+            String[] params = javaType.substring(lt+1, javaType.length()-1).split(",");
+            String[] template = new String[params.length+1];
+            for (int i = 0; i < params.length; i++) {
+                template[i] = params[i].trim();
+            }
+            template[params.length] = e.getValue();
+            templates.put(javaType.substring(0, lt) + "/" + params.length, template);
+        }
+        modifierMap = Collections.unmodifiableMap(new HashMap<>(builder.modifierMap));
+        subclassedNames = builder.subclassedNames == null ? null
+                    : Collections.unmodifiableSet(new HashSet<>(builder.subclassedNames));
+        arrayTypes = Collections.unmodifiableMap(new HashMap<>(builder.arrayTypes));
+        valueStructs = builder.valueStructs;
+        structNames = builder.structNames == null ? null
+                    : Collections.unmodifiableSet(new HashSet<>(builder.structNames));
+        equatableStructs = builder.equatableStructs == null ? null
+                    : Collections.unmodifiableSet(new HashSet<>(builder.equatableStructs));
+        intEnums = builder.intEnums;
+        genericProtocols = builder.genericProtocols == null ? null
+                    : Collections.unmodifiableSet(new HashSet<>(builder.genericProtocols));
+        lockStyle = builder.lockStyle;
+        sharedNames = builder.sharedNames == null ? null
+                    : Collections.unmodifiableSet(new HashSet<>(builder.sharedNames));
+        publicApi = Collections.unmodifiableSet(new HashSet<>(builder.publicApi));
+        corpusTypes = Collections.unmodifiableSet(new HashSet<>(builder.corpusTypes));
+        enumNames = Collections.unmodifiableSet(new HashSet<>(builder.enumNames));
+        interfaceConstants = Collections.unmodifiableSet(new HashSet<>(builder.interfaceConstants));
+        fieldTypes = Collections.unmodifiableMap(new HashMap<>(builder.fieldTypes));
+        classMonitors = Collections.unmodifiableSet(new HashSet<>(builder.classMonitors));
+        instanceMonitors = Collections.unmodifiableSet(new HashSet<>(builder.instanceMonitors));
+        exceptions = builder.exceptions;
+        trapPackages = Collections.unmodifiableSet(new HashSet<>(builder.trapPackages));
+        structuredConcurrency = builder.structuredConcurrency;
+        ownership = builder.ownership;
+    }
+
+    /**
+     * @return map from java types to swift types
+     */
+    public Map<String, String> typeMap() {
+        return typeMap;
+    }
+
+    /**
+     * Maps a generic type through a template of the type map, like
+     * "ArrayList<E>" to "[E]"
+     * @param rawType java type without its type arguments, e.g. "ArrayList"
+     * @param swiftArgs swift types of the type arguments
+     * @return the swift type with the type arguments filled in, e.g.
+     * "[String]", or null if there is no template for the type
+     */
+    public String genericType(String rawType, List<String> swiftArgs) {
+        String[] template = templates.get(rawType + "/" + swiftArgs.size());
+        if (template == null) return null;
+        String swiftType = template[swiftArgs.size()];
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < swiftType.length()) {
+            int end = i;
+            while (end < swiftType.length() && Character.isJavaIdentifierPart(swiftType.charAt(end))) end++;
+            if (end == i) {
+                sb.append(swiftType.charAt(i++));
+                continue;
+            }
+            String word = swiftType.substring(i, end);
+            for (int param = 0; param < swiftArgs.size(); param++) {
+                if (template[param].equals(word)) {
+                    word = swiftArgs.get(param);
+                    break;
+                }
+            }
+            sb.append(word);
+            i = end;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return whether the type map has a template for a raw generic type
+     */
+    public boolean hasGenericType(String rawType) {
+        for (String key : templates.keySet()) {
+            if (key.startsWith(rawType + "/")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return map from java modifiers to swift modifiers, where "error" marks a
+     * modifier that can't be translated
+     */
+    public Map<String, String> modifierMap() {
+        return modifierMap;
+    }
+
+    /**
+     * @return simple names of the classes that are subclassed anywhere in the
+     * corpus, or null if the corpus wasn't indexed and no class can be assumed
+     * to be final
+     */
+    public Set<String> subclassedNames() {
+        return subclassedNames;
+    }
+
+    /**
+     * Gets the swift type that arrays of primitives are lowered to in a
+     * package, e.g. "ContiguousArray" to emit int[] as ContiguousArray<Int32>.
+     * The setting for the longest package prefix that matches is used.
+     * @param packageName name of the package being translated, or the empty
+     * string for the default package
+     * @return the swift array type, or null to emit swift arrays, e.g. [Int32]
+     */
+    public String arrayType(String packageName) {
+        String best = null;
+        String arrayType = null;
+        for (Map.Entry<String, String> e : arrayTypes.entrySet()) {
+            String prefix = e.getKey();
+            boolean matches = prefix.isEmpty() || packageName.equals(prefix) || packageName.startsWith(prefix + ".");
+            if (matches && (best == null || prefix.length() > best.length())) {
+                best = prefix;
+                arrayType = e.getValue();
+            }
+        }
+        return arrayType;
+    }
+
+    /**
+     * @return whether immutable value classes are emitted as swift structs
+     */
+    public boolean valueStructs() {
+        return valueStructs;
+    }
+
+    /**
+     * @return simple names of the classes of all the files being translated
+     * that are emitted as structs, or null if they are found in each
+     * top-level declaration as it is translated
+     */
+    public Set<String> structNames() {
+        return structNames;
+    }
+
+    /**
+     * @return simple names of the structs that conform to Equatable, or null
+     * if they are found in each top-level declaration as it is translated
+     */
+    public Set<String> equatableStructs() {
+        return equatableStructs;
+    }
+
+    /**
+     * @return whether enums are backed by the java ordinals of their constants
+     */
+    public boolean intEnums() {
+        return intEnums;
+    }
+
+    /**
+     * @return simple names of the protocols that method parameters are made
+     * generic over, or null if parameters keep their protocol types
+     */
+    public Set<String> genericProtocols() {
+        return genericProtocols;
+    }
+
+    /**
+     * @return the names that are used in more than one file of the corpus, or
+     * null if access levels aren't inferred and the java modifiers are
+     * translated as they are
+     */
+    public Set<String> sharedNames() {
+        return sharedNames;
+    }
+
+    /**
+     * @return the declarations that stay public when access levels are
+     * inferred: simple names of types, which keep all their public members,
+     * and "Type.member" names of single members
+     */
+    public Set<String> publicApi() {
+        return publicApi;
+    }
+
+    /**
+     * @return the simple names of the classes, interfaces and enums declared
+     * in the corpus, whose inferred access levels limit those of the members
+     * that use them
+     */
+    public Set<String> corpusTypes() {
+        return corpusTypes;
+    }
+
+    /**
+     * @return the simple names of the enums declared in the files being
+     * translated, besides those declared where an expression is
+     */
+    public Set<String> enumNames() {
+        return enumNames;
+    }
+
+    /**
+     * @return the constants of the interfaces declared in the files being
+     * translated, as "Interface.CONSTANT", besides those declared where an
+     * expression is
+     */
+    public Set<String> interfaceConstants() {
+        return interfaceConstants;
+    }
+
+    /**
+     * @return map from the fields and constants of primitive types of the
+     * classes and interfaces declared in the files being translated, as
+     * "Type.field", to their java types
+     */
+    public Map<String, String> fieldTypes() {
+        return fieldTypes;
+    }
+
+    /**
+     * @return simple names of the classes declared in the files being
+     * translated whose class literals are synchronized on
+     */
+    public Set<String> classMonitors() {
+        return classMonitors;
+    }
+
+    /**
+     * @return simple names of the classes declared in the files being
+     * translated whose instances are synchronized on
+     */
+    public Set<String> instanceMonitors() {
+        return instanceMonitors;
+    }
+
+    /**
+     * @return the exception classes of the corpus
+     */
+    public ExceptionHierarchy exceptions() {
+        return exceptions;
+    }
+
+    /**
+     * @return whether unchecked exceptions thrown in a package are lowered
+     * to preconditionFailure
+     * @param packageName name of the package being translated, or the empty
+     * string for the default package
+     */
+    public boolean trapsUnchecked(String packageName) {
+        for (String prefix : trapPackages) {
+            if (prefix.isEmpty() || packageName.equals(prefix) || packageName.startsWith(prefix + ".")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether executors and futures are lowered to swift tasks
+     */
+    public boolean structuredConcurrency() {
+        return structuredConcurrency;
+    }
+
+    /**
+     * @return whether parameters of value types get ownership modifiers
+     */
+    public boolean ownership() {
+        return ownership;
+    }
+
+    /**
+     * @return the kind of lock synchronized methods and blocks are lowered to
+     */
+    public LockStyle lockStyle() {
+        return lockStyle;
+    }
+
+    /**
+     * @return a builder that starts out with the settings of this config
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Mutable builder for a TranslatorConfig. Unlike the config, a builder
+     * must not be shared between threads.
+     */
+    public static final class Builder {
+
+        private final Map<String, String> typeMap;
+        private final Map<String, String> modifierMap;
+        private Set<String> subclassedNames;
+        private final Map<String, String> arrayTypes;
+        private boolean valueStructs;
+        private Set<String> structNames;
+        private Set<String> equatableStructs;
+        private boolean intEnums = true;
+        private Set<String> genericProtocols;
+        private Set<String> sharedNames;
+        private Set<String> publicApi = new HashSet<>();
+        private Set<String> corpusTypes = new HashSet<>();
+        private Set<String> enumNames = new HashSet<>();
+        private Set<String> interfaceConstants = new HashSet<>();
+        private Map<String, String> fieldTypes = new HashMap<>();
+        private Set<String> classMonitors = new HashSet<>();
+        private Set<String> instanceMonitors = new HashSet<>();
+        private LockStyle lockStyle = LockStyle.RECURSIVE;
+        private ExceptionHierarchy exceptions = ExceptionHierarchy.EMPTY;
+        private final Set<String> trapPackages;
+        private boolean structuredConcurrency;
+        private boolean ownership;
+
+        /**
+         * Creates a builder with the default settings
+         */
+        public Builder() {
+            typeMap = new HashMap<>();
+            modifierMap = new HashMap<>();
+            arrayTypes = new HashMap<>();
+            trapPackages = new HashSet<>();
+
+            typeMap.put("boolean", "Bool");
+            typeMap.put("Boolean", "Bool");
+            typeMap.put("byte", "Int8");
+            typeMap.put("Byte", "Int8");
+            typeMap.put("short", "Int16");
+            typeMap.put("Short", "Int16");
+            typeMap.put("int", "Int32");
+            typeMap.put("Integer", "Int32");
+            typeMap.put("long", "Int64");
+            typeMap.put("Long", "Int64");
+            typeMap.put("float", "Float");
+            typeMap.put("Float", "Float");
+            typeMap.put("double", "Double");
+            typeMap.put("Double", "Double");
+            typeMap.put("char", "Character");
+            typeMap.put("Character", "Character");
+            typeMap.put("String", "String");
+            // the collections become swift value types, so they are copied
+            // on assignment instead of shared
+            typeMap.put("List<E>", "[E]");
+            typeMap.put("ArrayList<E>", "[E]");
+            typeMap.put("Map<K,V>", "[K: V]");
+            typeMap.put("HashMap<K,V>", "[K: V]");
+            typeMap.put("Set<E>", "Set<E>");
+            typeMap.put("HashSet<E>", "Set<E>");
+            typeMap.put("StringBuilder", "String");
+            // functional interfaces become function types
+            typeMap.put("Runnable", "() -> Void");
+            typeMap.put("Supplier<T>", "() -> T");
+            typeMap.put("Consumer<T>", "(T) -> Void");
+            typeMap.put("BiConsumer<T,U>", "(T, U) -> Void");
+            typeMap.put("Function<T,R>", "(T) -> R");
+            typeMap.put("BiFunction<T,U,R>", "(T, U) -> R");
+            typeMap.put("UnaryOperator<T>", "(T) -> T");
+            typeMap.put("BinaryOperator<T>", "(T, T) -> T");
+            typeMap.put("Predicate<T>", "(T) -> Bool");
+            typeMap.put("BiPredicate<T,U>", "(T, U) -> Bool");
+
+            modifierMap.put("public", "public");
+            modifierMap.put("protected", "2public");    // will ask user in a later process
+            modifierMap.put("private", "private");
+            modifierMap.put("abstract", "error");
+            modifierMap.put("static", "static");
+            modifierMap.put("final", "final");
+            modifierMap.put("strictfp", "error");
+            modifierMap.put("transient", "error");
+            modifierMap.put("volatile", "");         // lowered to an atomic
+            modifierMap.put("synchronized", "");     // lowered to a lock around the body
+            modifierMap.put("native", "error");
+            modifierMap.put("default", "error");
+        }
+
+        private Builder(TranslatorConfig config) {
+            typeMap = new HashMap<>(config.typeMap);
+            modifierMap = new HashMap<>(config.modifierMap);
+            subclassedNames = config.subclassedNames;
+            arrayTypes = new HashMap<>(config.arrayTypes);
+            valueStructs = config.valueStructs;
+            structNames = config.structNames;
+            equatableStructs = config.equatableStructs;
+            intEnums = config.intEnums;
+            genericProtocols = config.genericProtocols;
+            sharedNames = config.sharedNames;
+            publicApi = new HashSet<>(config.publicApi);
+            corpusTypes = new HashSet<>(config.corpusTypes);
+            enumNames = new HashSet<>(config.enumNames);
+            interfaceConstants = new HashSet<>(config.interfaceConstants);
+            fieldTypes = new HashMap<>(config.fieldTypes);
+            classMonitors = new HashSet<>(config.classMonitors);
+            instanceMonitors = new HashSet<>(config.instanceMonitors);
+            lockStyle = config.lockStyle;
+            exceptions = config.exceptions;
+            trapPackages = new HashSet<>(config.trapPackages);
+            structuredConcurrency = config.structuredConcurrency;
+            ownership = config.ownership;
+        }
+
+        /**
+         * Maps a java type to a swift type, replacing any existing mapping. A
+         * generic type can be mapped by a template that names its type
+         * parameters, e.g. "HashMap<K,V>" to "[K: V]".
+         * @param javaType java type as written in the source, e.g. "int"
+         * @param swiftType swift type to emit for it
+         * @return this builder
+         */
+        public Builder typeMapping(String javaType, String swiftType) {
+            typeMap.put(javaType, swiftType);
+            return this;
+        }
+
+        /**
+         * Maps a java modifier to a swift modifier, replacing any existing mapping
+         * @param javaModifier java modifier, e.g. "public"
+         * @param swiftModifier swift modifier to emit for it, or "error" if it
+         * can't be translated
+         * @return this builder
+         */
+        public Builder modifierMapping(String javaModifier, String swiftModifier) {
+            modifierMap.put(javaModifier, swiftModifier);
+            return this;
+        }
+
+        /**
+         * Sets the classes that are subclassed in the corpus; all other classes
+         * are emitted as final
+         * @param names simple names of the subclassed classes, e.g. from a
+         * {@link HierarchyIndex}, or null to not make any class final
+         * @return this builder
+         */
+        public Builder subclassedNames(Set<String> names) {
+            subclassedNames = names;
+            return this;
+        }
+
+        /**
+         * Lowers arrays of primitives in a package and its subpackages to a
+         * swift collection type other than Array
+         * @param packagePrefix package name, or the empty string for all packages
+         * @param swiftType generic swift type to emit, e.g. "ContiguousArray",
+         * or null to go back to swift arrays
+         * @return this builder
+         */
+        public Builder arrayType(String packagePrefix, String swiftType) {
+            if (swiftType == null) {
+                arrayTypes.remove(packagePrefix);
+            }
+            else {
+                arrayTypes.put(packagePrefix, swiftType);
+            }
+            return this;
+        }
+
+        /**
+         * Emits classes that only hold immutable values as swift structs,
+         * which are stored inline instead of being allocated on the heap and
+         * reference counted. Each class is preceded by a comment saying why it
+         * was or wasn't made a struct.
+         * @param enabled whether to emit structs
+         * @return this builder
+         */
+        public Builder valueStructs(boolean enabled) {
+            valueStructs = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the classes of all the files being translated that are emitted
+         * as structs, so that they are compared and copied as values in every
+         * declaration that uses them, not just their own
+         * @param names simple names of the structs, or null to find them in
+         * each top-level declaration
+         * @param equatable the structs that conform to Equatable
+         * @return this builder
+         */
+        public Builder structNames(Set<String> names, Set<String> equatable) {
+            structNames = names;
+            equatableStructs = equatable;
+            return this;
+        }
+
+        /**
+         * Emits enums as "enum X: Int32, CaseIterable" with each case set to the
+         * ordinal of the java constant, which is the default. Otherwise enums
+         * are emitted with plain cases.
+         * @param enabled whether to emit int-backed enums
+         * @return this builder
+         */
+        public Builder intEnums(boolean enabled) {
+            intEnums = enabled;
+            return this;
+        }
+
+        /**
+         * Turns method parameters typed by one of the given protocols into
+         * generic parameters constrained to the protocol, e.g.
+         * "func draw<SType: Shape>(s: SType)" instead of "func draw(s: Shape)".
+         * Calls through a generic parameter can be specialized by the swift
+         * optimizer, while calls through a protocol type go through an
+         * existential box and its witness table.
+         * @param names simple names of the protocols, e.g. from a
+         * {@link HierarchyIndex}, or null to keep protocol types
+         * @return this builder
+         */
+        public Builder genericProtocols(Set<String> names) {
+            genericProtocols = names;
+            return this;
+        }
+
+        /**
+         * Sets the kind of lock that synchronized methods and blocks are
+         * lowered to; the default is {@link LockStyle#RECURSIVE}
+         * @param style lock style
+         * @return this builder
+         */
+        public Builder lockStyle(LockStyle style) {
+            lockStyle = style;
+            return this;
+        }
+
+        /**
+         * Infers the access level of each declaration instead of translating
+         * its java modifiers: declarations whose names are only used in their
+         * own file become fileprivate, public ones that aren't part of the
+         * {@link #publicApi(Set) public API} lose their public modifier, and
+         * the rest stay internal. This lets the whole-module optimizer of swift
+         * inline and strip code that can't be used outside the module.
+         * @param names names used in more than one file, e.g. from an
+         * {@link AccessIndex}, or null to translate the java modifiers
+         * @return this builder
+         */
+        public Builder sharedNames(Set<String> names) {
+            sharedNames = names;
+            return this;
+        }
+
+        /**
+         * Sets the declarations that stay public when access levels are
+         * inferred
+         * @param names simple names of types, or "Type.member" names of
+         * members
+         * @return this builder
+         */
+        public Builder publicApi(Set<String> names) {
+            publicApi = new HashSet<>(names);
+            return this;
+        }
+
+        /**
+         * Sets the types declared in the corpus. When access levels are
+         * inferred, a member is never given a wider access level than the
+         * types of its signature, which swift rejects.
+         * @param names simple names of the types, e.g. from an
+         * {@link AccessIndex}
+         * @return this builder
+         */
+        public Builder corpusTypes(Set<String> names) {
+            corpusTypes = new HashSet<>(names);
+            return this;
+        }
+
+        /**
+         * Sets the enums declared in the files being translated, so that
+         * ordinal() and values() on them are translated even where they're
+         * used outside of the enum's own top-level declaration
+         * @param names simple names of the enums
+         * @return this builder
+         */
+        public Builder enumNames(Set<String> names) {
+            enumNames = new HashSet<>(names);
+            return this;
+        }
+
+        /**
+         * Sets the constants of the interfaces declared in the files being
+         * translated. Swift protocols can't hold values, so the constants
+         * are moved to an enum named after the protocol, e.g.
+         * LimitsConstants.MAX, and accessed through it.
+         * @param names the constants, as "Interface.CONSTANT"
+         * @return this builder
+         */
+        public Builder interfaceConstants(Set<String> names) {
+            interfaceConstants = new HashSet<>(names);
+            return this;
+        }
+
+        /**
+         * Sets the fields and constants of primitive types of the classes and
+         * interfaces declared in the files being translated, so arithmetic on
+         * them through another instance or a type name wraps like java's
+         * @param types map from the fields, as "Type.field", to their java types
+         * @return this builder
+         */
+        public Builder fieldTypes(Map<String, String> types) {
+            fieldTypes = new HashMap<>(types);
+            return this;
+        }
+
+        /**
+         * Sets the classes of the files being translated that are synchronized
+         * on from anywhere, so they declare the locks that stand in for their
+         * monitors and other classes can take them
+         * @param classes classes whose class literals are synchronized on
+         * @param instances classes whose instances are synchronized on
+         * @return this builder
+         */
+        public Builder monitors(Set<String> classes, Set<String> instances) {
+            classMonitors = new HashSet<>(classes);
+            instanceMonitors = new HashSet<>(instances);
+            return this;
+        }
+
+        /**
+         * Sets the exception classes of the corpus. Each hierarchy of checked
+         * exceptions is emitted as an enum that conforms to Error, and throwing
+         * or catching one of its classes throws or catches a case of the enum.
+         * The other classes of a hierarchy are mapped to its enum in the type
+         * map. Without them, only catch clauses for all exceptions are
+         * translated.
+         * @param exceptions exception classes, e.g. from the superclasses in a
+         * {@link HierarchyIndex}
+         * @return this builder
+         */
+        public Builder exceptions(ExceptionHierarchy exceptions) {
+            this.exceptions = exceptions;
+            for (Map.Entry<String, String> e : exceptions.errorEnums().entrySet()) {
+                if (!e.getKey().equals(e.getValue())) typeMap.put(e.getKey(), e.getValue());
+            }
+            return this;
+        }
+
+        /**
+         * Lowers throwing an unchecked exception in a package and its
+         * subpackages to a call of preconditionFailure, which stops the program
+         * instead of unwinding. Java code rarely catches exceptions like
+         * IllegalArgumentException, and swift functions that don't throw are
+         * cheaper to call.
+         * @param packagePrefix package name, or the empty string for all packages
+         * @return this builder
+         */
+        public Builder trapUnchecked(String packagePrefix) {
+            trapPackages.add(packagePrefix);
+            return this;
+        }
+
+        /**
+         * Lowers executors and futures to swift structured concurrency, which
+         * runs tasks on a cooperative pool with a thread per core. Futures
+         * become tasks through the type map, a local executor that is shut down
+         * and awaited in the block it's created in becomes a task group, and a
+         * local future that is only waited for becomes an async let. Methods
+         * that wait for a future are made async.
+         * @param enabled whether to lower executors and futures
+         * @return this builder
+         */
+        public Builder structuredConcurrency(boolean enabled) {
+            structuredConcurrency = enabled;
+            if (enabled) {
+                typeMap.put("Future<T>", "Task<T, Error>");
+                typeMap.put("CompletableFuture<T>", "Task<T, Error>");
+                typeMap.put("Callable<T>", "() throws -> T");
+            }
+            return this;
+        }
+
+        /**
+         * Marks the parameters of value types, like arrays, collections and
+         * strings, with the way the method uses them: inout if a private
+         * method writes the elements of an array, which java callers see,
+         * and otherwise borrowing if a private or static method only reads
+         * the value, or consuming if it stores or returns it, so swift
+         * doesn't copy or retain it on the way.
+         * @param enabled whether to add ownership modifiers
+         * @return this builder
+         */
+        public Builder ownership(boolean enabled) {
+            ownership = enabled;
+            return this;
+        }
+
+        public TranslatorConfig build() {
+            return new TranslatorConfig(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.j2swift;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache from the canonical token text of a Java type (e.g.
+ * "Map<Long,Foo>") to the swift text that was emitted for it. A single cache
+ * can be shared by every listener in a run that uses the same TranslatorConfig,
+ * so a type that shows up thousands of times is translated once and emitted as
+ * one copy of the cached String.
+ * All methods are thread-safe; the least recently used entry is dropped once
+ * the cache is full.
+ * @author Eyob Tsegaye
+ */
+public class TypeCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Map<String, String> types;
+
+    public TypeCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of types to keep
+     */
+    public TypeCache(final int capacity) {
+        types = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Gets the swift text for a java type
+     * @param javaType canonical token text of the java type
+     * @return the cached swift text, or null if the type hasn't been cached
+     */
+    public synchronized String get(String javaType) {
+        return types.get(javaType);
+    }
+
+    /**
+     * Caches the swift text for a java type, unless another listener got there
+     * first, in which case the text that's already cached is kept
+     * @param javaType canonical token text of the java type
+     * @param swiftType swift text emitted for the type
+     * @return the swift text now cached for the type
+     */
+    public synchronized String put(String javaType, String swiftType) {
+        String cached = types.get(javaType);
+        if (cached != null) {
+            return cached;
+        }
+        types.put(javaType, swiftType);
+        return swiftType;
+    }
+
+    public synchronized int size() {
+        return types.size();
+    }
+
+}
@@ -1,6 +1,13 @@
 package com.j2swift;
 
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Utility class for J2Swift tool
@@ -8,6 +15,13 @@ import org.antlr.v4.runtime.*;
  */
 public class Util {
 
+    // methods of java collections and string builders that change them
+    static final Set<String> MUTATORS = new HashSet<>(Arrays.asList(
+                "add", "addAll", "put", "putAll", "putIfAbsent", "set", "remove", "removeAll", "removeIf",
+                "retainAll", "replaceAll", "clear", "sort", "compute", "computeIfAbsent", "computeIfPresent",
+                "merge", "append", "insert", "delete", "deleteCharAt", "setCharAt", "setLength", "reverse",
+                "replace", "addFirst", "addLast", "push", "pop", "poll", "offer"));
+
 	/**
 	 * Outputs an error message and the parent of the parser rule which it
 	 * crashed on, and then exits with a status of 1
@@ -29,4 +43,75 @@ public class Util {
       return s.length() - s.replace("[", "").length();
     }
 
+    /**
+     * Collects the tokens of a parse tree, in order
+     * @param tree parse tree to collect the tokens of
+     * @return the tokens of all terminal nodes in the tree
+     */
+    public static List<Token> terminals(ParseTree tree) {
+        List<Token> tokens = new ArrayList<>();
+        terminals(tree, tokens);
+        return tokens;
+    }
+
+    /**
+     * Finds whether tokens may change the array, collection or string builder
+     * a name refers to, which swift copies where java shares it: by writing
+     * an element, by calling a method that changes it, or by passing it to a
+     * method, which may change it. Uses qualified by anything but "this" are
+     * of other variables.
+     * @param name the variable
+     * @param tokens tokens of the code to search
+     * @return whether the code may change the value of the variable
+     */
+    public static boolean isMutated(String name, List<Token> tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!tokens.get(i).getText().equals(name)) continue;
+            int prev = type(tokens, i-1);
+            if (prev == Java8Lexer.DOT && type(tokens, i-2) != Java8Lexer.THIS) continue;
+            int start = prev == Java8Lexer.DOT ? i-2 : i;
+            int next = type(tokens, i+1);
+            if (next == Java8Lexer.LBRACK) {
+                // skip the indices to see whether the element is written
+                int j = i+1;
+                while (type(tokens, j) == Java8Lexer.LBRACK) {
+                    for (int depth = 0; j < tokens.size(); j++) {
+                        if (type(tokens, j) == Java8Lexer.LBRACK) depth++;
+                        else if (type(tokens, j) == Java8Lexer.RBRACK && --depth == 0) break;
+                    }
+                    j++;
+                }
+                int after = type(tokens, j);
+                if (after == Java8Lexer.INC || after == Java8Lexer.DEC || type(tokens, start-1) == Java8Lexer.INC
+                            || type(tokens, start-1) == Java8Lexer.DEC
+                            || after >= Java8Lexer.ADD_ASSIGN && after <= Java8Lexer.URSHIFT_ASSIGN
+                            || after == Java8Lexer.ASSIGN) return true;
+            }
+            else if (next == Java8Lexer.DOT && type(tokens, i+3) == Java8Lexer.LPAREN
+                        && MUTATORS.contains(tokens.get(i+2).getText())) {
+                return true;
+            }
+            else if ((type(tokens, start-1) == Java8Lexer.LPAREN || type(tokens, start-1) == Java8Lexer.COMMA)
+                        && (next == Java8Lexer.RPAREN || next == Java8Lexer.COMMA)
+                        && type(tokens, start-2) == Java8Lexer.Identifier) {
+                return true;    // passed to a method
+            }
+        }
+        return false;
+    }
+
+    private static int type(List<Token> tokens, int i) {
+        return i >= 0 && i < tokens.size() ? tokens.get(i).getType() : Token.EOF;
+    }
+
+    private static void terminals(ParseTree tree, List<Token> tokens) {
+        if (tree instanceof TerminalNode) {
+            tokens.add(((TerminalNode) tree).getSymbol());
+            return;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            terminals(tree.getChild(i), tokens);
+        }
+    }
+
 }